@@ -0,0 +1,121 @@
+package org.cliffc.sql;
+
+import water.fvec.Vec;
+
+/**
+ * Batch predicate evaluation over Chunks.
+ *
+ * A chunk is processed BATCH rows at a time.  The needed columns are
+ * bulk-decoded into primitive arrays with Chunk.getLongs/getDoubles/
+ * getIntegers: one virtual call per column per batch, and not one per row.
+ * Predicates are simple loops over the arrays producing a selection vector of
+ * passing row offsets, and aggregates loop over just the selected offsets.
+ * Selection loops are branch-free: always store the offset, and bump the
+ * count by the predicate result.
+ *
+ * Usage pattern:
+ * <pre>
+ *   for( int b=0; b<len; b+=Batch.BATCH ) {
+ *     int e = Math.min(b+Batch.BATCH,len);
+ *     int n = Batch.range(dates.getLongs(ds,b,e,Batch.NA),e-b,lo,hi,sel);
+ *     n = Batch.range(qtys.getDoubles(qs,b,e),sel,n,0,24);
+ *     sum += Batch.sumProd(prices.getDoubles(ps,b,e),discs.getDoubles(xs,b,e),sel,n);
+ *   }
+ * </pre>
+ *
+ * Range filters first check the chunk against the column zone map (per-chunk
+ * min/max from the Vec rollups), and skip chunks with no possible match, or
+ * skip the range test when every row matches.
+ */
+public abstract class Batch {
+  // Rows per batch; the decoded columns stay in L1
+  public static final int BATCH = 1<<10;
+  // NA for decoded longs.  Fails all the long range tests with lo above
+  // Long.MIN_VALUE.  Double NAs are NaN, and fail all range tests.
+  public static final long NA = Long.MIN_VALUE;
+
+  // Zone-map results: NONE of the rows can match, ALL of them match, or SOME
+  // might.
+  public static final int NONE=0, SOME=1, ALL=2;
+
+  // Zone map for one column.  Not Iced; build it in setupLocal.
+  public static final class Zone {
+    final double[] _mins, _maxs;
+    final boolean _nas;         // Any NAs; NAs never match so no ALL chunks
+    public Zone( Vec vec ) { _mins = vec.chunkMins(); _maxs = vec.chunkMaxs(); _nas = vec.naCnt() > 0; }
+    // Test chunk cidx against [lo,hi)
+    public int test( int cidx, double lo, double hi ) {
+      double min = _mins[cidx], max = _maxs[cidx];
+      if( !(lo <= max && min < hi) ) return NONE; // Also all-NA chunks
+      return !_nas && lo <= min && max < hi ? ALL : SOME;
+    }
+  }
+
+  // Select all rows in [0,len)
+  public static int all( int len, int[] sel ) {
+    for( int i=0; i<len; i++ ) sel[i] = i;
+    return len;
+  }
+
+  // Select rows in [0,len) with lo <= v < hi
+  public static int range( long[] vs, int len, long lo, long hi, int[] sel ) {
+    int n=0;
+    for( int i=0; i<len; i++ ) {
+      long v = vs[i];
+      sel[n] = i;
+      n += (lo <= v) & (v < hi) ? 1 : 0;
+    }
+    return n;
+  }
+  public static int range( double[] vs, int len, double lo, double hi, int[] sel ) {
+    int n=0;
+    for( int i=0; i<len; i++ ) {
+      double v = vs[i];
+      sel[n] = i;
+      n += (lo <= v) & (v < hi) ? 1 : 0;
+    }
+    return n;
+  }
+
+  // Refine a selection in place, keeping lo <= v < hi
+  public static int range( long[] vs, int[] sel, int n, long lo, long hi ) {
+    int k=0;
+    for( int j=0; j<n; j++ ) {
+      int i = sel[j];
+      long v = vs[i];
+      sel[k] = i;
+      k += (lo <= v) & (v < hi) ? 1 : 0;
+    }
+    return k;
+  }
+  public static int range( double[] vs, int[] sel, int n, double lo, double hi ) {
+    int k=0;
+    for( int j=0; j<n; j++ ) {
+      int i = sel[j];
+      double v = vs[i];
+      sel[k] = i;
+      k += (lo <= v) & (v < hi) ? 1 : 0;
+    }
+    return k;
+  }
+  // Refine a selection in place, keeping v == x
+  public static int eq( int[] vs, int[] sel, int n, int x ) {
+    int k=0;
+    for( int j=0; j<n; j++ ) {
+      int i = sel[j];
+      sel[k] = i;
+      k += vs[i]==x ? 1 : 0;
+    }
+    return k;
+  }
+
+  // Sum of products over the selection
+  public static double sumProd( double[] as, double[] bs, int[] sel, int n ) {
+    double sum=0;
+    for( int j=0; j<n; j++ ) {
+      int i = sel[j];
+      sum += as[i]*bs[i];
+    }
+    return sum;
+  }
+}
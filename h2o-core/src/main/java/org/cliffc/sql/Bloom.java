@@ -0,0 +1,94 @@
+package org.cliffc.sql;
+
+import water.*;
+
+/**
+ * Sideways-information-passing filter: a compact, approximate copy of a
+ * join's build-side keys, shipped to the probe-side scan.
+ *
+ * The probe tests maybe(key) before its hash probe; a false means the key is
+ * surely not in the build side, and the row is dropped with one load and no
+ * hash probe.  A true may be a false positive, so the real probe still
+ * follows.  Dense key sets get an exact range bitmap over [min,max]; sparse
+ * ones get a blocked Bloom filter, with all of a key's bits in one word.
+ * Both reject keys outside [min,max] with no load at all.
+ *
+ * Whole chunks are skipped with skip(zone,cidx): no key in the chunk's
+ * min/max range can match.  Sorted probe columns (lineitem orderkeys) have
+ * narrow per-chunk ranges, so a range bitmap skips every chunk with no build
+ * keys at all.
+ */
+public class Bloom extends Iced<Bloom> {
+  long _min, _max;              // Key range; empty if min > max
+  long[] _bits;                 // Range bitmap over [min,max], or Bloom words
+  boolean _exact;               // Range bitmap, so no false positives
+  int _mask;                    // Bloom word index mask; power of 2 less 1
+
+  // Range bitmap if not much bigger than a Bloom filter
+  static final int BITS_PER_KEY = 64;
+  // Bloom filter size
+  static final int BLOOM_BITS_PER_KEY = 12;
+
+  /** Filter of a set of keys */
+  public static Bloom make( long[] keys ) {
+    Bloom b = new Bloom();
+    long min=Long.MAX_VALUE, max=Long.MIN_VALUE;
+    for( long k : keys ) { min = Math.min(min,k); max = Math.max(max,k); }
+    b._min = min;  b._max = max;
+    if( keys.length==0 ) { b._exact = true; b._bits = new long[0]; return b; }
+    long range = max-min+1;     // Overflow makes range negative
+    if( 0 < range && range < Integer.MAX_VALUE && range <= Math.max(1L<<16,(long)BITS_PER_KEY*keys.length) ) {
+      b._exact = true;
+      b._bits = new long[(int)((range+63)>>6)];
+      for( long k : keys ) b._bits[(int)((k-min)>>6)] |= 1L<<(k-min);
+    } else {
+      int w = (int)Math.min(1<<26,((long)keys.length*BLOOM_BITS_PER_KEY+63)>>6);
+      int nwords = w<=1 ? 1 : Integer.highestOneBit(w-1)<<1;
+      b._bits = new long[nwords];
+      b._mask = nwords-1;
+      for( long k : keys ) {
+        long h = hash(k);
+        b._bits[(int)h & b._mask] |= bits(h);
+      }
+    }
+    return b;
+  }
+  public static Bloom make( Dist.LSet s ) { return make(s.keys()); }
+  public static Bloom make( Dist.LLMap m ) { return make(m.keys()); }
+
+  /** False if k is surely not a key */
+  public boolean maybe( long k ) {
+    if( k < _min || k > _max ) return false;
+    if( _exact ) return ((_bits[(int)((k-_min)>>6)]>>>(k-_min))&1)!=0;
+    long h = hash(k), bs = bits(h);
+    return (_bits[(int)h & _mask] & bs) == bs;
+  }
+
+  /** False if no key can be in [lo,hi] */
+  public boolean maybe( double lo, double hi ) {
+    if( !(lo <= _max && _min <= hi) ) return false; // Also NaN, all-NA chunks
+    if( !_exact ) return true;
+    // Any bit set in the overlap
+    long a = Math.max(_min,(long)Math.ceil(lo))-_min, z = Math.min(_max,(long)Math.floor(hi))-_min;
+    if( a > z ) return false;
+    int wa = (int)(a>>6), wz = (int)(z>>6);
+    for( int w=wa; w<=wz; w++ ) {
+      long m = _bits[w];
+      if( w==wa ) m &= -1L<<a;
+      if( w==wz ) m &= -1L>>>(63-(z&63));
+      if( m != 0 ) return true;
+    }
+    return false;
+  }
+
+  /** True if the chunk can be skipped: no key in its zone-map range */
+  public boolean skip( Batch.Zone zone, int cidx ) { return !maybe(zone._mins[cidx],zone._maxs[cidx]); }
+
+  // Three bits in one word, from the hash high bits
+  private static long bits( long h ) { return (1L<<(h>>>40)) | (1L<<(h>>>46)) | (1L<<(h>>>52)); }
+  private static long hash( long k ) {
+    k = (k ^ (k>>>33)) * 0xff51afd7ed558ccdL;
+    k = (k ^ (k>>>33)) * 0xc4ceb9fe1a85ec53L;
+    return k ^ (k>>>33);
+  }
+}
@@ -0,0 +1,219 @@
+package org.cliffc.sql;
+
+import water.*;
+import water.fvec.*;
+import water.util.AtomicUtils;
+import java.util.Arrays;
+
+/**
+ * Immutable compressed-sparse-row adjacency index over dense int ids.
+ *
+ * The neighbors of id r are _nbrs[_offs[r] .. _offs[r+1]), sorted and
+ * unique.  Two flat int arrays replace a hash-of-sparse-sets: iteration is a
+ * linear array walk, degree is a subtract, and membership is a binary search.
+ * The index is built once from an edge list and never changes.
+ *
+ * Dense hub rows also get a bitmap over all ids, making membership one load
+ * and hub-hub intersections a word-wise AND; see Isect.
+ *
+ * orient() makes the degree-ordered DAG of an undirected index: rows are
+ * renumbered by rank (degree, then id), and each edge is kept once, from
+ * lower to higher rank.  Out-degrees are then O(sqrt(E)), and each triangle
+ * is found exactly once, from its lowest-ranked edge.
+ *
+ * <pre>
+ *   CSR pkp = CSR.make(fr.vec("dp1"),fr.vec("dp2"),npersons+1,true);
+ *   for( int x=pkp._offs[p]; x<pkp._offs[p+1]; x++ )
+ *     if( pkp.has(q,pkp._nbrs[x]) ) ...
+ * </pre>
+ */
+public class CSR extends Iced<CSR> {
+  public int[] _offs;           // Row starts, length nrows+1
+  public int[] _nbrs;           // Neighbors, sorted and unique per row
+  public long[][] _bits;        // Bitmap of a hub row's neighbors; null if not a hub
+  public int[] _ids, _ranks;    // Row to original id and back, if renumbered; else null
+
+  CSR( int[] offs, int[] nbrs ) { this(offs,nbrs,null,null); }
+  CSR( int[] offs, int[] nbrs, int[] ids, int[] ranks ) {
+    _offs = offs; _nbrs = nbrs; _ids = ids; _ranks = ranks;
+    // A bitmap costs nrows bits, so only rows with a degree in that ballpark
+    // are hubs; the total bitmap space is bounded by a small multiple of the
+    // edge space.
+    int n = nrows(), min = Math.max(256,n>>6);
+    _bits = new long[n][];
+    for( int r=0; r<n; r++ )
+      if( degree(r) >= min )
+        _bits[r] = Isect.bitmap(nbrs,offs[r],offs[r+1],n);
+  }
+
+  public int nrows() { return _offs.length-1; }
+  public int nedges() { return _nbrs.length; }
+  public int degree( int r ) { return _offs[r+1]-_offs[r]; }
+  /** True if b is a neighbor of a */
+  public boolean has( int a, int b ) {
+    return _bits[a]!=null ? Isect.tst(_bits[a],b) : Arrays.binarySearch(_nbrs,_offs[a],_offs[a+1],b) >= 0;
+  }
+  /** Count of common neighbors of a and b */
+  public int common( int a, int b ) {
+    long[] ba = _bits[a], bb = _bits[b];
+    if( ba!=null && bb!=null ) return Isect.and(ba,bb);
+    if( bb!=null ) return Isect.bits(_nbrs,_offs[a],_offs[a+1],bb);
+    if( ba!=null ) return Isect.bits(_nbrs,_offs[b],_offs[b+1],ba);
+    return Isect.count(_nbrs,_offs[a],_offs[a+1],_nbrs,_offs[b],_offs[b+1]);
+  }
+
+  /** The row of every edge position; with _nbrs, the edges as sorted pairs */
+  public int[] srcs() {
+    int[] srcs = new int[_nbrs.length];
+    for( int r=0; r<nrows(); r++ )
+      Arrays.fill(srcs,_offs[r],_offs[r+1],r);
+    return srcs;
+  }
+
+  /** Degree-ordered DAG of this undirected index, renumbered by rank.  Use
+   *  _ranks to map an original id to its row, and _ids to map back. */
+  public CSR orient() {
+    int n = nrows();
+    // Rank by degree, ties by id
+    long[] ks = new long[n];
+    for( int r=0; r<n; r++ ) ks[r] = ((long)degree(r)<<32) | r;
+    Arrays.parallelSort(ks);
+    int[] ids = new int[n], ranks = new int[n];
+    for( int i=0; i<n; i++ ) { ids[i] = (int)ks[i]; ranks[ids[i]] = i; }
+    // Out-degrees, then row starts, then the out-lists in rank order
+    int[] offs = new int[n+1];
+    Orient or = new Orient(this,ids,ranks,offs);
+    int nblks = (n+Orient.ROWS-1)/Orient.ROWS;
+    if( n > 0 ) H2O.submitTask(new LocalMR(or,nblks)).join();
+    for( int i=0; i<n; i++ ) offs[i+1] += offs[i];
+    or._nbrs = new int[offs[n]];
+    if( n > 0 ) H2O.submitTask(new LocalMR(or,nblks)).join();
+    return new CSR(offs,or._nbrs,ids,ranks);
+  }
+
+  // Count the higher-ranked neighbors of a block of ranked rows, or (once
+  // _nbrs is set) fill and sort their out-lists.
+  private static class Orient extends MrFun<Orient> {
+    static final int ROWS = 1<<12;
+    final transient CSR _csr;
+    final transient int[] _ids, _ranks, _offs;
+    transient int[] _nbrs;
+    Orient( CSR csr, int[] ids, int[] ranks, int[] offs ) { _csr = csr; _ids = ids; _ranks = ranks; _offs = offs; }
+    @Override protected void map( int blk ) {
+      int hi = Math.min((blk+1)*ROWS,_ids.length);
+      int[] nbrs = _csr._nbrs;
+      for( int i=blk*ROWS; i<hi; i++ ) {
+        int r = _ids[i], w = _nbrs==null ? 0 : _offs[i];
+        for( int x=_csr._offs[r]; x<_csr._offs[r+1]; x++ ) {
+          int rk = _ranks[nbrs[x]];
+          if( rk > i ) {
+            if( _nbrs==null ) w++;
+            else _nbrs[w++] = rk;
+          }
+        }
+        if( _nbrs==null ) _offs[i+1] = w;
+        else Arrays.sort(_nbrs,_offs[i],w);
+      }
+    }
+  }
+
+  /** Build from an edge list of ids in [0,n).  If undirected, each edge is
+   *  added in both directions.  Duplicate edges are dropped; NA edges are
+   *  skipped. */
+  public static CSR make( Vec src, Vec dst, int n, boolean undirected ) {
+    // Pass 1: degree counts, and a prefix sum to row starts
+    int[] degs = new Degree(n,undirected).doAll(src,dst)._degs;
+    int[] offs = new int[n+1];
+    for( int r=0; r<n; r++ ) offs[r+1] = offs[r]+degs[r];
+    // Pass 2: scatter the neighbors into their rows
+    Scatter sc = new Scatter(offs,undirected).doAll(src,dst);
+    int[] nbrs = sc._nbrs, cnts = sc._cnts;
+    // Sort each row and drop duplicates; cnts becomes the unique count
+    if( n > 0 )
+      H2O.submitTask(new LocalMR(new SortRows(offs,nbrs,cnts),(n+SortRows.ROWS-1)/SortRows.ROWS)).join();
+    // Compact out the dropped duplicates
+    int w=0;
+    for( int r=0; r<n; r++ ) {
+      int lo = offs[r], cnt = cnts[r];
+      offs[r] = w;
+      System.arraycopy(nbrs,lo,nbrs,w,cnt);
+      w += cnt;
+    }
+    offs[n] = w;
+    return new CSR(offs, w==nbrs.length ? nbrs : Arrays.copyOf(nbrs,w));
+  }
+
+  // Count out-degree per id.  Local maps share the count array.
+  private static class Degree extends MRTask<Degree> {
+    final int _n;
+    final boolean _undir;
+    int[] _degs;
+    Degree( int n, boolean undir ) { _n = n; _undir = undir; }
+    @Override protected void setupLocal() { _degs = new int[_n]; }
+    @Override public void map( Chunk srcs, Chunk dsts ) {
+      int len = srcs._len;
+      int[] ss = srcs.getIntegers(new int[len],0,len,-1);
+      int[] ds = dsts.getIntegers(new int[len],0,len,-1);
+      for( int i=0; i<len; i++ ) {
+        if( ss[i] < 0 || ds[i] < 0 ) continue;
+        AtomicUtils.IntArray.incr(_degs,ss[i]);
+        if( _undir ) AtomicUtils.IntArray.incr(_degs,ds[i]);
+      }
+    }
+    @Override public void reduce( Degree d ) {
+      if( _degs == d._degs ) return;
+      for( int i=0; i<_n; i++ ) _degs[i] += d._degs[i];
+    }
+  }
+
+  // Scatter neighbors into rows.  Local maps share the arrays and claim slots
+  // with an atomic per-row cursor; each node fills a prefix of every row, and
+  // reduce appends the remote prefix to the local one.
+  private static class Scatter extends MRTask<Scatter> {
+    final int[] _offs;
+    final boolean _undir;
+    int[] _nbrs, _cnts;
+    Scatter( int[] offs, boolean undir ) { _offs = offs; _undir = undir; }
+    @Override protected void setupLocal() {
+      _nbrs = new int[_offs[_offs.length-1]];
+      _cnts = new int[_offs.length-1];
+    }
+    @Override public void map( Chunk srcs, Chunk dsts ) {
+      int len = srcs._len;
+      int[] ss = srcs.getIntegers(new int[len],0,len,-1);
+      int[] ds = dsts.getIntegers(new int[len],0,len,-1);
+      for( int i=0; i<len; i++ ) {
+        int s = ss[i], d = ds[i];
+        if( s < 0 || d < 0 ) continue;
+        _nbrs[_offs[s]+AtomicUtils.IntArray.getAndAdd(_cnts,s,1)] = d;
+        if( _undir ) _nbrs[_offs[d]+AtomicUtils.IntArray.getAndAdd(_cnts,d,1)] = s;
+      }
+    }
+    @Override public void reduce( Scatter sc ) {
+      if( _nbrs == sc._nbrs ) return;
+      for( int r=0; r<_cnts.length; r++ ) {
+        System.arraycopy(sc._nbrs,_offs[r],_nbrs,_offs[r]+_cnts[r],sc._cnts[r]);
+        _cnts[r] += sc._cnts[r];
+      }
+    }
+  }
+
+  // Sort a block of rows, and set each row's count to its unique count
+  private static class SortRows extends MrFun<SortRows> {
+    static final int ROWS = 1<<12;
+    final transient int[] _offs, _nbrs, _cnts;
+    SortRows( int[] offs, int[] nbrs, int[] cnts ) { _offs = offs; _nbrs = nbrs; _cnts = cnts; }
+    @Override protected void map( int blk ) {
+      int hi = Math.min((blk+1)*ROWS,_cnts.length);
+      for( int r=blk*ROWS; r<hi; r++ ) {
+        int lo = _offs[r], end = lo+_cnts[r];
+        Arrays.sort(_nbrs,lo,end);
+        int w = lo;
+        for( int x=lo; x<end; x++ )
+          if( w==lo || _nbrs[x] != _nbrs[w-1] )
+            _nbrs[w++] = _nbrs[x];
+        _cnts[r] = w-lo;
+      }
+    }
+  }
+}
@@ -0,0 +1,144 @@
+package org.cliffc.sql;
+
+import water.*;
+import water.fvec.*;
+import water.parser.BufferedString;
+import water.rapids.Merge;
+import java.util.Arrays;
+
+/**
+ * Dense-id dictionary: maps the distinct keys of long or string columns to
+ * dense ints 0 to N-1, in key order, with reverse lookup.
+ *
+ * Long keys are radix sorted across the cloud (Merge.sort, over
+ * RadixOrder), and each sorted chunk drops its adjacent duplicates; the
+ * gathered chunks are the sorted unique keys.  String keys use the sorted
+ * string domain.  The dictionary itself is one flat sorted array: an id is
+ * a binary search, and a key is an array load.  Encoding a column is a
+ * plain MRTask carrying the dictionary, so it runs on all nodes with no
+ * shared hash map and no boxing.
+ *
+ * <pre>
+ *   Dict d = Dict.make(PERSON.vec("id"));
+ *   Vec dids = d.encode(KNOWS.vec("person1id"));  // 0 to N-1, NA if absent
+ *   long pid = d.key(did);
+ * </pre>
+ */
+public class Dict extends Iced<Dict> {
+  public long[] _keys;          // Sorted unique long keys; null if strings
+  public String[] _strs;        // Sorted unique string keys; null if longs
+
+  Dict( long[] keys, String[] strs ) { _keys = keys; _strs = strs; }
+
+  /** Number of distinct keys */
+  public int size() { return _keys==null ? _strs.length : _keys.length; }
+  /** Dense id of a key, or -1 if not a key */
+  public int id( long key ) { int x = Arrays.binarySearch(_keys,key); return x < 0 ? -1 : x; }
+  public int id( String key ) { int x = Arrays.binarySearch(_strs,key); return x < 0 ? -1 : x; }
+  /** Key of a dense id */
+  public long key( int id ) { return _keys[id]; }
+  public String str( int id ) { return _strs[id]; }
+
+  /** Dictionary of the union of the keys of vecs, all long or all string.
+   *  NAs are not keys. */
+  public static Dict make( Vec... vecs ) {
+    if( vecs[0].isString() ) {
+      String[] strs = new String[0];
+      for( Vec v : vecs ) {
+        Vec cat = v.toCategoricalVec(); // Sorted domain of the distinct strings
+        strs = union(strs,cat.domain());
+        cat.remove();
+      }
+      return new Dict(null,strs);
+    }
+    long[] keys = new long[0];
+    for( Vec v : vecs ) {
+      Frame sfr = Merge.sort(new Frame(new String[]{"k"},new Vec[]{v}),0);
+      long[][] ks = new Uniq().doAll(sfr)._keys;
+      sfr.delete();
+      keys = union(keys,concat(ks));
+    }
+    return new Dict(keys,null);
+  }
+
+  /** Encode a column of keys as dense ids plus base; NA if not a key */
+  public Vec encode( Vec v, int base ) {
+    return new Encode(this,base).doAll(Vec.T_NUM,v).outputFrame().anyVec();
+  }
+  public Vec encode( Vec v ) { return encode(v,0); }
+
+  // Sorted unique keys of each sorted chunk, by chunk index
+  private static class Uniq extends MRTask<Uniq> {
+    long[][] _keys;
+    @Override protected void setupLocal() { _keys = new long[_fr.anyVec().nChunks()][]; }
+    @Override public void map( Chunk c ) {
+      int len = c._len, n=0;
+      long[] ks = c.getLongs(new long[len],0,len,Batch.NA);
+      for( int i=0; i<len; i++ ) // Long.MIN_VALUE is a legal key; only isNA drops
+        if( !(ks[i]==Batch.NA && c.isNA(i)) && (n==0 || ks[i]!=ks[n-1]) )
+          ks[n++] = ks[i];
+      _keys[c.cidx()] = Arrays.copyOf(ks,n);
+    }
+    @Override public void reduce( Uniq u ) {
+      if( _keys == u._keys ) return;
+      for( int i=0; i<_keys.length; i++ )
+        if( u._keys[i] != null ) _keys[i] = u._keys[i];
+    }
+  }
+
+  private static class Encode extends MRTask<Encode> {
+    final Dict _dict;
+    final int _base;
+    Encode( Dict dict, int base ) { _dict = dict; _base = base; }
+    @Override public void map( Chunk c, NewChunk nc ) {
+      int len = c._len;
+      if( _dict._keys != null ) {
+        long[] ks = c.getLongs(new long[len],0,len,Batch.NA);
+        for( int i=0; i<len; i++ ) {
+          int id = ks[i]==Batch.NA && c.isNA(i) ? -1 : _dict.id(ks[i]);
+          if( id < 0 ) nc.addNA(); else nc.addNum(id+_base,0);
+        }
+      } else {
+        BufferedString bs = new BufferedString();
+        for( int i=0; i<len; i++ ) {
+          int id = c.isNA(i) ? -1 : _dict.id(c.atStr(bs,i).toString());
+          if( id < 0 ) nc.addNA(); else nc.addNum(id+_base,0);
+        }
+      }
+    }
+  }
+
+  // Concat the chunks' sorted keys; sorted, with duplicates only where a key
+  // spans a chunk boundary.
+  private static long[] concat( long[][] ks ) {
+    int n=0;
+    for( long[] k : ks ) if( k!=null ) n += k.length;
+    long[] xs = new long[n];
+    n=0;
+    for( long[] k : ks )
+      if( k!=null )
+        for( long x : k )
+          if( n==0 || xs[n-1]!=x ) xs[n++] = x;
+    return Arrays.copyOf(xs,n);
+  }
+
+  // Union of sorted unique arrays
+  private static long[] union( long[] a, long[] b ) {
+    long[] xs = new long[a.length+b.length];
+    int i=0, j=0, n=0;
+    while( i<a.length || j<b.length ) {
+      long x = j==b.length || (i<a.length && a[i]<=b[j]) ? a[i++] : b[j++];
+      if( n==0 || xs[n-1]!=x ) xs[n++] = x;
+    }
+    return n==xs.length ? xs : Arrays.copyOf(xs,n);
+  }
+  private static String[] union( String[] a, String[] b ) {
+    String[] xs = new String[a.length+b.length];
+    int i=0, j=0, n=0;
+    while( i<a.length || j<b.length ) {
+      String x = j==b.length || (i<a.length && a[i].compareTo(b[j])<=0) ? a[i++] : b[j++];
+      if( n==0 || !xs[n-1].equals(x) ) xs[n++] = x;
+    }
+    return n==xs.length ? xs : Arrays.copyOf(xs,n);
+  }
+}
@@ -0,0 +1,240 @@
+package org.cliffc.sql;
+
+import water.*;
+import water.nbhm.NonBlockingHashMapLong;
+import water.nbhm.NonBlockingSetInt;
+
+/**
+ * Distributable wrappers around the node-local lock-free sets and maps built
+ * by the filter/build MRTasks.
+ *
+ * A build task makes one shared structure per node in setupLocal, and all the
+ * map calls on that node fill it concurrently.  A reduce between two tasks on
+ * the same node sees the same structure and does nothing; a reduce across
+ * nodes merges the remote node's results into the local structure.  The
+ * wrappers are Iced, so remote results ride home with the returning MRTask.
+ * Passing the merged result as a field of a following MRTask broadcasts it to
+ * every node, using the fast Iced serialization and not Java serialization.
+ *
+ * Usage pattern:
+ * <pre>
+ *   Dist.LSet _keys;           // NOT transient; comes home from remote nodes
+ *   @Override protected void setupLocal() { _keys = new Dist.LSet(); }
+ *   @Override public void map( Chunk c ) { ... _keys.add(key); ... }
+ *   @Override public void reduce( Bld bld ) { _keys.reduce(bld._keys); }
+ * </pre>
+ */
+public abstract class Dist {
+
+  // A set of longs, as the keys of a NonBlockingHashMapLong
+  public static class LSet extends Iced<LSet> {
+    public transient NonBlockingHashMapLong _nbhml;
+    public LSet( ) { this(0); }
+    public LSet( int sz ) { _nbhml = sz==0 ? new NonBlockingHashMapLong() : new NonBlockingHashMapLong(sz); }
+    public boolean add( long k ) { return _nbhml.put(k,"")==null; }
+    public boolean contains( long k ) { return _nbhml.containsKey(k); }
+    public int size() { return _nbhml.size(); }
+    public long[] keys() { return _nbhml.keySetLong(); }
+    // Merge in the results from a remote node
+    public void reduce( LSet s ) {
+      if( s==null || s._nbhml==_nbhml ) return;
+      for( long k : s.keys() ) add(k);
+    }
+    public final AutoBuffer write_impl( AutoBuffer ab ) { return ab.putA8(keys()); }
+    public final LSet read_impl( AutoBuffer ab ) {
+      long[] ks = ab.getA8();
+      _nbhml = new NonBlockingHashMapLong(ks.length);
+      for( long k : ks ) add(k);
+      return this;
+    }
+    @Override public String toString() { return "#"+size(); }
+  }
+
+  // A map of longs to ints, as a NonBlockingHashMapLong<Integer>.  Keys are
+  // expected to be built on a single node; a remote key replaces any local
+  // key.
+  public static class LIMap extends Iced<LIMap> {
+    public transient NonBlockingHashMapLong<Integer> _nbhml;
+    public LIMap( ) { this(0); }
+    public LIMap( int sz ) { _nbhml = sz==0 ? new NonBlockingHashMapLong<>() : new NonBlockingHashMapLong<>(sz); }
+    public Integer get( long k ) { return _nbhml.get(k); }
+    public void put( long k, int v ) { _nbhml.put(k,(Integer)v); }
+    public int size() { return _nbhml.size(); }
+    public void reduce( LIMap m ) {
+      if( m==null || m._nbhml==_nbhml ) return;
+      _nbhml.putAll(m._nbhml);
+    }
+    public final AutoBuffer write_impl( AutoBuffer ab ) {
+      long[] ks = _nbhml.keySetLong();
+      int[] vs = new int[ks.length];
+      for( int i=0; i<ks.length; i++ ) vs[i] = _nbhml.get(ks[i]);
+      return ab.putA8(ks).putA4(vs);
+    }
+    public final LIMap read_impl( AutoBuffer ab ) {
+      long[] ks = ab.getA8();
+      int [] vs = ab.getA4();
+      _nbhml = new NonBlockingHashMapLong<>(ks.length);
+      for( int i=0; i<ks.length; i++ ) put(ks[i],vs[i]);
+      return this;
+    }
+    @Override public String toString() { return "#"+size(); }
+  }
+
+  // A set of non-negative ints, as a NonBlockingSetInt.  Shipped as a packed
+  // bitvector.
+  public static class ISet extends Iced<ISet> {
+    public transient NonBlockingSetInt _nbsi;
+    public ISet( ) { _nbsi = new NonBlockingSetInt(); }
+    public boolean add( int i ) { return _nbsi.add(i); }
+    public boolean contains( int i ) { return _nbsi.contains(i); }
+    public int size() { return _nbsi.size(); }
+    public long[] keys() {
+      long[] ks = new long[size()];
+      int n=0, len = _nbsi.length();
+      for( int i=0; i<len && n<ks.length; i++ )
+        if( _nbsi.contains(i) ) ks[n++] = i;
+      return n==ks.length ? ks : java.util.Arrays.copyOf(ks,n);
+    }
+    public void reduce( ISet s ) {
+      if( s==null || s._nbsi==_nbsi ) return;
+      int len = s._nbsi.length();
+      for( int i=0; i<len; i++ )
+        if( s._nbsi.contains(i) )
+          _nbsi.add(i);
+    }
+    public final AutoBuffer write_impl( AutoBuffer ab ) {
+      int len = _nbsi.length();
+      long[] bits = new long[(len+63)>>6];
+      for( int i=0; i<len; i++ )
+        if( _nbsi.contains(i) )
+          bits[i>>6] |= 1L<<(i&63);
+      return ab.putA8(bits);
+    }
+    public final ISet read_impl( AutoBuffer ab ) {
+      long[] bits = ab.getA8();
+      _nbsi = new NonBlockingSetInt();
+      for( int w=0; w<bits.length; w++ )
+        for( long b=bits[w]; b!=0; b &= b-1 )
+          _nbsi.add((w<<6)+Long.numberOfTrailingZeros(b));
+      return this;
+    }
+    @Override public String toString() { return "#"+size(); }
+  }
+
+  // A map of longs to sparse sets of ints; a sparse adjacency matrix.
+  // Merging unions the sets.
+  public static class LSBS extends Iced<LSBS> {
+    public transient NonBlockingHashMapLong<SparseBitSetInt> _nbhml;
+    public LSBS( ) { this(0); }
+    public LSBS( int sz ) { _nbhml = sz==0 ? new NonBlockingHashMapLong<>() : new NonBlockingHashMapLong<>(sz); }
+    public SparseBitSetInt get( long k ) { return _nbhml.get(k); }
+    public int size() { return _nbhml.size(); }
+    // Set bit c1 in the set for c0, making the set as needed
+    public void set( long c0, int c1 ) {
+      SparseBitSetInt sbsi = _nbhml.get(c0);
+      if( sbsi==null ) {
+        _nbhml.putIfAbsent(c0,new SparseBitSetInt(32));
+        sbsi = _nbhml.get(c0);
+      }
+      sbsi.set(c1);             // Sparse-bit-set
+    }
+    public void reduce( LSBS m ) {
+      if( m==null || m._nbhml==_nbhml ) return;
+      for( long k : m._nbhml.keySetLong() ) {
+        SparseBitSetInt sbsi = m._nbhml.get(k);
+        if( sbsi.tst(0) ) set(k,0);
+        for( int e : sbsi.rawKeySet() )
+          if( e > 0 ) set(k,e);
+      }
+    }
+    // Written as: count of sets; then per-set the key and the members
+    public final AutoBuffer write_impl( AutoBuffer ab ) {
+      long[] ks = _nbhml.keySetLong();
+      ab.put4(ks.length);
+      for( long k : ks ) {
+        SparseBitSetInt sbsi = _nbhml.get(k);
+        AryInt es = new AryInt();
+        if( sbsi.tst(0) ) es.push(0);
+        for( int e : sbsi.rawKeySet() )
+          if( e > 0 ) es.push(e);
+        ab.put8(k).putA4(es.asAry());
+      }
+      return ab;
+    }
+    public final LSBS read_impl( AutoBuffer ab ) {
+      int len = ab.get4();
+      _nbhml = new NonBlockingHashMapLong<>(len);
+      for( int i=0; i<len; i++ ) {
+        long k = ab.get8();
+        int[] es = ab.getA4();
+        SparseBitSetInt sbsi = new SparseBitSetInt(es.length);
+        for( int e : es ) sbsi.set(e);
+        _nbhml.put(k,sbsi);
+      }
+      return this;
+    }
+    @Override public String toString() { return "#"+size(); }
+  }
+
+  // A map of longs to longs, as a LongMap.Longs.  Keys are expected to be
+  // built on a single node; a remote key replaces any local key.
+  public static class LLMap extends Iced<LLMap> {
+    public transient LongMap.Longs _map;
+    public LLMap( ) { this(0); }
+    public LLMap( int sz ) { _map = new LongMap.Longs(sz); }
+    public long get( long k, long missing ) { return _map.get(k,missing); }
+    public boolean contains( long k ) { return _map.containsKey(k); }
+    public void put( long k, long v ) { _map.put(k,v); }
+    public boolean putIfAbsent( long k, long v ) { return _map.putIfAbsent(k,v); }
+    public int size() { return _map.size(); }
+    public long[] keys() { return _map.keys(); }
+    public void reduce( LLMap m ) {
+      if( m==null || m._map==_map ) return;
+      for( long k : m.keys() ) put(k,m.get(k,0));
+    }
+    public final AutoBuffer write_impl( AutoBuffer ab ) {
+      long[] ks = keys();
+      long[] vs = new long[ks.length];
+      for( int i=0; i<ks.length; i++ ) vs[i] = get(ks[i],0);
+      return ab.putA8(ks).putA8(vs);
+    }
+    public final LLMap read_impl( AutoBuffer ab ) {
+      long[] ks = ab.getA8();
+      long[] vs = ab.getA8();
+      _map = new LongMap.Longs(ks.length);
+      for( int i=0; i<ks.length; i++ ) put(ks[i],vs[i]);
+      return this;
+    }
+    @Override public String toString() { return "#"+size(); }
+  }
+
+  // A map of longs to double sums, as a LongMap.Doubles.  Merging adds.
+  public static class LDMap extends Iced<LDMap> {
+    public transient LongMap.Doubles _map;
+    public LDMap( ) { this(0); }
+    public LDMap( int sz ) { _map = new LongMap.Doubles(sz); }
+    public double get( long k ) { return _map.get(k); }
+    public boolean contains( long k ) { return _map.containsKey(k); }
+    public double add( long k, double d ) { return _map.add(k,d); }
+    public int size() { return _map.size(); }
+    public long[] keys() { return _map.keys(); }
+    public void reduce( LDMap m ) {
+      if( m==null || m._map==_map ) return;
+      for( long k : m.keys() ) add(k,m.get(k));
+    }
+    public final AutoBuffer write_impl( AutoBuffer ab ) {
+      long[] ks = keys();
+      double[] vs = new double[ks.length];
+      for( int i=0; i<ks.length; i++ ) vs[i] = get(ks[i]);
+      return ab.putA8(ks).putA8d(vs);
+    }
+    public final LDMap read_impl( AutoBuffer ab ) {
+      long  [] ks = ab.getA8();
+      double[] vs = ab.getA8d();
+      _map = new LongMap.Doubles(ks.length);
+      for( int i=0; i<ks.length; i++ ) add(ks[i],vs[i]);
+      return this;
+    }
+    @Override public String toString() { return "#"+size(); }
+  }
+}
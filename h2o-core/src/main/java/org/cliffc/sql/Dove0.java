@@ -58,7 +58,7 @@ public class Dove0 implements TSMB.TSMBI {
     sids.delete();
     if( PRINT_TIMING ) { t=System.currentTimeMillis(); System.out.println("Dovetail "+(t-t0)+" msec"); t0=t; }
 
-    assert cnt==200280; // actually only valid for SF0.1
+    assert TSMB.check(cnt,200280);
     return cnt;
   }
 
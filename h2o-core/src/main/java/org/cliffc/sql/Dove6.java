@@ -1,8 +1,6 @@
 package org.cliffc.sql;
 
 import water.*;
-import water.fvec.*;
-import water.rapids.Merge;
 import water.util.SB;
 
 /**
@@ -32,6 +30,8 @@ This version is modified from the base version in Dove0 via:
 6-  'next' iters after a hit; NO CHANGE: very dataset dependent
 6-  manually inline to remove join & iter objects; SLIGHTY WORSE: probably i-cache issues
 6-  Parallelize, H2O-style; 10x speedup on 20 cores
+7-  Walk the shared CSR index as sorted (x,y) int arrays; no edge doubling or sort
+8-  Walk the degree-ordered DAG; each triangle is found once, and scaled by 6
 H2O brute force solution times is given above; it is about 25X faster.
  */
 
@@ -41,43 +41,29 @@ public class Dove6 implements TSMB.TSMBI {
 
   // -----------------------------------------------------------------
   // Do triangles via "worse case optimal join" or "dove-tail join".
-  // Sort the edge array.  Use an iterator to walk it.  Implement
-  // a "seek least upper bound"
+  // The degree-ordered DAG is the edge array, oriented from lower to higher
+  // rank and already sorted.  Use an iterator to walk it.  Implement a "seek
+  // least upper bound"
   public long run() {
     long t0 = System.currentTimeMillis(), t;
 
-    // Make directed edges undirected, by doubling the edge entries.
-    Frame pids = TSMB.PERSON_KNOWS_PERSON.subframe(new String[]{"dp1","dp2"});
-    Frame dids = new Undirect().doAll(pids.types(),pids).outputFrame(pids._names,null);
-    if( PRINT_TIMING ) { t=System.currentTimeMillis(); System.out.println("Double edges#"+dids.numRows()+" "+(t-t0)+" msec"); t0=t; }
-    
-    // Sort
-    Frame sids = Merge.sort(dids,new int[]{0,1});
-    dids.delete();
-    if( PRINT_TIMING ) { t=System.currentTimeMillis(); System.out.println("Sort#"+sids.numRows()+" "+(t-t0)+" msec"); t0=t; }
+    // Sorted oriented edges, as (x,y) pairs with x<y
+    int[] xs = TSMB.P_KNOWS_P_DAG.srcs(), ys = TSMB.P_KNOWS_P_DAG._nbrs;
+    if( PRINT_TIMING ) { t=System.currentTimeMillis(); System.out.println("Edges#"+xs.length+" "+(t-t0)+" msec"); t0=t; }
 
     // Dovetail join, counting hits
-    //long cnt = join_triangles(sids.vec(0),sids.vec(1));
-    long cnt = new Triangles().doAll(sids.vec(0),sids.vec(1))._cnt;
-    sids.delete();
+    //long cnt = join_triangles(xs,ys);
+    Triangles tri = new Triangles(xs,ys);
+    H2O.submitTask(new LocalMR(tri,tri._cnts.length)).join();
+    long cnt=0;
+    for( long c : tri._cnts ) cnt += c;
+    cnt *= 6;                   // All 6 orderings of each x<y<z triangle
     if( PRINT_TIMING ) { t=System.currentTimeMillis(); System.out.println("Dovetail "+(t-t0)+" msec"); t0=t; }
 
-    assert cnt==200280;
+    assert TSMB.check(cnt,200280);
     return cnt;
   }
 
-  // Make directed graph edges, undirected by duplication
-  private static class Undirect extends MRTask<Undirect> {
-    @Override public void map( Chunk[] cs, NewChunk[] ncs ) {
-      for( int i=0; i<cs[0]._len; i++ ) {
-        ncs[0].addNum(cs[0].at8(i));
-        ncs[1].addNum(cs[1].at8(i));
-        ncs[0].addNum(cs[1].at8(i));
-        ncs[1].addNum(cs[0].at8(i));
-      }
-    }
-  }
-
   // Probably belongs in ArrayUtils.
   public static int cmp( int[] keys0, int[] keys1 ) {
     for( int i=0; i<keys0.length; i++ )
@@ -91,14 +77,14 @@ public class Dove6 implements TSMB.TSMBI {
     final static int NINF = -1; // compare of any 2 keys uses subtract, which cannot wrap.
     // The 2-D relation being walked over.  The relation is of the form (X<->Y)
     // and is fairly sparse.  The encoding is a sorted list of (X,Y) pairs.
-    final Vec.Reader _vx,_vy;   // Underlying bits being iterated over
+    final int[] _vx,_vy;        // Underlying bits being iterated over
     final int _nrows;           // Fast/local number of encoded rows, or set-bits in the relation
     int _pos;
     int _kx, _ky;               // Key x,y
-    Iter(Vec vec0, Vec vec1) {
-      _nrows = (int)vec0.length();
-      _vx = vec0.new Reader();
-      _vy = vec1.new Reader();
+    Iter(int[] xs, int[] ys) {
+      _nrows = xs.length;
+      _vx = xs;
+      _vy = ys;
       _pos= 0;
       _kx = NINF;
       _ky = NINF;
@@ -118,8 +104,8 @@ public class Dove6 implements TSMB.TSMBI {
       if( _pos==_nrows ) {
         _kx = _ky = PINF;
       } else {
-        _kx = _vx.at4(_pos);
-        _ky = _vy.at4(_pos);
+        _kx = _vx[_pos];
+        _ky = _vy[_pos];
       }
     }
 
@@ -127,12 +113,12 @@ public class Dove6 implements TSMB.TSMBI {
     final void seek( int key0, int key1 ) {
       // Always seeking forwards
       assert _pos==0 || _pos==_nrows || // At end, OR
-        _vx.at4(_pos) < key0 || // before (key0,key1).  
-        (_vx.at4(_pos) == key0 && _vy.at(_pos)<=key1 );
+        _vx[_pos] < key0 || // before (key0,key1).  
+        (_vx[_pos] == key0 && _vy[_pos]<=key1 );
       // Try a few nearby positions
       for( int i=0; i<24 && _pos+i<_nrows; i++ ) {
-        int kx = _vx.at4(_pos+i);
-        int ky = _vy.at4(_pos+i);
+        int kx = _vx[_pos+i];
+        int ky = _vy[_pos+i];
         if( kx>key0 || (kx==key0 && ky>=key1) ) {
           _kx=kx; _ky=ky;
           _pos = _pos + i;
@@ -148,8 +134,8 @@ public class Dove6 implements TSMB.TSMBI {
       int lb = 0, ub = _nrows;
       while( lb < ub ) {
         int mid = lb + ((ub - lb) >> 1);
-        int elem0 = _vx.at4(mid);
-        int elem1 = _vy.at4(mid);
+        int elem0 = _vx[mid];
+        int elem1 = _vy[mid];
         if( elem0==key0 && elem1==key1 ) {
           _kx = elem0;
           _ky = elem1;
@@ -158,8 +144,8 @@ public class Dove6 implements TSMB.TSMBI {
         if( elem0 < key0 || (elem0==key0 && elem1 < key1) ) lb = mid+1;
         else ub = mid;
       }
-      _kx = ub < _nrows ? _vx.at4(ub) : PINF;
-      _ky = ub < _nrows ? _vy.at4(ub) : PINF;
+      _kx = ub < _nrows ? _vx[ub] : PINF;
+      _ky = ub < _nrows ? _vy[ub] : PINF;
       return ub; // -ub-1; Can flag the miss, if desired
     }
 
@@ -170,7 +156,7 @@ public class Dove6 implements TSMB.TSMBI {
     }
   }
   private static class IterR extends Iter {
-    IterR(Vec v0, Vec v1) { super(v0,v1); }
+    IterR(int[] xs, int[] ys) { super(xs,ys); }
     // Compare against the join point
     @Override int cmp( int[] es ) {
       int dx = _kx-es[0];
@@ -184,7 +170,7 @@ public class Dove6 implements TSMB.TSMBI {
     }
   }
   private static class IterS extends Iter {
-    IterS(Vec v0, Vec v1) { super(v0,v1); }
+    IterS(int[] xs, int[] ys) { super(xs,ys); }
     // Compare against the join point
     @Override int cmp( int[] es ) {
       int dx = _kx-es[0];
@@ -198,7 +184,7 @@ public class Dove6 implements TSMB.TSMBI {
     }
   }
   private static class IterT extends Iter {
-    IterT(Vec v0, Vec v1) { super(v0,v1); }
+    IterT(int[] xs, int[] ys) { super(xs,ys); }
     // Compare against the join point
     @Override int cmp( int[] es ) {
       int dx = _kx-es[1];
@@ -215,16 +201,16 @@ public class Dove6 implements TSMB.TSMBI {
   
   // Custom iterator for TSMB11.
   // 
-  private long join_triangles( Vec v0, Vec v1 ) {
+  private long join_triangles( int[] xs, int[] ys ) {
     // Make an iter for P1->P2 and P2->P3 relations.  Set them to zero rows.
     // All iters are using the same relations.
-    final IterR iter_r = new IterR(v0,v1);
-    final IterS iter_s = new IterS(v0,v1);
-    final IterT iter_t = new IterT(v0,v1);
+    final IterR iter_r = new IterR(xs,ys);
+    final IterS iter_s = new IterS(xs,ys);
+    final IterT iter_t = new IterT(xs,ys);
 
     // Original join point, just uses the zero element.
-    final int e0 = (int)v0.at8(0);
-    final int e1 = (int)v1.at8(0);
+    final int e0 = xs[0];
+    final int e1 = ys[0];
     final int[] es = new int[]{e0,e1, e1};
 
     // Until at_end, find first minimal iter, and seek_lub.
@@ -305,22 +291,27 @@ public class Dove6 implements TSMB.TSMBI {
 
 
   // --------------------------------------------------------------------------
-  private static class Triangles extends MRTask<Triangles> {
-    long _cnt;
-    @Override public void map( Chunk c0, Chunk c1 ) {
+  // Count triangles over blocks of edge positions.  Each block writes its own
+  // slot of the shared counts.
+  private static class Triangles extends MrFun<Triangles> {
+    static final int EDGES = 1<<14;
+    final transient int[] _xs, _ys;
+    final long[] _cnts;
+    Triangles( int[] xs, int[] ys ) { _xs = xs; _ys = ys; _cnts = new long[Math.max(1,(xs.length+EDGES-1)/EDGES)]; }
+    @Override protected void map( int blk ) {
       long cnt=0;
-      Vec v0 = c0.vec(), v1 = c1.vec();
-      long start = c0.start(), end = start+c0._len, nrows = v0.length();
+      int nrows = _xs.length, start = blk*EDGES, end = Math.min(start+EDGES,nrows);
+      if( start >= end ) return;
 
       // Make an iter for P1->P2 and P2->P3 relations.
-      final IterR iter_r = new IterR(v0,v1);
-      final IterS iter_s = new IterS(v0,v1);
-      final IterT iter_t = new IterT(v0,v1);
+      final IterR iter_r = new IterR(_xs,_ys);
+      final IterS iter_s = new IterS(_xs,_ys);
+      final IterT iter_t = new IterT(_xs,_ys);
       
       // Initial & ending join point (inclusive,exclusive):
-      int e0 = end < nrows ? (int)v0.at8(end) : Iter.PINF;
-      int e1 = end < nrows ? (int)v1.at8(end) : Iter.PINF;
-      final int[] es  = new int[]{(int)v0.at8(start),(int)v1.at8(start),Iter.NINF};
+      int e0 = end < nrows ? _xs[end] : Iter.PINF;
+      int e1 = end < nrows ? _ys[end] : Iter.PINF;
+      final int[] es  = new int[]{_xs[start],_ys[start],Iter.NINF};
       final int[] last= new int[]{     e0,                e1,           Iter.NINF};
       
       // Until at_end, find first minimal iter, and seek_lub.
@@ -342,9 +333,8 @@ public class Dove6 implements TSMB.TSMBI {
         }
       }
       
-      _cnt=cnt;
+      _cnts[blk]=cnt;
     }
-    @Override public void reduce( Triangles C ) { _cnt += C._cnt; }
   }
 
 }
@@ -0,0 +1,394 @@
+package org.cliffc.sql;
+
+import org.joda.time.Chronology;
+import org.joda.time.chrono.ISOChronology;
+import water.*;
+import water.fvec.*;
+
+/**
+ * SQL expression trees.  Built unresolved by the Parser, resolved against the
+ * FROM tables by the Plan, and then shipped to the scan MRTask and evaluated
+ * per-row.  Everything evaluates to a double; predicates are 1 or 0, and NA
+ * is NaN.
+ */
+public abstract class Expr extends Iced<Expr> {
+
+  // Per-row evaluation context.  Columns of the scanned (fact) table come from
+  // the chunks; columns of the dimension tables come from the per-table loaded
+  // columns, at the row found by the joins.  After the group-by the group
+  // values and the aggregate accumulators are used instead.
+  static final class Ctx {
+    int _fact;                  // Table number of the scanned table
+    Chunk[] _cs; int _i;        // Scanned table chunks and row
+    double[][][] _data;         // Per-table, per-slot dimension columns
+    int[] _rows;                // Per-table joined row
+    double[] _gvals;            // Group values, post group-by
+    double[] _accs; int _acc0;  // Aggregate accumulators, post group-by
+    double val( int tab, int slot ) {
+      return tab==_fact ? _cs[slot].atd(_i) : _data[tab][slot][_rows[tab]];
+    }
+  }
+
+  abstract double eval( Ctx x );
+  // Bitmask of tables used, for tables numbered in FROM order
+  long tabs() { return 0; }
+  // Resolve column names against the FROM tables
+  Expr resolve( Plan p ) { return this; }
+  // Replace column references with group references; returns null if a
+  // column is used outside of an aggregate and not in the GROUP BY.
+  Expr group( Expr[] grps ) { return this; }
+  // Collect aggregates
+  void aggs( java.util.ArrayList<Agg> aggs ) { }
+  boolean isTrue( Ctx x ) { return eval(x)==1; }
+
+  // Numeric constant
+  static class Num extends Expr {
+    final double _d;
+    Num( double d ) { _d=d; }
+    @Override double eval( Ctx x ) { return _d; }
+    @Override public String toString() { return _d==(long)_d ? Long.toString((long)_d) : Double.toString(_d); }
+  }
+
+  // String constant; only legal compared against a categorical column
+  static class Str extends Expr {
+    final String _s;
+    Str( String s ) { _s=s; }
+    @Override double eval( Ctx x ) { throw new IllegalArgumentException("String '"+_s+"' must be compared against a categorical column"); }
+    @Override public String toString() { return "'"+_s+"'"; }
+  }
+
+  // Unresolved column name, with optional table alias
+  static class Col extends Expr {
+    final String _alias, _name;
+    Col( String alias, String name ) { _alias=alias; _name=name; }
+    @Override double eval( Ctx x ) { throw new IllegalArgumentException("Unresolved column "+this); }
+    @Override Expr resolve( Plan p ) { return p.column(_alias,_name); }
+    @Override public String toString() { return _alias==null ? _name : _alias+"."+_name; }
+  }
+
+  // Resolved column: a table number and a loaded slot in that table
+  static class ColRef extends Expr {
+    final int _tab, _slot;
+    final String _name;
+    final transient Vec _vec;   // For domains and rollups, planning only
+    ColRef( int tab, int slot, String name, Vec vec ) { _tab=tab; _slot=slot; _name=name; _vec=vec; }
+    @Override double eval( Ctx x ) { return x.val(_tab,_slot); }
+    @Override long tabs() { return 1L<<_tab; }
+    @Override Expr group( Expr[] grps ) {
+      for( int i=0; i<grps.length; i++ )
+        if( toString().equals(grps[i].toString()) )
+          return new GrpRef(i);
+      return null;
+    }
+    @Override public String toString() { return _name; }
+  }
+
+  // Group value, post group-by
+  static class GrpRef extends Expr {
+    final int _grp;
+    GrpRef( int grp ) { _grp=grp; }
+    @Override double eval( Ctx x ) { return x._gvals[_grp]; }
+    @Override public String toString() { return "#"+_grp; }
+  }
+
+  // Binary arithmetic
+  static class Bin extends Expr {
+    final char _op;
+    Expr _l, _r;
+    Bin( char op, Expr l, Expr r ) { _op=op; _l=l; _r=r; }
+    @Override double eval( Ctx x ) {
+      double l = _l.eval(x), r = _r.eval(x);
+      switch( _op ) {
+      case '+': return l+r;
+      case '-': return l-r;
+      case '*': return l*r;
+      case '/': return l/r;
+      default: throw H2O.fail();
+      }
+    }
+    @Override long tabs() { return _l.tabs() | _r.tabs(); }
+    @Override Expr resolve( Plan p ) { return new Bin(_op,_l.resolve(p),_r.resolve(p)); }
+    @Override Expr group( Expr[] grps ) {
+      Expr l = _l.group(grps), r = _r.group(grps);
+      return l==null || r==null ? null : new Bin(_op,l,r);
+    }
+    @Override void aggs( java.util.ArrayList<Agg> aggs ) { _l.aggs(aggs); _r.aggs(aggs); }
+    @Override public String toString() { return "("+_l+_op+_r+")"; }
+  }
+
+  // Comparisons.  Any NA compares false.
+  static class Cmp extends Expr {
+    final String _op;
+    final Expr _l, _r;
+    Cmp( String op, Expr l, Expr r ) { _op=op; _l=l; _r=r; }
+    @Override double eval( Ctx x ) {
+      double l = _l.eval(x), r = _r.eval(x);
+      if( Double.isNaN(l) || Double.isNaN(r) ) return 0;
+      switch( _op ) {
+      case "=" : return l==r ? 1 : 0;
+      case "<>": return l!=r ? 1 : 0;
+      case "<" : return l< r ? 1 : 0;
+      case "<=": return l<=r ? 1 : 0;
+      case ">" : return l> r ? 1 : 0;
+      case ">=": return l>=r ? 1 : 0;
+      default: throw H2O.fail();
+      }
+    }
+    @Override long tabs() { return _l.tabs() | _r.tabs(); }
+    @Override Expr resolve( Plan p ) {
+      Expr l = _l.resolve(p), r = _r.resolve(p);
+      // Categorical compared to a string: precompute the matching domain
+      if( r instanceof Str || l instanceof Str ) {
+        if( l instanceof Str ) { Expr t=l; l=r; r=t; }
+        if( !(_op.equals("=") || _op.equals("<>")) )
+          throw new IllegalArgumentException("Only = and <> supported against strings: "+this);
+        String s = ((Str)r)._s;
+        return InSet.make(l,_op.equals("<>"),this, d -> d.equals(s));
+      }
+      return new Cmp(_op,l,r);
+    }
+    @Override Expr group( Expr[] grps ) {
+      Expr l = _l.group(grps), r = _r.group(grps);
+      return l==null || r==null ? null : new Cmp(_op,l,r);
+    }
+    @Override void aggs( java.util.ArrayList<Agg> aggs ) { _l.aggs(aggs); _r.aggs(aggs); }
+    @Override public String toString() { return _l+" "+_op+" "+_r; }
+  }
+
+  // [NOT] LIKE, with % and _ wildcards
+  static class Like extends Expr {
+    final Expr _l;
+    final String _pat;
+    final boolean _not;
+    Like( Expr l, String pat, boolean not ) { _l=l; _pat=pat; _not=not; }
+    @Override double eval( Ctx x ) { throw new IllegalArgumentException("Unresolved "+this); }
+    @Override Expr resolve( Plan p ) {
+      StringBuilder sb = new StringBuilder();
+      for( char c : _pat.toCharArray() )
+        if( c=='%' ) sb.append(".*");
+        else if( c=='_' ) sb.append('.');
+        else sb.append(java.util.regex.Pattern.quote(Character.toString(c)));
+      java.util.regex.Pattern pat = java.util.regex.Pattern.compile(sb.toString(),java.util.regex.Pattern.DOTALL);
+      return InSet.make(_l.resolve(p),_not,this, d -> pat.matcher(d).matches());
+    }
+    @Override public String toString() { return _l+(_not?" not":"")+" like '"+_pat+"'"; }
+  }
+
+  // [NOT] IN a list of constants: strings against a categorical column, or
+  // numbers.  Any NA is not in, and not not-in.
+  static class In extends Expr {
+    final Expr _l;
+    final Expr[] _vals;
+    final boolean _not;
+    In( Expr l, Expr[] vals, boolean not ) { _l=l; _vals=vals; _not=not; }
+    @Override double eval( Ctx x ) { throw new IllegalArgumentException("Unresolved "+this); }
+    @Override Expr resolve( Plan p ) {
+      Expr l = _l.resolve(p);
+      int nstrs=0;
+      for( Expr v : _vals ) if( v instanceof Str ) nstrs++;
+      if( nstrs == _vals.length ) {
+        java.util.HashSet<String> set = new java.util.HashSet<>();
+        for( Expr v : _vals ) set.add(((Str)v)._s);
+        return InSet.make(l,_not,this, set::contains);
+      }
+      if( nstrs > 0 ) throw new IllegalArgumentException("Mixed strings and numbers: "+this);
+      Expr[] es = new Expr[_vals.length];
+      for( int i=0; i<es.length; i++ ) es[i] = new Cmp(_not ? "<>" : "=",l,_vals[i].resolve(p));
+      if( _not ) return new And(es);
+      Expr e = es[0];
+      for( int i=1; i<es.length; i++ ) e = new Or(e,es[i]);
+      return e;
+    }
+    @Override public String toString() {
+      StringBuilder sb = new StringBuilder().append(_l).append(_not?" not":"").append(" in (");
+      for( int i=0; i<_vals.length; i++ ) sb.append(i==0?"":",").append(_vals[i]);
+      return sb.append(")").toString();
+    }
+  }
+
+  // Categorical column in a precomputed set of domain values
+  static class InSet extends Expr {
+    final Expr _col;
+    final boolean[] _in;
+    final String _str;
+    InSet( Expr col, boolean[] in, String str ) { _col=col; _in=in; _str=str; }
+    interface Match { boolean match( String d ); }
+    static InSet make( Expr col, boolean not, Expr src, Match m ) {
+      if( !(col instanceof ColRef) || !((ColRef)col)._vec.isCategorical() )
+        throw new IllegalArgumentException("String compare needs a categorical column: "+src);
+      String[] dom = ((ColRef)col)._vec.domain();
+      boolean[] in = new boolean[dom.length];
+      for( int i=0; i<dom.length; i++ ) in[i] = m.match(dom[i])^not;
+      return new InSet(col,in,src.toString());
+    }
+    @Override double eval( Ctx x ) {
+      double d = _col.eval(x);
+      return !Double.isNaN(d) && _in[(int)d] ? 1 : 0;
+    }
+    @Override long tabs() { return _col.tabs(); }
+    @Override Expr group( Expr[] grps ) {
+      Expr c = _col.group(grps);
+      return c==null ? null : new InSet(c,_in,_str);
+    }
+    @Override public String toString() { return _str; }
+  }
+
+  // Boolean AND, OR, NOT
+  static class And extends Expr {
+    final Expr[] _es;
+    And( Expr... es ) { _es=es; }
+    @Override double eval( Ctx x ) {
+      for( Expr e : _es ) if( !e.isTrue(x) ) return 0;
+      return 1;
+    }
+    @Override long tabs() { long t=0; for( Expr e : _es ) t |= e.tabs(); return t; }
+    @Override Expr resolve( Plan p ) {
+      Expr[] es = new Expr[_es.length];
+      for( int i=0; i<es.length; i++ ) es[i] = _es[i].resolve(p);
+      return new And(es);
+    }
+    @Override Expr group( Expr[] grps ) {
+      Expr[] es = new Expr[_es.length];
+      for( int i=0; i<es.length; i++ ) if( (es[i] = _es[i].group(grps))==null ) return null;
+      return new And(es);
+    }
+    @Override void aggs( java.util.ArrayList<Agg> aggs ) { for( Expr e : _es ) e.aggs(aggs); }
+    @Override public String toString() {
+      StringBuilder sb = new StringBuilder("(");
+      for( int i=0; i<_es.length; i++ ) sb.append(i==0?"":" and ").append(_es[i]);
+      return sb.append(")").toString();
+    }
+  }
+  static class Or extends Expr {
+    final Expr _l, _r;
+    Or( Expr l, Expr r ) { _l=l; _r=r; }
+    @Override double eval( Ctx x ) { return _l.isTrue(x) || _r.isTrue(x) ? 1 : 0; }
+    @Override long tabs() { return _l.tabs() | _r.tabs(); }
+    @Override Expr resolve( Plan p ) { return new Or(_l.resolve(p),_r.resolve(p)); }
+    @Override Expr group( Expr[] grps ) {
+      Expr l = _l.group(grps), r = _r.group(grps);
+      return l==null || r==null ? null : new Or(l,r);
+    }
+    @Override void aggs( java.util.ArrayList<Agg> aggs ) { _l.aggs(aggs); _r.aggs(aggs); }
+    @Override public String toString() { return "("+_l+" or "+_r+")"; }
+  }
+  static class Not extends Expr {
+    final Expr _e;
+    Not( Expr e ) { _e=e; }
+    @Override double eval( Ctx x ) { return _e.isTrue(x) ? 0 : 1; }
+    @Override long tabs() { return _e.tabs(); }
+    @Override Expr resolve( Plan p ) { return new Not(_e.resolve(p)); }
+    @Override Expr group( Expr[] grps ) {
+      Expr e = _e.group(grps);
+      return e==null ? null : new Not(e);
+    }
+    @Override void aggs( java.util.ArrayList<Agg> aggs ) { _e.aggs(aggs); }
+    @Override public String toString() { return "not "+_e; }
+  }
+
+  // Searched CASE: the value for the first true condition, else the ELSE
+  // value, else NA
+  static class Case extends Expr {
+    final Expr[] _conds, _vals;
+    final Expr _else;           // Null for no ELSE
+    Case( Expr[] conds, Expr[] vals, Expr els ) { _conds=conds; _vals=vals; _else=els; }
+    @Override double eval( Ctx x ) {
+      for( int i=0; i<_conds.length; i++ )
+        if( _conds[i].isTrue(x) ) return _vals[i].eval(x);
+      return _else==null ? Double.NaN : _else.eval(x);
+    }
+    @Override long tabs() {
+      long t = _else==null ? 0 : _else.tabs();
+      for( int i=0; i<_conds.length; i++ ) t |= _conds[i].tabs() | _vals[i].tabs();
+      return t;
+    }
+    @Override Expr resolve( Plan p ) {
+      Expr[] cs = new Expr[_conds.length], vs = new Expr[_vals.length];
+      for( int i=0; i<cs.length; i++ ) { cs[i] = _conds[i].resolve(p); vs[i] = _vals[i].resolve(p); }
+      return new Case(cs,vs,_else==null ? null : _else.resolve(p));
+    }
+    @Override Expr group( Expr[] grps ) {
+      Expr[] cs = new Expr[_conds.length], vs = new Expr[_vals.length];
+      for( int i=0; i<cs.length; i++ )
+        if( (cs[i] = _conds[i].group(grps))==null || (vs[i] = _vals[i].group(grps))==null ) return null;
+      Expr els = _else==null ? null : _else.group(grps);
+      return _else!=null && els==null ? null : new Case(cs,vs,els);
+    }
+    @Override void aggs( java.util.ArrayList<Agg> aggs ) {
+      for( int i=0; i<_conds.length; i++ ) { _conds[i].aggs(aggs); _vals[i].aggs(aggs); }
+      if( _else!=null ) _else.aggs(aggs);
+    }
+    @Override public String toString() {
+      StringBuilder sb = new StringBuilder("case");
+      for( int i=0; i<_conds.length; i++ ) sb.append(" when ").append(_conds[i]).append(" then ").append(_vals[i]);
+      if( _else!=null ) sb.append(" else ").append(_else);
+      return sb.append(" end").toString();
+    }
+  }
+
+  // EXTRACT(year|month|day FROM date), in UTC like the date literals
+  static class Extract extends Expr {
+    static final Chronology UTC = ISOChronology.getInstanceUTC();
+    final String _unit;
+    final Expr _arg;
+    Extract( String unit, Expr arg ) { _unit=unit; _arg=arg; }
+    @Override double eval( Ctx x ) {
+      double d = _arg.eval(x);
+      return Double.isNaN(d) ? Double.NaN : get((long)d);
+    }
+    long get( long ms ) {
+      switch( _unit ) {
+      case "year":  return UTC.year().get(ms);
+      case "month": return UTC.monthOfYear().get(ms);
+      case "day":   return UTC.dayOfMonth().get(ms);
+      default: throw H2O.fail();
+      }
+    }
+    @Override long tabs() { return _arg.tabs(); }
+    @Override Expr resolve( Plan p ) { return new Extract(_unit,_arg.resolve(p)); }
+    @Override Expr group( Expr[] grps ) {
+      for( int i=0; i<grps.length; i++ )
+        if( toString().equals(grps[i].toString()) )
+          return new GrpRef(i);
+      Expr a = _arg.group(grps);
+      return a==null ? null : new Extract(_unit,a);
+    }
+    @Override void aggs( java.util.ArrayList<Agg> aggs ) { _arg.aggs(aggs); }
+    @Override public String toString() { return "extract("+_unit+" from "+_arg+")"; }
+  }
+
+  // Aggregates.  In the scan, the argument is evaluated per-row and rolled
+  // into the accumulators starting at _acc.  Post group-by, eval returns the
+  // final value from the accumulators.
+  static class Agg extends Expr {
+    final String _fcn;          // sum, avg, count, min, max
+    final Expr _arg;            // Null for count(*)
+    int _acc;                   // First accumulator
+    Agg( String fcn, Expr arg ) { _fcn=fcn; _arg=arg; }
+    int naccs() { return _fcn.equals("avg") ? 2 : 1; }
+    // Accumulator merge op: 0 add, 1 min, 2 max
+    byte op() { return (byte)(_fcn.equals("min") ? 1 : (_fcn.equals("max") ? 2 : 0)); }
+    // Roll one row into accumulators
+    void accum( double[] accs, int off, Ctx x ) {
+      double d = _arg==null ? 1 : _arg.eval(x);
+      if( Double.isNaN(d) ) return; // NAs are ignored
+      int a = off+_acc;
+      switch( _fcn ) {
+      case "sum"  : accs[a] += d; break;
+      case "count": accs[a] ++;   break;
+      case "avg"  : accs[a] += d; accs[a+1]++; break;
+      case "min"  : accs[a] = Math.min(accs[a],d); break;
+      case "max"  : accs[a] = Math.max(accs[a],d); break;
+      default: throw H2O.fail();
+      }
+    }
+    @Override double eval( Ctx x ) {
+      int a = x._acc0+_acc;
+      return _fcn.equals("avg") ? x._accs[a]/x._accs[a+1] : x._accs[a];
+    }
+    @Override long tabs() { return _arg==null ? 0 : _arg.tabs(); }
+    @Override Expr resolve( Plan p ) { return new Agg(_fcn,_arg==null ? null : _arg.resolve(p)); }
+    @Override void aggs( java.util.ArrayList<Agg> aggs ) { aggs.add(this); }
+    @Override public String toString() { return _fcn+"("+(_arg==null?"*":_arg.toString())+")"; }
+  }
+}
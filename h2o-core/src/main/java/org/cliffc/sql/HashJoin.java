@@ -0,0 +1,284 @@
+package org.cliffc.sql;
+
+import water.*;
+import water.fvec.*;
+import water.util.ArrayUtils;
+import java.util.Arrays;
+
+/**
+ * Radix-partitioned hash equi-join of two Frames, on all the columns with
+ * matching names.
+ *
+ * Both sides are partitioned by a hash of the key, in one parallel pass per
+ * side: each chunk counting-sorts its keys and row offsets by partition.
+ * Partitions are sized so the build side of a partition stays in cache.
+ * Then each partition builds a chained hash table over its build keys and
+ * probes it with its probe keys, all partitions in parallel on the fork-join
+ * pool.  Finally the matching rows are materialized into evenly sized
+ * chunks, so the result needs no SQL.compact.
+ *
+ * Modes: INNER emits every matching pair, with the key columns, then the
+ * other lhs columns, then the other rhs columns.  SEMI emits the lhs rows with
+ * some match, and ANTI the lhs rows with none; both emit just the lhs columns.
+ * NA keys never match.
+ *
+ * Keys must be integer columns, or categoricals with equal domains.  A
+ * composite key is packed into a long, and throws IllegalArgumentException if
+ * it does not fit.
+ */
+public abstract class HashJoin {
+  public static final int INNER=0, SEMI=1, ANTI=2;
+  static final boolean PRINT_TIMING = false;
+  // Build rows per partition; the partition's keys, rows and table stay in L2
+  static final int PART_ROWS = 1<<14;
+
+  public static Frame join( Frame lhs, Frame rhs, int mode ) {
+    long t0 = System.currentTimeMillis();
+    // Key columns: all with matching names
+    int nk=0;
+    int[] lks = new int[lhs.numCols()], rks = new int[lhs.numCols()];
+    for( int i=0; i<lhs.numCols(); i++ ) {
+      int j = rhs.find(lhs.name(i));
+      if( j != -1 ) { lks[nk]=i; rks[nk++]=j; }
+    }
+    if( nk==0 ) throw new IllegalArgumentException("No columns in common to join on");
+    lks = Arrays.copyOf(lks,nk);
+    rks = Arrays.copyOf(rks,nk);
+
+    // Mixed-radix packing of a composite key, over the range of both sides.
+    // A single key is used as-is.
+    long[] mins = new long[nk], mults = new long[nk];
+    long mult=1;
+    for( int k=0; k<nk; k++ ) {
+      Vec lv = lhs.vec(lks[k]), rv = rhs.vec(rks[k]);
+      String name = lhs.name(lks[k]);
+      if( !(lv.isInt() || lv.isCategorical()) || !(rv.isInt() || rv.isCategorical()) )
+        throw new IllegalArgumentException("Join key "+name+" is not an integer column");
+      if( lv.isCategorical() != rv.isCategorical() || (lv.isCategorical() && !Arrays.equals(lv.domain(),rv.domain())) )
+        throw new IllegalArgumentException("Join key "+name+" has mismatched categorical domains");
+      if( nk==1 ) { mults[k] = 1; break; }
+      long min = (long)Math.min(lv.min(),rv.min());
+      long range = (long)Math.max(lv.max(),rv.max())-min+1;
+      if( range <= 0 || mult > Long.MAX_VALUE/range )
+        throw new IllegalArgumentException("Composite join key too wide to pack");
+      mins[k] = min;
+      mults[k] = mult;
+      mult *= range;
+    }
+
+    // Build on the smaller side for INNER; always on the rhs for SEMI and ANTI
+    boolean flip = mode==INNER && lhs.numRows() < rhs.numRows();
+    Frame bld = flip ? lhs : rhs, prb = flip ? rhs : lhs;
+    int bits = 0;
+    while( (bld.numRows()>>bits) > PART_ROWS ) bits++;
+    Part bp = new Part(mins,mults,bits).doAll(keys(bld,flip ? lks : rks));
+    Part pp = new Part(mins,mults,bits).doAll(keys(prb,flip ? rks : lks));
+    if( PRINT_TIMING ) { long t=System.currentTimeMillis(); System.out.println("Partition "+(1<<bits)+", "+(t-t0)+" msec"); t0=t; }
+
+    // Build and probe each partition in parallel
+    Probe pr = new Probe(bp,pp,mode);
+    H2O.submitTask(new LocalMR(pr,1<<bits)).join();
+    long[] prows = pr.rows(pr._prows), brows = mode==INNER ? pr.rows(pr._brows) : null;
+    long[] lrows = flip ? brows : prows, rrows = flip ? prows : brows;
+    if( PRINT_TIMING ) { long t=System.currentTimeMillis(); System.out.println("Probe "+prows.length+", "+(t-t0)+" msec"); t0=t; }
+
+    // Output columns: keys, other lhs, other rhs (INNER only)
+    int ncols = lhs.numCols() + (mode==INNER ? rhs.numCols()-nk : 0);
+    Vec[] vecs = new Vec[ncols];
+    boolean[] rite = new boolean[ncols];
+    String[] names = new String[ncols];
+    int x=0;
+    for( int k : lks ) { names[x] = lhs.name(k); vecs[x++] = lhs.vec(k); }
+    for( int i=0; i<lhs.numCols(); i++ )
+      if( !ArrayUtils.contains(lks,i) ) { names[x] = lhs.name(i); vecs[x++] = lhs.vec(i); }
+    if( mode==INNER )
+      for( int i=0; i<rhs.numCols(); i++ )
+        if( !ArrayUtils.contains(rks,i) ) { names[x] = rhs.name(i); rite[x] = true; vecs[x++] = rhs.vec(i); }
+    byte[] types = new byte[ncols];
+    String[][] domains = new String[ncols][];
+    for( int i=0; i<ncols; i++ ) { types[i] = vecs[i].get_type(); domains[i] = vecs[i].domain(); }
+
+    // Materialize into evenly sized chunks
+    Vec tmpl = Vec.makeZero(lrows.length);
+    Frame fr = new Fill(vecs,rite,lrows,rrows).doAll(types,tmpl).outputFrame(names,domains);
+    tmpl.remove();
+    if( PRINT_TIMING ) { long t=System.currentTimeMillis(); System.out.println("Fill "+fr.numRows()+", "+(t-t0)+" msec"); }
+    return fr;
+  }
+
+  private static Frame keys( Frame fr, int[] ks ) {
+    Vec[] vecs = new Vec[ks.length];
+    for( int k=0; k<ks.length; k++ ) vecs[k] = fr.vec(ks[k]);
+    return new Frame(vecs);
+  }
+
+  // Fibonacci hash; the partition is the top bits, and the table index the
+  // next bits down
+  private static long hash( long key ) { return key*0x9E3779B97F4A7C15L; }
+
+  // The keys of one side, partitioned per chunk.  Chunk c holds its packed
+  // keys and row offsets grouped by partition, partition p in
+  // [_starts[c][p],_starts[c][p+1]).  Extra partition 1<<bits holds the NA
+  // keys, whose packed key values are meaningless.  Arrays are shared by all maps on a node; each map sets its chunk.
+  private static class Part extends MRTask<Part> {
+    final long[] _mins, _mults;
+    final int _bits;
+    long[][] _keys;
+    int [][] _offs, _starts;
+    long[] _cstarts;            // Row number of each chunk start
+    Part( long[] mins, long[] mults, int bits ) { _mins = mins; _mults = mults; _bits = bits; }
+    @Override protected void setupLocal() {
+      int nchks = _fr.anyVec().nChunks();
+      _keys = new long[nchks][];
+      _offs = new int [nchks][];
+      _starts=new int [nchks][];
+      _cstarts=new long[nchks];
+    }
+    @Override public void map( Chunk[] cs ) {
+      int len = cs[0]._len, cidx = cs[0].cidx(), nparts = 1<<_bits;
+      // Pack the keys.  Batch.NA is also the legal key Long.MIN_VALUE, so NA
+      // rows are tracked apart from the keys.
+      long[] keys = new long[len];
+      boolean[] nas = new boolean[len];
+      long[] vs = cs.length==1 ? keys : new long[len];
+      for( int k=0; k<cs.length; k++ ) {
+        cs[k].getLongs(vs,0,len,Batch.NA);
+        for( int i=0; i<len; i++ )
+          if( vs[i]==Batch.NA && cs[k].isNA(i) ) nas[i] = true;
+          else if( vs != keys ) keys[i] += (vs[i]-_mins[k])*_mults[k];
+      }
+      // Counting sort by partition
+      int[] starts = new int[nparts+2];
+      for( int i=0; i<len; i++ ) starts[part(keys[i],nas[i])+1]++;
+      for( int p=0; p<=nparts; p++ ) starts[p+1] += starts[p];
+      int[] pos = Arrays.copyOf(starts,nparts+1);
+      long[] pkeys = new long[len];
+      int [] offs  = new int [len];
+      for( int i=0; i<len; i++ ) {
+        int x = pos[part(keys[i],nas[i])]++;
+        pkeys[x] = keys[i];
+        offs [x] = i;
+      }
+      _keys[cidx] = pkeys;  _offs[cidx] = offs;  _starts[cidx] = starts;  _cstarts[cidx] = cs[0].start();
+    }
+    private int part( long key, boolean na ) {
+      return na ? 1<<_bits : (_bits==0 ? 0 : (int)(hash(key)>>>(64-_bits)));
+    }
+    @Override public void reduce( Part p ) {
+      if( _keys == p._keys ) return;
+      for( int c=0; c<_keys.length; c++ )
+        if( p._keys[c] != null ) {
+          _keys[c] = p._keys[c];  _offs[c] = p._offs[c];  _starts[c] = p._starts[c];  _cstarts[c] = p._cstarts[c];
+        }
+    }
+  }
+
+  // Build and probe one partition.  Partition p writes only its own slot of
+  // the shared result arrays; matches are global row numbers.
+  private static class Probe extends MrFun<Probe> {
+    final transient Part _b, _p;
+    final int _mode;
+    final long[][] _brows, _prows;
+    final int[] _ns;
+    Probe( Part b, Part p, int mode ) {
+      _b = b;  _p = p;  _mode = mode;
+      int nparts = 1<<b._bits;
+      _brows = new long[nparts][];
+      _prows = new long[nparts][];
+      _ns = new int[nparts];
+    }
+    @Override protected void map( int part ) {
+      Part b = _b, q = _p;
+      // Gather the partition's build keys and rows
+      int n=0;
+      for( int c=0; c<b._keys.length; c++ )
+        n += b._starts[c][part+1]-b._starts[c][part];
+      long[] keys = new long[n], rows = new long[n];
+      n=0;
+      for( int c=0; c<b._keys.length; c++ )
+        for( int x=b._starts[c][part]; x<b._starts[c][part+1]; x++ ) {
+          keys[n] = b._keys[c][x];
+          rows[n++] = b._cstarts[c]+b._offs[c][x];
+        }
+      // Chained hash table over the build keys
+      int tbits=1;
+      while( (1<<tbits) < 2*n ) tbits++;
+      int[] heads = new int[1<<tbits], next = new int[n];
+      Arrays.fill(heads,-1);
+      for( int i=0; i<n; i++ ) {
+        int h = idx(keys[i],b._bits,tbits);
+        next[i] = heads[h];
+        heads[h] = i;
+      }
+      // Probe
+      long[] prows = new long[16], brows = _mode==INNER ? new long[16] : null;
+      int m=0;
+      for( int c=0; c<q._keys.length; c++ )
+        for( int x=q._starts[c][part]; x<q._starts[c][part+1]; x++ ) {
+          long key = q._keys[c][x], prow = q._cstarts[c]+q._offs[c][x];
+          boolean hit=false;
+          for( int i=heads[idx(key,b._bits,tbits)]; i!=-1; i=next[i] )
+            if( keys[i]==key ) {
+              hit = true;
+              if( _mode!=INNER ) break;
+              if( m==prows.length ) { prows = Arrays.copyOf(prows,m<<1); brows = Arrays.copyOf(brows,m<<1); }
+              prows[m] = prow;  brows[m++] = rows[i];
+            }
+          if( (_mode==SEMI && hit) || (_mode==ANTI && !hit) ) {
+            if( m==prows.length ) prows = Arrays.copyOf(prows,m<<1);
+            prows[m++] = prow;
+          }
+        }
+      // NA keys never match, so all pass ANTI
+      if( _mode==ANTI && part==0 ) {
+        int na = 1<<b._bits;
+        for( int c=0; c<q._keys.length; c++ )
+          for( int x=q._starts[c][na]; x<q._starts[c][na+1]; x++ ) {
+            if( m==prows.length ) prows = Arrays.copyOf(prows,m<<1);
+            prows[m++] = q._cstarts[c]+q._offs[c][x];
+          }
+      }
+      _prows[part] = prows;  _brows[part] = brows;  _ns[part] = m;
+    }
+    private static int idx( long key, int bits, int tbits ) {
+      return (int)(hash(key)>>>(64-bits-tbits)) & ((1<<tbits)-1);
+    }
+    // Concatenate the partition results
+    long[] rows( long[][] rowss ) {
+      long len=0;
+      for( int m : _ns ) len += m;
+      if( len > Integer.MAX_VALUE-8 ) throw new IllegalArgumentException("Join result too large, "+len+" rows");
+      long[] rows = new long[(int)len];
+      int n=0;
+      for( int p=0; p<_ns.length; p++ ) {
+        System.arraycopy(rowss[p],0,rows,n,_ns[p]);
+        n += _ns[p];
+      }
+      return rows;
+    }
+  }
+
+  // Materialize the joined rows: output column j is _vecs[j] at the lhs rows,
+  // or the rhs rows if _rite[j]
+  private static class Fill extends MRTask<Fill> {
+    final Vec[] _vecs;
+    final boolean[] _rite;
+    final long[] _lrows, _rrows;
+    Fill( Vec[] vecs, boolean[] rite, long[] lrows, long[] rrows ) { _vecs = vecs; _rite = rite; _lrows = lrows; _rrows = rrows; }
+    @Override public void map( Chunk[] cs, NewChunk[] ncs ) {
+      // Row arrays are int-indexed; rows() caps the result size
+      int start = Math.toIntExact(cs[0].start()), len = cs[0]._len;
+      for( int j=0; j<ncs.length; j++ ) {
+        long[] rows = _rite[j] ? _rrows : _lrows;
+        Vec vec = _vecs[j];
+        Chunk c = null;
+        long lo=0, hi=0;        // Row range of chunk c
+        for( int i=0; i<len; i++ ) {
+          long r = rows[start+i];
+          if( r < lo || r >= hi ) { c = vec.chunkForRow(r); lo = c.start(); hi = lo+c._len; }
+          c.extractRows(ncs[j],(int)(r-lo));
+        }
+      }
+    }
+  }
+}
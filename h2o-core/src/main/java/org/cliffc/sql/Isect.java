@@ -0,0 +1,83 @@
+package org.cliffc.sql;
+
+/**
+ * Intersection-count kernels over sorted, unique int sets.
+ *
+ * Sets are slices a[alo,ahi) of sorted arrays, as in a CSR row, or bitmaps
+ * for dense sets.  count() picks the kernel by the sizes: a linear merge for
+ * similar sizes, galloping search of the larger set for skewed sizes.
+ * Bitmaps make a membership test one load, and two bitmaps AND a word at a
+ * time.
+ */
+public abstract class Isect {
+  // Above this size ratio, gallop the small set through the large one
+  static final int GALLOP_RATIO = 16;
+
+  /** Count of common elements of a[alo,ahi) and b[blo,bhi) */
+  public static int count( int[] a, int alo, int ahi, int[] b, int blo, int bhi ) {
+    int na = ahi-alo, nb = bhi-blo;
+    if( na==0 || nb==0 ) return 0;
+    if( na > nb ) return count(b,blo,bhi,a,alo,ahi); // a is the smaller
+    // Disjoint ranges
+    if( a[ahi-1] < b[blo] || b[bhi-1] < a[alo] ) return 0;
+    return nb > GALLOP_RATIO*na ? gallop(a,alo,ahi,b,blo,bhi) : merge(a,alo,ahi,b,blo,bhi);
+  }
+
+  /** Linear merge; O(na+nb) with no data-dependent branches in the loop */
+  public static int merge( int[] a, int alo, int ahi, int[] b, int blo, int bhi ) {
+    int i=alo, j=blo, n=0;
+    while( i<ahi && j<bhi ) {
+      int x = a[i], y = b[j];
+      n += x==y ? 1 : 0;
+      i += x<=y ? 1 : 0;
+      j += y<=x ? 1 : 0;
+    }
+    return n;
+  }
+
+  /** For each element of the small set a, gallop forward in b; O(na log(nb/na)) */
+  public static int gallop( int[] a, int alo, int ahi, int[] b, int blo, int bhi ) {
+    int j=blo, n=0;
+    for( int i=alo; i<ahi && j<bhi; i++ ) {
+      j = lower(b,j,bhi,a[i]);
+      if( j<bhi && b[j]==a[i] ) { n++; j++; }
+    }
+    return n;
+  }
+
+  /** Count of elements of a[alo,ahi) set in the bitmap */
+  public static int bits( int[] a, int alo, int ahi, long[] bits ) {
+    int n=0;
+    for( int i=alo; i<ahi; i++ )
+      n += (int)(bits[a[i]>>6]>>>a[i]) & 1;
+    return n;
+  }
+
+  /** Count of bits set in both bitmaps */
+  public static int and( long[] a, long[] b ) {
+    int n=0, len = Math.min(a.length,b.length);
+    for( int i=0; i<len; i++ )
+      n += Long.bitCount(a[i]&b[i]);
+    return n;
+  }
+
+  /** Bitmap of the elements of a[alo,ahi), which are all less than n */
+  public static long[] bitmap( int[] a, int alo, int ahi, int n ) {
+    long[] bits = new long[(n+63)>>6];
+    for( int i=alo; i<ahi; i++ )
+      bits[a[i]>>6] |= 1L<<a[i];
+    return bits;
+  }
+
+  /** True if x is in the bitmap */
+  public static boolean tst( long[] bits, int x ) { return ((bits[x>>6]>>>x)&1)!=0; }
+
+  // First index in a[lo,hi) with a[i] >= x; exponential then binary search
+  static int lower( int[] a, int lo, int hi, int x ) {
+    int k = lo, step = 1;
+    while( k < hi && a[k] < x ) { lo = k+1; k += step; step <<= 1; }
+    if( k > hi ) k = hi;
+    while( lo < k ) { int mid = (lo+k)>>>1; if( a[mid] < x ) lo = mid+1; else k = mid; }
+    return lo;
+  }
+}
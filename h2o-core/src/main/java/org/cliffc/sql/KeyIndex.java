@@ -0,0 +1,152 @@
+package org.cliffc.sql;
+
+import water.*;
+import water.fvec.*;
+
+/**
+ * Unique-key to row index for the build side of a join.  The probe loop asks
+ * for the row of a key, or -1 if none.
+ *
+ * The TPCH keys are mostly dense: suppkey, partkey and custkey are the row
+ * number plus 1, and the nation and region keys are small categoricals.  Dense
+ * keys index a direct array with no hashing.  ORDERS.orderkey is sorted but
+ * sparse (8 of every 32 keys used), and gets a compact rank mapping: the
+ * sorted keys, plus a directory of buckets of about one key each.  Anything
+ * else falls back to a hash table of key-min, as the hash table takes only
+ * keys from 0 to Long.MAX_VALUE-1; or, if even the span of keys is wider
+ * than that, to a binary search.
+ */
+public abstract class KeyIndex extends Iced<KeyIndex> {
+  // Keys spread no more than this times the row count are dense
+  static final int DENSE_SPREAD = 2;
+  // Sorted keys spread no more than this times the row count get a rank map
+  static final int RANK_SPREAD = 64;
+
+  /** Row for this key, or -1 */
+  public abstract int row( long key );
+  /** Count of keys */
+  public abstract int size();
+
+  /** Build an index of n unique keys and their rows.  The key Vec rollups pick
+   *  the flavor; sorted says the keys are in increasing order.  Throws
+   *  IllegalArgumentException on a duplicate key. */
+  public static KeyIndex make( Vec vec, long[] keys, int[] rows, int n, boolean sorted ) {
+    long nrows = vec.length();
+    if( vec.isInt() || vec.isCategorical() ) {
+      long min = (long)vec.min(), range = (long)vec.max()-min+1;
+      if( range <= DENSE_SPREAD*Math.max(nrows,1) && range < Integer.MAX_VALUE )
+        return new Dense(min,(int)range,keys,rows,n);
+      if( sorted && range <= RANK_SPREAD*nrows )
+        return new Rank(min,range,keys,rows,n);
+    }
+    long min=Long.MAX_VALUE, max=Long.MIN_VALUE;
+    for( int i=0; i<n; i++ ) { min = Math.min(min,keys[i]); max = Math.max(max,keys[i]); }
+    long span = max-min;        // Negative on overflow
+    if( n==0 || (0 <= span && span < Long.MAX_VALUE) )
+      return new Hash(min,max,keys,rows,n);
+    return new Search(keys,rows,n);
+  }
+
+  private static IllegalArgumentException dup( long key ) {
+    return new IllegalArgumentException("Join key "+key+" is not unique");
+  }
+
+  // Direct array indexed by key-min; -1 for missing
+  static class Dense extends KeyIndex {
+    final long _min;
+    final int[] _rows;
+    final int _size;
+    Dense( long min, int range, long[] keys, int[] rows, int n ) {
+      _min = min;
+      _rows = new int[range];
+      java.util.Arrays.fill(_rows,-1);
+      for( int i=0; i<n; i++ ) {
+        int k = (int)(keys[i]-min);
+        if( _rows[k] != -1 ) throw dup(keys[i]);
+        _rows[k] = rows[i];
+      }
+      _size = n;
+    }
+    @Override public int row( long key ) {
+      long k = key-_min;
+      return k < 0 || k >= _rows.length ? -1 : _rows[(int)k];
+    }
+    @Override public int size() { return _size; }
+  }
+
+  // Sorted keys with a bucket directory.  Bucket b holds keys with
+  // (key-min)>>shift == b, in _keys[_dir[b].._dir[b+1]).
+  static class Rank extends KeyIndex {
+    final long _min;
+    final int _shift;
+    final int[] _dir;
+    final long[] _keys;
+    final int[] _rows;
+    Rank( long min, long range, long[] keys, int[] rows, int n ) {
+      _min = min;
+      int shift=0;
+      while( (range>>shift) > Math.max(n,1) ) shift++; // About one key per bucket
+      _shift = shift;
+      _keys = java.util.Arrays.copyOf(keys,n);
+      _rows = java.util.Arrays.copyOf(rows,n);
+      int nbuckets = (int)((range-1)>>shift)+1;
+      _dir = new int[nbuckets+1];
+      for( int i=0; i<n; i++ ) {
+        if( i>0 && keys[i]<=keys[i-1] ) {
+          if( keys[i]==keys[i-1] ) throw dup(keys[i]);
+          throw new IllegalArgumentException("Keys not sorted");
+        }
+        _dir[(int)((keys[i]-min)>>shift)+1]++;
+      }
+      for( int b=0; b<nbuckets; b++ ) _dir[b+1] += _dir[b]; // Counts to starts
+    }
+    @Override public int row( long key ) {
+      long k = key-_min;
+      if( k < 0 ) return -1;
+      long b = k>>_shift;
+      if( b >= _dir.length-1 ) return -1;
+      for( int i=_dir[(int)b]; i<_dir[(int)b+1]; i++ )
+        if( _keys[i]==key ) return _rows[i];
+      return -1;
+    }
+    @Override public int size() { return _keys.length; }
+  }
+
+  // Hash table fallback, of key-min so negative keys fit
+  static class Hash extends KeyIndex {
+    final long _min, _max;
+    final Dist.LLMap _map;
+    Hash( long min, long max, long[] keys, int[] rows, int n ) {
+      _min = min;  _max = max;
+      _map = new Dist.LLMap(n);
+      for( int i=0; i<n; i++ )
+        if( !_map.putIfAbsent(keys[i]-min,rows[i]) )
+          throw dup(keys[i]);
+    }
+    @Override public int row( long key ) { return key < _min || key > _max ? -1 : (int)_map.get(key-_min,-1); }
+    @Override public int size() { return _map.size(); }
+  }
+
+  // Binary search over the sorted keys, for keys spanning nearly all longs
+  static class Search extends KeyIndex {
+    final long[] _keys;
+    final int[] _rows;
+    Search( long[] keys, int[] rows, int n ) {
+      Integer[] ord = new Integer[n];
+      for( int i=0; i<n; i++ ) ord[i] = i;
+      java.util.Arrays.sort(ord,(a,b) -> Long.compare(keys[a],keys[b]));
+      _keys = new long[n];
+      _rows = new int[n];
+      for( int i=0; i<n; i++ ) {
+        _keys[i] = keys[ord[i]];
+        _rows[i] = rows[ord[i]];
+        if( i>0 && _keys[i]==_keys[i-1] ) throw dup(_keys[i]);
+      }
+    }
+    @Override public int row( long key ) {
+      int i = java.util.Arrays.binarySearch(_keys,key);
+      return i < 0 ? -1 : _rows[i];
+    }
+    @Override public int size() { return _keys.length; }
+  }
+}
@@ -0,0 +1,366 @@
+package org.cliffc.sql;
+
+import water.*;
+import water.fvec.*;
+import water.rapids.Merge;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Leapfrog Triejoin: a worst-case optimal join for conjunctive queries over
+ * binary relations.
+ *
+ * A query is a list of atoms rel(v0,v1) over variables 0 to nvars-1, plus
+ * optional negated atoms and variable inequalities.  The engine picks a
+ * variable order, and sorts each atom's relation into a 2-level trie in that
+ * order.  Variables are bound one at a time, by leapfrogging (seeking to the
+ * least upper bound) across all the tries that mention the variable; only
+ * values present in every such trie are ever bound.  The first variable's
+ * values are split into blocks which run in parallel.
+ *
+ * <pre>
+ *   // Triangles: knows(a,b), knows(b,c), knows(a,c); knows is symmetric
+ *   Leapfrog.Rel knows = new Leapfrog.Rel(PKP,"person1id","person2id").sym();
+ *   long cnt = new Leapfrog(3).atom(knows,0,1).atom(knows,1,2).atom(knows,0,2).count();
+ * </pre>
+ */
+public class Leapfrog {
+  /** Per-binding weight, for sum aggregates.  vals are indexed by variable. */
+  public interface Weight { long weight( long[] vals ); }
+
+  // ---
+  /** A binary relation: the set union of one or more 2-column sources.
+   *  Duplicate pairs and pairs with NAs are dropped. */
+  public static class Rel {
+    final ArrayList<Vec[]> _srcs = new ArrayList<>();
+    final Trie[] _tries = new Trie[2]; // Built on demand, per column order
+    public Rel( Frame fr, String c0, String c1 ) { or(fr,c0,c1); }
+    /** Union in another source */
+    public Rel or( Frame fr, String c0, String c1 ) {
+      _srcs.add(new Vec[]{fr.vec(c0),fr.vec(c1)});
+      return this;
+    }
+    /** Union in the reverse of every source, making a symmetric relation */
+    public Rel sym() {
+      for( int i=0, n=_srcs.size(); i<n; i++ ) {
+        Vec[] vs = _srcs.get(i);
+        _srcs.add(new Vec[]{vs[1],vs[0]});
+      }
+      return this;
+    }
+    Trie trie( boolean flip ) {
+      int x = flip ? 1 : 0;
+      if( _tries[x]==null ) _tries[x] = Trie.make(_srcs,flip);
+      return _tries[x];
+    }
+  }
+
+  // ---
+  // Sorted, unique (x,y) pairs: a 2-level trie.  Level 0 is the runs of equal
+  // x, level 1 the y's in a run.
+  static class Trie {
+    final long[] _xs, _ys;
+    Trie( long[] xs, long[] ys ) { _xs = xs; _ys = ys; }
+
+    static Trie make( ArrayList<Vec[]> srcs, boolean flip ) {
+      long[] xs = new long[0], ys = new long[0];
+      for( Vec[] vs : srcs ) {
+        Frame fr = new Frame(new String[]{"x","y"}, flip ? new Vec[]{vs[1],vs[0]} : new Vec[]{vs[0],vs[1]});
+        Frame sfr = Merge.sort(fr,new int[]{0,1});
+        Extract ex = new Extract().doAll(sfr);
+        sfr.delete();
+        long[][] u = union(xs,ys,xs.length,concat(ex._xs),concat(ex._ys));
+        xs = u[0];  ys = u[1];
+      }
+      return new Trie(xs,ys);
+    }
+
+    // Merge sorted pair lists a (first an) and b, dropping duplicates
+    private static long[][] union( long[] axs, long[] ays, int an, long[] bxs, long[] bys ) {
+      int bn = bxs.length, i=0, j=0, n=0;
+      long[] xs = new long[an+bn], ys = new long[an+bn];
+      while( i<an || j<bn ) {
+        long x, y;
+        if( j==bn || (i<an && (axs[i]<bxs[j] || (axs[i]==bxs[j] && ays[i]<=bys[j]))) ) { x = axs[i]; y = ays[i++]; }
+        else { x = bxs[j]; y = bys[j++]; }
+        if( n==0 || xs[n-1]!=x || ys[n-1]!=y ) { xs[n] = x; ys[n++] = y; }
+      }
+      return new long[][]{Arrays.copyOf(xs,n),Arrays.copyOf(ys,n)};
+    }
+
+    private static long[] concat( long[][] cs ) {
+      int n=0;
+      for( long[] c : cs ) if( c!=null ) n += c.length;
+      long[] ls = new long[n];
+      n=0;
+      for( long[] c : cs )
+        if( c!=null ) { System.arraycopy(c,0,ls,n,c.length); n += c.length; }
+      return ls;
+    }
+
+    // True if (x,y) is in the relation
+    boolean has( long x, long y ) {
+      int lo = lower(_xs,0,_xs.length,x);
+      int hi = upper(_xs,lo,_xs.length,x);
+      int j = lower(_ys,lo,hi,y);
+      return j<hi && _ys[j]==y;
+    }
+  }
+
+  // Pull the sorted pairs out of a Frame, per chunk, dropping NAs.  Local
+  // maps share the arrays.
+  private static class Extract extends MRTask<Extract> {
+    long[][] _xs, _ys;
+    @Override protected void setupLocal() {
+      int n = _fr.anyVec().nChunks();
+      _xs = new long[n][];
+      _ys = new long[n][];
+    }
+    @Override public void map( Chunk cx, Chunk cy ) {
+      int len = cx._len, n=0;
+      long[] xs = cx.getLongs(new long[len],0,len,Batch.NA);
+      long[] ys = cy.getLongs(new long[len],0,len,Batch.NA);
+      for( int i=0; i<len; i++ ) // Long.MIN_VALUE is a legal key; only isNA drops
+        if( !(xs[i]==Batch.NA && cx.isNA(i)) && !(ys[i]==Batch.NA && cy.isNA(i)) ) { xs[n] = xs[i]; ys[n++] = ys[i]; }
+      _xs[cx.cidx()] = Arrays.copyOf(xs,n);
+      _ys[cx.cidx()] = Arrays.copyOf(ys,n);
+    }
+    @Override public void reduce( Extract ex ) {
+      if( _xs == ex._xs ) return;
+      for( int i=0; i<_xs.length; i++ )
+        if( ex._xs[i] != null ) { _xs[i] = ex._xs[i]; _ys[i] = ex._ys[i]; }
+    }
+  }
+
+  // First index in a[lo,hi) with a[i] >= k; galloping from lo, since seeks
+  // are mostly short hops forward.
+  static int lower( long[] a, int lo, int hi, long k ) {
+    int x = lo, step = 1;
+    while( x < hi && a[x] < k ) { lo = x+1; x += step; step <<= 1; }
+    if( x > hi ) x = hi;
+    while( lo < x ) { int mid = (lo+x)>>>1; if( a[mid] < k ) lo = mid+1; else x = mid; }
+    return lo;
+  }
+  // First index in a[lo,hi) with a[i] > k
+  static int upper( long[] a, int lo, int hi, long k ) {
+    int x = lo, step = 1;
+    while( x < hi && a[x] <= k ) { lo = x+1; x += step; step <<= 1; }
+    if( x > hi ) x = hi;
+    while( lo < x ) { int mid = (lo+x)>>>1; if( a[mid] <= k ) lo = mid+1; else x = mid; }
+    return lo;
+  }
+
+  // Trie iterator.  open() descends a level: to all the x's, or to the y's
+  // of the current x.  up() returns to the prior level and position.
+  private static final class Iter {
+    final long[] _xs, _ys;
+    int _lvl=-1, _pos, _hi, _pos0, _hi0;
+    Iter( Trie t ) { _xs = t._xs; _ys = t._ys; }
+    void open() {
+      if( _lvl == -1 ) { _lvl=0; _pos=0; _hi=_xs.length; }
+      else { _lvl=1; _pos0=_pos; _hi0=_hi; _hi=upper(_xs,_pos,_hi,_xs[_pos]); }
+    }
+    void up() { if( _lvl==1 ) { _pos=_pos0; _hi=_hi0; } _lvl--; }
+    long key() { return _lvl==0 ? _xs[_pos] : _ys[_pos]; }
+    boolean atEnd() { return _pos >= _hi; }
+    void next() { _pos = _lvl==0 ? upper(_xs,_pos,_hi,_xs[_pos]) : _pos+1; }
+    void seek( long k ) { _pos = lower(_lvl==0 ? _xs : _ys,_pos,_hi,k); }
+  }
+
+  // ---
+  private static class Atom {
+    final Rel _rel;
+    final int _v0, _v1;
+    Trie _trie;                 // Sorted in variable order
+    boolean _flip;              // Trie is (v1,v0)
+    int _d0, _d1;               // Depths of the earlier, later variable
+    Atom( Rel rel, int v0, int v1 ) {
+      if( v0==v1 || v0<0 || v1<0 ) throw new IllegalArgumentException("Bad atom variables "+v0+","+v1);
+      _rel = rel; _v0 = v0; _v1 = v1;
+    }
+  }
+
+  final int _nvars;
+  final ArrayList<Atom> _atoms = new ArrayList<>(), _nots = new ArrayList<>();
+  final ArrayList<int[]> _neqs = new ArrayList<>();
+  int[] _order;                 // Variable order; depth to variable
+
+  public Leapfrog( int nvars ) { _nvars = nvars; }
+  /** rel(v0,v1) */
+  public Leapfrog atom( Rel rel, int v0, int v1 ) { _atoms.add(new Atom(rel,v0,v1)); return this; }
+  /** not(rel(v0,v1)) */
+  public Leapfrog not( Rel rel, int v0, int v1 ) { _nots.add(new Atom(rel,v0,v1)); return this; }
+  /** v0 != v1 */
+  public Leapfrog neq( int v0, int v1 ) { _neqs.add(new int[]{v0,v1}); return this; }
+  /** Force a variable order, instead of the default heuristic */
+  public Leapfrog order( int... vars ) { _order = vars; return this; }
+
+  /** Count of bindings */
+  public long count() { return sum(null); }
+  /** Sum of weights over bindings */
+  public long sum( Weight w ) {
+    int[] depth = plan();
+    // Sort each relation in variable order; tries are shared by atoms
+    // with the same relation and order
+    for( Atom a : _atoms ) trie(a,depth);
+    for( Atom a : _nots  ) trie(a,depth);
+    // Split the first variable's keys into blocks, on key boundaries
+    Trie t0 = null;
+    for( Atom a : _atoms ) if( a._d0==0 ) { t0 = a._trie; break; }
+    int n = t0._xs.length;
+    if( n==0 ) return 0;
+    int nblk = Math.min(n,H2O.NUMCPUS*8);
+    long[] splits = new long[nblk+1];
+    for( int b=0; b<nblk; b++ ) splits[b] = t0._xs[(int)((long)b*n/nblk)];
+    splits[nblk] = t0._xs[n-1];
+    Search s = new Search(this,w,splits);
+    H2O.submitTask(new LocalMR(s,nblk)).join();
+    long sum=0;
+    for( long x : s._sums ) sum += x;
+    return sum;
+  }
+
+  // Pick the variable order, if not forced, and set atom depths.  Greedy:
+  // start with the variable in the most atoms, then repeatedly take the
+  // variable sharing the most atoms with those already picked.
+  private int[] plan() {
+    int[] cnts = new int[_nvars];
+    for( Atom a : _atoms ) {
+      if( a._v0>=_nvars || a._v1>=_nvars ) throw new IllegalArgumentException("Atom variable out of range");
+      cnts[a._v0]++;  cnts[a._v1]++;
+    }
+    for( int v=0; v<_nvars; v++ )
+      if( cnts[v]==0 ) throw new IllegalArgumentException("Variable "+v+" is in no positive atom");
+    if( _order==null ) {
+      _order = new int[_nvars];
+      boolean[] done = new boolean[_nvars];
+      for( int d=0; d<_nvars; d++ ) {
+        int best=-1, bestc=-1, bestn=-1;
+        for( int v=0; v<_nvars; v++ ) {
+          if( done[v] ) continue;
+          int c=0;
+          for( Atom a : _atoms )
+            if( (a._v0==v && done[a._v1]) || (a._v1==v && done[a._v0]) ) c++;
+          if( c>bestc || (c==bestc && cnts[v]>bestn) ) { best=v; bestc=c; bestn=cnts[v]; }
+        }
+        done[best] = true;
+        _order[d] = best;
+      }
+    }
+    if( _order.length != _nvars ) throw new IllegalArgumentException("Order must list all "+_nvars+" variables");
+    int[] depth = new int[_nvars];
+    Arrays.fill(depth,-1);
+    for( int d=0; d<_nvars; d++ ) {
+      if( depth[_order[d]] != -1 ) throw new IllegalArgumentException("Variable "+_order[d]+" is ordered twice");
+      depth[_order[d]] = d;
+    }
+    for( int[] ne : _neqs )
+      if( ne[0]>=_nvars || ne[1]>=_nvars ) throw new IllegalArgumentException("Inequality variable out of range");
+    for( Atom a : _nots )
+      if( a._v0>=_nvars || a._v1>=_nvars ) throw new IllegalArgumentException("Negated atom variable out of range");
+    return depth;
+  }
+
+  private static void trie( Atom a, int[] depth ) {
+    a._flip = depth[a._v0] > depth[a._v1];
+    a._trie = a._rel.trie(a._flip);
+    a._d0 = Math.min(depth[a._v0],depth[a._v1]);
+    a._d1 = Math.max(depth[a._v0],depth[a._v1]);
+  }
+
+  // Search blocks of the first variable's keys.  Block b binds the first
+  // variable in [splits[b],splits[b+1]), and the last block includes its
+  // upper split.  Each block writes its own slot of the shared sums.
+  private static class Search extends MrFun<Search> {
+    final transient Leapfrog _q;
+    final transient Weight _w;
+    final long[] _splits, _sums;
+    Search( Leapfrog q, Weight w, long[] splits ) { _q = q; _w = w; _splits = splits; _sums = new long[splits.length-1]; }
+    @Override protected void map( int b ) {
+      boolean last = b==_sums.length-1;
+      _sums[b] = new Run(_q,_w,_splits[b],_splits[b+1],last).join(0);
+    }
+  }
+
+  // One block's search state: its own iterators and bindings
+  private static class Run {
+    final Leapfrog _q;
+    final Weight _w;
+    final long _klo, _khi;
+    final boolean _incl;        // Include _khi
+    final Iter[][] _its;        // Iterators opening at each depth
+    final Atom[][] _nots;       // Negated atoms checked at each depth
+    final int[][][] _neqs;      // Inequalities checked at each depth
+    final long[] _vals;         // Bindings by variable
+    Run( Leapfrog q, Weight w, long klo, long khi, boolean incl ) {
+      _q = q; _w = w; _klo = klo; _khi = khi; _incl = incl;
+      int n = q._nvars;
+      _its = new Iter[n][];
+      _nots = new Atom[n][];
+      _neqs = new int[n][][];
+      _vals = new long[n];
+      ArrayList<ArrayList<Iter>> its = new ArrayList<>();
+      for( int d=0; d<n; d++ ) its.add(new ArrayList<>());
+      for( Atom a : q._atoms ) {
+        Iter it = new Iter(a._trie); // Shared by both of the atom's levels
+        its.get(a._d0).add(it);
+        its.get(a._d1).add(it);
+      }
+      int[] depth = new int[n];
+      for( int d=0; d<n; d++ ) depth[q._order[d]] = d;
+      for( int d=0; d<n; d++ ) {
+        _its[d] = its.get(d).toArray(new Iter[0]);
+        ArrayList<Atom> nots = new ArrayList<>();
+        for( Atom a : q._nots ) if( a._d1==d ) nots.add(a);
+        _nots[d] = nots.toArray(new Atom[0]);
+        ArrayList<int[]> neqs = new ArrayList<>();
+        for( int[] ne : q._neqs ) if( Math.max(depth[ne[0]],depth[ne[1]])==d ) neqs.add(ne);
+        _neqs[d] = neqs.toArray(new int[0][]);
+      }
+    }
+
+    // Bind the variable at depth d, and all deeper
+    long join( int d ) {
+      if( d==_q._nvars ) return _w==null ? 1 : _w.weight(_vals);
+      Iter[] its = _its[d];
+      int n = its.length;
+      for( Iter it : its ) it.open();
+      if( d==0 ) for( Iter it : its ) it.seek(_klo);
+      long sum=0;
+      if( !atEnd(its) ) {
+        Arrays.sort(its,(a,b) -> Long.compare(a.key(),b.key()));
+        long max = its[n-1].key();
+        int p=0, v = _q._order[d];
+        while( true ) {
+          Iter it = its[p];
+          long x = it.key();
+          if( x==max ) {        // Least key equals the max: all agree
+            if( d==0 && (_incl ? x > _khi : x >= _khi) ) break;
+            _vals[v] = x;
+            if( check(d) ) sum += join(d+1);
+            it.next();
+          } else it.seek(max);
+          if( it.atEnd() ) break;
+          max = it.key();
+          p = p+1==n ? 0 : p+1;
+        }
+      }
+      for( Iter it : its ) it.up();
+      return sum;
+    }
+    private static boolean atEnd( Iter[] its ) {
+      for( Iter it : its ) if( it.atEnd() ) return true;
+      return false;
+    }
+    // Negated atoms and inequalities whose variables are now all bound
+    private boolean check( int d ) {
+      for( int[] ne : _neqs[d] )
+        if( _vals[ne[0]]==_vals[ne[1]] ) return false;
+      for( Atom a : _nots[d] ) {
+        long x = _vals[a._flip ? a._v1 : a._v0], y = _vals[a._flip ? a._v0 : a._v1];
+        if( a._trie.has(x,y) ) return false;
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,415 @@
+package org.cliffc.sql;
+
+import water.nbhm.ConcurrentAutoTable;
+import water.util.SB;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import static water.nbhm.UtilUnsafe.UNSAFE;
+import static water.nbhm.UtilUnsafe.fieldOffset;
+
+/**
+ * Lock-free open-addressing hash maps from longs to primitive longs or
+ * doubles, with an atomic add-to-value.  Loosely based on SparseBitSetInt, but
+ * with a parallel array of values.  No per-entry allocation: no boxed Integer,
+ * no Row object, no NBHM key/value object pairs; 16 bytes per slot.
+ *
+ * Keys are non-negative, and Long.MAX_VALUE is reserved.  Key slots are
+ * claimed by CAS and never reused.  Values are raw longs and are updated by
+ * CAS.  A raw value of 0 is "no value"; long values are stored as v+1, and
+ * double values as their raw bits (so an absent sum is 0.0).  One raw value,
+ * MOVED, is reserved for resizing.
+ *
+ * Resizing copies slot-by-slot, with all threads helping.  A copier claims a
+ * slot by complementing the key, freezes the value by CAS'ing it to MOVED,
+ * puts the value in the new table and then kills the slot with ~TOMBSTONE.
+ * Updates racing with a copy see the MOVED value and retry in the new table,
+ * after waiting the few instructions for the claimed slot's copy to land.
+ *
+ * Subclasses Longs and Doubles give the typed views.
+ *
+ * @author Cliff Click
+ */
+public abstract class LongMap {
+
+  private static final int REPROBE_LIMIT=8; // Too many reprobes then force a table-resize
+
+  // --- Bits to allow Unsafe access to arrays
+  private static final int _Lbase  = UNSAFE.arrayBaseOffset(long[].class);
+  private static final int _Lscale = UNSAFE.arrayIndexScale(long[].class);
+  private static long rawIndex(final long[] ary, final int idx) {
+    assert idx >= 0 && idx < ary.length;
+    return _Lbase + ((long)idx * _Lscale);
+  }
+
+  // --- Bits to allow Unsafe CAS'ing of the CHM field
+  private static final long _chm_offset = fieldOffset(LongMap.class, "_chm");
+  private boolean CAS_chm( final CHM old, final CHM nnn ) {
+    return UNSAFE.compareAndSwapObject(this, _chm_offset, old, nnn );
+  }
+
+  // --- Sentinels -------------------------
+  private static final long NO_KEY = 0;
+  private static final long TOMBSTONE = Long.MAX_VALUE;
+  private static final long NO_VAL = 0;
+  // A signalling NaN payload, never produced by arithmetic
+  static final long MOVED = 0x7FF0DEADBEEF0001L;
+
+  // Raw value update ops
+  static final int PUT=0, PUT_IF_ABSENT=1, ADD_LONG=2, ADD_DOUBLE=3;
+  private static long apply( int op, long old, long x ) {
+    switch( op ) {
+    case PUT:           return x;
+    case PUT_IF_ABSENT: return old==NO_VAL ? x : old;
+    case ADD_LONG:      return (old==NO_VAL ? 1 : old)+x; // Longs are stored +1
+    case ADD_DOUBLE:    return Double.doubleToRawLongBits(Double.longBitsToDouble(old)+Double.longBitsToDouble(x));
+    default: throw new RuntimeException("bad op "+op);
+    }
+  }
+
+  // --- The Hash Table --------------------
+  private transient CHM _chm;
+  // Raw value for Key 0, which is also the NO_KEY marker in the table
+  private final transient AtomicLong _zero = new AtomicLong();
+  // Time since last resize
+  private transient long _last_resize_milli;
+
+  // --- Minimum table size ----------------
+  private static final int MIN_SIZE_LOG=3;
+  private static int reprobe_limit( int len ) { return REPROBE_LIMIT + (len>>5); }
+
+  LongMap( int initial_sz ) {
+    if( initial_sz < 0 ) throw new IllegalArgumentException("initial_sz argument must be >= 0");
+    int i;                      // Convert to next largest power-of-2, with 50% padding
+    for( i=MIN_SIZE_LOG; (1<<i) < initial_sz+(initial_sz>>1); i++ ) {/*empty*/}
+    if( i > 30 ) i = 30;
+    _chm = new CHM(this,new ConcurrentAutoTable(),i);
+    _last_resize_milli = System.currentTimeMillis();
+  }
+
+  /** Count of keys; an estimate under concurrent updates. */
+  public int size() { return (int)(_chm._size.estimate_get() + (_zero.get()==NO_VAL ? 0 : 1)); }
+
+  // Raw get; NO_VAL if missing
+  final long getRaw( long key ) {
+    check(key);
+    return key==NO_KEY ? _zero.get() : _chm.get(key);
+  }
+  // Raw update; returns the old raw value
+  final long update( long key, long x, int op ) {
+    check(key);
+    if( key==NO_KEY ) {
+      while( true ) {
+        long old = _zero.get(), nv = apply(op,old,x);
+        if( old==nv || _zero.compareAndSet(old,nv) ) return old;
+      }
+    }
+    return _chm.update(key,x,op,false);
+  }
+  private static void check( long key ) {
+    if( key < 0 || key==TOMBSTONE ) throw new IllegalArgumentException("Key out of range: "+key);
+  }
+
+  /** All keys with values; a snapshot, weakly consistent with concurrent updates. */
+  public long[] keys() {
+    CHM chm = top();
+    int n = _zero.get()==NO_VAL ? 0 : 1;
+    for( int i=0; i<chm._keys.length; i++ )
+      if( chm._keys[i] > 0 && chm._vals[i]!=NO_VAL ) n++;
+    long[] ks = new long[n];
+    int j=0;
+    if( _zero.get()!=NO_VAL ) ks[j++] = 0;
+    for( int i=0; i<chm._keys.length && j<n; i++ )
+      if( chm._keys[i] > 0 && chm._vals[i]!=NO_VAL ) ks[j++] = chm._keys[i];
+    return j==n ? ks : java.util.Arrays.copyOf(ks,j);
+  }
+
+  // Top-level table with no copy in progress
+  private CHM top() {
+    while( true ) {
+      CHM topchm = _chm;
+      if( topchm._newchm == null ) return topchm;
+      topchm.help_copy_impl(true);
+    }
+  }
+
+  // Help along an existing resize operation
+  private void help_copy( ) {
+    CHM topchm = _chm;
+    if( topchm._newchm == null ) return; // No copy in-progress
+    topchm.help_copy_impl(false);
+  }
+
+  // --- hash ----------------------------------------------------------------
+  // Helper function to spread lousy hashCodes.
+  private static int hash(long h) {
+    h ^= (h>>>32);
+    h ^= (h>>>20) ^ (h>>>12);
+    h ^= (h>>> 7) ^ (h>>> 4);
+    h += h<<7; // smear low bits up high, for hashcodes that only differ by 1
+    return (int)h;
+  }
+
+  @Override public String toString() { return new SB().p('#').p(size()).toString(); }
+
+  /** Map of long keys to long values.  Values -1 and MOVED-1 are reserved. */
+  public static class Longs extends LongMap {
+    public Longs( ) { this(0); }
+    public Longs( int initial_sz ) { super(initial_sz); }
+    /** Value, or missing if no value */
+    public long get( long key, long missing ) { long raw = getRaw(key); return raw==NO_VAL ? missing : raw-1; }
+    public boolean containsKey( long key ) { return getRaw(key)!=NO_VAL; }
+    public void put( long key, long val ) { update(key,enc(val),PUT); }
+    /** Returns true if the key was absent and val was inserted */
+    public boolean putIfAbsent( long key, long val ) { return update(key,enc(val),PUT_IF_ABSENT)==NO_VAL; }
+    /** Atomic add; an absent value is 0.  Returns the new value. */
+    public long add( long key, long d ) { long old = update(key,d,ADD_LONG); return (old==NO_VAL ? 0 : old-1)+d; }
+    private static long enc( long val ) {
+      if( val+1==MOVED || val+1==NO_VAL ) throw new IllegalArgumentException("Reserved value "+val);
+      return val+1;
+    }
+  }
+
+  /** Map of long keys to double values.  An absent value reads as 0.0 */
+  public static class Doubles extends LongMap {
+    public Doubles( ) { this(0); }
+    public Doubles( int initial_sz ) { super(initial_sz); }
+    public double get( long key ) { return Double.longBitsToDouble(getRaw(key)); }
+    public boolean containsKey( long key ) { return getRaw(key)!=NO_VAL; }
+    public void put( long key, double val ) { update(key,Double.doubleToRawLongBits(val),PUT); }
+    /** Atomic add.  Returns the new value. */
+    public double add( long key, double d ) {
+      long old = update(key,Double.doubleToRawLongBits(d),ADD_DOUBLE);
+      return Double.longBitsToDouble(old)+d;
+    }
+  }
+
+  // --- CHM -----------------------------------------------------------------
+  // The control structure for the LongMap
+  private static final class CHM {
+    // Back-pointer to top-level structure
+    final LongMap _map;
+
+    // Keys in the table.  0 is free.  +key is set.  ~key is claimed for a
+    // table copy; ~TOMBSTONE is dead and copied.
+    final long[] _keys;
+    // Raw values, parallel to keys.  NO_VAL is not-yet-set; MOVED is frozen
+    // for a table copy.
+    final long[] _vals;
+    private boolean CAS_key( int idx, long old, long key ) {
+      return UNSAFE.compareAndSwapLong( _keys, rawIndex(_keys, idx), old, key );
+    }
+    private boolean CAS_val( int idx, long old, long val ) {
+      return UNSAFE.compareAndSwapLong( _vals, rawIndex(_vals, idx), old, val );
+    }
+    private long val( int idx ) { return UNSAFE.getLongVolatile(_vals, rawIndex(_vals, idx)); }
+
+    // Size in active Keys, shared by all the tables of one map
+    final ConcurrentAutoTable _size;
+
+    // The 'next' CHM - created during a resize operation.  It monotonically
+    // transits from null to set (once).
+    volatile CHM _newchm;
+    private static final AtomicReferenceFieldUpdater<CHM,CHM> _newchmUpdater =
+      AtomicReferenceFieldUpdater.newUpdater(CHM.class,CHM.class, "_newchm");
+    boolean CAS_newchm( CHM newchm ) { return _newchmUpdater.compareAndSet(this,null,newchm); }
+
+    CHM( final LongMap map, ConcurrentAutoTable size, final int logsize ) {
+      _map = map;
+      _size = size;
+      _keys = new long[1<<logsize];
+      _vals = new long[1<<logsize];
+    }
+
+    // --- get ----------------------------------------------------------
+    private long get( final long key ) {
+      final int len = _keys.length;
+      int idx = (hash(key) & (len-1)); // First key hash
+      int reprobe_cnt=0;
+      while( true ) {
+        final long K = _keys[idx];
+        if( K == NO_KEY ) return NO_VAL; // A clear miss
+        if( K == key ) {                 // A clear hit
+          long v = val(idx);
+          return v==MOVED ? wait_copy(idx).get(key) : v;
+        }
+        if( K ==~key ) return wait_copy(idx).get(key); // Copy in progress
+        if( K < 0 ) {           // Copy in progress; our key may be copied already
+          long v = copy_slot_and_check(idx).get(key);
+          if( v != NO_VAL ) return v;
+          // Not in the new table yet, so not copied yet: keep probing here
+        }
+        // Other keys: reprobe.  get and update must have the same key lookup
+        // logic!
+        if( ++reprobe_cnt >= reprobe_limit(len) ) // too many probes
+          return _newchm == null ? NO_VAL : _newchm.get(key);
+        idx = (idx+1)&(len-1);    // Reprobe by 1!
+      }
+    }
+
+    // --- update -------------------------------------------------------
+    // Returns the old raw value.  Table copies do not bump the size.
+    private long update( final long key, final long x, final int op, final boolean is_copy ) {
+      final int len = _keys.length;
+      int idx = (hash(key) & (len-1)); // The first key
+      int reprobe_cnt=0;
+      while( true ) {               // Spin till we get a Key slot
+        final long K = _keys[idx];  // Get current key
+        if( K == NO_KEY ) {         // Slot is free?
+          if( _newchm != null ) {   // Copy in progress; no new keys in this table
+            copy_slot_and_check(idx);
+            continue;               // Slot is now dead (or was just claimed)
+          }
+          if( !CAS_key(idx, NO_KEY, key) ) continue; // CAS to claim the key-slot failed.
+          if( !is_copy ) _size.add(1); // Raise cardinality
+        } else if( K ==~key ) {     // Our key is mid-copy
+          return wait_copy(idx).update(key,x,op,is_copy);
+        } else if( K != key ) {     // Miss on wrong key, must reprobe
+          if( ++reprobe_cnt >= reprobe_limit(len) ) {
+            // We simply must have a new table to do an update.
+            final CHM newchm = resize();
+            if( !is_copy ) _map.help_copy(); // help along an existing copy
+            return newchm.update(key,x,op,is_copy);
+          }
+          idx = (idx+1)&(len-1); // Reprobe!
+          continue;
+        }
+        // Have our key; CAS in the new value
+        while( true ) {
+          long v = val(idx);
+          if( v == MOVED ) return wait_copy(idx).update(key,x,op,is_copy);
+          long nv = apply(op,v,x);
+          if( nv==v || CAS_val(idx,v,nv) ) return v;
+        }
+      }
+    }
+
+    // --- resize ------------------------------------------------------------
+    // Resizing after too many probes.  Callers will 'help_copy' any
+    // in-progress copy.
+    private CHM resize() {
+      CHM newchm = _newchm;     // VOLATILE READ
+      if( newchm != null ) return newchm; // Resize already in progress
+
+      int oldlen = _keys.length;
+      long sz = _size.estimate_get();
+      int newsz = oldlen;
+      if( sz >= (oldlen>>2) ) { // If we are >25% full of keys then...
+        newsz = oldlen<<1;      // Double size
+        if( sz >= (oldlen>>1) ) // If we are >50% full of keys then...
+          newsz = oldlen<<2;    // Double double size
+      }
+      // Last resize was very recent?  Then double again despite having few
+      // live keys; too many reprobes from clustered keys.
+      long tm = System.currentTimeMillis();
+      if( newsz <= oldlen && tm <= _map._last_resize_milli+10000 )
+        newsz = oldlen<<1;
+      if( newsz < oldlen ) newsz = oldlen;
+      int log2;
+      for( log2=MIN_SIZE_LOG; (1<<log2) < newsz; log2++ ) ; // Compute log2 of size
+      if( log2 > 30 ) {
+        if( oldlen == 1<<30 ) throw new RuntimeException("Table is full.");
+        log2 = 30;
+      }
+
+      // Another check before the slow allocation
+      if( _newchm != null ) return _newchm;
+      newchm = new CHM(_map,_size,log2);
+      // The new table must be CAS'd in so only 1 winner amongst duplicate
+      // racing resizing threads.  Extra CHM's will be GC'd.
+      return CAS_newchm(newchm) ? newchm : _newchm;
+    }
+
+    // The next part of the table to copy, and work-done reporting; see
+    // SparseBitSetInt.
+    volatile long _copyIdx = 0;
+    static private final AtomicLongFieldUpdater<CHM> _copyIdxUpdater =
+      AtomicLongFieldUpdater.newUpdater(CHM.class, "_copyIdx");
+    volatile long _copyDone= 0;
+    static private final AtomicLongFieldUpdater<CHM> _copyDoneUpdater =
+      AtomicLongFieldUpdater.newUpdater(CHM.class, "_copyDone");
+
+    // --- help_copy_impl ----------------------------------------------------
+    private void help_copy_impl( final boolean copy_all ) {
+      assert _newchm != null;   // Already checked by caller
+      int oldlen = _keys.length; // Total amount to copy
+      final int MIN_COPY_WORK = Math.min(oldlen,1024); // Limit per-thread work
+      int panic_start = -1;
+      int copyidx=-9999;            // Fool javac to think it's initialized
+      while( _copyDone < oldlen ) { // Still needing to copy?
+        if( panic_start == -1 ) { // No panic?
+          copyidx = (int)_copyIdx;
+          while( copyidx < (oldlen<<1) && // 'panic' check
+                 !_copyIdxUpdater.compareAndSet(this,copyidx,copyidx+MIN_COPY_WORK) )
+            copyidx = (int)_copyIdx;     // Re-read
+          if( !(copyidx < (oldlen<<1)) ) // Panic!
+            panic_start = copyidx;       // Record where we started to panic-copy
+        }
+        int workdone = 0;
+        for( int i=0; i<MIN_COPY_WORK; i++ )
+          if( copy_slot((copyidx+i)&(oldlen-1)) ) // Made an oldtable slot go dead?
+            workdone++;         // Yes!
+        if( workdone > 0 )      // Report work-done occasionally
+          copy_check_and_promote( workdone );// See if we can promote
+        copyidx += MIN_COPY_WORK;
+        if( !copy_all && panic_start == -1 ) // No panic?
+          return;               // Then done copying after doing MIN_COPY_WORK
+      }
+      copy_check_and_promote( 0 ); // See if we can promote
+    }
+
+    // Wait for a claimed slot's copy to land, then return the new table
+    private CHM wait_copy( int idx ) {
+      while( UNSAFE.getLongVolatile(_keys, rawIndex(_keys, idx)) != ~TOMBSTONE ) /*spin*/;
+      _map.help_copy();
+      return _newchm;
+    }
+
+    private CHM copy_slot_and_check( int idx ) {
+      assert _newchm != null;   // Only during a copy
+      if( copy_slot(idx) )      // Copy the desired slot
+        copy_check_and_promote(1); // Record the slot copied
+      return _newchm;
+    }
+
+    // --- copy_check_and_promote --------------------------------------------
+    private void copy_check_and_promote( int workdone ) {
+      int oldlen = _keys.length;
+      long copyDone = _copyDone;
+      long nowDone = copyDone+workdone;
+      assert nowDone <= oldlen;
+      if( workdone > 0 ) {
+        while( !_copyDoneUpdater.compareAndSet(this,copyDone,nowDone) ) {
+          copyDone = _copyDone;   // Reload, retry
+          nowDone = copyDone+workdone;
+          assert nowDone <= oldlen;
+        }
+      }
+      // Promote a fully copied top-level table
+      if( nowDone == oldlen && _map._chm == this && _map.CAS_chm(this,_newchm) )
+        _map._last_resize_milli = System.currentTimeMillis();
+    }
+
+    // --- copy_slot ---------------------------------------------------------
+    // Copy one slot to the new table.  Only the thread claiming the slot
+    // copies it, and only it reports the work done.
+    private boolean copy_slot( int idx ) {
+      long key;
+      while( true ) {
+        key = _keys[idx];
+        if( key < 0 ) return false; // Claimed or dead already
+        if( CAS_key(idx, key, key==NO_KEY ? ~TOMBSTONE : ~key) ) break;
+      }
+      if( key == NO_KEY ) return true; // Killed an empty slot, no copy
+      // Freeze the value; updates now go to the new table
+      long v;
+      while( !CAS_val(idx, v=val(idx), MOVED) ) ;
+      if( v != NO_VAL ) _newchm.update(key,v,PUT,true);
+      else _size.add(-1);       // Claimed but never set; the claimer re-inserts
+      UNSAFE.putLongVolatile(_keys, rawIndex(_keys, idx), ~TOMBSTONE);
+      return true;
+    }
+  } // End of CHM
+}  // End LongMap class
@@ -0,0 +1,334 @@
+package org.cliffc.sql;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Recursive-descent parser for a TPCH-style subset of SQL:
+ *
+ * <pre>
+ *   select expr [[as] alias], ...
+ *   from table [alias], ...
+ *   [where cond]
+ *   [group by col, ...]
+ *   [order by expr|alias [asc|desc], ...]
+ *   [limit N] [;]
+ * </pre>
+ *
+ * Conditions are comparisons, [not] between, [not] like, [not] in a list of
+ * constants, and, or, not and parens.  Expressions are + - * /, numbers,
+ * strings, columns, the aggregates sum/avg/count/min/max, searched
+ * {@code case when .. then .. else .. end}, {@code extract(year|month|day from
+ * ..)}, and UTC date literals with optional interval arithmetic:
+ * {@code date '1998-12-01' - interval '90' day (3)}.  Keywords and names are
+ * case-insensitive; strings keep their case.
+ *
+ * Sub-queries, including EXISTS, IN (select ..) and derived tables, are not
+ * supported and throw IllegalArgumentException.  The Plan is a single fused
+ * scan of one table with key lookups into the others; a sub-query needs its
+ * own pass (a semi-join for EXISTS, a group-by joined back for TPCH2's
+ * correlated min) before the scan, which is a different planner.  TPCH2 and
+ * TPCH4 stay hand-written; TPCH7 and TPCH8 run with their derived tables
+ * flattened into the outer query, see SQL.QUERYS.
+ */
+public class Parser {
+
+  // The parsed query
+  public static class Select {
+    final ArrayList<Expr  > _items = new ArrayList<>(); // Select list
+    final ArrayList<String> _names = new ArrayList<>(); // Select list names
+    final ArrayList<String> _tabs  = new ArrayList<>(); // FROM tables
+    final ArrayList<String> _aliases=new ArrayList<>(); // FROM aliases
+    Expr _where;                                        // Null if no where
+    final ArrayList<Expr> _grps    = new ArrayList<>(); // Group by
+    final ArrayList<Expr> _orders  = new ArrayList<>(); // Order by
+    final ArrayList<Boolean> _descs= new ArrayList<>(); // Order by descending
+    long _limit = -1;                                   // -1 is no limit
+  }
+
+  private final String _str;    // Original text
+  private final char[] _buf;    // Same text, as chars
+  private int _x;               // Parse point
+
+  private Parser( String str ) { _str = str; _buf = str.toCharArray(); }
+
+  public static Select parse( String sql ) { return new Parser(sql).select(); }
+
+  private Select select() {
+    Select sel = new Select();
+    require("select");
+    do {
+      Expr e = expr();
+      String name = peek("as") ? id() : (isId() && !isKeyword() ? id() : e.toString());
+      sel._items.add(e);
+      sel._names.add(name);
+    } while( peek(',') );
+    require("from");
+    do {
+      if( peek('(') ) throw err("Sub-queries not supported");
+      String tab = id();
+      sel._tabs.add(tab);
+      sel._aliases.add(peek("as") || (isId() && !isKeyword()) ? id() : tab);
+    } while( peek(',') );
+    if( peek("where") ) sel._where = cond();
+    if( peek("group") ) {
+      require("by");
+      do sel._grps.add(expr()); while( peek(',') );
+    }
+    if( peek("order") ) {
+      require("by");
+      do {
+        sel._orders.add(expr());
+        boolean desc = peek("desc");
+        if( !desc ) peek("asc");
+        sel._descs.add(desc);
+      } while( peek(',') );
+    }
+    if( peek("limit") ) sel._limit = (long)num();
+    peek(';');
+    skipWS();
+    if( _x < _buf.length ) throw err("Unexpected text");
+    return sel;
+  }
+
+  // Conditions: or, and, not, parens, predicates
+  private Expr cond() {
+    Expr e = and();
+    while( peek("or") ) e = new Expr.Or(e,and());
+    return e;
+  }
+  private Expr and() {
+    ArrayList<Expr> es = new ArrayList<>();
+    do {
+      Expr e = not();
+      if( e instanceof Expr.And ) for( Expr x : ((Expr.And)e)._es ) es.add(x); // Flatten
+      else es.add(e);
+    } while( peek("and") );
+    return es.size()==1 ? es.get(0) : new Expr.And(es.toArray(new Expr[0]));
+  }
+  private Expr not() {
+    if( peek("not") ) return new Expr.Not(not());
+    if( peek("exists") ) throw err("EXISTS not supported");
+    // A paren might wrap a condition, or start an arithmetic expression
+    int x = _x;
+    if( peek('(') ) {
+      try {
+        Expr e = cond();
+        if( peek(')') && !isCmp() && !isArith() ) return e;
+      } catch( IllegalArgumentException ignore ) { }
+      _x = x;                   // Backtrack, parse as a predicate
+    }
+    return pred();
+  }
+  private Expr pred() {
+    Expr l = expr();
+    boolean not = peek("not");
+    if( peek("between") ) {
+      Expr lo = expr();
+      require("and");
+      Expr hi = expr();
+      Expr e = new Expr.And(new Expr.Cmp(">=",l,lo),new Expr.Cmp("<=",l,hi));
+      return not ? new Expr.Not(e) : e;
+    }
+    if( peek("like") ) return new Expr.Like(l,str(),not);
+    if( peek("in") ) {
+      require('(');
+      if( peekKeyword("select") ) throw err("Sub-queries not supported");
+      ArrayList<Expr> vals = new ArrayList<>();
+      do vals.add(expr()); while( peek(',') );
+      require(')');
+      return new Expr.In(l,vals.toArray(new Expr[0]),not);
+    }
+    if( not ) throw err("Expected between or like");
+    String op = cmpOp();
+    if( op==null ) throw err("Expected a comparison");
+    return new Expr.Cmp(op,l,expr());
+  }
+
+  // Arithmetic
+  private Expr expr() {
+    Expr e = term();
+    while( true ) {
+      skipWS();
+      if( _x < _buf.length && (_buf[_x]=='+' || _buf[_x]=='-') ) {
+        char op = _buf[_x++];
+        e = new Expr.Bin(op,e,term());
+      } else return e;
+    }
+  }
+  private Expr term() {
+    Expr e = factor();
+    while( true ) {
+      skipWS();
+      if( _x < _buf.length && (_buf[_x]=='*' || _buf[_x]=='/') ) {
+        char op = _buf[_x++];
+        e = new Expr.Bin(op,e,factor());
+      } else return e;
+    }
+  }
+  private Expr factor() {
+    skipWS();
+    if( _x == _buf.length ) throw err("Unexpected end of query");
+    char c = _buf[_x];
+    if( c=='-' ) { _x++; return new Expr.Bin('-',new Expr.Num(0),factor()); }
+    if( c=='(' ) {
+      _x++;
+      if( isId() && peekKeyword("select") ) throw err("Sub-queries not supported");
+      Expr e = expr();
+      require(')');
+      return e;
+    }
+    if( c=='\'' ) return new Expr.Str(str());
+    if( Character.isDigit(c) || c=='.' ) return new Expr.Num(num());
+    String id = id();
+    if( id.equals("date") ) return date();
+    if( id.equals("case") ) return kase();
+    if( id.equals("extract") ) return extract();
+    if( id.equals("substring") || id.equals("interval") )
+      throw err(id+" not supported");
+    if( peek('(') ) {
+      switch( id ) {
+      case "sum": case "avg": case "count": case "min": case "max": break;
+      default: throw err("Unknown function "+id);
+      }
+      if( peek("distinct") ) throw err("DISTINCT not supported");
+      Expr arg = null;
+      if( !(id.equals("count") && peek('*')) ) arg = expr();
+      require(')');
+      return new Expr.Agg(id,arg);
+    }
+    if( peek('.') ) return new Expr.Col(id,id());
+    return new Expr.Col(null,id);
+  }
+
+  // case when cond then expr [when cond then expr]* [else expr] end
+  private Expr kase() {
+    if( !peekKeyword("when") ) throw err("Only searched CASE WHEN supported");
+    ArrayList<Expr> conds = new ArrayList<>(), vals = new ArrayList<>();
+    while( peek("when") ) {
+      conds.add(cond());
+      require("then");
+      vals.add(expr());
+    }
+    Expr els = peek("else") ? expr() : null;
+    require("end");
+    return new Expr.Case(conds.toArray(new Expr[0]),vals.toArray(new Expr[0]),els);
+  }
+
+  // extract(year|month|day from expr)
+  private Expr extract() {
+    require('(');
+    String unit = id();
+    if( !(unit.equals("year") || unit.equals("month") || unit.equals("day")) )
+      throw err("Unknown extract field "+unit);
+    require("from");
+    Expr e = expr();
+    require(')');
+    return new Expr.Extract(unit,e);
+  }
+
+  // date 'yyyy-mm-dd' [+- interval 'N' year|month|day [(P)]]*, in UTC like
+  // the loaded date columns
+  private Expr date() {
+    DateTime d = new DateTime(str(),DateTimeZone.UTC);
+    while( true ) {
+      int x = _x;
+      skipWS();
+      if( _x == _buf.length || (_buf[_x]!='+' && _buf[_x]!='-') ) { _x=x; break; }
+      int sign = _buf[_x++]=='+' ? 1 : -1;
+      if( !peek("interval") ) { _x=x; break; }
+      int n = sign*Integer.parseInt(str().trim());
+      String unit = id();
+      if( peek('(') ) { num(); require(')'); } // Precision, ignored
+      switch( unit ) {
+      case "year":  d = d.plusYears (n); break;
+      case "month": d = d.plusMonths(n); break;
+      case "day":   d = d.plusDays  (n); break;
+      default: throw err("Unknown interval "+unit);
+      }
+    }
+    return new Expr.Num(d.getMillis());
+  }
+
+  // --- Lexical ---
+  private void skipWS() {
+    while( _x < _buf.length ) {
+      if( Character.isWhitespace(_buf[_x]) ) _x++;
+      else if( _buf[_x]=='-' && _x+1 < _buf.length && _buf[_x+1]=='-' ) // -- comment
+        while( _x < _buf.length && _buf[_x]!='\n' ) _x++;
+      else break;
+    }
+  }
+  private boolean isId() {
+    skipWS();
+    return _x < _buf.length && (Character.isLetter(_buf[_x]) || _buf[_x]=='_');
+  }
+  private String id() {
+    if( !isId() ) throw err("Expected a name");
+    int x = _x;
+    while( _x < _buf.length && (Character.isLetterOrDigit(_buf[_x]) || _buf[_x]=='_') ) _x++;
+    return new String(_buf,x,_x-x).toLowerCase(Locale.ROOT);
+  }
+  private static final String[] KEYWORDS = {"from","where","group","order","by","limit","and","or","not","as","asc","desc","between","like","in","on","join","having","union","when","then","else","end"};
+  private boolean isKeyword() {
+    for( String k : KEYWORDS ) if( peekKeyword(k) ) return true;
+    return false;
+  }
+  // Next token is this keyword; do not consume
+  private boolean peekKeyword( String k ) {
+    skipWS();
+    int e = _x+k.length();
+    if( e > _buf.length || !_str.regionMatches(true,_x,k,0,k.length()) ) return false;
+    return e==_buf.length || !(Character.isLetterOrDigit(_buf[e]) || _buf[e]=='_');
+  }
+  // Consume this keyword if it is next
+  private boolean peek( String k ) {
+    if( !peekKeyword(k) ) return false;
+    _x += k.length();
+    return true;
+  }
+  private boolean peek( char c ) {
+    skipWS();
+    if( _x < _buf.length && _buf[_x]==c ) { _x++; return true; }
+    return false;
+  }
+  private void require( String k ) { if( !peek(k) ) throw err("Expected '"+k+"'"); }
+  private void require( char c ) { if( !peek(c) ) throw err("Expected '"+c+"'"); }
+  private double num() {
+    skipWS();
+    int x = _x;
+    while( _x < _buf.length && (Character.isDigit(_buf[_x]) || _buf[_x]=='.') ) _x++;
+    if( x==_x ) throw err("Expected a number");
+    return Double.parseDouble(new String(_buf,x,_x-x));
+  }
+  // Strings keep their original case
+  private String str() {
+    skipWS();
+    if( _x == _buf.length || _buf[_x]!='\'' ) throw err("Expected a string");
+    int x = ++_x;
+    while( _x < _buf.length && _buf[_x]!='\'' ) _x++;
+    if( _x == _buf.length ) throw err("Unterminated string");
+    return _str.substring(x,_x++);
+  }
+  private String cmpOp() {
+    skipWS();
+    for( String op : new String[]{"<>","!=","<=",">=","=","<",">"} )
+      if( _str.startsWith(op,_x) ) { _x += op.length(); return op.equals("!=") ? "<>" : op; }
+    return null;
+  }
+  private boolean isCmp() {
+    int x = _x;
+    boolean b = cmpOp()!=null || peekKeyword("between") || peekKeyword("like") || peekKeyword("not");
+    _x = x;
+    return b;
+  }
+  private boolean isArith() {
+    skipWS();
+    return _x < _buf.length && "+-*/".indexOf(_buf[_x])>=0;
+  }
+  private IllegalArgumentException err( String msg ) {
+    return new IllegalArgumentException(msg+" at: "+_str.substring(Math.min(_x,_str.length())));
+  }
+}
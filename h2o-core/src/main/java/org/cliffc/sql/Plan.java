@@ -0,0 +1,618 @@
+package org.cliffc.sql;
+
+import water.*;
+import water.fvec.*;
+import water.util.ArrayUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Compile a parsed SQL Select into the same style of plan as the hand-written
+ * TPCH queries: the largest table is scanned by a single fused MRTask, and all
+ * the other tables are dimensions joined to it by unique keys.
+ *
+ * Query plan:
+ * - Equi-join predicates between two tables make a join tree rooted at the
+ *   scanned table.  Each dimension table joins to its parent on a unique key.
+ *   Join edges closing a cycle are checked per-row as residual predicates.
+ * - Single-table predicates are pushed into the tables.
+ * - Dimensions are loaded into arrays and filtered bottom-up; each one builds
+ *   a key-to-row index of the rows passing its own predicates AND having
+ *   passing rows in all its children.  This is a semi-join filter; probing it
+ *   on the scanned table drops rows early and finds the joined row for the
+ *   group-by.  Dense and sorted keys index arrays, not hash tables; see
+ *   KeyIndex.
+ * - The scan filters, joins, and groups in one pass.  Small group-by key
+ *   spaces use a dense accumulator array, large ones a hash table.  Groups
+ *   come back sorted by key and merge in reduce.
+ * - Small data results are computed, sorted and limited locally.
+ */
+public class Plan {
+  static final boolean PRINT_TIMING = false;
+  // Dense group-by limit; above this use a hash table per chunk
+  static final int DENSE_GROUPS = 1<<12;
+  // Rows sampled for predicate selectivity
+  static final int SAMPLE = 1<<10;
+  // Msec per day; the step of a date group-by key
+  static final long DAY = 86400000L;
+
+  // One table in the FROM clause
+  static class Tab {
+    final int _num;             // FROM order
+    final String _alias;
+    final SQL.Table _table;
+    final Frame _fr;
+    final ArrayList<String> _cols = new ArrayList<>(); // Loaded columns, by slot
+    final ArrayList<Expr> _preds = new ArrayList<>();  // Local predicates
+    final ArrayList<Tab> _kids = new ArrayList<>();    // Join tree children
+    Tab _par;                   // Join tree parent
+    Expr.ColRef _fk;            // Column in the parent to join on
+    Expr.ColRef _key;           // Unique key column in this table
+    double[][] _data;           // Loaded columns
+    KeyIndex _idx;              // Key to row, for passing rows
+    Tab( int num, String alias, SQL.Table table ) { _num=num; _alias=alias; _table=table; _fr=table.frame(); }
+    // Slot for a column, loading it as needed
+    int slot( String col ) {
+      int idx = _cols.indexOf(col);
+      if( idx == -1 ) { idx = _cols.size(); _cols.add(col); }
+      return idx;
+    }
+    // TPCH column prefix: "l_" for lineitem, "ps_" for partsupp
+    String prefix() { return _table._name.equals("partsupp") ? "ps_" : _table._name.charAt(0)+"_"; }
+    // Find a column by SQL name, or null
+    String find( String name ) {
+      if( _fr.find(name) != -1 ) return name;
+      if( !name.startsWith(prefix()) ) return null;
+      String s = name.substring(prefix().length());
+      if( _fr.find(s) != -1 ) return s;
+      // Folded keys, see SQL.main
+      if( s.equals("nationkey") && _fr.find("n_name") != -1 ) return "n_name";
+      if( s.equals("regionkey") && _fr.find("r_name") != -1 ) return "r_name";
+      return null;
+    }
+    // Estimated rows passing the local predicates, from a sample
+    double est() {
+      long nrows = _fr.numRows();
+      if( _preds.isEmpty() || nrows==0 ) return nrows;
+      int n = (int)Math.min(nrows,SAMPLE);
+      double[][] data = new double[_cols.size()][n];
+      for( int c=0; c<data.length; c++ ) {
+        Vec.Reader vr = _fr.vec(_cols.get(c)).new Reader();
+        for( int k=0; k<n; k++ ) data[c][k] = vr.at(k*nrows/n);
+      }
+      Expr.Ctx x = new Expr.Ctx();
+      x._fact = -1;
+      x._data = new double[_num+1][][];
+      x._rows = new int[_num+1];
+      x._data[_num] = data;
+      int hits=0;
+      outer:
+      for( int k=0; k<n; k++ ) {
+        x._rows[_num] = k;
+        for( Expr p : _preds ) if( !p.isTrue(x) ) continue outer;
+        hits++;
+      }
+      return Math.max(1,(double)hits*nrows/n);
+    }
+    // Fraction of keys passing, after loading
+    double pass() { return (double)_idx.size()/Math.max(1,_fr.numRows()); }
+    @Override public String toString() { return _alias; }
+  }
+
+  final Parser.Select _sel;
+  final Tab[] _tabs;
+  Tab _fact;                    // The scanned table
+  boolean _empty;               // Constant-false where clause
+
+  Plan( Parser.Select sel ) {
+    _sel = sel;
+    if( sel._tabs.size() > 64 ) throw new IllegalArgumentException("Too many tables");
+    _tabs = new Tab[sel._tabs.size()];
+    for( int i=0; i<_tabs.length; i++ ) {
+      SQL.Table t = SQL.table(sel._tabs.get(i));
+      if( t==null ) throw new IllegalArgumentException("Unknown table "+sel._tabs.get(i));
+      _tabs[i] = new Tab(i,sel._aliases.get(i),t);
+    }
+  }
+
+  // Resolve a column name
+  Expr.ColRef column( String alias, String name ) {
+    ArrayList<Tab> tabs = new ArrayList<>();
+    for( Tab t : _tabs )
+      if( (alias==null || alias.equals(t._alias)) && t.find(name)!=null )
+        tabs.add(t);
+    // Folded keys (n_name, r_name) are in several tables; the SQL prefix
+    // picks the owning table
+    if( tabs.size() > 1 ) {
+      ArrayList<Tab> own = new ArrayList<>();
+      for( Tab t : tabs ) if( name.startsWith(t.prefix()) ) own.add(t);
+      if( own.size()==1 ) tabs = own;
+    }
+    if( tabs.size() > 1 ) throw new IllegalArgumentException("Ambiguous column "+name);
+    if( tabs.isEmpty() ) throw new IllegalArgumentException("Unknown column "+(alias==null?"":alias+".")+name);
+    Tab tab = tabs.get(0);
+    String col = tab.find(name);
+    return new Expr.ColRef(tab._num,tab.slot(col),tab._alias+"."+col,tab._fr.vec(col));
+  }
+
+  // Parse, plan and run a SQL query
+  public static Frame run( String sql ) { return new Plan(Parser.parse(sql)).run(); }
+
+  Frame run() {
+    // Split the where clause into conjuncts; push single-table predicates into
+    // the tables, and collect join edges.
+    ArrayList<Expr> resids = new ArrayList<>();
+    ArrayList<Expr.Cmp> edges = new ArrayList<>();
+    Expr where = _sel._where==null ? null : _sel._where.resolve(this);
+    Expr[] conds = where==null ? new Expr[0] : (where instanceof Expr.And ? ((Expr.And)where)._es : new Expr[]{where});
+    for( Expr e : conds ) {
+      long tabs = e.tabs();
+      if( tabs==0 ) { if( !e.isTrue(new Expr.Ctx()) ) _empty = true; }
+      else if( Long.bitCount(tabs)==1 ) _tabs[Long.numberOfTrailingZeros(tabs)]._preds.add(e);
+      else if( isEdge(e) ) edges.add((Expr.Cmp)e);
+      else resids.add(e);
+    }
+
+    // Pick the scanned table and join tree by cost: the scanned table is read
+    // once, and every other table builds a key-to-row map probed per scanned
+    // row.  Pick the feasible tree with the smallest estimated maps.
+    ArrayList<Tab> order = null;
+    double best = Double.MAX_VALUE;
+    for( Tab root : _tabs ) {
+      ArrayList<Tab> o = tree(root,edges,null,true);
+      if( o==null ) continue;
+      double cost = 0;
+      for( int i=1; i<o.size(); i++ ) cost += o.get(i).est();
+      if( cost < best || (cost==best && root._fr.numRows() > _fact._fr.numRows()) ) { best = cost; _fact = root; }
+    }
+    if( _fact==null ) {         // No tree on unique keys
+      Tab big = null;
+      for( Tab t : _tabs ) if( big==null || t._fr.numRows() > big._fr.numRows() ) big = t;
+      if( tree(big,edges,null,false)==null )
+        throw new IllegalArgumentException("Cross products not supported; no join to "+Arrays.toString(_tabs));
+      throw new IllegalArgumentException("Many-to-many joins not supported; no join tree on unique keys for "+Arrays.toString(_tabs));
+    }
+    ArrayList<Expr.Cmp> cycles = new ArrayList<>();
+    order = tree(_fact,edges,cycles,false);
+    resids.addAll(cycles);      // Cycle edges are checked per-row
+    if( PRINT_TIMING ) System.out.println("Scanning "+_fact+", est cost "+best+", join tree "+order);
+
+    // Group-by columns, or fields extracted from date columns, and their key
+    // spaces.  Dates are midnight msec, so time columns step by days; the
+    // scan checks this.
+    int ngrps = _sel._grps.size();
+    Expr[] grps = new Expr[ngrps];
+    long[] gmins = new long[ngrps], gcards = new long[ngrps], gsteps = new long[ngrps];
+    double keyspace = 1;
+    for( int i=0; i<ngrps; i++ ) {
+      Expr e = grps[i] = _sel._grps.get(i).resolve(this);
+      Expr c = e instanceof Expr.Extract ? ((Expr.Extract)e)._arg : e;
+      if( !(c instanceof Expr.ColRef) ) throw new IllegalArgumentException("Group by columns only: "+e);
+      Vec vec = ((Expr.ColRef)c)._vec;
+      gsteps[i] = 1;
+      if( e instanceof Expr.Extract ) {
+        Expr.Extract x = (Expr.Extract)e;
+        if( !(vec.isTime() || vec.isInt()) ) throw new IllegalArgumentException("Extract from a date column only: "+e);
+        if( x._unit.equals("year") ) { gmins[i] = x.get((long)vec.min()); gcards[i] = x.get((long)vec.max())-gmins[i]+1; }
+        else { gmins[i] = 1; gcards[i] = x._unit.equals("month") ? 12 : 31; }
+      }
+      else if( vec.isCategorical() ) { gmins[i] = 0; gcards[i] = vec.cardinality(); }
+      else if( vec.isTime() ) { gsteps[i] = DAY; gmins[i] = (long)vec.min(); gcards[i] = ((long)vec.max()-gmins[i])/DAY+1; }
+      else if( vec.isInt() ) { gmins[i] = (long)vec.min(); gcards[i] = (long)vec.max()-gmins[i]+1; }
+      else throw new IllegalArgumentException("Group by integer or categorical columns only: "+e);
+      keyspace *= Math.max(gcards[i],1);
+    }
+    if( keyspace >= (double)(1L<<62) ) throw new IllegalArgumentException("Group by key space too large");
+
+    // Select items; aggregates get accumulators, and columns become group refs
+    int nitems = _sel._items.size();
+    Expr[] items = new Expr[nitems];
+    ArrayList<Expr.Agg> aggs = new ArrayList<>();
+    for( int i=0; i<nitems; i++ ) {
+      Expr e = _sel._items.get(i).resolve(this);
+      e.aggs(aggs);
+      items[i] = e.group(grps);
+      if( items[i]==null ) throw new IllegalArgumentException("Not in group by: "+e);
+    }
+    int nacc=0;
+    for( Expr.Agg agg : aggs ) { agg._acc = nacc; nacc += agg.naccs(); }
+    byte[] accops = new byte[nacc];
+    for( Expr.Agg agg : aggs )
+      for( int j=0; j<agg.naccs(); j++ )
+        accops[agg._acc+j] = agg.op();
+
+    // Load and filter the dimensions, bottom-up
+    long t0 = System.currentTimeMillis();
+    for( int i=order.size()-1; i>0; i-- )
+      load(order.get(i));
+    if( PRINT_TIMING ) System.out.println("Dimensions loaded in "+(System.currentTimeMillis()-t0)+" msec");
+
+    // Probe the most selective maps first, parents before children
+    Tab[] dims = new Tab[order.size()-1];
+    for( int i=0; i<dims.length; i++ ) {
+      Tab pick = null;
+      for( Tab t : order )
+        if( t!=_fact && !ArrayUtils.contains(dims,t) && (t._par==_fact || ArrayUtils.contains(dims,t._par)) &&
+            (pick==null || t.pass() < pick.pass()) )
+          pick = t;
+      dims[i] = pick;
+    }
+    if( PRINT_TIMING ) System.out.println("Probe order "+Arrays.toString(dims));
+
+    // One fused filter/join/group-by pass over the fact table
+    Scan scan = new Scan(this,dims,resids.toArray(new Expr[0]),grps,gmins,gcards,gsteps,keyspace <= DENSE_GROUPS,aggs.toArray(new Expr.Agg[0]),accops);
+    if( _fact._cols.isEmpty() ) _fact.slot(_fact._fr.name(0)); // Scan needs a column
+    if( !_empty ) scan.doAll(_fact._fr.subframe(_fact._cols.toArray(new String[0])));
+
+    // Without a group-by, a single result row even if no rows pass
+    if( ngrps==0 && (scan._gkeys==null || scan._gkeys.length==0) ) {
+      scan._gkeys = new long[1];
+      scan._gaccs = scan.initAccs(1);
+    }
+    return output(scan,items,grps,gmins,gcards,gsteps);
+  }
+
+  // Join tree rooted at root, breadth-first.  Each child joins to its parent
+  // on the child's key.  Returns null if some table is not joined, or if check
+  // is set and some child key is not unique according to the rollups.  Edges
+  // not in the tree close cycles, and are added to rest.
+  private ArrayList<Tab> tree( Tab root, ArrayList<Expr.Cmp> edges, ArrayList<Expr.Cmp> rest, boolean check ) {
+    for( Tab t : _tabs ) { t._par = null; t._fk = t._key = null; t._kids.clear(); }
+    ArrayList<Expr.Cmp> es = new ArrayList<>(edges);
+    ArrayList<Tab> order = new ArrayList<>();
+    order.add(root);
+    for( int i=0; i<order.size(); i++ ) {
+      Tab par = order.get(i);
+      for( int j=0; j<es.size(); j++ ) {
+        Expr.Cmp e = es.get(j);
+        Expr.ColRef l = (Expr.ColRef)e._l, r = (Expr.ColRef)e._r;
+        if( r._tab==par._num ) { Expr.ColRef t=l; l=r; r=t; }
+        if( l._tab!=par._num ) continue;
+        Tab kid = _tabs[r._tab];
+        if( order.contains(kid) ) continue; // Cycle
+        if( check && !unique(kid,r) ) return null;
+        kid._par = par;  kid._fk = l;  kid._key = r;
+        par._kids.add(kid);
+        order.add(kid);
+        es.remove(j--);
+      }
+    }
+    if( order.size() < _tabs.length ) return null;
+    if( rest!=null ) rest.addAll(es);
+    return order;
+  }
+
+  // Column is a unique key, ignoring NAs.  The rollups reject most columns
+  // cheaply: distinct values are bounded by the categorical cardinality or
+  // integer range.  Columns passing that are checked for real, once per Vec
+  // content.
+  private static boolean unique( Tab tab, Expr.ColRef key ) {
+    Vec vec = key._vec;
+    long nrows = tab._fr.numRows()-vec.naCnt();
+    if( vec.isCategorical() ) { if( vec.cardinality() < nrows ) return false; }
+    else if( !vec.isInt() || vec.max()-vec.min()+1 < nrows ) return false;
+    long sum = vec.checksum();
+    long[] u = UNIQUE.get(vec._key);
+    if( u==null || u[0]!=sum ) UNIQUE.put(vec._key,u = new long[]{sum,Uniq.check(vec) ? 1 : 0});
+    return u[1]==1;
+  }
+  // Vec key to {checksum, unique}
+  private static final java.util.concurrent.ConcurrentHashMap<Key,long[]> UNIQUE = new java.util.concurrent.ConcurrentHashMap<>();
+
+  // Duplicate check.  Each chunk sorts its keys to find local duplicates;
+  // then chunks with disjoint key ranges, as for sorted keys, are unique.
+  // Overlapping ranges fall back to sorting all the keys.
+  private static class Uniq extends MRTask<Uniq> {
+    long[] _mins, _maxs;        // Per chunk key range; empty is min>max
+    boolean _dup;
+    @Override public void map( Chunk c ) {
+      long[] ks = new long[c._len];
+      int n=0;
+      for( int i=0; i<c._len; i++ ) if( !c.isNA(i) ) ks[n++] = c.at8(i);
+      Arrays.sort(ks,0,n);
+      for( int i=1; i<n && !_dup; i++ ) if( ks[i]==ks[i-1] ) _dup = true;
+      int nchks = c.vec().nChunks();
+      _mins = new long[nchks];  Arrays.fill(_mins,Long.MAX_VALUE);
+      _maxs = new long[nchks];  Arrays.fill(_maxs,Long.MIN_VALUE);
+      if( n > 0 ) { _mins[c.cidx()] = ks[0];  _maxs[c.cidx()] = ks[n-1]; }
+    }
+    @Override public void reduce( Uniq u ) {
+      _dup |= u._dup;
+      if( _mins==null ) { _mins = u._mins; _maxs = u._maxs; return; }
+      for( int i=0; i<_mins.length; i++ ) {
+        _mins[i] = Math.min(_mins[i],u._mins[i]);
+        _maxs[i] = Math.max(_maxs[i],u._maxs[i]);
+      }
+    }
+    static boolean check( Vec vec ) {
+      Uniq u = new Uniq().doAll(vec);
+      if( u._dup ) return false;
+      if( u._mins==null ) return true;
+      Integer[] ord = new Integer[u._mins.length];
+      for( int i=0; i<ord.length; i++ ) ord[i] = i;
+      Arrays.sort(ord,(a,b) -> Long.compare(u._mins[a],u._mins[b]));
+      long max = 0;
+      boolean first = true, overlap = false;
+      for( int i : ord ) {
+        if( u._mins[i] > u._maxs[i] ) continue; // Empty chunk
+        if( !first && u._mins[i] <= max ) { overlap = true; break; }
+        max = u._maxs[i];  first = false;
+      }
+      if( !overlap ) return true;
+      // Unsorted keys: sort them all
+      long[] ks = new long[(int)(vec.length()-vec.naCnt())];
+      Vec.Reader vr = vec.new Reader();
+      int n=0;
+      for( long r=0; r<vec.length(); r++ ) if( !vr.isNA(r) ) ks[n++] = vr.at8(r);
+      Arrays.sort(ks);
+      for( int i=1; i<n; i++ ) if( ks[i]==ks[i-1] ) return false;
+      return true;
+    }
+  }
+
+  // Join edges are equality between columns of two tables
+  private static boolean isEdge( Expr e ) {
+    if( !(e instanceof Expr.Cmp) || !((Expr.Cmp)e)._op.equals("=") ) return false;
+    Expr.Cmp c = (Expr.Cmp)e;
+    return c._l instanceof Expr.ColRef && c._r instanceof Expr.ColRef && Long.bitCount(c.tabs())==2;
+  }
+
+  // Load a dimension's columns, and map keys to rows passing its predicates
+  // and having a join in all children.  Children are already loaded.
+  private void load( Tab tab ) {
+    int nrows = (int)tab._fr.numRows();
+    double[][] data = tab._data = new double[tab._cols.size()][nrows];
+    for( int c=0; c<data.length; c++ ) {
+      Vec.Reader vr = tab._fr.vec(tab._cols.get(c)).new Reader();
+      for( int r=0; r<nrows; r++ ) data[c][r] = vr.at(r);
+    }
+    Expr.Ctx x = new Expr.Ctx();
+    x._fact = -1;
+    x._data = new double[_tabs.length][][];
+    x._rows = new int[_tabs.length];
+    x._data[tab._num] = data;
+    long[] keys = new long[nrows];
+    int [] rows = new int [nrows];
+    int n=0;
+    boolean sorted = true;
+    outer:
+    for( int r=0; r<nrows; r++ ) {
+      x._rows[tab._num] = r;
+      for( Expr p : tab._preds ) if( !p.isTrue(x) ) continue outer;
+      for( Tab kid : tab._kids ) {
+        double fk = data[kid._fk._slot][r];
+        if( Double.isNaN(fk) || kid._idx.row((long)fk) == -1 ) continue outer;
+      }
+      double key = data[tab._key._slot][r];
+      if( Double.isNaN(key) ) continue;
+      if( n>0 && (long)key <= keys[n-1] ) sorted = false;
+      keys[n] = (long)key;
+      rows[n++] = r;
+    }
+    tab._idx = KeyIndex.make(tab._key._vec,keys,rows,n,sorted);
+    if( PRINT_TIMING ) System.out.println(tab+" keys "+n+" "+tab._idx.getClass().getSimpleName());
+  }
+
+  // Fused filter, join and group-by over the fact table
+  static class Scan extends MRTask<Scan> {
+    final int _fact;            // Fact table number
+    final int _ntabs;
+    final Expr[] _fpreds;       // Fact table predicates
+    final int[] _dims, _pars, _fks; // Per dim, breadth-first: table, parent, parent slot
+    final KeyIndex[] _idxs;     // Per dim key-to-row indices
+    final double[][][] _data;   // Per table loaded columns
+    final Expr[] _resids;       // Multi-table predicates
+    final Expr[] _grps;         // Group-by columns or extracts
+    final long[] _gmins, _gcards, _gsteps;
+    final boolean _dense;       // Dense array group-by
+    final Expr.Agg[] _aggs;
+    final byte[] _accops;       // Per accumulator: add, min, max
+    // Results: sorted group keys, and accumulators
+    long[] _gkeys;
+    double[] _gaccs;
+
+    Scan( Plan p, Tab[] dims, Expr[] resids, Expr[] grps, long[] gmins, long[] gcards, long[] gsteps, boolean dense, Expr.Agg[] aggs, byte[] accops ) {
+      _fact = p._fact._num;
+      _ntabs = p._tabs.length;
+      _fpreds = p._fact._preds.toArray(new Expr[0]);
+      _dims = new int[dims.length]; _pars = new int[dims.length]; _fks = new int[dims.length];
+      _idxs = new KeyIndex[dims.length];
+      _data = new double[_ntabs][][];
+      for( int i=0; i<dims.length; i++ ) {
+        _dims[i] = dims[i]._num;
+        _pars[i] = dims[i]._par._num;
+        _fks [i] = dims[i]._fk._slot;
+        _idxs[i] = dims[i]._idx;
+        _data[dims[i]._num] = dims[i]._data;
+      }
+      _resids = resids; _grps = grps; _gmins = gmins; _gcards = gcards; _gsteps = gsteps; _dense = dense;
+      _aggs = aggs; _accops = accops;
+    }
+
+    double[] initAccs( int ngrps ) {
+      double[] accs = new double[ngrps*_accops.length];
+      for( int g=0; g<ngrps; g++ )
+        for( int a=0; a<_accops.length; a++ )
+          accs[g*_accops.length+a] = _accops[a]==1 ? Double.POSITIVE_INFINITY : (_accops[a]==2 ? Double.NEGATIVE_INFINITY : 0);
+      return accs;
+    }
+
+    @Override public void map( Chunk[] cs ) {
+      Expr.Ctx x = new Expr.Ctx();
+      x._fact = _fact;  x._cs = cs;  x._data = _data;  x._rows = new int[_ntabs];
+      int nacc = _accops.length;
+      double[] daccs = _dense ? initAccs((int)keyspace()) : null;
+      boolean[] hits = _dense ? new boolean[(int)keyspace()] : null;
+      HashMap<Long,double[]> haccs = _dense ? null : new HashMap<>();
+
+      // The Main Hot Loop
+      outer:
+      for( int i=0; i<cs[0]._len; i++ ) {
+        x._i = i;
+        for( Expr p : _fpreds ) if( !p.isTrue(x) ) continue outer;
+        for( int d=0; d<_dims.length; d++ ) {
+          double fk = x.val(_pars[d],_fks[d]);
+          if( Double.isNaN(fk) ) continue outer;
+          int row = _idxs[d].row((long)fk);
+          if( row==-1 ) continue outer;
+          x._rows[_dims[d]] = row;
+        }
+        for( Expr p : _resids ) if( !p.isTrue(x) ) continue outer;
+        // Group key, mixed-radix
+        long key=0;
+        for( int g=0; g<_grps.length; g++ ) {
+          double v = _grps[g].eval(x);
+          if( Double.isNaN(v) ) continue outer; // NA groups dropped
+          long d = (long)v-_gmins[g];
+          if( d % _gsteps[g] != 0 ) throw new IllegalArgumentException("Group by date column with a time of day: "+_grps[g]);
+          key = key*_gcards[g] + d/_gsteps[g];
+        }
+        double[] accs;  int off;
+        if( _dense ) { accs = daccs; off = (int)key*nacc; hits[(int)key]=true; }
+        else {
+          accs = haccs.get(key);
+          if( accs==null ) haccs.put(key,accs=initAccs(1));
+          off = 0;
+        }
+        for( Expr.Agg agg : _aggs ) agg.accum(accs,off,x);
+      }
+
+      // Sorted results
+      if( _dense ) {
+        int n=0;
+        for( boolean h : hits ) if( h ) n++;
+        _gkeys = new long[n];
+        _gaccs = new double[n*nacc];
+        for( int k=0, j=0; k<hits.length; k++ )
+          if( hits[k] ) {
+            _gkeys[j] = k;
+            System.arraycopy(daccs,k*nacc,_gaccs,j*nacc,nacc);
+            j++;
+          }
+      } else {
+        _gkeys = new long[haccs.size()];
+        int j=0;
+        for( long k : haccs.keySet() ) _gkeys[j++] = k;
+        Arrays.sort(_gkeys);
+        _gaccs = new double[_gkeys.length*nacc];
+        for( j=0; j<_gkeys.length; j++ )
+          System.arraycopy(haccs.get(_gkeys[j]),0,_gaccs,j*nacc,nacc);
+      }
+    }
+    private long keyspace() {
+      long ks=1;
+      for( long c : _gcards ) ks *= Math.max(c,1);
+      return ks;
+    }
+
+    // Merge sorted group keys
+    @Override public void reduce( Scan s ) {
+      if( s._gkeys==null ) return;
+      if( _gkeys==null ) { _gkeys = s._gkeys; _gaccs = s._gaccs; return; }
+      long[] ks0 = _gkeys, ks1 = s._gkeys;
+      double[] as0 = _gaccs, as1 = s._gaccs;
+      int nacc = _accops.length;
+      long[] ks = new long[ks0.length+ks1.length];
+      double[] as = new double[ks.length*nacc];
+      int i=0, j=0, k=0;
+      while( i<ks0.length || j<ks1.length ) {
+        if( j==ks1.length || (i<ks0.length && ks0[i] < ks1[j]) ) {
+          ks[k] = ks0[i];  System.arraycopy(as0,i*nacc,as,k*nacc,nacc);  i++;
+        } else if( i==ks0.length || ks1[j] < ks0[i] ) {
+          ks[k] = ks1[j];  System.arraycopy(as1,j*nacc,as,k*nacc,nacc);  j++;
+        } else {
+          ks[k] = ks0[i];
+          for( int a=0; a<nacc; a++ ) {
+            double a0 = as0[i*nacc+a], a1 = as1[j*nacc+a];
+            as[k*nacc+a] = _accops[a]==1 ? Math.min(a0,a1) : (_accops[a]==2 ? Math.max(a0,a1) : a0+a1);
+          }
+          i++; j++;
+        }
+        k++;
+      }
+      _gkeys = Arrays.copyOf(ks,k);
+      _gaccs = Arrays.copyOf(as,k*nacc);
+    }
+  }
+
+  // Compute select items per group, then sort and limit; Small Data
+  private Frame output( Scan scan, Expr[] items, Expr[] grps, long[] gmins, long[] gcards, long[] gsteps ) {
+    int ngrps = scan._gkeys==null ? 0 : scan._gkeys.length;
+    int nitems = items.length, nacc = scan._accops.length;
+    double[][] res = new double[nitems][ngrps];
+    Expr.Ctx x = new Expr.Ctx();
+    x._gvals = new double[grps.length];
+    x._accs = scan._gaccs;
+    for( int g=0; g<ngrps; g++ ) {
+      long key = scan._gkeys[g];
+      for( int j=grps.length-1; j>=0; j-- ) {
+        x._gvals[j] = key%gcards[j]*gsteps[j] + gmins[j];
+        key /= gcards[j];
+      }
+      x._acc0 = g*nacc;
+      for( int i=0; i<nitems; i++ ) res[i][g] = items[i].eval(x);
+    }
+
+    // Order by select names or items
+    int nords = _sel._orders.size();
+    int[] ocols = new int[nords];
+    for( int o=0; o<nords; o++ ) {
+      Expr e = _sel._orders.get(o);
+      ocols[o] = e instanceof Expr.Col && ((Expr.Col)e)._alias==null ? _sel._names.indexOf(((Expr.Col)e)._name) : -1;
+      if( ocols[o] == -1 ) {
+        Expr r = e.resolve(this).group(grps);
+        for( int i=0; i<nitems && r!=null; i++ )
+          if( items[i].toString().equals(r.toString()) ) ocols[o] = i;
+      }
+      if( ocols[o] == -1 ) throw new IllegalArgumentException("Order by must be in the select list: "+e);
+    }
+    // Top rows by a bounded heap, O(ngrps log limit)
+    int nrows = _sel._limit==-1 ? ngrps : (int)Math.min(ngrps,_sel._limit);
+    int[] idxs = new int[nrows];
+    for( int i=0; i<nrows; i++ ) idxs[i] = i;
+    if( nords > 0 ) {
+      boolean[] descs = new boolean[nords];
+      for( int o=0; o<nords; o++ ) descs[o] = _sel._descs.get(o);
+      TopK.Heap heap = new TopK.Heap(nrows,descs);
+      double[] vs = new double[nords];
+      for( int g=0; g<ngrps; g++ ) {
+        for( int o=0; o<nords; o++ ) vs[o] = res[ocols[o]][g];
+        heap.add(g,vs);
+      }
+      long[] ids = heap.sorted();
+      for( int i=0; i<nrows; i++ ) idxs[i] = (int)ids[i];
+    }
+
+    Frame fr = new Frame();
+    for( int i=0; i<nitems; i++ ) {
+      double[] vals = new double[nrows];
+      for( int r=0; r<nrows; r++ ) vals[r] = res[i][idxs[r]];
+      Vec vec = null;
+      Expr grp = items[i] instanceof Expr.GrpRef ? grps[((Expr.GrpRef)items[i])._grp] : null;
+      if( grp instanceof Expr.ColRef ) {
+        Vec src = ((Expr.ColRef)grp)._vec;
+        if( src.isCategorical() ) vec = Vec.makeVec(vals,src.domain(),SQL.vkey());
+        else if( src.isTime() ) vec = Vec.makeTimeVec(vals,SQL.vkey());
+      }
+      if( vec==null ) vec = Vec.makeVec(vals,SQL.vkey());
+      fr.add(uniq(fr,_sel._names.get(i)),vec);
+    }
+    return fr;
+  }
+
+  private static String uniq( Frame fr, String name ) {
+    String s = name;
+    for( int i=1; fr.find(s) != -1; i++ ) s = name+i;
+    return s;
+  }
+
+  // A SQL query as a TPCH query
+  public static class Query implements SQL.TPCH {
+    final String _name, _sql;
+    public Query( String name, String sql ) { _name=name; _sql=sql; }
+    @Override public String name() { return _name; }
+    @Override public Frame run() { return Plan.run(_sql); }
+  }
+}
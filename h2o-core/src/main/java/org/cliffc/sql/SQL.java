@@ -3,11 +3,7 @@ package org.cliffc.sql;
 import water.*;
 import water.fvec.*;
 import water.parser.*;
-import water.rapids.Env;
-import water.rapids.Session;
-import water.rapids.ast.*;
-import water.rapids.ast.params.*;
-import water.rapids.ast.prims.mungers.AstMerge;
+import water.persist.PersistFS;
 import water.util.SB;
 import water.util.PrettyPrint;
 
@@ -16,6 +12,12 @@ import java.io.IOException;
 public class SQL {
   // Scale-factor; also part of the data directory name.
   public static final String SCALE_FACTOR = "sf-1";
+  // Snapshot of the loaded tables
+  public static final String SNAPSHOT = Snapshot.dir("tpch",SCALE_FACTOR);
+  // Memory-map the big tables: swapping out their chunks writes nothing
+  public static final boolean MMAP = Boolean.getBoolean("h2osql.mmap");
+  // Time the SQL front-end against the hand-written queries
+  public static final boolean COMPARE = Boolean.getBoolean("h2osql.compare");
 
   // The TPCH Schema
   // Always first column is the index column, and is just a number.
@@ -28,7 +30,10 @@ public class SQL {
   public static final Table PARTSUPP = new Table("partsupp",new String[]{"partkey","suppkey","availqty","supplycost","ps_comment"},new String[]{"ps_comment"});
   public static final Table REGION   = new Table("region",new String[]{"regionkey","r_name","r_comment"},new String[]{"r_comment"});
   public static final Table SUPPLIER = new Table("supplier",new String[]{"suppkey","s_name","s_address","nationkey","phone","acctbal","s_comment"},null);
+  public static final Table[] TABLES = new Table[]{CUSTOMER,LINEITEM,NATION,ORDERS,PART,PARTSUPP,REGION,SUPPLIER};
   static long NSIZE, FSIZE;
+  // Numeric scale factor, from the name
+  static double scale() { return Double.parseDouble(SCALE_FACTOR.substring(3)); }
 
   public static Frame NATION_REGION;          // All JOINed
   public static Frame NATION_REGION_SUPPLIER; // All JOINed
@@ -39,7 +44,14 @@ public class SQL {
     
     // Load all the tables
     long t0 = System.currentTimeMillis(), t;
-    System.out.println("Loading TPCH data for "+SCALE_FACTOR);
+    // Restore the loaded, cleaned-up tables from a snapshot if there is one
+    boolean restore = Snapshot.has(SNAPSHOT);
+    System.out.println((restore ? "Restoring" : "Loading")+" TPCH data for "+SCALE_FACTOR);
+    if( restore )
+      for( Table tab : TABLES ) {
+        tab._frame = Snapshot.load(SNAPSHOT,tab._name);
+        FSIZE += tab._frame.byteSize();
+      }
     CUSTOMER.frame();
     LINEITEM.frame();
     NATION  .frame();
@@ -48,37 +60,59 @@ public class SQL {
     PARTSUPP.frame();
     REGION  .frame();
     SUPPLIER.frame();
-
-    // A little cleanup
-    Frame nation   = NATION  .frame(); nation  .toCategoricalCol(nation  .find("n_name"));
-    Frame supplier = SUPPLIER.frame(); supplier.toCategoricalCol(supplier.find("s_name"));
-    Frame region   = REGION  .frame(); region  .toCategoricalCol(region  .find("r_name"));
+    Frame nation   = NATION  .frame();
+    Frame supplier = SUPPLIER.frame();
+    Frame region   = REGION  .frame();
     Frame customer = CUSTOMER.frame();
-    // r_name and regionkey are redundant; fold together.
-    // Rename regionkey as r_name; simple rename works because the columns' ints are the same.
-    assert vecEqualsInt(region.vec("r_name"),region.vec("regionkey"));
-    region.remove("regionkey");
-    nation.names()[nation.find("regionkey")] = "r_name";
-    nation.vec("r_name").setDomain(region.vec("r_name").domain());
-    
-    // n_name and nationkey are redundant; fold together.
-    // Have to produce a new domain, because columns do not align.
-    Vec n_name    = nation.vec("n_name");
-    Vec nationkey = nation.vec("nationkey");
-    String[] odom = n_name.domain();
-    String[] ndom = new String[odom.length];
-    for( int i=0; i<odom.length; i++ ) {
-      assert nationkey.at8(i)==i; // keys are in-order, no skips
-      ndom[i] = odom[(int)n_name.at8(i)];
+
+    if( !restore ) {
+      // A little cleanup
+      nation  .toCategoricalCol(nation  .find("n_name"));
+      supplier.toCategoricalCol(supplier.find("s_name"));
+      region  .toCategoricalCol(region  .find("r_name"));
+      // r_name and regionkey are redundant; fold together.
+      // Rename regionkey as r_name; simple rename works because the columns' ints are the same.
+      assert vecEqualsInt(region.vec("r_name"),region.vec("regionkey"));
+      region.remove("regionkey");
+      nation.names()[nation.find("regionkey")] = "r_name";
+      nation.vec("r_name").setDomain(region.vec("r_name").domain());
+
+      // n_name and nationkey are redundant; fold together.
+      // Have to produce a new domain, because columns do not align.
+      Vec n_name    = nation.vec("n_name");
+      Vec nationkey = nation.vec("nationkey");
+      String[] odom = n_name.domain();
+      String[] ndom = new String[odom.length];
+      for( int i=0; i<odom.length; i++ ) {
+        assert nationkey.at8(i)==i; // keys are in-order, no skips
+        ndom[i] = odom[(int)n_name.at8(i)];
+      }
+      // Rename nationkey as n_name.
+      nation.remove("n_name");
+      nation  .names()[nation  .find("nationkey")] = "n_name";
+      customer.names()[customer.find("nationkey")] = "n_name";
+      supplier.names()[supplier.find("nationkey")] = "n_name";
+      nation  .vec("n_name").setDomain(ndom);
+      customer.vec("n_name").setDomain(ndom);
+      supplier.vec("n_name").setDomain(ndom);
+
+      // Snapshot the cleaned-up tables for the next startup
+      for( Table tab : TABLES ) Snapshot.save(SNAPSHOT,tab.frame());
+      Snapshot.done(SNAPSHOT);
+    }
+
+    // Back the big tables' chunks with memory-mapped files; swapping them
+    // out then writes nothing, and swapping them in is a copy from the page
+    // cache.  Loaded chunks are still heap copies, so tables bigger than the
+    // heap still stream through the Cleaner, just without the swap writes.
+    if( MMAP ) {
+      PersistFS.map(LINEITEM.frame());
+      PersistFS.map(ORDERS  .frame());
     }
-    // Rename nationkey as n_name.
-    nation.remove("n_name");
-    nation  .names()[nation  .find("nationkey")] = "n_name";
-    customer.names()[customer.find("nationkey")] = "n_name";
-    supplier.names()[supplier.find("nationkey")] = "n_name";
-    nation  .vec("n_name").setDomain(ndom);
-    customer.vec("n_name").setDomain(ndom);
-    supplier.vec("n_name").setDomain(ndom);
+    // Keep the small dimension tables in memory through big LINEITEM scans
+    for( Table tab : TABLES )
+      if( tab != LINEITEM && tab != ORDERS )
+        Cleaner.pin(tab.frame());
 
     System.out.println(H2O.STOREtoString());    
     t = System.currentTimeMillis(); System.out.println("Data loaded; "+PrettyPrint.bytes(NSIZE)+" bytes in "+(t-t0)+" msec, Frames take "+PrettyPrint.bytes(FSIZE)); t0=t;
@@ -87,6 +121,9 @@ public class SQL {
     NATION_REGION = join(nation,region);
     NATION_REGION_SUPPLIER = join(NATION_REGION,supplier);
     NATION_REGION_SUPPLIER_PARTSUPP = join(NATION_REGION_SUPPLIER,PARTSUPP.frame());
+    Cleaner.pin(NATION_REGION);
+    Cleaner.pin(NATION_REGION_SUPPLIER);
+    Cleaner.pin(NATION_REGION_SUPPLIER_PARTSUPP);
 
     // Verify suppliers suppkey is also the row number
     Vec.Reader vsupp = supplier.vec("suppkey").new Reader();
@@ -114,6 +151,15 @@ public class SQL {
     
     // Run all queries once
     TPCH[] querys = new TPCH[]{new TPCH1(),new TPCH2(),new TPCH3(),new TPCH4(),new TPCH5(),new TPCH6(), new TPCH7()};
+    // SQL queries from the command line, as files or text, replace the built-ins
+    if( args.length > 0 ) {
+      querys = new TPCH[args.length];
+      for( int i=0; i<args.length; i++ ) {
+        java.io.File f = new java.io.File(args[i]);
+        String sql = f.exists() ? new String(java.nio.file.Files.readAllBytes(f.toPath())) : args[i];
+        querys[i] = new Plan.Query(f.exists() ? f.getName() : "SQL"+i,sql);
+      }
+    }
     //TPCH[] querys = new TPCH[]{new TPCH3()}; // DEBUG one query
     System.out.println("--- Run Once ---");
     for( TPCH query : querys ) {
@@ -135,10 +181,46 @@ public class SQL {
         System.out.print(""+(t_q-t0)+" msec, "); t0=t_q;
       }
       System.out.println();
-    }                   
+    }
+    System.out.println();
+
+    // Parsed SQL against the hand-written queries: cell-by-cell results,
+    // then best of 10 each
+    if( COMPARE ) {
+      System.out.println("--- SQL vs hand-written, best msec ---");
+      TPCH[] hands = new TPCH[]{new TPCH1(),new TPCH3(),new TPCH5(),new TPCH6(),new TPCH7(),new TPCH8()};
+      for( int i=0; i<hands.length; i++ ) {
+        Frame h = hands[i].run(), q = QUERYS[i].run();
+        String diff = diff(h,q);
+        if( h != null ) h.delete();
+        q.delete();
+        System.out.println(hands[i].name()+" "+best(hands[i],10)+" msec, "+QUERYS[i].name()+" "+best(QUERYS[i],10)+" msec, "+diff);
+      }
+      System.out.println();
+      t0 = System.currentTimeMillis();
+    }
+
+    // All queries at once; their LINEITEM passes batch into shared scans
+    System.out.println("--- Run Shared ---");
+    for( int i=0; i<10; i++ ) {
+      Thread[] ts = new Thread[querys.length];
+      for( int j=0; j<querys.length; j++ ) {
+        TPCH query = querys[j];
+        (ts[j] = new Thread(() -> query.run().delete(),query.name())).start();
+      }
+      for( Thread th : ts ) try { th.join(); } catch( InterruptedException ignore ) { }
+      long t_q = System.currentTimeMillis();
+      System.out.print(""+(t_q-t0)+" msec, "); t0=t_q;
+    }
+    System.out.println();
+    System.out.println("Cache "+Cleaner.stats());
     System.out.println();
 
     // leak detection
+    for( Table tab : TABLES ) Cleaner.unpin(tab.frame());
+    Cleaner.unpin(NATION_REGION);
+    Cleaner.unpin(NATION_REGION_SUPPLIER);
+    Cleaner.unpin(NATION_REGION_SUPPLIER_PARTSUPP);
     NATION_REGION.delete();
     NATION_REGION_SUPPLIER.delete();
     NATION_REGION_SUPPLIER_PARTSUPP.delete();
@@ -154,6 +236,121 @@ public class SQL {
     System.exit(0);
   }
 
+  // Best of n runs, msec
+  private static long best( TPCH query, int n ) {
+    long best = Long.MAX_VALUE;
+    for( int i=0; i<n; i++ ) {
+      long t0 = System.currentTimeMillis();
+      Frame fr = query.run();
+      best = Math.min(best,System.currentTimeMillis()-t0);
+      if( fr != null ) fr.delete(); // TPCH8 is unfinished, returns null
+    }
+    return best;
+  }
+
+  // Compare a hand-written result to a SQL one.  Columns match by position,
+  // categoricals by string; rows are sorted on all columns in order, keys
+  // first, as both results list them.  Doubles match to a relative 1e-6.
+  static String diff( Frame h, Frame q ) {
+    if( h==null ) return "no hand-written result";
+    if( h.numCols() != q.numCols() ) return "MISMATCH "+h.numCols()+" vs "+q.numCols()+" columns";
+    if( h.numRows() != q.numRows() ) return "MISMATCH "+h.numRows()+" vs "+q.numRows()+" rows";
+    Object[][] hs = rows(h), qs = rows(q);
+    StringBuilder sb = new StringBuilder();
+    for( int c=0; c<h.numCols(); c++ ) {
+      int bad=0, first=-1;
+      for( int r=0; r<hs.length; r++ )
+        if( !same(hs[r][c],qs[r][c]) && bad++==0 ) first = r;
+      if( bad > 0 ) sb.append(" ").append(q.name(c)).append(": ").append(bad).append(" cells differ, e.g. ").append(hs[first][c]).append(" vs ").append(qs[first][c]).append(";");
+    }
+    return sb.length()==0 ? "same "+h.numRows()+" rows" : "MISMATCH"+sb;
+  }
+  // Rows of Strings for categoricals and Doubles otherwise, sorted
+  private static Object[][] rows( Frame fr ) {
+    int nrows = (int)fr.numRows(), ncols = fr.numCols();
+    Object[][] rows = new Object[nrows][ncols];
+    for( int c=0; c<ncols; c++ ) {
+      Vec vec = fr.vec(c);
+      for( int r=0; r<nrows; r++ )
+        rows[r][c] = vec.isCategorical() && !vec.isNA(r) ? (Object)vec.domain()[(int)vec.at8(r)] : (Object)vec.at(r);
+    }
+    java.util.Arrays.sort(rows,(a,b) -> {
+        for( int c=0; c<ncols; c++ ) {
+          boolean sa = a[c] instanceof String, sb = b[c] instanceof String; // Categorical NAs first
+          int x = sa && sb ? ((String)a[c]).compareTo((String)b[c])
+            : (sa ? 1 : (sb ? -1 : Double.compare((Double)a[c],(Double)b[c])));
+          if( x != 0 ) return x;
+        }
+        return 0;
+      });
+    return rows;
+  }
+  private static boolean same( Object a, Object b ) {
+    if( a instanceof String || b instanceof String ) return a.equals(b);
+    double x = (Double)a, y = (Double)b;
+    if( Double.isNaN(x) || Double.isNaN(y) ) return Double.isNaN(x) && Double.isNaN(y);
+    return Math.abs(x-y) <= 1e-6*Math.max(1,Math.max(Math.abs(x),Math.abs(y)));
+  }
+
+  // TPCH queries 1, 3, 5, 6, 7 and 8 for the SQL front-end, with the same
+  // parameters as the hand-written ones.  Q6's discount range is written as
+  // constants, as 0.06+0.01 rounds below 0.07.  Q7 and Q8 have their derived
+  // tables flattened into the outer query, and group by the extract.
+  static final Plan.Query[] QUERYS = new Plan.Query[]{
+    new Plan.Query("SQL1",
+      "select l_returnflag, l_linestatus, sum(l_quantity) as sum_qty, sum(l_extendedprice) as sum_base_price,\n"+
+      "  sum(l_extendedprice * (1 - l_discount)) as sum_disc_price,\n"+
+      "  sum(l_extendedprice * (1 - l_discount) * (1 + l_tax)) as sum_charge,\n"+
+      "  avg(l_quantity) as avg_qty, avg(l_extendedprice) as avg_price, avg(l_discount) as avg_disc, count(*) as count_order\n"+
+      "from lineitem\n"+
+      "where l_shipdate <= date '1998-12-01' - interval '90' day (3)\n"+
+      "group by l_returnflag, l_linestatus\n"+
+      "order by l_returnflag, l_linestatus"),
+    new Plan.Query("SQL3",
+      "select l_orderkey, sum(l_extendedprice * (1 - l_discount)) as revenue, o_orderdate, o_shippriority\n"+
+      "from customer, orders, lineitem\n"+
+      "where c_mktsegment = 'BUILDING' and c_custkey = o_custkey and l_orderkey = o_orderkey\n"+
+      "  and o_orderdate < date '1995-03-15' and l_shipdate > date '1995-03-15'\n"+
+      "group by l_orderkey, o_orderdate, o_shippriority\n"+
+      "order by revenue desc, o_orderdate\n"+
+      "limit 10"),
+    new Plan.Query("SQL5",
+      "select n_name, sum(l_extendedprice * (1 - l_discount)) as revenue\n"+
+      "from customer, orders, lineitem, supplier, nation, region\n"+
+      "where c_custkey = o_custkey and l_orderkey = o_orderkey and l_suppkey = s_suppkey\n"+
+      "  and c_nationkey = s_nationkey and s_nationkey = n_nationkey and n_regionkey = r_regionkey\n"+
+      "  and r_name = 'ASIA' and o_orderdate >= date '1994-01-01' and o_orderdate < date '1994-01-01' + interval '1' year\n"+
+      "group by n_name\n"+
+      "order by revenue desc"),
+    new Plan.Query("SQL6",
+      "select sum(l_extendedprice * l_discount) as revenue\n"+
+      "from lineitem\n"+
+      "where l_shipdate >= date '1994-01-01' and l_shipdate < date '1994-01-01' + interval '1' year\n"+
+      "  and l_discount between 0.05 and 0.07 and l_quantity < 24"),
+    new Plan.Query("SQL7",
+      "select n1.n_name as supp_nation, n2.n_name as cust_nation, extract(year from l_shipdate) as l_year,\n"+
+      "  sum(l_extendedprice * (1 - l_discount)) as revenue\n"+
+      "from supplier, lineitem, orders, customer, nation n1, nation n2\n"+
+      "where s_suppkey = l_suppkey and o_orderkey = l_orderkey and c_custkey = o_custkey\n"+
+      "  and s_nationkey = n1.n_nationkey and c_nationkey = n2.n_nationkey\n"+
+      "  and ((n1.n_name = 'FRANCE' and n2.n_name = 'GERMANY') or (n1.n_name = 'GERMANY' and n2.n_name = 'FRANCE'))\n"+
+      "  and l_shipdate between date '1995-01-01' and date '1996-12-31'\n"+
+      "group by n1.n_name, n2.n_name, extract(year from l_shipdate)\n"+
+      "order by supp_nation, cust_nation, l_year"),
+    new Plan.Query("SQL8",
+      "select extract(year from o_orderdate) as o_year,\n"+
+      "  sum(case when n2.n_name = 'GERMANY' then l_extendedprice * (1 - l_discount) else 0 end)\n"+
+      "    / sum(l_extendedprice * (1 - l_discount)) as mkt_share\n"+
+      "from part, supplier, lineitem, orders, customer, nation n1, nation n2, region\n"+
+      "where p_partkey = l_partkey and s_suppkey = l_suppkey and l_orderkey = o_orderkey and o_custkey = c_custkey\n"+
+      "  and c_nationkey = n1.n_nationkey and n1.n_regionkey = r_regionkey and r_name = 'EUROPE'\n"+
+      "  and s_nationkey = n2.n_nationkey\n"+
+      "  and o_orderdate between date '1995-01-01' and date '1996-12-31'\n"+
+      "  and p_type = 'ECONOMY ANODIZED STEEL'\n"+
+      "group by extract(year from o_orderdate)\n"+
+      "order by o_year"),
+  };
+
   // Wrapper around a TPCH table
   public static class Table {
     final String _name;         // Base file name, table name
@@ -173,6 +370,12 @@ public class SQL {
     private Frame loadData() {
       try {
         String fname = "c:/Users/cliffc/Desktop/raicode/packages/DelveBenchmarks/src/TPCH/data/"+SCALE_FACTOR+"/"+_name+".tbl";
+        // No dbgen output on disk: generate the table in memory instead
+        if( !new java.io.File(fname).exists() ) {
+          Frame fr = TPCHGen.gen(_name,scale(),kept());
+          FSIZE += fr.byteSize();
+          return fr;
+        }
         NFSFileVec nfs = NFSFileVec.make(fname);      
         NSIZE += nfs.length();
         Key<?>[] keys = new Key[]{nfs._key};
@@ -200,6 +403,14 @@ public class SQL {
       }
     }
 
+    // Headers, minus the skipped columns
+    private String[] kept() {
+      if( _skipped_columns==null ) return _headers;
+      java.util.List<String> hs = new java.util.ArrayList<>(java.util.Arrays.asList(_headers));
+      hs.removeAll(java.util.Arrays.asList(_skipped_columns));
+      return hs.toArray(new String[0]);
+    }
+
     // Any generic TPCH cleanup
     Frame init(Frame fr) {
       //System.out.println(fr);
@@ -216,39 +427,20 @@ public class SQL {
     }
   }
   
+  // Table by name, or null
+  public static Table table( String name ) {
+    for( Table t : TABLES )
+      if( t._name.equals(name) )
+        return t;
+    return null;
+  }
+
   // Make a new small-vector key, suitable for small Frame/Vec returns.
   public static Key<Vec> vkey() { return Vec.VectorGroup.VG_LEN1.addVec(); }
 
-  // Copy the first cols of cs into ncs for this row.
-  // Pretty sure this exists in H2O, just missing it.
-  public static void copyRow(Chunk[] cs, NewChunk[] ncs, int row) {
-    BufferedString bStr = new BufferedString();
-    for( int i=0; i<ncs.length; i++ ) {
-      if( cs[i].isNA(row)) ncs[i].addNA();
-      else if( cs[i] instanceof CStrChunk ) ncs[i].addStr(cs[i].atStr(bStr,row));
-      else ncs[i].addNum(cs[i].atd(row));
-    }
-  }
-
-  // Wrapper for JOIN.  Columns with matching names become the join key.
+  // Inner JOIN.  Columns with matching names become the join key.
   // Does not delete either Frame.
-  public static Frame join( Frame lhs, Frame rhs ) {
-    // Wrap the Rapids.ASTMerge code.
-    AstRoot<?> ast_lhs = new AstFrame(lhs);
-    AstRoot<?> ast_rhs = new AstFrame(rhs);
-    AstRoot<?> ast_all_left = new AstNum(0); // boolean, exclude LHS if no match in RHS
-    AstRoot<?> ast_all_rite = new AstNum(0); // boolean, exclude RHS if no match in LHS
-    AstRoot<?> ast_by_left = new AstNumList(); // Auto-pick matching columns
-    AstRoot<?> ast_by_rite = new AstNumList(); // Auto-pick matching columns
-    AstRoot<?> ast_method = new AstStr("auto"); // Auto-pick method
-
-    Env env = new Env(new Session());
-    Env.StackHelp stk = env.stk();
-
-    //System.out.println(fr);
-    //System.out.println(fr.toTwoDimTable(0,10,true));
-    return new AstMerge().apply(env,stk,new AstRoot[]{null,ast_lhs,ast_rhs,ast_all_left,ast_all_rite,ast_by_left,ast_by_rite,ast_method}).getFrame();
-  }
+  public static Frame join( Frame lhs, Frame rhs ) { return HashJoin.join(lhs,rhs,HashJoin.INNER); }
 
   // Repack a sparse frame.  Deletes old frame & returns a new one with the same key
   public static Frame compact( Frame fr ) {
@@ -267,33 +459,56 @@ public class SQL {
     return rez;
   }
 
-  // Filter by before/after date.
+  // Filter by before/after date.  Returns the selected rows; see Sel.gather.
   public static class FilterDate extends MRTask<FilterDate> {
     final int _datex;
     final long _lo, _hi;
+    transient Batch.Zone _zone;
+    Sel _sel;
     FilterDate(int datex, long lo_date, long hi_date) { _datex=datex; _lo = lo_date; _hi = hi_date; }
-    @Override public void map( Chunk[] cs, NewChunk[] ncs ) {
+    @Override protected void setupLocal() { _zone = new Batch.Zone(_fr.vec(_datex)); _sel = new Sel(_fr.anyVec().nChunks()); }
+    @Override public void map( Chunk[] cs ) {
       Chunk dates = cs[_datex];
-      // The Main Hot Loop
-      for( int i=0; i<dates._len; i++ ) {
-        long date = dates.at8(i);
-        if( _lo <= date && date < _hi )
-          SQL.copyRow(cs,ncs,i);
+      int cidx = dates.cidx(), len = dates._len;
+      int zone = _zone.test(cidx,_lo,_hi);
+      if( zone==Batch.NONE ) return; // Skip the whole chunk
+      if( zone==Batch.ALL ) { _sel.all(cidx,len); return; }
+      long[] ds = new long[Batch.BATCH];
+      int [] sel= new int [Batch.BATCH];
+      int [] rows=new int [len];
+      int n=0;
+      // The Main Hot Loop: select a batch of dates, then record the survivors
+      for( int b=0; b<len; b+=Batch.BATCH ) {
+        int e = Math.min(b+Batch.BATCH,len);
+        int k = Batch.range(dates.getLongs(ds,b,e,Batch.NA),e-b,_lo,_hi,sel);
+        for( int j=0; j<k; j++ )
+          rows[n++] = b+sel[j];
       }
+      _sel.set(cidx,rows,n);
     }
+    @Override public void reduce( FilterDate fd ) { _sel.reduce(fd._sel); }
   }
 
-  // Filter int column by exact match
+  // Filter int column by exact match.  Returns the selected rows.
   static class FilterCol extends MRTask<FilterCol> {
     final int _colx, _e;
+    Sel _sel;
     FilterCol(int colx, int e) { _colx = colx; _e = e; }
-    @Override public void map( Chunk[] cs, NewChunk[] ncs ) {
+    @Override protected void setupLocal() { _sel = new Sel(_fr.anyVec().nChunks()); }
+    @Override public void map( Chunk[] cs ) {
       Chunk datas = cs[_colx];
+      int len = datas._len;
+      int[] vals = datas.getIntegers(new int[len],0,len,_e-1);
+      int[] rows = new int[len];
+      int n=0;
       // The Main Hot Loop
-      for( int i=0; i<datas._len; i++ )
-        if( datas.at8(i) == _e )
-          SQL.copyRow(cs,ncs,i);
+      for( int i=0; i<len; i++ ) {
+        rows[n] = i;
+        n += vals[i]==_e ? 1 : 0;
+      }
+      _sel.set(datas.cidx(),rows,n);
     }
+    @Override public void reduce( FilterCol fc ) { _sel.reduce(fc._sel); }
   }
 
   static String histo( Frame fr, String name ) {
@@ -0,0 +1,102 @@
+package org.cliffc.sql;
+
+import water.*;
+import water.fvec.*;
+import java.util.Arrays;
+
+/**
+ * A row selection: per-chunk lists of selected row offsets.  Filters return
+ * a Sel instead of copying every column of every matching row, and columns
+ * are materialized only when needed, and only for the selected rows.
+ *
+ * Filters build a Sel in setupLocal (shared by all the maps on a node), set
+ * one chunk's rows per map, and reduce across nodes.
+ *
+ * <pre>
+ *   Sel sel = new SQL.FilterDate(lines.find("shipdate"),lo,hi).doAll(lines)._sel;
+ *   Frame fr = sel.gather(lines.subframe(new String[]{"orderkey","extendedprice"}));
+ * </pre>
+ */
+public class Sel extends Iced<Sel> {
+  // Selected offsets per chunk, in increasing order; null for no rows
+  int[][] _rows;
+
+  Sel( int nchunks ) { _rows = new int[nchunks][]; }
+
+  // Set the first n selected rows of this chunk
+  void set( int cidx, int[] rows, int n ) {
+    _rows[cidx] = n==0 ? null : (n==rows.length ? rows : Arrays.copyOf(rows,n));
+  }
+  // Select every row of this chunk
+  void all( int cidx, int len ) {
+    int[] rows = new int[len];
+    _rows[cidx] = len==0 ? null : rows;
+    for( int i=0; i<len; i++ ) rows[i] = i;
+  }
+  // Merge results from another node; local maps share the same arrays
+  void reduce( Sel sel ) {
+    if( _rows == sel._rows ) return;
+    for( int i=0; i<_rows.length; i++ )
+      if( sel._rows[i] != null )
+        _rows[i] = sel._rows[i];
+  }
+
+  /** Selected rows of a chunk, or null for none */
+  public int[] rows( int cidx ) { return _rows[cidx]; }
+
+  /** Count of selected rows */
+  public long size() {
+    long n=0;
+    for( int[] rows : _rows ) if( rows != null ) n += rows.length;
+    return n;
+  }
+
+  /** Materialize the selected rows of all the columns of fr, which must have
+   *  the chunk layout of the filtered Frame.  Use a subframe to pick columns.
+   *  The result has the same chunk layout, with small or empty chunks; see
+   *  SQL.compact. */
+  public Frame gather( Frame fr ) {
+    if( H2O.CLOUD.size()==1 )   // No remote nodes: nothing to ship
+      return new Gather(this,null).doAll(fr.types(),fr).outputFrame(fr.names(),fr.domains());
+    // Ship each node just the rows of its own chunks: one slice per node, in
+    // a Key homed there, instead of all the rows in the task to every node.
+    H2ONode[] nodes = H2O.CLOUD.members();
+    Sel[] parts = new Sel[nodes.length];
+    Vec vec = fr.anyVec();
+    for( int c=0; c<_rows.length; c++ ) {
+      if( _rows[c]==null ) continue;
+      int n = Arrays.binarySearch(nodes,vec.chunkKey(c).home_node());
+      if( parts[n]==null ) parts[n] = new Sel(_rows.length);
+      parts[n]._rows[c] = _rows[c];
+    }
+    Key[] keys = new Key[nodes.length];
+    Futures fs = new Futures();
+    for( int n=0; n<nodes.length; n++ )
+      if( parts[n]!=null ) DKV.put(keys[n] = Key.make(nodes[n]),parts[n],fs,true);
+    fs.blockForPending();
+    try {
+      return new Gather(null,keys).doAll(fr.types(),fr).outputFrame(fr.names(),fr.domains());
+    } finally {
+      for( Key k : keys ) if( k!=null ) DKV.remove(k,fs);
+      fs.blockForPending();
+    }
+  }
+
+  private static class Gather extends MRTask<Gather> {
+    transient Sel _sel;
+    final Key[] _keys;          // Per-node slices, or null for a local Sel
+    Gather( Sel sel, Key[] keys ) { _sel = sel; _keys = keys; }
+    @Override protected void setupLocal() {
+      if( _keys==null ) return;
+      for( Key k : _keys )      // This node's slice, if it has any rows
+        if( k!=null && k.home() ) _sel = DKV.getGet(k);
+    }
+    @Override public void map( Chunk[] cs, NewChunk[] ncs ) {
+      if( _sel == null ) return;
+      int[] rows = _sel._rows[cs[0].cidx()];
+      if( rows == null ) return;
+      for( int i=0; i<cs.length; i++ )
+        cs[i].extractRows(ncs[i],rows);
+    }
+  }
+}
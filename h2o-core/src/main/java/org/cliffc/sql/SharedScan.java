@@ -0,0 +1,174 @@
+package org.cliffc.sql;
+
+import water.*;
+import water.fvec.*;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Shared scan: runs many MRTasks over one big table in a single pass.
+ *
+ * Each query's task is a member.  It runs on any subframe of the shared
+ * frame, and is set up, mapped and reduced the same way a plain doAll would
+ * do it: setupLocal once per node; then, per chunk, a fresh clone mapped
+ * over the chunk's columns of its subframe; then the clones are reduced
+ * pairwise.  The shared frame's chunks are loaded once per pass for all
+ * members, not once per query.  postGlobal is not run.
+ *
+ * Queries submitted from concurrent threads with scan() are batched: while a
+ * pass over a frame is running, newly submitted tasks queue up, and all of
+ * them go in the next pass.  With no concurrent queries, scan() is a plain
+ * doAll with one member.
+ *
+ * <pre>
+ *   Revenue r = SharedScan.scan(SQL.LINEITEM.frame(),lines1,new Revenue(okeys));
+ * </pre>
+ */
+public class SharedScan extends MRTask<SharedScan> {
+  static final boolean PRINT_TIMING = false;
+
+  final MRTask[] _members;      // Member tasks; node-local copies are set up in place
+  final String[][] _names;      // Member subframe column names
+  final int[][] _cols;          // Member subframe columns, in the shared frame
+  MRTask[] _outs;               // Per-chunk member clones, reduced
+
+  SharedScan( MRTask[] members, String[][] names, int[][] cols ) { _members = members; _names = names; _cols = cols; }
+
+  // setupLocal is protected; call each member's own, just as doAll would.
+  private static final Method SETUP_LOCAL;
+  static {
+    try { SETUP_LOCAL = MRTask.class.getDeclaredMethod("setupLocal"); SETUP_LOCAL.setAccessible(true); }
+    catch( NoSuchMethodException e ) { throw new RuntimeException(e); }
+  }
+
+  @Override protected void setupLocal() {
+    for( int i=0; i<_members.length; i++ ) {
+      Vec[] vecs = new Vec[_cols[i].length];
+      for( int j=0; j<vecs.length; j++ ) vecs[j] = _fr.vec(_cols[i][j]);
+      _members[i]._fr = new Frame(_names[i],vecs);
+      try { SETUP_LOCAL.invoke(_members[i]); }
+      catch( Exception e ) { throw new RuntimeException(e); }
+    }
+  }
+
+  @Override public void map( Chunk[] cs ) {
+    _outs = new MRTask[_members.length];
+    for( int i=0; i<_members.length; i++ ) {
+      MRTask t = _outs[i] = (MRTask)_members[i].clone();
+      int[] cols = _cols[i];
+      Chunk[] mcs = new Chunk[cols.length];
+      for( int j=0; j<cols.length; j++ ) mcs[j] = cs[cols[j]];
+      // Same dispatch as MRTask
+      if( mcs.length==1 ) t.map(mcs[0]);
+      else if( mcs.length==2 ) t.map(mcs[0],mcs[1]);
+      else if( mcs.length==3 ) t.map(mcs[0],mcs[1],mcs[2]);
+      t.map(mcs);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override public void reduce( SharedScan ss ) {
+    if( _outs == null ) { _outs = ss._outs; return; }
+    if( ss._outs == null ) return;
+    for( int i=0; i<_outs.length; i++ )
+      _outs[i].reduce(ss._outs[i]);
+  }
+
+  /** Run all members in one pass over fr; returns the reduced members */
+  public static MRTask[] run( Frame fr, MRTask[] members, Frame[] subs ) {
+    long t0 = System.currentTimeMillis();
+    String[][] names = new String[members.length][];
+    int[][] cols = new int[members.length][];
+    // Scan only the union of the members' columns
+    int[] map = new int[fr.numCols()];
+    Arrays.fill(map,-1);
+    Frame scan = new Frame();
+    for( int i=0; i<members.length; i++ ) {
+      Frame sub = subs[i]==null ? fr : subs[i];
+      names[i] = sub.names();
+      cols[i] = new int[sub.numCols()];
+      for( int j=0; j<cols[i].length; j++ ) {
+        int x = fr.find(sub.vec(j));
+        if( x == -1 ) throw new IllegalArgumentException("Column "+sub.name(j)+" is not in the shared frame");
+        if( map[x] == -1 ) { map[x] = scan.numCols(); scan.add(fr.name(x),fr.vec(x)); }
+        cols[i][j] = map[x];
+      }
+    }
+    MRTask[] outs = new SharedScan(members,names,cols).doAll(scan)._outs;
+    if( outs == null ) outs = members; // No chunks, nothing mapped
+    if( PRINT_TIMING ) System.out.println("Shared scan of "+members.length+" tasks in "+(System.currentTimeMillis()-t0)+" msec");
+    return outs;
+  }
+
+  /** Run task over sub, a subframe of fr, sharing the pass over fr with any
+   *  concurrently submitted tasks.  Blocks until done; returns the reduced
+   *  task, which is not the passed-in task. */
+  @SuppressWarnings("unchecked")
+  public static <T extends MRTask<T>> T scan( Frame fr, Frame sub, T task ) {
+    // Batches are found by frame key; a keyless frame runs alone
+    if( fr._key == null ) return (T)run(fr,new MRTask[]{task},new Frame[]{sub})[0];
+    Scans scans;
+    Batch b;
+    int idx;
+    synchronized( SCANS ) {     // Under SCANS, so the entry is not dropped meanwhile
+      scans = SCANS.get(fr._key);
+      if( scans == null ) SCANS.put(fr._key,scans = new Scans());
+      synchronized( scans ) {
+        if( scans._next == null ) scans._next = new Batch(fr);
+        b = scans._next;
+        idx = b._tasks.size();
+        b._tasks.add(task);
+        b._subs.add(sub);
+      }
+    }
+    // Run pending batches, unless a pass is already running; its runner
+    // picks up our batch when done.
+    while( true ) {
+      Batch r;
+      synchronized( scans ) {
+        if( scans._running || scans._next == null ) break;
+        r = scans._next;
+        scans._next = null;
+        scans._running = true;
+      }
+      try { r.run(); }
+      finally { synchronized( scans ) { scans._running = false; } }
+    }
+    // Drop an idle entry, so temporary and deleted frames do not pile up
+    synchronized( SCANS ) {
+      synchronized( scans ) {
+        if( !scans._running && scans._next == null ) SCANS.remove(fr._key,scans);
+      }
+    }
+    return (T)b.get(idx);
+  }
+
+  // Per shared frame: a pass is running, and the batch queued for the next
+  private static class Scans { boolean _running; Batch _next; }
+  private static final HashMap<Key,Scans> SCANS = new HashMap<>();
+
+  // Tasks for one pass
+  private static class Batch {
+    final Frame _fr;
+    final ArrayList<MRTask> _tasks = new ArrayList<>();
+    final ArrayList<Frame> _subs = new ArrayList<>();
+    MRTask[] _outs;
+    RuntimeException _ex;
+    Batch( Frame fr ) { _fr = fr; }
+    void run() {
+      MRTask[] outs = null;
+      RuntimeException ex = null;
+      try { outs = SharedScan.run(_fr,_tasks.toArray(new MRTask[0]),_subs.toArray(new Frame[0])); }
+      catch( RuntimeException e ) { ex = e; }
+      synchronized( this ) { _outs = outs; _ex = ex; notifyAll(); }
+    }
+    synchronized MRTask get( int idx ) {
+      while( _outs == null && _ex == null )
+        try { wait(); } catch( InterruptedException ignore ) { }
+      if( _ex != null ) throw _ex;
+      return _outs[idx];
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package org.cliffc.sql;
+
+import water.*;
+import water.fvec.*;
+import water.fvec.persist.FramePersist;
+import water.fvec.persist.PersistUtils;
+import water.util.FileUtils;
+
+/**
+ * Binary snapshots of loaded tables and prebuilt indexes, for fast startup.
+ *
+ * Frames go through FramePersist: the compressed Chunks are written as-is,
+ * one file per chunk index per node, plus a meta file with the names,
+ * domains and row layout.  Restoring reads the Chunk bytes straight back
+ * into the DKV; there is no parse, no type guessing and no re-compression,
+ * and any post-parse folding (renames, domains, added columns) is kept.
+ * Any Iced index (dense-id maps, CSRs) is one AutoBuffer file.
+ *
+ * A snapshot is tied to the cluster size it was written with; a restore on
+ * a different size fails.  Delete the directory to rebuild.
+ *
+ * <pre>
+ *   if( Snapshot.has(dir) ) PERSON = Snapshot.load(dir,"Person");
+ *   else { PERSON = build(); Snapshot.save(dir,PERSON); Snapshot.done(dir); }
+ * </pre>
+ */
+public abstract class Snapshot {
+  static final boolean PRINT_TIMING = false;
+
+  /** Default snapshot directory for a benchmark and scale factor */
+  public static String dir( String bench, String sf ) {
+    return System.getProperty("h2osql.snapshot",System.getProperty("java.io.tmpdir")+"/h2osql")+"/"+bench+"-"+sf;
+  }
+
+  /** True if a complete snapshot is in dir */
+  public static boolean has( String dir ) {
+    return PersistUtils.exists(FileUtils.getURI(dir+"/"+DONE));
+  }
+
+  /** Mark the snapshot in dir complete; written last, so a partially
+   *  written snapshot is never restored */
+  public static void done( String dir ) {
+    PersistUtils.write(FileUtils.getURI(dir+"/"+DONE),ab -> ab.put4(0));
+  }
+  private static final String DONE = "snapshot.done";
+
+  /** Save frames, each under its key */
+  public static void save( String dir, Frame... frs ) {
+    long t0 = System.currentTimeMillis();
+    for( Frame fr : frs )
+      new FramePersist(fr).saveToAndWait(dir,true);
+    if( PRINT_TIMING ) System.out.println("Snapshot saved "+frs.length+" frames in "+(System.currentTimeMillis()-t0)+" msec");
+  }
+
+  /** Restore a frame saved by its name, as key name+".hex" */
+  public static Frame load( String dir, String name ) {
+    return FramePersist.loadFrom(Key.make(name+".hex"),dir).get();
+  }
+
+  /** Save an Iced index */
+  public static void put( String dir, String name, Freezable f ) {
+    PersistUtils.write(FileUtils.getURI(dir+"/"+name+".idx"),ab -> ab.put(f));
+  }
+
+  /** Restore an Iced index */
+  public static <T extends Freezable> T get( String dir, String name ) {
+    return PersistUtils.read(FileUtils.getURI(dir+"/"+name+".idx"),ab -> ab.get());
+  }
+}
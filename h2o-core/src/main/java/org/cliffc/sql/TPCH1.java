@@ -51,7 +51,7 @@ public class TPCH1 implements SQL.TPCH {
   @Override public Frame run() {
     // Compute Big Data rollups
     Frame lineitem = SQL.LINEITEM.frame();
-    GrpBySums q1 = new GrpBySums().doAll(lineitem);
+    GrpBySums q1 = SharedScan.scan(lineitem,lineitem,new GrpBySums());
   
     // Trim out missing counts; count rows to keep
     int nrows=0;
@@ -85,6 +85,8 @@ public class TPCH1 implements SQL.TPCH {
     double[/*rflg*/][/*lsts*/] sum_disc_price;
     double[/*rflg*/][/*lsts*/] sum_charge;
     double[/*rflg*/][/*lsts*/] sum_disc;
+    transient Batch.Zone _zone;
+    @Override protected void setupLocal() { _zone = new Batch.Zone(_fr.vec(SQL.LINEITEM.colnum("shipdate"))); }
     
     // Bunch of sums, grouped-by linestatus and returnflag
     @Override public void map( Chunk[] cs ) {
@@ -106,24 +108,57 @@ public class TPCH1 implements SQL.TPCH {
       sum_charge     = new double[max_ret][max_lst];
       sum_disc       = new double[max_ret][max_lst];
   
+      // Flat group arrays, indexed by rflg*max_lst+lsts
+      int ngrps = max_ret*max_lst;
+      int   [] cnt = new int   [ngrps], sqty = new int   [ngrps];
+      double[] sbp = new double[ngrps], sdp  = new double[ngrps];
+      double[] sch = new double[ngrps], sdsc = new double[ngrps];
+      // Batch decode buffers and selection vector
+      long  [] dates = new long  [Batch.BATCH];
+      double[] discs = new double[Batch.BATCH];
+      double[] eprcs = new double[Batch.BATCH];
+      double[] taxes = new double[Batch.BATCH];
+      int   [] lstss = new int   [Batch.BATCH];
+      int   [] qtys  = new int   [Batch.BATCH];
+      int   [] rflgs = new int   [Batch.BATCH];
+      int   [] sel   = new int   [Batch.BATCH];
+
       // The Main Hot Loop
-      for( int i=0; i<cs[0]._len; i++ ) {
-        long   date =      shipdate     .at8(i);
-        if( date >= last_date ) continue; // Filter by date
-        double disc =      discount     .atd(i);
-        double eprc =      extendedprice.atd(i);
-        int    lsts = (int)linestatus   .at8(i);
-        int    qty  = (int)quantity     .at8(i);
-        int    rflg = (int)returnflag   .at8(i);
-        double tax  =      taxs         .atd(i);
-  
-        cnts          [rflg][lsts] += 1;
-        sum_qty       [rflg][lsts] += qty;
-        sum_base_price[rflg][lsts] += eprc;
-        sum_disc_price[rflg][lsts] += eprc*(1-disc);
-        sum_charge    [rflg][lsts] += eprc*(1-disc)*(1+tax);
-        sum_disc      [rflg][lsts] += disc;
+      int zone = _zone.test(shipdate.cidx(),Double.NEGATIVE_INFINITY,last_date);
+      int len = zone==Batch.NONE ? 0 : cs[0]._len; // Skip the whole chunk
+      for( int b=0; b<len; b+=Batch.BATCH ) {
+        int e = Math.min(b+Batch.BATCH,len);
+        int n = zone==Batch.ALL ? Batch.all(e-b,sel)  // Filter by date
+          : Batch.range(shipdate.getLongs(dates,b,e,Batch.NA),e-b,Batch.NA+1,last_date,sel);
+        if( n==0 ) continue;
+        discount     .getDoubles (discs,b,e);
+        extendedprice.getDoubles (eprcs,b,e);
+        taxs         .getDoubles (taxes,b,e);
+        linestatus   .getIntegers(lstss,b,e,0);
+        quantity     .getIntegers(qtys ,b,e,0);
+        returnflag   .getIntegers(rflgs,b,e,0);
+        for( int j=0; j<n; j++ ) {
+          int i = sel[j];
+          int g = rflgs[i]*max_lst+lstss[i];
+          double disc = discs[i], eprc = eprcs[i];
+          cnt [g] += 1;
+          sqty[g] += qtys[i];
+          sbp [g] += eprc;
+          sdp [g] += eprc*(1-disc);
+          sch [g] += eprc*(1-disc)*(1+taxes[i]);
+          sdsc[g] += disc;
+        }
       }
+      for( int r=0; r<max_ret; r++ )
+        for( int l=0; l<max_lst; l++ ) {
+          int g = r*max_lst+l;
+          cnts          [r][l] = cnt [g];
+          sum_qty       [r][l] = sqty[g];
+          sum_base_price[r][l] = sbp [g];
+          sum_disc_price[r][l] = sdp [g];
+          sum_charge    [r][l] = sch [g];
+          sum_disc      [r][l] = sdsc[g];
+        }
     }
     // ADD together all results
     @Override public void reduce( GrpBySums q ) {
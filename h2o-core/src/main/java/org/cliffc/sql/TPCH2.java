@@ -3,7 +3,6 @@ package org.cliffc.sql;
 import water.MRTask;
 import water.fvec.*;
 import water.util.ArrayUtils;
-import water.rapids.Merge;
 import water.nbhm.NonBlockingHashMapLong;
 
 import java.util.BitSet;
@@ -92,6 +91,7 @@ public class TPCH2 implements SQL.TPCH {
   static final int SIZE=15;
   static final String TYPE="BRASS";
   static final String REGION="EUROPE";
+  static final int LIMIT=100;
 
   static final String[] PARTCOLS = new String[]{"partkey", "mfgr",    "type",    "size"};
   static final int                               PARTIDX=0 ,MFGRIDX=1, TYPEIDX=2, SIZEIDX=3;
@@ -123,7 +123,7 @@ public class TPCH2 implements SQL.TPCH {
     // - hash/join N_R + SUPPLIER on nationkey; card==20k; result is set of suppkeys.
     Frame supplier = SQL.SUPPLIER.frame();
     Vec s_n_name = supplier.vec("n_name");
-    NonBlockingHashMapLong suppkeys = new NRS(nationkeys).doAll(s_n_name)._suppkeys;
+    Dist.LSet suppkeys = new NRS(nationkeys).doAll(s_n_name)._suppkeys;
     if( PRINT_TIMING ) { long t=System.currentTimeMillis(); System.out.println("NRS#"+(suppkeys.size())+", "+(t-t0)+" msec"); t0=t; }
 
     // Compute the categoricals containing TYPE
@@ -135,7 +135,7 @@ public class TPCH2 implements SQL.TPCH {
     
     // - Filter PART by SIZE & TYPE; card=2k; result is a set of partkeys
     // Filter out unexciting part columns; keep whats needed the query.
-    NonBlockingHashMapLong partkeys = new FilterPart2(is_type).doAll(part.vec("type"),part.vec("size"))._partkeys;
+    Dist.LSet partkeys = new FilterPart2(is_type).doAll(part.vec("type"),part.vec("size"))._partkeys;
     if( PRINT_TIMING ) { long t=System.currentTimeMillis(); System.out.println("PARTS#"+(partkeys.size())+", "+(t-t0)+" msec"); t0=t; }
 
     // - hash/join PARTSUPP + N_R_S on suppkey; filter by partkey also (reduces resulting map by 250x);
@@ -166,9 +166,9 @@ public class TPCH2 implements SQL.TPCH {
     }
     fr.add("partkey",Vec.makeVec(p_pkeys ,null             ,Vec.newKey()));
     fr.add("mfgr"   ,Vec.makeVec(p_mfgrs ,p_mfgr  .domain(),Vec.newKey()));
-    // Sort by acctbal
-    Frame rez = Merge.sort(fr,fr.find(new String[]{"acctbal",       "n_name",       "s_name",       "partkey"}),
-                                      new int[]   {Merge.DESCENDING,Merge.ASCENDING,Merge.ASCENDING,Merge.ASCENDING});
+    // Top 100 by acctbal
+    Frame rez = TopK.sort(fr,fr.find(new String[]{"acctbal","n_name","s_name","partkey"}),
+                                     new boolean[]{true,     false,   false,   false    },LIMIT);
     fr.delete();
     if( PRINT_TIMING ) { long t=System.currentTimeMillis(); System.out.println("Format#"+(rez.numRows())+", "+(t-t0)+" msec"); t0=t; }
     
@@ -177,40 +177,34 @@ public class TPCH2 implements SQL.TPCH {
 
   // Filter suppliers by nation.  Result is a set of suppliers.
   private static class NRS extends MRTask<NRS> {
-    transient NonBlockingHashMapLong _suppkeys;
+    Dist.LSet _suppkeys;
     final BitSet _nationkeys;
     NRS( BitSet nationkeys ) { _nationkeys = nationkeys; }
-    @Override protected void setupLocal() { _suppkeys = new NonBlockingHashMapLong(); }
+    @Override protected void setupLocal() { _suppkeys = new Dist.LSet(); }
     @Override public void map( Chunk n_names ) {
       long start = n_names.start();
       for( int i=0; i<n_names._len; i++ ) {
         int nationkey = (int)n_names.at8(i);
         if( _nationkeys.get(nationkey) )
-          _suppkeys.put(start+i+1/*(long)suppkeys.at8(i)*/,"");
+          _suppkeys.add(start+i+1/*(long)suppkeys.at8(i)*/);
       }
     }
-    @Override public void reduce( NRS bld ) {
-      if( _suppkeys != bld._suppkeys )
-        throw new RuntimeException("distributed reduce not implemented");
-    }
+    @Override public void reduce( NRS bld ) { _suppkeys.reduce(bld._suppkeys); }
   }
 
   // Filter PART by TYPE and SIZE.  Reduces dataset by ~50x.
   private static class FilterPart2 extends MRTask<FilterPart2> {
-    transient NonBlockingHashMapLong _partkeys;
+    Dist.LSet _partkeys;
     final boolean[] _is_type;
     FilterPart2(boolean[] is_type) { _is_type = is_type; }
-    @Override protected void setupLocal() { _partkeys = new NonBlockingHashMapLong(); }
+    @Override protected void setupLocal() { _partkeys = new Dist.LSet(); }
     @Override public void map( Chunk types, Chunk sizes ) {
       long start = types.start();
       for( int i=0; i<types._len; i++ )
         if( sizes.at8(i)==SIZE && _is_type[(int)types.at8(i)] )
-          _partkeys.put(start+i+1/*(long)partkeys.at8(i)*/,"");
-    }
-    @Override public void reduce( FilterPart2 bld ) {
-      if( _partkeys != bld._partkeys )
-        throw new RuntimeException("distributed reduce not implemented");
+          _partkeys.add(start+i+1/*(long)partkeys.at8(i)*/);
     }
+    @Override public void reduce( FilterPart2 bld ) { _partkeys.reduce(bld._partkeys); }
   }
 
   // Walk PARTSUPP, filter by suppliers from the correct nations and by
@@ -219,9 +213,9 @@ public class TPCH2 implements SQL.TPCH {
   // Filtering by parts also reduces the result map by 250x.
   private static class MinCost2 extends MRTask<MinCost2> {
     transient NonBlockingHashMapLong<Long> _mins;
-    final NonBlockingHashMapLong _partkeys;
-    final NonBlockingHashMapLong _suppkeys;
-    MinCost2( NonBlockingHashMapLong partkeys, NonBlockingHashMapLong suppkeys ) { _partkeys=partkeys; _suppkeys=suppkeys; }
+    final Dist.LSet _partkeys;
+    final Dist.LSet _suppkeys;
+    MinCost2( Dist.LSet partkeys, Dist.LSet suppkeys ) { _partkeys=partkeys; _suppkeys=suppkeys; }
     @Override protected void setupLocal() { _mins = new NonBlockingHashMapLong<>(); }
     @Override public void map( Chunk[] cs ) {
       Chunk partkeys = cs[0];
@@ -231,7 +225,7 @@ public class TPCH2 implements SQL.TPCH {
       for( int i=0; i<suppkeys._len; i++ ) {
         long suppkey = suppkeys.at8(i);
         long partkey = partkeys.at8(i);
-        if( _partkeys.containsKey(partkey) && _suppkeys.containsKey(suppkey) ) {
+        if( _partkeys.contains(partkey) && _suppkeys.contains(suppkey) ) {
           double cost  = supcosts.atd(i);
           Long pack = _mins.get(partkey);
           if( pack==null || cost<pack2suppcost(pack) )
@@ -265,10 +259,14 @@ public class TPCH2 implements SQL.TPCH {
     P_PS( NonBlockingHashMapLong partkeys, NonBlockingHashMapLong suppkeys, NonBlockingHashMapLong<Double> mins ) {
       _partkeys=partkeys;  _suppkeys=suppkeys;  _mins=mins;
     }
-    @Override public void map( Chunk[] cs, NewChunk[] ncs ) {
+    Sel _sel;                   // Selected rows; see Sel.gather
+    @Override protected void setupLocal() { _sel = new Sel(_fr.anyVec().nChunks()); }
+    @Override public void map( Chunk[] cs ) {
       Chunk partkeys = cs[0];
       Chunk suppkeys = cs[1];
       Chunk supcosts = cs[2];
+      int[] rows = new int[partkeys._len];
+      int n=0;
       for( int i=0; i<partkeys._len; i++ ) {
         long partkey = partkeys.at8(i);
         long suppkey = suppkeys.at8(i);
@@ -276,10 +274,12 @@ public class TPCH2 implements SQL.TPCH {
           double cost = supcosts.atd(i);
           Double mincost = _mins.get(partkey);
           if( mincost!=null && mincost==cost )
-            SQL.copyRow(cs,ncs,i);
+            rows[n++] = i;
         }
       }
+      _sel.set(partkeys.cidx(),rows,n);
     }
+    @Override public void reduce( P_PS pps ) { _sel.reduce(pps._sel); }
   }
   
 }
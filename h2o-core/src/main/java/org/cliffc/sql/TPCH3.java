@@ -2,11 +2,8 @@ package org.cliffc.sql;
 
 import water.*;
 import water.fvec.*;
-import water.nbhm.NonBlockingHashMapLong;
-import water.nbhm.UtilUnsafe;
 import water.rapids.Merge;
 import water.rapids.ast.prims.mungers.AstGroup;
-import water.util.AtomicUtils;
 import water.util.ArrayUtils;
 
 import org.joda.time.DateTime;
@@ -81,6 +78,7 @@ public class TPCH3 implements SQL.TPCH {
   
   static final String SEGMENT = "BUILDING";
   static final long DATE = new DateTime("1995-03-15").getMillis();
+  static final int LIMIT = 10;
 
   @Override public Frame run() {
     long t0 = System.currentTimeMillis();
@@ -89,7 +87,7 @@ public class TPCH3 implements SQL.TPCH {
     Frame customers = SQL.CUSTOMER.frame(); // Filter by used columns
     Vec c_mkt = customers.vec("mktsegment");
     int seg = ArrayUtils.find(c_mkt.domain(),SEGMENT);
-    NonBlockingHashMapLong custs = new FilterCust(seg).doAll(c_mkt)._custs;
+    Dist.LSet custs = new FilterCust(seg).doAll(c_mkt)._custs;
     if( PRINT_TIMING ) { long t=System.currentTimeMillis(); System.out.println("CUST#"+(custs.size())+", "+(t-t0)+" msec"); t0=t; }
 
     // Filter ORDERS by DATE & matching customers, and return a set of orderkeys.
@@ -97,7 +95,7 @@ public class TPCH3 implements SQL.TPCH {
     Vec vshippriority = orders.vec("shippriority");
     assert vshippriority.isConst(); // TODO: optimize because constant column
     double shippriority = vshippriority.at(0);
-    NonBlockingHashMapLong orderkeys = new FilterOrders(custs).doAll(orders.vec("custkey"),orders.vec("orderdate"),orders.vec("orderkey"))._orderkeys;
+    Dist.LSet orderkeys = new FilterOrders(custs).doAll(orders.vec("custkey"),orders.vec("orderdate"),orders.vec("orderkey"))._orderkeys;
     if( PRINT_TIMING ) { long t=System.currentTimeMillis(); System.out.println("OKEYS#"+(orderkeys.size())+", "+(t-t0)+" msec"); t0=t; }
 
     // Filter LINEITEMs by DATE & matchinging orderkey; groupby orderkey &
@@ -108,24 +106,27 @@ public class TPCH3 implements SQL.TPCH {
     // TODO: use a tiny struct with orderkey,orderdate,revenue; that sorts on
     // rev; & hashes/equals on orderkey; & atomic-add revenue.
     // Hash okey & find/fill; atomic-add; convert to array; sort-by-rev; make a frame
-    NonBlockingHashMapLong<Row> revenues = new Revenue(orderkeys).doAll(lines1)._revenues;
+    Dist.LDMap revenues = SharedScan.scan(lines0,lines1,new Revenue(orderkeys))._revenues;
     if( PRINT_TIMING ) { long t=System.currentTimeMillis(); System.out.println("Revenus#"+(revenues.size())+", "+(t-t0)+" msec"); t0=t; }
 
-    // Formatting.  Copy to an array and sort.
-    int len = revenues.size();
-    Row[] rows = revenues.values().toArray(new Row[len]);
-    Arrays.sort(rows);
-    // Lookup orderdate on first 100 elements.
-    int len0 = Math.min(len,100);
-    double[] orderdates = new double[len0];
+    // Formatting.  Top LIMIT by revenue in a bounded heap; no full sort.
+    TopK.Heap heap = new TopK.Heap(LIMIT,new boolean[]{true});
+    for( long okey : revenues.keys() ) heap.add(okey,revenues.get(okey));
+    long[] tops = heap.sorted();
+    int len0 = tops.length;
+    // Lookup orderdate and revenue on just the top rows.
+    double[] okeys = new double[len0], revs = new double[len0], orderdates = new double[len0];
     Vec.Reader vodate = orders.vec("orderdate").new Reader();
     Vec.Reader vokey  = orders.vec("orderkey" ).new Reader();
-    for( int i=0; i<len0; i++ )
-      orderdates[i] = vodate.at(vokey.binsearch(rows[i]._orderkey));
+    for( int i=0; i<len0; i++ ) {
+      okeys[i] = tops[i];
+      revs [i] = revenues.get(tops[i]);
+      orderdates[i] = vodate.at(vokey.binsearch(tops[i]));
+    }
     
     Frame rez = new Frame();
-    rez.add("orderkey",Vec.makeVec(Row.okeys(rows,len0),Vec.newKey()));
-    rez.add("revenue" ,Vec.makeVec(Row. revs(rows,len0),Vec.newKey()));
+    rez.add("orderkey",Vec.makeVec(okeys,Vec.newKey()));
+    rez.add("revenue" ,Vec.makeVec(revs ,Vec.newKey()));
     rez.add("orderdate" ,Vec.makeTimeVec(orderdates,Vec.newKey()));
     rez.add("shippriority" ,Vec.makeCon(shippriority,len0));
     if( PRINT_TIMING ) { long t=System.currentTimeMillis(); System.out.println("Format#"+(rez.numRows())+", "+(t-t0)+" msec"); t0=t; }
@@ -135,93 +136,68 @@ public class TPCH3 implements SQL.TPCH {
 
   // Filter customers by segment; returns a set of customers.
   private static class FilterCust extends MRTask<FilterCust> {
-    transient NonBlockingHashMapLong _custs;
+    Dist.LSet _custs;
     final long _seg;
     FilterCust( long seg ) { _seg = seg; }
-    @Override protected void setupLocal() { _custs = new NonBlockingHashMapLong((int)_fr.numRows()); }
+    @Override protected void setupLocal() { _custs = new Dist.LSet((int)_fr.numRows()); }
     @Override public void map( Chunk segs ) {
       long start = segs.start();
       for( int i=0; i<segs._len; i++ ) {
         if( _seg == segs.at8(i) )
-          _custs.put(start+i+1/*(long)custkeys.at8(i)*/,"");
+          _custs.add(start+i+1/*(long)custkeys.at8(i)*/);
       }
     }
-    @Override public void reduce( FilterCust bld ) {
-      if( _custs != bld._custs )
-        throw new RuntimeException("distributed reduce not implemented");
-    }
+    @Override public void reduce( FilterCust bld ) { _custs.reduce(bld._custs); }
   }
 
   // Filter orders by SHIPPED_DATE & matching customer; return a set of orderkeys
   private static class FilterOrders extends MRTask<FilterOrders> {
-    transient NonBlockingHashMapLong _orderkeys;
-    final NonBlockingHashMapLong _custs;
-    FilterOrders( NonBlockingHashMapLong custs ) { _custs = custs; }
-    @Override protected void setupLocal() { _orderkeys = new NonBlockingHashMapLong((int)_fr.numRows()); }
+    Dist.LSet _orderkeys;
+    final Dist.LSet _custs;
+    final Bloom _bloom;         // Cheap pre-filter for _custs
+    transient Batch.Zone _zone;
+    FilterOrders( Dist.LSet custs ) { _custs = custs; _bloom = Bloom.make(custs); }
+    @Override protected void setupLocal() { _orderkeys = new Dist.LSet((int)_fr.numRows()); _zone = new Batch.Zone(_fr.vec(1)); }
     @Override public void map( Chunk custkeys, Chunk orderdates, Chunk orderkeys ) {
-      long start = custkeys.start();
+      if( _zone.test(orderdates.cidx(),Double.NEGATIVE_INFINITY,DATE)==Batch.NONE ) return;
       for( int i=0; i<custkeys._len; i++ ) {
+        long custkey = custkeys.at8(i);
         if( orderdates.at8(i) < DATE &&
-            _custs.containsKey(custkeys.at8(i)) )
-          _orderkeys.put(orderkeys.at8(i),"");
+            _bloom.maybe(custkey) &&
+            _custs.contains(custkey) )
+          _orderkeys.add(orderkeys.at8(i));
       }
     }
-    @Override public void reduce( FilterOrders bld ) {
-      if( _orderkeys != bld._orderkeys )
-        throw new RuntimeException("distributed reduce not implemented");
-    }
+    @Override public void reduce( FilterOrders bld ) { _orderkeys.reduce(bld._orderkeys); }
   }
 
   
-  private static class Row implements Comparable<Row> {
-    double _revenue;
-    final long _orderkey;
-    Row( long orderkey ) { _orderkey = orderkey; }
-    private static final long _rev_offset = UtilUnsafe.fieldOffset(Row.class,"_revenue");
-    void atomicAdd( double d ) { AtomicUtils.atomicAdd(this,_rev_offset,d); }
-    @Override public int compareTo(Row row) { return Double.compare(row._revenue,_revenue); }
-    @Override public String toString() { return "("+_orderkey+", "+_revenue+")"; }
-    static double[] revs(Row[] rows, int len) {
-      double[] ds = new double[len];
-      for( int i=0; i<len; i++ ) ds[i] = rows[i]._revenue;
-      return ds;
-    }
-    static double[] okeys(Row[] rows, int len) {
-      double[] ds = new double[len];
-      for( int i=0; i<len; i++ ) ds[i] = rows[i]._orderkey;
-      return ds;
-    }
-  }
-  
   private static class Revenue extends MRTask<Revenue> {
-    transient NonBlockingHashMapLong<Row> _revenues;
-    final NonBlockingHashMapLong _orderkeys;
-    Revenue( NonBlockingHashMapLong orderkeys ) { _orderkeys = orderkeys; }
-    @Override protected void setupLocal() { _revenues = new NonBlockingHashMapLong(); }
+    Dist.LDMap _revenues;       // orderkey->revenue, atomic adds
+    final Dist.LSet _orderkeys;
+    final Bloom _bloom;         // Cheap pre-filter for _orderkeys
+    transient Batch.Zone _zone, _okzone;
+    Revenue( Dist.LSet orderkeys ) { _orderkeys = orderkeys; _bloom = Bloom.make(orderkeys); }
+    @Override protected void setupLocal() { _revenues = new Dist.LDMap(_orderkeys.size()); _zone = new Batch.Zone(_fr.vec(1)); _okzone = new Batch.Zone(_fr.vec(0)); }
     @Override public void map( Chunk[] cs ) {
       Chunk orderkeys = cs[0];
       Chunk shipdates = cs[1];
+      if( _zone.test(shipdates.cidx(),DATE+1,Double.POSITIVE_INFINITY)==Batch.NONE ) return;
+      if( _bloom.skip(_okzone,orderkeys.cidx()) ) return; // No matching orderkeys in chunk
       Chunk exprices  = cs[2];
       Chunk discounts = cs[3];
       for( int i=0; i<orderkeys._len; i++ ) {
         long orderkey = orderkeys.at8(i);
         if( DATE < shipdates.at8(i) &&
-            _orderkeys.containsKey(orderkey) ) {
+            _bloom.maybe(orderkey) &&
+            _orderkeys.contains(orderkey) ) {
           // TODO: And here i should further groupby orderdate, except i think
           // there's a 1-to-1 from orderkey to date, so no need for another layer
-          Row row = _revenues.get(orderkey);
-          if( row==null ) {
-            _revenues.putIfAbsent(orderkey,new Row(orderkey));
-            row = _revenues.get(orderkey);
-          }
-          row._revenue += exprices.atd(i)*(1.0-discounts.atd(i));
+          _revenues.add(orderkey,exprices.atd(i)*(1.0-discounts.atd(i)));
         }
       }
     }
-    @Override public void reduce( Revenue bld ) {
-      if( _revenues != bld._revenues )
-        throw new RuntimeException("distributed reduce not implemented");
-    }
+    @Override public void reduce( Revenue bld ) { _revenues.reduce(bld._revenues); }
   }
   
 
@@ -241,21 +217,21 @@ public class TPCH3 implements SQL.TPCH {
     // Filter LINEITEM by date after, a 50% filter.
     Frame line0 = SQL.LINEITEM.frame(); // Filter by used columns
     Frame line1 = line0.subframe(new String[]{"orderkey","shipdate","extendedprice","discount"});
-    Frame line2 = new SQL.FilterDate(line1.find("shipdate"),DATE,Long.MAX_VALUE).doAll(line1.types(),line1).outputFrame(line1.names(),line1.domains());
-    Frame line3 = line2.subframe(new String[]{"orderkey","extendedprice","discount"}); // Drop shipdate after filter
+    Sel lsel = new SQL.FilterDate(line1.find("shipdate"),DATE,Long.MAX_VALUE).doAll(line1)._sel;
+    Frame line3 = lsel.gather(line1.subframe(new String[]{"orderkey","extendedprice","discount"})); // Never copy shipdate
 
     // Filter ORDERS by date before, a 50% filter.
     Frame ords0 = SQL.ORDERS.frame(); // Filter by used columns
     assert ords0.vec("shippriority").isConst(); // TODO: optimize because constant column
     Frame ords1 = ords0.subframe(new String[]{"custkey","orderdate","orderkey"});
-    Frame ords2 = new SQL.FilterDate(ords1.find("orderdate"),0,DATE).doAll(ords1.types(),ords1).outputFrame(ords1.names(),ords1.domains());
+    Frame ords2 = new SQL.FilterDate(ords1.find("orderdate"),0,DATE).doAll(ords1)._sel.gather(ords1);
 
     // Filter CUSTOMERS by SEGMENT, a 20% filter
     Frame custs0 = SQL.CUSTOMER.frame(); // Filter by used columns
     Frame custs1 = custs0.subframe(new String[]{"custkey","mktsegment"});
     int seg = ArrayUtils.find(custs1.vec("mktsegment").domain(),SEGMENT);
-    Frame custs2 = new SQL.FilterCol(custs1.find("mktsegment"),seg).doAll(custs1.types(),custs1).outputFrame(custs1.names(),custs1.domains());
-    Frame custs3 = custs2.subframe(new String[]{"custkey"});
+    Sel csel = new SQL.FilterCol(custs1.find("mktsegment"),seg).doAll(custs1)._sel;
+    Frame custs3 = csel.gather(custs1.subframe(new String[]{"custkey"})); // Never copy mktsegment
     long t_filter = System.currentTimeMillis();
     //System.out.print("filter "+(t_filter-t)+" msec, "); t=t_filter;
 
@@ -266,15 +242,13 @@ public class TPCH3 implements SQL.TPCH {
     
     // JOIN (customers and orders) and lineitems.  Takes ~80% of query time.
     // Reduces data by ~40x (SF 0.01, 39K rows -> 1K rows)
-    Frame cust_ords = SQL.join(ords2,custs3);
+    Frame cust_ords = HashJoin.join(ords2,custs3,HashJoin.SEMI); // Orders of the segment customers
     ords2.delete();
-    custs2.delete();
+    custs3.delete();
     Frame cust_ords2 = cust_ords.subframe(new String[]{"orderdate","orderkey"}); // Drop custkey after join
-    cust_ords2 = SQL.compact(cust_ords2);
     Frame line_cuds = SQL.join(cust_ords2,line3); // 1032 rows
     cust_ords.delete();
-    line2.delete();
-    line_cuds = SQL.compact(line_cuds);
+    line3.delete();
     long t_joins = System.currentTimeMillis();
     //System.out.print("joins "+(t_joins-t)+" msec, "); t=t_joins;
     
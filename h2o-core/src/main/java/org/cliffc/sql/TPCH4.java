@@ -1,7 +1,6 @@
 package org.cliffc.sql;
 
 import water.*;
-import water.nbhm.NonBlockingSetInt;
 import water.fvec.*;
 import water.rapids.Merge;
 import water.rapids.ast.prims.mungers.AstGroup;
@@ -59,7 +58,7 @@ public class TPCH4 implements SQL.TPCH {
     // Filter LINEITEMS by commit < receipt, a 50% filter, and keep the matching orderkeys
     Frame line0 = SQL.LINEITEM.frame(); // Filter by used columns
     Frame line1 = line0.subframe(new String[]{"orderkey","commitdate","receiptdate"});
-    NonBlockingSetInt ordkeys = new FilterLate().doAll(line1)._ordkeys;
+    Dist.ISet ordkeys = SharedScan.scan(line0,line1,new FilterLate())._ordkeys;
 
     // Filter ORDERS by date range and late ordkeys
     Frame ords0 = SQL.ORDERS.frame(); // Filter by used columns
@@ -79,8 +78,9 @@ public class TPCH4 implements SQL.TPCH {
 
   // Filter by date, then save matching orderkeys in a bitset
   public static class FilterLate extends MRTask<FilterLate> {
-    final NonBlockingSetInt _ordkeys = new NonBlockingSetInt();
+    Dist.ISet _ordkeys;
     //BitSet _ordkeys;
+    @Override protected void setupLocal() { _ordkeys = new Dist.ISet(); }
     @Override public void map( Chunk orderkeys, Chunk commits, Chunk receipts ) {
       // The Main Hot Loop
       //_ordkeys = new BitSet();
@@ -88,22 +88,21 @@ public class TPCH4 implements SQL.TPCH {
         if( commits.at8(i) < receipts.at8(i) )
           _ordkeys.add((int)orderkeys.at8(i));
     }
-    @Override public void reduce( FilterLate fl ) {
-      if( _ordkeys != fl._ordkeys )
-        //_ordkeys.or(fl._ordkeys);
-        throw new RuntimeException("distributed reduce not implemented");
-    }
+    @Override public void reduce( FilterLate fl ) { _ordkeys.reduce(fl._ordkeys); }
   }
 
   // Filter by orderkeys and by date range; group-by orderpriority and compute counts.
   public static class FilterKeysDate extends MRTask<FilterKeysDate> {
     final long _lo, _hi;
     //final BitSet _ordkeys;
-    final NonBlockingSetInt _ordkeys;
+    final Dist.ISet _ordkeys;
     double[] pr_cnts;
-    FilterKeysDate(long lo_date, long hi_date, NonBlockingSetInt ordkeys) { _lo = lo_date; _hi = hi_date; _ordkeys = ordkeys; }
+    transient Batch.Zone _zone;
+    FilterKeysDate(long lo_date, long hi_date, Dist.ISet ordkeys) { _lo = lo_date; _hi = hi_date; _ordkeys = ordkeys; }
+    @Override protected void setupLocal() { _zone = new Batch.Zone(_fr.vec(1)); }
     @Override public void map( Chunk ordkeys, Chunk dates, Chunk prioritys ) {
       pr_cnts = new double[prioritys.vec().cardinality()];
+      if( _zone.test(dates.cidx(),_lo,_hi)==Batch.NONE ) return; // Skip the whole chunk
       
       // The Main Hot Loop
       for( int i=0; i<dates._len; i++ ) {
@@ -2,9 +2,7 @@ package org.cliffc.sql;
 
 import water.*;
 import water.fvec.*;
-import water.rapids.Merge;
 import water.rapids.ast.prims.mungers.AstGroup;
-import water.nbhm.NonBlockingHashMapLong;
 import water.util.ArrayUtils;
 import water.util.VecUtils;
 
@@ -93,13 +91,13 @@ public class TPCH5 implements SQL.TPCH {
     // - hash/join NATION_REGION + CUSTOMER on nationkey; card==30k
     // Result is a map of custkeys->nationkeys
     Frame customer = SQL.CUSTOMER.frame();
-    NonBlockingHashMapLong<Integer> custkeys = new NRC(nationkeys).doAll(customer.vec("n_name"),customer.vec("custkey"))._custkeys;
+    Dist.LLMap custkeys = new NRC(nationkeys).doAll(customer.vec("n_name"),customer.vec("custkey"))._custkeys;
     if( PRINT_TIMING ) { long t=System.currentTimeMillis(); System.out.println("NRC#"+(custkeys.size())+", "+(t-t0)+" msec"); t0=t; }
 
     // - hash/join NATION_REGION_CUSTOMER + ORDERS on custkey; filter ORDERS by date; card==52k
     // Result is a map of orderkeys->nationkeys
     Frame orders = SQL.ORDERS.frame();
-    NonBlockingHashMapLong orderkeys = new NRCO(custkeys).doAll(orders.vec("custkey"),orders.vec("orderkey"),orders.vec("orderdate"))._orderkeys;
+    Dist.LLMap orderkeys = new NRCO(custkeys).doAll(orders.vec("custkey"),orders.vec("orderkey"),orders.vec("orderdate"))._orderkeys;
     if( PRINT_TIMING ) { long t=System.currentTimeMillis(); System.out.println("NRCO#"+(orderkeys.size())+", "+(t-t0)+" msec"); t0=t; }
 
     // - hash/join NATION_REGION_CUSTOMER_ORDERS + LINEITEM on orderkey; card==193k
@@ -110,7 +108,7 @@ public class TPCH5 implements SQL.TPCH {
     Vec s_nationkey = SQL.SUPPLIER.frame().vec("n_name");
     Frame lineitem = SQL.LINEITEM.frame();
     Frame lineitem2 = lineitem.subframe(new String[]{"orderkey","suppkey","extendedprice","discount"});
-    double[] revenues = new NRCOL(nationcard,s_nationkey,orderkeys).doAll(lineitem2)._revenues;
+    double[] revenues = SharedScan.scan(lineitem,lineitem2,new NRCOL(nationcard,s_nationkey,orderkeys))._revenues;
     if( PRINT_TIMING ) { long t=System.currentTimeMillis(); System.out.println("NRCOL#"+(revenues.length)+", "+(t-t0)+" msec"); t0=t; }
 
     // Format results
@@ -121,8 +119,8 @@ public class TPCH5 implements SQL.TPCH {
     rez0.add("n_name",vec);
     rez0.add("revenue",Vec.makeVec(revenues,Vec.newKey()));
 
-    Frame rez1 = Merge.sort(rez0,rez0.find(new String[]{"revenue"}),
-                                           new int[]   {Merge.DESCENDING});
+    Frame rez1 = TopK.sort(rez0,rez0.find(new String[]{"revenue"}),
+                                         new boolean[]{true},prs.length);
     rez0.delete();
     long t_format = System.currentTimeMillis();
     if( PRINT_TIMING ) { long t=System.currentTimeMillis(); System.out.println("Formatting "+(t-t0)+" msec"); t0=t; }
@@ -132,66 +130,70 @@ public class TPCH5 implements SQL.TPCH {
 
 
   private static class NRC extends MRTask<NRC> {
-    transient NonBlockingHashMapLong<Integer> _custkeys;
+    Dist.LLMap _custkeys;
     final BitSet _nationkeys;
     NRC( BitSet nationkeys ) { _nationkeys = nationkeys; }
-    @Override protected void setupLocal() { _custkeys = new NonBlockingHashMapLong<>(); }
+    @Override protected void setupLocal() { _custkeys = new Dist.LLMap((int)_fr.numRows()); }
     @Override public void map( Chunk n_names, Chunk custkeys ) {
       for( int i=0; i<n_names._len; i++ ) {
         int nationkey = (int)n_names.at8(i);
         if( _nationkeys.get(nationkey) )
-          _custkeys.put((long)custkeys.at8(i),(Integer)nationkey);
+          _custkeys.put(custkeys.at8(i),nationkey);
       }
     }
-    @Override public void reduce( NRC bld ) {
-      if( _custkeys != bld._custkeys )
-        throw new RuntimeException("distributed reduce not implemented");
-    }
+    @Override public void reduce( NRC bld ) { _custkeys.reduce(bld._custkeys); }
   }
 
   private static class NRCO extends MRTask<NRCO> {
-    transient NonBlockingHashMapLong<Integer> _orderkeys;
-    final NonBlockingHashMapLong<Integer> _custkeys;
-    NRCO( NonBlockingHashMapLong<Integer> custkeys ) { _custkeys = custkeys; }
-    @Override protected void setupLocal() { _orderkeys = new NonBlockingHashMapLong<>(_custkeys.size()*4); }
+    Dist.LLMap _orderkeys;
+    final Dist.LLMap _custkeys;
+    final Bloom _bloom;         // Cheap pre-filter for _custkeys
+    transient Batch.Zone _zone;
+    NRCO( Dist.LLMap custkeys ) { _custkeys = custkeys; _bloom = Bloom.make(custkeys); }
+    @Override protected void setupLocal() { _orderkeys = new Dist.LLMap(_custkeys.size()*4); _zone = new Batch.Zone(_fr.vec(2)); }
     @Override public void map( Chunk custkeys, Chunk orderkeys, Chunk orderdates ) {
+      if( _zone.test(orderdates.cidx(),LOW_DATE,HIGH_DATE)==Batch.NONE ) return; // Skip the whole chunk
       for( int i=0; i<custkeys._len; i++ ) {
         long date = orderdates.at8(i);
-        if( LOW_DATE <= date && date < HIGH_DATE ) {
-          Integer nationkey = _custkeys.get(custkeys.at8(i));
-          if( nationkey != null )
+        long custkey = custkeys.at8(i);
+        if( LOW_DATE <= date && date < HIGH_DATE && _bloom.maybe(custkey) ) {
+          long nationkey = _custkeys.get(custkey,-1);
+          if( nationkey != -1 )
             _orderkeys.put(orderkeys.at8(i),nationkey);
         }
       }
     }
-    @Override public void reduce( NRCO bld ) {
-      if( _orderkeys != bld._orderkeys )
-        throw new RuntimeException("distributed reduce not implemented");
-    }
+    @Override public void reduce( NRCO bld ) { _orderkeys.reduce(bld._orderkeys); }
   }
 
   private static class NRCOL extends MRTask<NRCOL> {
     double[] _revenues;
     final int _nationcard;
     final Vec _s_nationkey;
-    final NonBlockingHashMapLong<Integer> _orderkeys;
-    NRCOL( int nationcard, Vec s_nationkey, NonBlockingHashMapLong<Integer> orderkeys ) {
+    final Dist.LLMap _orderkeys;
+    final Bloom _bloom;         // Cheap pre-filter for _orderkeys
+    transient Batch.Zone _okzone;
+    NRCOL( int nationcard, Vec s_nationkey, Dist.LLMap orderkeys ) {
       _nationcard=nationcard;
       _s_nationkey = s_nationkey;
       _orderkeys = orderkeys;
+      _bloom = Bloom.make(orderkeys);
     }
+    @Override protected void setupLocal() { _okzone = new Batch.Zone(_fr.vec(0)); }
     @Override public void map( Chunk[] cs ) {
       Chunk orderkeys = cs[0];
       Chunk suppkeys  = cs[1];
       Chunk extendprs = cs[2];
       Chunk discounts = cs[3];
       _revenues = new double[_nationcard];
+      if( _bloom.skip(_okzone,orderkeys.cidx()) ) return; // No matching orderkeys in chunk
       Vec.Reader s_nationkey = _s_nationkey.new Reader();
       
       for( int i=0; i<orderkeys._len; i++ ) {
-        Integer nationkey = _orderkeys.get(orderkeys.at8(i));
-        if( nationkey==null ) continue;
-        int nkey = nationkey;
+        long orderkey = orderkeys.at8(i);
+        if( !_bloom.maybe(orderkey) ) continue;
+        int nkey = (int)_orderkeys.get(orderkey,-1);
+        if( nkey == -1 ) continue;
         if( s_nationkey.at8(suppkeys.at8(i)-1) != nkey ) continue;
         _revenues[nkey] += extendprs.atd(i)*(1.0-discounts.atd(i));
       }
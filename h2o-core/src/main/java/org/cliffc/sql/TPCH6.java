@@ -45,7 +45,7 @@ public class TPCH6 implements SQL.TPCH {
   @Override public Frame run() {
     Frame line0 = SQL.LINEITEM.frame();
     Frame line1 = line0.subframe(new String[]{"shipdate","discount","quantity","extendedprice"});
-    double sum = new FilterSum(line1).doAll(line1)._sum;
+    double sum = SharedScan.scan(line0,line1,new FilterSum(line1))._sum;
     // Format results
     Frame fr = new Frame();
     fr.add("revenue",Vec.makeVec(new double[]{sum},Vec.newKey()));
@@ -55,28 +55,39 @@ public class TPCH6 implements SQL.TPCH {
   private static class FilterSum extends MRTask<FilterSum> {
     final int _spx, _dsx, _qtx, _exx;
     double _sum;
+    transient Batch.Zone _zone;
     FilterSum( Frame lineitem ) {
       _spx = lineitem.find("shipdate");
       _dsx = lineitem.find("discount");
       _qtx = lineitem.find("quantity");
       _exx = lineitem.find("extendedprice");
     }
+    @Override protected void setupLocal() { _zone = new Batch.Zone(_fr.vec(_spx)); }
     @Override public void map( Chunk[] cs ) {
       Chunk shipdate = cs[_spx];
+      int zone = _zone.test(shipdate.cidx(),LOW_DATE,HIGH_DATE);
+      if( zone==Batch.NONE ) return; // Skip the whole chunk
       Chunk discount = cs[_dsx];
       Chunk quantity = cs[_qtx];
       Chunk extended = cs[_exx];
+      int len = shipdate._len;
+      long  [] dates = new long  [Batch.BATCH];
+      double[] quans = new double[Batch.BATCH];
+      double[] discs = new double[Batch.BATCH];
+      double[] exts  = new double[Batch.BATCH];
+      int   [] sel   = new int   [Batch.BATCH];
       double sum=0;
-      for( int i=0; i<shipdate._len; i++ ) {
-        long date = shipdate.at8(i);
-        if( LOW_DATE <= date && date < HIGH_DATE ) {
-          long quant = quantity.at8(i);
-          if( quant < QUANTITY ) {
-            double disc = discount.atd(i);
-            if( DISCOUNT-0.01-EPSILON <= disc && disc <= DISCOUNT+0.01+EPSILON )
-              sum += extended.atd(i)*disc;
-          }
-        }
+      // The Main Hot Loop: decode a batch, select on date, refine on
+      // quantity and discount, then sum over the survivors
+      for( int b=0; b<len; b+=Batch.BATCH ) {
+        int e = Math.min(b+Batch.BATCH,len);
+        int n = zone==Batch.ALL ? Batch.all(e-b,sel)
+          : Batch.range(shipdate.getLongs(dates,b,e,Batch.NA),e-b,LOW_DATE,HIGH_DATE,sel);
+        if( n==0 ) continue;
+        n = Batch.range(quantity.getDoubles(quans,b,e),sel,n,Double.NEGATIVE_INFINITY,QUANTITY);
+        n = Batch.range(discount.getDoubles(discs,b,e),sel,n,DISCOUNT-0.01-EPSILON,Math.nextUp(DISCOUNT+0.01+EPSILON));
+        if( n==0 ) continue;
+        sum += Batch.sumProd(extended.getDoubles(exts,b,e),discs,sel,n);
       }
       _sum = sum;
     }
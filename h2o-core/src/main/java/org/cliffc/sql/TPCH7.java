@@ -2,7 +2,6 @@ package org.cliffc.sql;
 
 import water.*;
 import water.fvec.*;
-import water.nbhm.NonBlockingSetInt;
 import water.rapids.Merge;
 import water.util.ArrayUtils;
 import java.util.Arrays;
@@ -111,24 +110,24 @@ public class TPCH7 implements SQL.TPCH {
     Frame customer = SQL.CUSTOMER.frame();
     assert customer.vec("n_name").domain()==nation_name.domain();
     FilterColSet fcsc = new FilterColSet(N1_FACT,N2_FACT).doAll(customer.vec("n_name"),customer.vec("custkey"));
-    NonBlockingSetInt csn1 = fcsc._n1s, csn2 = fcsc._n2s;
+    Dist.ISet csn1 = fcsc._n1s, csn2 = fcsc._n2s;
 
     // Filter orders by customers in N1/N2, making a BitSet of orderkeys
     Frame ords0 = SQL.ORDERS.frame();
     Frame ords1 = ords0.subframe(new String[]{"custkey","orderkey"});
     FilterColSet2 fcs2 = new FilterColSet2(csn1,csn2).doAll(ords1);
-    NonBlockingSetInt osn1 = fcs2._osn1, osn2 = fcs2._osn2;
+    Dist.ISet osn1 = fcs2._osn1, osn2 = fcs2._osn2;
     
     // Filter suppliers by N1/N2, making a BitSet of suppkeys
     Frame supplier = SQL.SUPPLIER.frame();
     FilterColSet fcss = new FilterColSet(N1_FACT,N2_FACT).doAll(supplier.vec("n_name"),supplier.vec("suppkey"));
-    NonBlockingSetInt ssn1 = fcss._n1s, ssn2 = fcss._n2s;
+    Dist.ISet ssn1 = fcss._n1s, ssn2 = fcss._n2s;
 
     // Filter LINEITEM by shipdate, an order from N1 & a supplier from N2 (or
     // vice-versa).  GroupBy volume by supp_nation x order_nation x year (a 2x2x2 matrix).
     Frame line0 = SQL.LINEITEM.frame();
     Frame line1 = line0.subframe(new String[]{"shipdate","orderkey","suppkey","extendedprice","discount"});
-    FilterGroup fg = new FilterGroup(osn1,osn2,ssn1,ssn2).doAll(line1);
+    FilterGroup fg = SharedScan.scan(line0,line1,new FilterGroup(osn1,osn2,ssn1,ssn2));
 
     // Trim out missing counts; count rows to keep
     int nrows=0;
@@ -154,8 +153,8 @@ public class TPCH7 implements SQL.TPCH {
   // custkey/suppkey for both.
   private static class FilterColSet extends MRTask<FilterColSet> {
     final int _n1, _n2;
-    transient NonBlockingSetInt _n1s, _n2s;
-    @Override protected void setupLocal() { _n1s = new NonBlockingSetInt(); _n2s = new NonBlockingSetInt(); }
+    Dist.ISet _n1s, _n2s;
+    @Override protected void setupLocal() { _n1s = new Dist.ISet(); _n2s = new Dist.ISet(); }
     FilterColSet(int n1, int n2) {_n1=n1; _n2=n2; }
     @Override public void map( Chunk cn, Chunk ckey ) {
       for( int i=0; i<cn._len; i++ ) {
@@ -163,51 +162,51 @@ public class TPCH7 implements SQL.TPCH {
         if( cn.at8(i)==_n2 ) _n2s.add((int)ckey.at8(i));
       }
     }
-    @Override public void reduce( FilterColSet fcs ) {
-      if( _n1s != fcs._n1s || _n2s != fcs._n2s )
-        throw new RuntimeException("Distribution not implemented");
-    }
+    @Override public void reduce( FilterColSet fcs ) { _n1s.reduce(fcs._n1s); _n2s.reduce(fcs._n2s); }
   }
 
   // Filter orders by sets of customers, and return BitSets of orderkeys.
   private static class FilterColSet2 extends MRTask<FilterColSet2> {
-    final     NonBlockingSetInt _csn1, _csn2;
-    transient NonBlockingSetInt _osn1, _osn2;
-    @Override protected void setupLocal() { _osn1 = new NonBlockingSetInt(); _osn2 = new NonBlockingSetInt(); }
-    FilterColSet2( NonBlockingSetInt csn1, NonBlockingSetInt csn2 ) { _csn1=csn1; _csn2=csn2; }
+    final Dist.ISet _csn1, _csn2;
+    Dist.ISet _osn1, _osn2;
+    @Override protected void setupLocal() { _osn1 = new Dist.ISet(); _osn2 = new Dist.ISet(); }
+    FilterColSet2( Dist.ISet csn1, Dist.ISet csn2 ) { _csn1=csn1; _csn2=csn2; }
     @Override public void map( Chunk custkey, Chunk orderkey ) {
       for( int i=0; i<custkey._len; i++ ) {
         if( _csn1.contains((int)custkey.at8(i)) ) _osn1.add((int)orderkey.at8(i));
         if( _csn2.contains((int)custkey.at8(i)) ) _osn2.add((int)orderkey.at8(i));
       }
     }
-    @Override public void reduce( FilterColSet2 fcs2 ) {
-      if( _osn1 != fcs2._osn1 || _osn2 != fcs2._osn2 )
-        throw new RuntimeException("Distribution not implemented");
-    }
+    @Override public void reduce( FilterColSet2 fcs2 ) { _osn1.reduce(fcs2._osn1); _osn2.reduce(fcs2._osn2); }
   }    
 
   // Filter LINEITEM by shipdate, an order from N1 & a supplier from N2 (or
   // vice-versa).  GroupBy volume by supp_nation x order_nation x year (a 2x2x2 matrix).
   private static class FilterGroup extends MRTask<FilterGroup> {
-    final NonBlockingSetInt _osn1, _osn2; // Orders    in N1 or N2
-    final NonBlockingSetInt _ssn1, _ssn2; // Suppliers in N1 or N2
+    final Dist.ISet _osn1, _osn2; // Orders    in N1 or N2
+    final Dist.ISet _ssn1, _ssn2; // Suppliers in N1 or N2
+    final Bloom _obloom;          // Cheap pre-filter for orders in N1 or N2
     double[][][] _osy;
-    FilterGroup( NonBlockingSetInt osn1, NonBlockingSetInt osn2,
-                 NonBlockingSetInt ssn1, NonBlockingSetInt ssn2 ) {
+    transient Batch.Zone _zone, _okzone;
+    FilterGroup( Dist.ISet osn1, Dist.ISet osn2,
+                 Dist.ISet ssn1, Dist.ISet ssn2 ) {
       _osn1=osn1; _osn2=osn2;
       _ssn1=ssn1; _ssn2=ssn2;
+      _obloom = Bloom.make(ArrayUtils.join(osn1.keys(),osn2.keys()));
     }
+    @Override protected void setupLocal() { _zone = new Batch.Zone(_fr.vec(0)); _okzone = new Batch.Zone(_fr.vec(1)); }
     @Override public void map( Chunk cs[] ) {
       Chunk shipdates = cs[0];
       Chunk orderkeys = cs[1];
       Chunk suppkeys  = cs[2];
       Chunk exprices  = cs[3];
       Chunk discounts = cs[4];
-      double[][][] osy = new double[2][2][2];
+      double[][][] osy = _osy = new double[2][2][2];
+      if( _zone.test(shipdates.cidx(),LOW_DATE,HIGH_DATE+1)==Batch.NONE ) return; // Skip the whole chunk
+      if( _obloom.skip(_okzone,orderkeys.cidx()) ) return; // No N1/N2 orders in chunk
       for( int i=0; i<suppkeys._len; i++ ) {
         long shipdate = shipdates.at8(i);
-        if( LOW_DATE <= shipdate && shipdate <= HIGH_DATE ) {
+        if( LOW_DATE <= shipdate && shipdate <= HIGH_DATE && _obloom.maybe(orderkeys.at8(i)) ) {
           int yr = shipdate < MID_DATE ? 0 : 1;
           double expr   = exprices .atd(i);
           double disc   = discounts.atd(i);
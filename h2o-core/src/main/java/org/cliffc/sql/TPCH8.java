@@ -2,7 +2,6 @@ package org.cliffc.sql;
 
 import water.*;
 import water.fvec.*;
-import water.nbhm.NonBlockingSetInt;
 import water.util.ArrayUtils;
 import java.util.BitSet;
 import org.joda.time.DateTime;
@@ -105,26 +104,26 @@ public class TPCH8 implements SQL.TPCH {
     // Filter customers by REGION, making a BitSet of custkeys in that region.
     Frame customer = SQL.CUSTOMER.frame();
     assert customer.vec("n_name").domain()==nation.vec("n_name").domain();
-    NonBlockingSetInt custRegion = new FilterCust(natRegion).doAll(customer.vec("n_name"),customer.vec("custkey"))._nbsi;
+    Dist.ISet custRegion = new FilterCust(natRegion).doAll(customer.vec("n_name"),customer.vec("custkey"))._nbsi;
     System.out.println("Customers in "+REGION+" "+custRegion);
 
     // Filter ORDERS by CUSTOMERS in REGION, making a BitSet of orderkeys within Region & date
     Frame ords0 = SQL.ORDERS.frame();
     Frame ords1 = ords0.subframe(new String[]{"custkey","orderkey","orderdate"});
-    NonBlockingSetInt ordersRegion = new FilterOrders(custRegion).doAll(ords1)._nbsi;
+    Dist.ISet ordersRegion = new FilterOrders(custRegion).doAll(ords1)._nbsi;
     System.out.println("Orders in "+REGION+" "+ordersRegion.size());
 
     // Filter PART by TYPE, making a BitSet of partKeys
     Frame parts0 = SQL.PART.frame();
     Frame parts1 = parts0.subframe(new String[]{"type","partkey"});
     final int TFACT = ArrayUtils.find(parts1.vec("type").domain(),TYPE);
-    NonBlockingSetInt partsType = new FilterParts(TFACT).doAll(parts1)._nbsi;
+    Dist.ISet partsType = new FilterParts(TFACT).doAll(parts1)._nbsi;
     System.out.println("Parts with type "+TYPE+" "+partsType);
 
     // Filter SUPPLIERS by NATION
     Frame supps0 = SQL.SUPPLIER.frame();
     Frame supps1 = supps0.subframe(new String[]{"suppkey","n_name"});
-    Frame supps2 = new SQL.FilterCol(supps1.find("n_name"),NFACT).doAll(supps1.types(),supps1).outputFrame(supps1.names(),supps1.domains());
+    Frame supps2 = new SQL.FilterCol(supps1.find("n_name"),NFACT).doAll(supps1)._sel.gather(supps1);
     System.out.println("Suppliers with nation "+NATION+" "+supps2.toTwoDimTable(0,10,true));
 
     // Filter LINEITEMS by matching partkey & suppkey
@@ -134,25 +133,22 @@ public class TPCH8 implements SQL.TPCH {
 
   private static class FilterCust extends MRTask<FilterCust> {
     final BitSet _natRegion;
-    transient NonBlockingSetInt _nbsi;
-    @Override protected void setupLocal() { _nbsi = new NonBlockingSetInt(); }
+    Dist.ISet _nbsi;
+    @Override protected void setupLocal() { _nbsi = new Dist.ISet(); }
     FilterCust( BitSet natRegion ) { _natRegion = natRegion; }
     @Override public void map( Chunk n_name, Chunk custkey ) {
       for( int i=0; i<custkey._len; i++ )
         if( _natRegion.get((int)n_name.at8(i)) )
           _nbsi.add((int)custkey.at8(i));
     }
-    @Override public void reduce( FilterCust fc ) {
-      if( _nbsi != fc._nbsi )
-        throw new RuntimeException("Distribution not implemented");
-    }    
+    @Override public void reduce( FilterCust fc ) { _nbsi.reduce(fc._nbsi); }    
   }
   
   private static class FilterOrders extends MRTask<FilterOrders> {
-    final NonBlockingSetInt _custRegion;
-    transient NonBlockingSetInt _nbsi;
-    @Override protected void setupLocal() { _nbsi = new NonBlockingSetInt(); }
-    FilterOrders( NonBlockingSetInt custRegion ) { _custRegion = custRegion; }
+    final Dist.ISet _custRegion;
+    Dist.ISet _nbsi;
+    @Override protected void setupLocal() { _nbsi = new Dist.ISet(); }
+    FilterOrders( Dist.ISet custRegion ) { _custRegion = custRegion; }
     @Override public void map( Chunk custkey, Chunk orderkey, Chunk orderdate ) {
       for( int i=0; i<custkey._len; i++ ) {
         long date = orderdate.at8(i);
@@ -161,26 +157,20 @@ public class TPCH8 implements SQL.TPCH {
           _nbsi.add((int)orderkey.at8(i));
       }
     }
-    @Override public void reduce( FilterOrders fo ) {
-      if( _nbsi != fo._nbsi )
-        throw new RuntimeException("Distribution not implemented");
-    }    
+    @Override public void reduce( FilterOrders fo ) { _nbsi.reduce(fo._nbsi); }    
   }
 
   private static class FilterParts extends MRTask<FilterParts> {
     final int _type;
-    transient NonBlockingSetInt _nbsi;
-    @Override protected void setupLocal() { _nbsi = new NonBlockingSetInt(); }
+    Dist.ISet _nbsi;
+    @Override protected void setupLocal() { _nbsi = new Dist.ISet(); }
     FilterParts( int type ) { _type = type; }
     @Override public void map( Chunk types, Chunk partkeys ) {
       for( int i=0; i<types._len; i++ )
         if( types.at8(i)==_type )
           _nbsi.add((int)partkeys.at8(i));
     }
-    @Override public void reduce( FilterParts fp ) {
-      if( _nbsi != fp._nbsi )
-        throw new RuntimeException("Distribution not implemented");
-    }    
+    @Override public void reduce( FilterParts fp ) { _nbsi.reduce(fp._nbsi); }    
   }  
   
 }
@@ -0,0 +1,391 @@
+package org.cliffc.sql;
+
+import water.*;
+import water.fvec.*;
+import java.util.Arrays;
+import java.time.LocalDate;
+
+/**
+ * In-memory TPC-H data generator, writing NewChunks directly.
+ *
+ * Follows the dbgen spec for row counts, keys and value distributions:
+ * sparse order keys, customers not divisible by 3 placing orders, the
+ * partsupp supplier formula, lineitem dates, flags and status derived from
+ * the order date and CURRENTDATE, and prices from the part retail price.
+ * Every value comes from a counter-based random stream keyed by (column,
+ * row), so each node generates its own chunks' rows independently, and the
+ * same scale factor always gives the same data.  The random streams are not
+ * dbgen's, so the data is not byte-identical to dbgen output.
+ *
+ * Column types match a parse of dbgen output: small string domains are
+ * categoricals with sorted domains; names, addresses, phones and comments
+ * are strings; dates are times.
+ *
+ * <pre>
+ *   Frame lines = TPCHGen.gen("lineitem",1.0,new String[]{"orderkey","quantity","shipdate"});
+ * </pre>
+ */
+public abstract class TPCHGen {
+
+  // Spec constants
+  static final long MS = 24L*3600L*1000L;
+  static final long STARTDATE   = LocalDate.of(1992, 1, 1).toEpochDay();
+  static final long ENDDATE     = LocalDate.of(1998,12,31).toEpochDay();
+  static final long CURRENTDATE = LocalDate.of(1995, 6,17).toEpochDay();
+
+  static final String[] REGIONS = {"AFRICA","AMERICA","ASIA","EUROPE","MIDDLE EAST"};
+  static final String[] NATIONS = {"ALGERIA","ARGENTINA","BRAZIL","CANADA","EGYPT","ETHIOPIA","FRANCE","GERMANY","INDIA","INDONESIA","IRAN","IRAQ","JAPAN","JORDAN","KENYA","MOROCCO","MOZAMBIQUE","PERU","CHINA","ROMANIA","SAUDI ARABIA","VIETNAM","RUSSIA","UNITED KINGDOM","UNITED STATES"};
+  static final int[] NATION_REGION = {0,1,1,1,4,0,3,3,2,2,4,4,2,4,0,0,0,1,2,3,4,2,3,3,1};
+  static final String[] SEGMENTS   = {"AUTOMOBILE","BUILDING","FURNITURE","HOUSEHOLD","MACHINERY"};
+  static final String[] PRIORITIES = {"1-URGENT","2-HIGH","3-MEDIUM","4-NOT SPECIFIED","5-LOW"};
+  static final String[] INSTRUCTS  = {"COLLECT COD","DELIVER IN PERSON","NONE","TAKE BACK RETURN"};
+  static final String[] MODES      = {"AIR","FOB","MAIL","RAIL","REG AIR","SHIP","TRUCK"};
+  static final String[] TYPE1 = {"ECONOMY","LARGE","MEDIUM","PROMO","SMALL","STANDARD"};
+  static final String[] TYPE2 = {"ANODIZED","BRUSHED","BURNISHED","PLATED","POLISHED"};
+  static final String[] TYPE3 = {"BRASS","COPPER","NICKEL","STEEL","TIN"};
+  static final String[] CONT1 = {"JUMBO","LG","MED","SM","WRAP"};
+  static final String[] CONT2 = {"BAG","BOX","CAN","CASE","DRUM","JAR","PACK","PKG"};
+  static final String[] COLORS = {"almond","antique","aquamarine","azure","beige","bisque","black","blanched","blue","blush","brown","burlywood","burnished","chartreuse","chiffon","chocolate","coral","cornflower","cornsilk","cream","cyan","dark","deep","dim","dodger","drab","firebrick","floral","forest","frosted","gainsboro","ghost","goldenrod","green","grey","honeydew","hot","indian","ivory","khaki","lace","lavender","lawn","lemon","light","lime","linen","magenta","maroon","medium","metallic","midnight","mint","misty","moccasin","navajo","navy","olive","orange","orchid","pale","papaya","peach","peru","pink","plum","powder","puff","purple","red","rose","rosy","royal","saddle","salmon","sandy","seashell","sienna","sky","slate","smoke","snow","spring","steel","tan","thistle","tomato","turquoise","violet","wheat","white","yellow"};
+  static final String[] WORDS = {"furiously","quickly","carefully","blithely","slyly","fluffily","final","regular","express","pending","ironic","bold","special","even","unusual","silent","deposits","requests","packages","accounts","instructions","theodolites","pinto","beans","foxes","ideas","dependencies","excuses","platelets","asymptotes","courts","dolphins","sleep","wake","nag","haggle","use","boost","cajole","detect","integrate","among","above","according","to","after","about","against","along","the"};
+  static final char[] ALNUM = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ,. ".toCharArray();
+
+  // Categorical domains, sorted as a parse would sort them
+  static final String[] FLAGS   = {"A","N","R"};
+  static final String[] LSTATUS = {"F","O"};
+  static final String[] OSTATUS = {"F","O","P"};
+  static final String[] MFGRS   = dom("Manufacturer#",1,5,1);
+  static final String[] BRANDS  = brands();
+  static final String[] TYPES   = cross(TYPE1,TYPE2,TYPE3);
+  static final String[] CONTS   = cross(CONT1,CONT2);
+
+  /** Generate the named columns of a TPC-H table at a scale factor */
+  public static Frame gen( String table, double sf, String[] cols ) {
+    Gen g = new Gen(table,sf,cols);
+    Vec tmp = Vec.makeZero(g._nrows);
+    Frame fr = g.doAll(g._types,tmp).outputFrame(Key.make(table+".hex"),cols,g._doms);
+    tmp.remove();
+    return fr;
+  }
+
+  // Column codes: table*32+column
+  static final int CUSTOMER=0, LINEITEM=1, NATION=2, ORDERS=3, PART=4, PARTSUPP=5, REGION=6, SUPPLIER=7;
+  static final String[] TABLES = {"customer","lineitem","nation","orders","part","partsupp","region","supplier"};
+  static final String[][] COLS = {
+    {"custkey","name","c_address","nationkey","phone","acctbal","mktsegment","c_comment"},
+    {"orderkey","partkey","suppkey","linenumber","quantity","extendedprice","discount","tax","returnflag","linestatus","shipdate","commitdate","receiptdate","shipinstruct","shipmode","l_comment"},
+    {"nationkey","n_name","regionkey","n_comment"},
+    {"orderkey","custkey","orderstatus","totalprice","orderdate","orderpriority","clerk","shippriority","o_comment"},
+    {"partkey","p_name","mfgr","brand","type","size","container","retailprice","p_comment"},
+    {"partkey","suppkey","availqty","supplycost","ps_comment"},
+    {"regionkey","r_name","r_comment"},
+    {"suppkey","s_name","s_address","nationkey","phone","acctbal","s_comment"},
+  };
+
+  private static class Gen extends MRTask<Gen> {
+    final int _tbl;
+    final int[] _codes;         // Column codes to emit, in order
+    final long _nsupp, _npart, _ncust, _nclerk;
+    transient long _nrows;      // Template rows; orders, for lineitem
+    transient byte[] _types;
+    transient String[][] _doms;
+
+    Gen( String table, double sf, String[] cols ) {
+      _tbl = Arrays.asList(TABLES).indexOf(table);
+      if( _tbl == -1 ) throw new IllegalArgumentException("Unknown TPCH table "+table);
+      _nsupp  = Math.max(1,(long)(sf*  10000));
+      _npart  = Math.max(1,(long)(sf* 200000));
+      _ncust  = Math.max(1,(long)(sf* 150000));
+      _nclerk = Math.max(1,(long)(sf*   1000));
+      long nords = _ncust*10;
+      _nrows = new long[]{_ncust,nords,NATIONS.length,nords,_npart,_npart*4,REGIONS.length,_nsupp}[_tbl];
+      _codes = new int[cols.length];
+      _types = new byte[cols.length];
+      _doms  = new String[cols.length][];
+      for( int i=0; i<cols.length; i++ ) {
+        int c = Arrays.asList(COLS[_tbl]).indexOf(cols[i]);
+        if( c == -1 ) throw new IllegalArgumentException("Unknown column "+cols[i]+" in "+table);
+        _codes[i] = (_tbl<<5)+c;
+        _doms [i] = domain(_codes[i]);
+        _types[i] = _doms[i]!=null ? Vec.T_CAT : type(_codes[i]);
+      }
+    }
+
+    private String[] domain( int code ) {
+      switch( code ) {
+      case (CUSTOMER<<5)+6: return SEGMENTS;
+      case (LINEITEM<<5)+8: return FLAGS;
+      case (LINEITEM<<5)+9: return LSTATUS;
+      case (LINEITEM<<5)+13:return INSTRUCTS;
+      case (LINEITEM<<5)+14:return MODES;
+      case (ORDERS  <<5)+2: return OSTATUS;
+      case (ORDERS  <<5)+5: return PRIORITIES;
+      case (ORDERS  <<5)+6: return dom("Clerk#",1,_nclerk,9);
+      case (PART    <<5)+2: return MFGRS;
+      case (PART    <<5)+3: return BRANDS;
+      case (PART    <<5)+4: return TYPES;
+      case (PART    <<5)+6: return CONTS;
+      default: return null;
+      }
+    }
+    private static byte type( int code ) {
+      switch( code ) {
+      case (LINEITEM<<5)+10: case (LINEITEM<<5)+11: case (LINEITEM<<5)+12:
+      case (ORDERS  <<5)+4:
+        return Vec.T_TIME;
+      case (CUSTOMER<<5)+1: case (CUSTOMER<<5)+2: case (CUSTOMER<<5)+4: case (CUSTOMER<<5)+7:
+      case (LINEITEM<<5)+15:
+      case (NATION  <<5)+1: case (NATION  <<5)+3:
+      case (ORDERS  <<5)+8:
+      case (PART    <<5)+1: case (PART    <<5)+8:
+      case (PARTSUPP<<5)+4:
+      case (REGION  <<5)+1: case (REGION  <<5)+2:
+      case (SUPPLIER<<5)+1: case (SUPPLIER<<5)+2: case (SUPPLIER<<5)+4: case (SUPPLIER<<5)+6:
+        return Vec.T_STR;
+      default:
+        return Vec.T_NUM;
+      }
+    }
+
+    @Override public void map( Chunk[] cs, NewChunk[] ncs ) {
+      Rand r = new Rand();
+      StringBuilder sb = new StringBuilder();
+      long start = cs[0].start();
+      for( int i=0; i<cs[0]._len; i++ ) {
+        long row = start+i;
+        if( _tbl == LINEITEM ) {
+          int nlines = lines(r,row);
+          for( int l=0; l<nlines; l++ )
+            for( int c=0; c<_codes.length; c++ )
+              emit(_codes[c],row,l,ncs[c],r,sb);
+        } else
+          for( int c=0; c<_codes.length; c++ )
+            emit(_codes[c],row,0,ncs[c],r,sb);
+      }
+    }
+
+    // One value.  Lineitem rows are keyed by (order row, line number).
+    private void emit( int code, long row, int line, NewChunk nc, Rand r, StringBuilder sb ) {
+      long lrow = (row<<3)+line;
+      switch( code ) {
+      // CUSTOMER
+      case (CUSTOMER<<5)+0: nc.addNum(row+1,0); break;
+      case (CUSTOMER<<5)+1: nc.addStr(pad(sb,"Customer#",row+1,9)); break;
+      case (CUSTOMER<<5)+2: nc.addStr(vstr(r.seed(code,row),sb,10,40)); break;
+      case (CUSTOMER<<5)+3: nc.addNum(nation(r,CUSTOMER,row),0); break;
+      case (CUSTOMER<<5)+4: nc.addStr(phone(r,CUSTOMER,row,sb)); break;
+      case (CUSTOMER<<5)+5: nc.addNum(r.seed(code,row).uni(-99999,999999),-2); break;
+      case (CUSTOMER<<5)+6: nc.addCategorical(r.seed(code,row).uni(0,SEGMENTS.length-1)); break;
+      case (CUSTOMER<<5)+7: nc.addStr(text(r.seed(code,row),sb,29,116)); break;
+
+      // LINEITEM
+      case (LINEITEM<<5)+0: nc.addNum(orderkey(row),0); break;
+      case (LINEITEM<<5)+1: nc.addNum(lpartkey(r,lrow),0); break;
+      case (LINEITEM<<5)+2: nc.addNum(partsupp(lpartkey(r,lrow),r.seed(code,lrow).uni(0,3)),0); break;
+      case (LINEITEM<<5)+3: nc.addNum(line+1,0); break;
+      case (LINEITEM<<5)+4: nc.addNum(quantity(r,lrow),0); break;
+      case (LINEITEM<<5)+5: nc.addNum(quantity(r,lrow)*retail(lpartkey(r,lrow)),-2); break;
+      case (LINEITEM<<5)+6: nc.addNum(discount(r,lrow),-2); break;
+      case (LINEITEM<<5)+7: nc.addNum(tax(r,lrow),-2); break;
+      case (LINEITEM<<5)+8: nc.addCategorical(receiptdate(r,row,lrow) > CURRENTDATE ? 1 : (r.seed(code,lrow).uni(0,1)==0 ? 2 : 0)); break;
+      case (LINEITEM<<5)+9: nc.addCategorical(shipdate(r,row,lrow) > CURRENTDATE ? 1 : 0); break;
+      case (LINEITEM<<5)+10:nc.addNum(shipdate(r,row,lrow)*MS,0); break;
+      case (LINEITEM<<5)+11:nc.addNum((orderdate(r,row)+r.seed(code,lrow).uni(30,90))*MS,0); break;
+      case (LINEITEM<<5)+12:nc.addNum(receiptdate(r,row,lrow)*MS,0); break;
+      case (LINEITEM<<5)+13:nc.addCategorical(r.seed(code,lrow).uni(0,INSTRUCTS.length-1)); break;
+      case (LINEITEM<<5)+14:nc.addCategorical(r.seed(code,lrow).uni(0,MODES.length-1)); break;
+      case (LINEITEM<<5)+15:nc.addStr(text(r.seed(code,lrow),sb,10,43)); break;
+
+      // NATION
+      case (NATION<<5)+0: nc.addNum(row,0); break;
+      case (NATION<<5)+1: nc.addStr(NATIONS[(int)row]); break;
+      case (NATION<<5)+2: nc.addNum(NATION_REGION[(int)row],0); break;
+      case (NATION<<5)+3: nc.addStr(text(r.seed(code,row),sb,31,114)); break;
+
+      // ORDERS
+      case (ORDERS<<5)+0: nc.addNum(orderkey(row),0); break;
+      case (ORDERS<<5)+1: nc.addNum(custkey(r,row),0); break;
+      case (ORDERS<<5)+2: nc.addCategorical(ostatus(r,row)); break;
+      case (ORDERS<<5)+3: nc.addNum(totalprice(r,row),-2); break;
+      case (ORDERS<<5)+4: nc.addNum(orderdate(r,row)*MS,0); break;
+      case (ORDERS<<5)+5: nc.addCategorical(r.seed(code,row).uni(0,PRIORITIES.length-1)); break;
+      case (ORDERS<<5)+6: nc.addCategorical(r.seed(code,row).uni(0,(int)_nclerk-1)); break;
+      case (ORDERS<<5)+7: nc.addNum(0,0); break;
+      case (ORDERS<<5)+8: nc.addStr(text(r.seed(code,row),sb,19,78)); break;
+
+      // PART
+      case (PART<<5)+0: nc.addNum(row+1,0); break;
+      case (PART<<5)+1: nc.addStr(pname(r.seed(code,row),sb)); break;
+      case (PART<<5)+2: nc.addCategorical(mfgr(r,row)); break;
+      case (PART<<5)+3: nc.addCategorical(mfgr(r,row)*5+r.seed(code,row).uni(0,4)); break;
+      case (PART<<5)+4: nc.addCategorical(r.seed(code,row).uni(0,TYPES.length-1)); break;
+      case (PART<<5)+5: nc.addNum(r.seed(code,row).uni(1,50),0); break;
+      case (PART<<5)+6: nc.addCategorical(r.seed(code,row).uni(0,CONTS.length-1)); break;
+      case (PART<<5)+7: nc.addNum(retail(row+1),-2); break;
+      case (PART<<5)+8: nc.addStr(text(r.seed(code,row),sb,5,22)); break;
+
+      // PARTSUPP: 4 suppliers per part
+      case (PARTSUPP<<5)+0: nc.addNum((row>>2)+1,0); break;
+      case (PARTSUPP<<5)+1: nc.addNum(partsupp((row>>2)+1,(int)(row&3)),0); break;
+      case (PARTSUPP<<5)+2: nc.addNum(r.seed(code,row).uni(1,9999),0); break;
+      case (PARTSUPP<<5)+3: nc.addNum(r.seed(code,row).uni(100,100000),-2); break;
+      case (PARTSUPP<<5)+4: nc.addStr(text(r.seed(code,row),sb,49,198)); break;
+
+      // REGION
+      case (REGION<<5)+0: nc.addNum(row,0); break;
+      case (REGION<<5)+1: nc.addStr(REGIONS[(int)row]); break;
+      case (REGION<<5)+2: nc.addStr(text(r.seed(code,row),sb,31,115)); break;
+
+      // SUPPLIER
+      case (SUPPLIER<<5)+0: nc.addNum(row+1,0); break;
+      case (SUPPLIER<<5)+1: nc.addStr(pad(sb,"Supplier#",row+1,9)); break;
+      case (SUPPLIER<<5)+2: nc.addStr(vstr(r.seed(code,row),sb,10,40)); break;
+      case (SUPPLIER<<5)+3: nc.addNum(nation(r,SUPPLIER,row),0); break;
+      case (SUPPLIER<<5)+4: nc.addStr(phone(r,SUPPLIER,row,sb)); break;
+      case (SUPPLIER<<5)+5: nc.addNum(r.seed(code,row).uni(-99999,999999),-2); break;
+      case (SUPPLIER<<5)+6: nc.addStr(scomment(r.seed(code,row),row,sb)); break;
+      default: throw H2O.fail();
+      }
+    }
+
+    // --- Shared derived values; each re-seeds its own stream
+    private static final int S_NATION=1000, S_LINES=1001, S_CUST=1002, S_ODATE=1003, S_LPART=1004, S_QTY=1005, S_DISC=1006, S_TAX=1007, S_SHIP=1008, S_RECV=1009, S_MFGR=1010;
+    private static long orderkey( long row ) { return ((row>>3)<<5) + (row&7) + 1; }
+    private static int nation( Rand r, int tbl, long row ) { return r.seed(S_NATION+(tbl<<16),row).uni(0,NATIONS.length-1); }
+    private static int lines( Rand r, long row ) { return r.seed(S_LINES,row).uni(1,7); }
+    private static long orderdate( Rand r, long row ) { return STARTDATE + r.seed(S_ODATE,row).uni(0,(int)(ENDDATE-151-STARTDATE)); }
+    private long custkey( Rand r, long row ) {
+      if( _ncust < 3 ) return 1;
+      r.seed(S_CUST,row);
+      long c;
+      while( (c = r.uni(1,_ncust)) % 3 == 0 ) ;  // Not divisible by 3
+      return c;
+    }
+    private long lpartkey( Rand r, long lrow ) { return r.seed(S_LPART,lrow).uni(1,_npart); }
+    private static int quantity( Rand r, long lrow ) { return r.seed(S_QTY,lrow).uni(1,50); }
+    private static int discount( Rand r, long lrow ) { return r.seed(S_DISC,lrow).uni(0,10); }
+    private static int tax( Rand r, long lrow ) { return r.seed(S_TAX,lrow).uni(0,8); }
+    private static long shipdate( Rand r, long row, long lrow ) { return orderdate(r,row) + r.seed(S_SHIP,lrow).uni(1,121); }
+    private static long receiptdate( Rand r, long row, long lrow ) { return shipdate(r,row,lrow) + r.seed(S_RECV,lrow).uni(1,30); }
+    private static int mfgr( Rand r, long row ) { return r.seed(S_MFGR,row).uni(0,4); }
+    // Retail price in cents
+    private static long retail( long pk ) { return 90000 + ((pk/10) % 20001) + 100*(pk % 1000); }
+    // Supplier for the i'th (0-3) supplier of a part
+    private long partsupp( long pk, int i ) { return (pk + (i*((_nsupp/4) + (pk-1)/_nsupp))) % _nsupp + 1; }
+    // Sum of discounted, taxed line prices, in cents
+    private long totalprice( Rand r, long row ) {
+      double sum=0;
+      for( int l=0, n=lines(r,row); l<n; l++ ) {
+        long lrow = (row<<3)+l;
+        long ep = quantity(r,lrow)*retail(lpartkey(r,lrow));
+        sum += ep*(100+tax(r,lrow))*(100-discount(r,lrow))/10000.0;
+      }
+      return Math.round(sum);
+    }
+    // F if all lines shipped, O if none, else P
+    private static int ostatus( Rand r, long row ) {
+      int nf=0, n=lines(r,row);
+      for( int l=0; l<n; l++ )
+        if( shipdate(r,row,(row<<3)+l) <= CURRENTDATE ) nf++;
+      return nf==n ? 0 : (nf==0 ? 1 : 2);
+    }
+
+    // --- Strings
+    private static String pad( StringBuilder sb, String pre, long x, int w ) {
+      sb.setLength(0);
+      sb.append(pre);
+      String s = Long.toString(x);
+      for( int i=s.length(); i<w; i++ ) sb.append('0');
+      return sb.append(s).toString();
+    }
+    private static String phone( Rand r, int tbl, long row, StringBuilder sb ) {
+      int nk = nation(r,tbl,row);
+      r.seed(S_NATION+1+(tbl<<16),row);
+      sb.setLength(0);
+      return sb.append(nk+10).append('-').append(r.uni(100,999)).append('-').append(r.uni(100,999)).append('-').append(r.uni(1000,9999)).toString();
+    }
+    private static String vstr( Rand r, StringBuilder sb, int lo, int hi ) {
+      sb.setLength(0);
+      for( int i=0, n=r.uni(lo,hi); i<n; i++ )
+        sb.append(ALNUM[r.uni(0,ALNUM.length-1)]);
+      return sb.toString();
+    }
+    private static String text( Rand r, StringBuilder sb, int lo, int hi ) {
+      sb.setLength(0);
+      int len = r.uni(lo,hi);
+      while( sb.length() < len ) {
+        if( sb.length() > 0 ) sb.append(' ');
+        sb.append(WORDS[r.uni(0,WORDS.length-1)]);
+      }
+      sb.setLength(len);
+      return sb.toString();
+    }
+    // 5 distinct colors
+    private static String pname( Rand r, StringBuilder sb ) {
+      sb.setLength(0);
+      int[] cs = new int[5];
+      for( int i=0; i<5; i++ ) {
+        int c;
+        do { c = r.uni(0,COLORS.length-1); } while( has(cs,i,c) );
+        cs[i] = c;
+        if( i>0 ) sb.append(' ');
+        sb.append(COLORS[c]);
+      }
+      return sb.toString();
+    }
+    private static boolean has( int[] cs, int n, int c ) {
+      for( int i=0; i<n; i++ ) if( cs[i]==c ) return true;
+      return false;
+    }
+    // 5 per 10000 suppliers complain, and 5 recommend
+    private static String scomment( Rand r, long row, StringBuilder sb ) {
+      String s = text(r,sb,25,100);
+      long m = row % 2000;
+      if( m==7 || m==1007 ) {
+        int x = r.uni(0,s.length()-25);
+        s = s.substring(0,x)+"Customer "+(m==7 ? "Complaints" : "Recommends")+s.substring(x+19);
+      }
+      return s;
+    }
+  }
+
+  // Counter-based random stream: seeded by (stream,row), then splitmix64
+  static final class Rand {
+    long _s;
+    Rand seed( long stream, long row ) { _s = mix(stream*0x9E3779B97F4A7C15L ^ mix(row)); return this; }
+    long next() { return mix(_s += 0x9E3779B97F4A7C15L); }
+    int uni( int lo, int hi ) { return (int)uni((long)lo,(long)hi); }
+    long uni( long lo, long hi ) { return lo + Long.remainderUnsigned(next(),hi-lo+1); }
+    double dbl() { return (next()>>>11)*0x1.0p-53; } // [0,1)
+    static long mix( long z ) {
+      z = (z ^ (z>>>30)) * 0xbf58476d1ce4e5b9L;
+      z = (z ^ (z>>>27)) * 0x94d049bb133111ebL;
+      return z ^ (z>>>31);
+    }
+  }
+
+  // --- Domains
+  static String[] dom( String pre, long lo, long hi, int w ) {
+    String[] ds = new String[(int)(hi-lo+1)];
+    StringBuilder sb = new StringBuilder();
+    for( long i=lo; i<=hi; i++ ) ds[(int)(i-lo)] = Gen.pad(sb,pre,i,w);
+    return ds;
+  }
+  private static String[] brands() {
+    String[] bs = new String[25];
+    for( int m=1; m<=5; m++ )
+      for( int n=1; n<=5; n++ )
+        bs[(m-1)*5+n-1] = "Brand#"+m+n;
+    return bs;
+  }
+  static String[] cross( String[]... ws ) {
+    String[] xs = {""};
+    for( String[] w : ws ) {
+      String[] ys = new String[xs.length*w.length];
+      for( int i=0; i<xs.length; i++ )
+        for( int j=0; j<w.length; j++ )
+          ys[i*w.length+j] = xs[i].isEmpty() ? w[j] : xs[i]+" "+w[j];
+      xs = ys;
+    }
+    return xs;
+  }
+}
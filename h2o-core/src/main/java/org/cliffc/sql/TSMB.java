@@ -19,6 +19,12 @@ public class TSMB {
   // Scale-factor; also part of the data directory name.
   public static final String SCALE_FACTOR = "sf0.1";
   public static final String DIRNAME = "c:/Users/cliffc/Desktop/TSMB_DATA/social-network-"+SCALE_FACTOR+"-merged-fk/";
+  // No LDBC data on disk: tables are generated by TSMBGen, and the published
+  // query answers do not apply
+  public static final boolean SYNTHETIC = !new java.io.File(DIRNAME+"Person.csv").exists();
+  // Snapshot of the loaded tables and shared relations; generated data gets
+  // its own, so it is never restored as the real thing
+  public static final String SNAPSHOT = Snapshot.dir(SYNTHETIC ? "tsmbgen" : "tsmb",SCALE_FACTOR);
 
   // The TSMB Data
   public static Frame CITY;
@@ -50,24 +56,28 @@ public class TSMB {
 
   // Some pre-built relationships.
 
-  // Dense Person IDs.  Row number in PERSON is your ID.
-  public static NonBlockingHashMapLong<Integer> DIDS;
-  // Person-knows-person.  Hashed by person# to a sparse set of person#s.  Symmetric.
-  public static NonBlockingHashMapLong<SparseBitSetInt> P_KNOWS_P;
+  // Dense Person IDs.  Rank of the person id is your ID, plus 1.
+  public static Dict DIDS;
+  // Person-knows-person.  Adjacency index by person# to sorted person#s.  Symmetric.
+  public static CSR P_KNOWS_P;
+  // Person-knows-person as a degree-ordered DAG, renumbered by rank.  Each
+  // triangle has exactly one lowest-ranked edge.
+  public static CSR P_KNOWS_P_DAG;
   public static NonBlockingHashMapLong<Integer> CITY_COUNTRY;
   
   public static void main( String[] args ) throws IOException {
     H2O.main(new String[0]);
 
     // ------------
-    // Load all the CSVs
+    // Load all the CSVs, or restore them from a snapshot
     long t0 = System.currentTimeMillis(), t;
-    System.out.println("Loading TSMB data for "+SCALE_FACTOR);
+    boolean restore = Snapshot.has(SNAPSHOT);
+    System.out.println((restore ? "Restoring" : "Loading")+" TSMB data for "+SCALE_FACTOR);
 
-    CITY = load("City");
+    CITY = table("City",restore);
     //CITY_ISPARTOF_COUNTRY = load("City_isPartOf_Country");
-    COMMENT = load("Comment");
-    COMMENT_HASTAG_TAG = load("Comment_hasTag_Tag");
+    COMMENT = table("Comment",restore);
+    COMMENT_HASTAG_TAG = table("Comment_hasTag_Tag",restore);
     //COMPANY = load("Company");
     //COMPANY_ISLOCATEDIN_COUNTRY = load("Company_isLocatedIn_Country");
     //CONTINENT = load("Continent");
@@ -76,15 +86,15 @@ public class TSMB {
     //FORUM = load("Forum");
     //FORUM_HASMEMBER_PERSON = load("Forum_hasMember_Person");
     //FORUM_HASTAG_TAG = load("Forum_hasTag_Tag");
-    PERSON = load("Person");
-    PERSON_HASINTEREST_TAG = load("Person_hasInterest_Tag");
-    PERSON_KNOWS_PERSON = load("Person_knows_Person");
-    //PERSON_LIKES_COMMENT = load("Person_likes_Comment");
-    //PERSON_LIKES_POST = load("Person_likes_Post");
+    PERSON = table("Person",restore);
+    PERSON_HASINTEREST_TAG = table("Person_hasInterest_Tag",restore);
+    PERSON_KNOWS_PERSON = table("Person_knows_Person",restore);
+    PERSON_LIKES_COMMENT = table("Person_likes_Comment",restore);
+    PERSON_LIKES_POST = table("Person_likes_Post",restore);
     //PERSON_STUDYAT_UNIVERSITY = load("Person_studyAt_University");
     //PERSON_WORKAT_COMPANY = load("Person_workAt_Company");
-    //POST = load("Post");
-    //POST_HASTAG_TAG = load("Post_hasTag_Tag");
+    POST = table("Post",restore);
+    POST_HASTAG_TAG = table("Post_hasTag_Tag",restore);
     //TAGCLASS = load("TagClass");
     //TAG = load("Tag");
     //UNIVERSITY = load("University");
@@ -93,41 +103,60 @@ public class TSMB {
     t = System.currentTimeMillis(); System.out.println("Data loaded; "+PrettyPrint.bytes(NSIZE)+" bytes in "+(t-t0)+" msec, Frames take "+PrettyPrint.bytes(FSIZE)); t0=t;
 
     // ------------
-    // Build some shared common relationships.
+    // Build some shared common relationships, or restore them.
+    Dict dids;
+    Dist.LIMap city_country;
+    CSR pkps, pkpdag;
+    if( restore ) {
+      dids         = Snapshot.get(SNAPSHOT,"dids");
+      pkps         = Snapshot.get(SNAPSHOT,"pkp");
+      pkpdag       = Snapshot.get(SNAPSHOT,"pkpdag");
+      city_country = Snapshot.get(SNAPSHOT,"city_country");
+    } else {
+      // Renumber Persons dense, 1 to #persons.  Sorted dictionary of person
+      // ids; a dense id is the rank of the person id, skipping 0.
+      dids = Dict.make(PERSON.vec("id"));
 
-    // Renumber Persons dense.
-    // Row number in Person array is your dense id number.  Build hash of pid->did
-    Vec pids = PERSON.vec("id");
-    DIDS = new Renumber().doAll(pids)._dids;
-
-    // Rewrite P->P edges dense
-    Vec  p1s = PERSON_KNOWS_PERSON.vec("person1id");
-    Vec  p2s = PERSON_KNOWS_PERSON.vec("person2id");
-    Vec dp1s = new Rewrite().doAll(Vec.T_NUM,p1s).outputFrame().anyVec();
-    Vec dp2s = new Rewrite().doAll(Vec.T_NUM,p2s).outputFrame().anyVec();
-    PERSON_KNOWS_PERSON.add("dp1",dp1s);
-    PERSON_KNOWS_PERSON.add("dp2",dp2s);
-    PERSON                .add("did",new Rewrite().doAll(Vec.T_NUM,PERSON                .vec("id")).outputFrame().anyVec());
-    PERSON_HASINTEREST_TAG.add("did",new Rewrite().doAll(Vec.T_NUM,PERSON_HASINTEREST_TAG.vec("id")).outputFrame().anyVec());
+      // Rewrite P->P edges dense
+      Vec dp1s = dids.encode(PERSON_KNOWS_PERSON.vec("person1id"),1);
+      Vec dp2s = dids.encode(PERSON_KNOWS_PERSON.vec("person2id"),1);
+      PERSON_KNOWS_PERSON.add("dp1",dp1s);
+      PERSON_KNOWS_PERSON.add("dp2",dp2s);
+      PERSON                .add("did",dids.encode(PERSON                .vec("id"),1));
+      PERSON_HASINTEREST_TAG.add("did",dids.encode(PERSON_HASINTEREST_TAG.vec("id"),1));
                             
-    // Build person-knows-person as a hashtable from person# to a (hashtable of person#s).
-    // Symmetric.  2nd table is a sparse bitmap (no value).
-    P_KNOWS_P = new BuildPKP().doAll(dp1s,dp2s)._pkps;
+      // Build person-knows-person as a CSR adjacency index over person#s.
+      // Symmetric.  Dense ids are 1 to #persons.
+      pkps = CSR.make(dp1s,dp2s,(int)PERSON.numRows()+1,true);
+      pkpdag = pkps.orient();
+
+      // Hash from city to country
+      city_country = new Dist.LIMap();
+      Vec city = CITY.vec("id");
+      Vec cnty = CITY.vec("ispartof_country");
+      Vec.Reader vrcity = city.new Reader();
+      Vec.Reader vrcnty = cnty.new Reader();
+      for( int i=0; i<vrcity.length(); i++ )
+        city_country.put(vrcity.at8(i),(int)vrcnty.at8(i));
 
-    // Hash from city to country
-    CITY_COUNTRY = new NonBlockingHashMapLong<>();
-    Vec city = CITY.vec("id");
-    Vec cnty = CITY.vec("ispartof_country");
-    Vec.Reader vrcity = city.new Reader();
-    Vec.Reader vrcnty = cnty.new Reader();
-    for( int i=0; i<vrcity.length(); i++ )
-      CITY_COUNTRY.put((long)vrcity.at8(i),(Integer)(int)vrcnty.at8(i));
+      // Snapshot the tables and relations for the next startup
+      Snapshot.save(SNAPSHOT,CITY,COMMENT,COMMENT_HASTAG_TAG,PERSON,PERSON_HASINTEREST_TAG,PERSON_KNOWS_PERSON,PERSON_LIKES_COMMENT,PERSON_LIKES_POST,POST,POST_HASTAG_TAG);
+      Snapshot.put(SNAPSHOT,"pkp",pkps);
+      Snapshot.put(SNAPSHOT,"pkpdag",pkpdag);
+      Snapshot.put(SNAPSHOT,"city_country",city_country);
+      Snapshot.put(SNAPSHOT,"dids",dids);
+      Snapshot.done(SNAPSHOT);
+    }
+
+    // Queries read the shared relations from statics in their map calls, so
+    // the statics are replicated to all nodes.
+    new Broadcast(dids,pkps,pkpdag,city_country).doAllNodes();
     
     t = System.currentTimeMillis(); System.out.println("Building shared hashes in "+(t-t0)+" msec"); t0=t;
 
     // ------------
     // Run all queries once
-    //TSMBI[] delves = new TSMBI[]{new TSMB1(), new TSMB5(),new TSMB6(), new TSMB11()};
+    //TSMBI[] delves = new TSMBI[]{new TSMB1(), new TSMB2(), new TSMB4(), new TSMB5(),new TSMB6(), new TSMB11()};
     TSMBI[] delves = new TSMBI[]{new Dove6()}; // DEBUG one query
     System.out.println("--- Run Once ---");
     for( TSMBI query : delves ) {
@@ -155,15 +184,33 @@ public class TSMB {
     PERSON.delete();
     PERSON_HASINTEREST_TAG.delete();
     PERSON_KNOWS_PERSON.delete();
-    //POST.delete();
-    //POST_HASTAG_TAG.delete();
+    PERSON_LIKES_COMMENT.delete();
+    PERSON_LIKES_POST.delete();
+    POST.delete();
+    POST_HASTAG_TAG.delete();
     //System.out.println(H2O.STOREtoString());
     
     System.exit(0);
   }
   public interface TSMBI { long run(); String name(); }
 
+  // Check a query answer against the published LDBC answer for SF0.1; any
+  // other scale or generated data is not checked.
+  static boolean check( long cnt, long sf01 ) {
+    return SYNTHETIC || !SCALE_FACTOR.equals("sf0.1") || cnt==sf01;
+  }
+
+  private static Frame table(String fname, boolean restore) throws IOException {
+    return restore ? Snapshot.load(SNAPSHOT,fname) : load(fname);
+  }
+
   public static Frame load(String fname) throws IOException {
+    // No LDBC data on disk: generate the table in memory instead
+    if( !new java.io.File(DIRNAME+fname+".csv").exists() ) {
+      Frame fr = TSMBGen.gen(fname,Double.parseDouble(SCALE_FACTOR.substring(2)));
+      FSIZE += fr.byteSize();
+      return fr;
+    }
     NFSFileVec nfs = NFSFileVec.make(DIRNAME+fname+".csv");
     NSIZE += nfs.length();
     Key<?>[] keys = new Key[]{nfs._key};
@@ -176,43 +223,18 @@ public class TSMB {
     return fr;
   }
 
-  // Renumber Person IDs to dense integers, skipping 0
-  private static class Renumber extends MRTask<Renumber> {
-    transient NonBlockingHashMapLong<Integer> _dids;
-    @Override protected void setupLocal() { _dids = new NonBlockingHashMapLong<>((int)(_fr.numRows()*2)); }
-    @Override public void map(Chunk pids ) {
-      assert pids.start() < Integer.MAX_VALUE;
-      int start = (int)pids.start();
-      for( int i=0; i<pids._len; i++ )
-        _dids.put(pids.at8(i),(Integer)(start+i+1));
-    }
-    @Override public void reduce( Renumber bld ) {
-      if( _dids != bld._dids )
-        throw new RuntimeException("distributed reduce not implemented");
-    }
-  }
-  
-  private static class Rewrite extends MRTask<Rewrite> {
-    @Override public void map( Chunk ps, NewChunk ds ) {
-      for( int i=0; i<ps._len; i++ )
-        ds.addNum(DIDS.get(ps.at8(i)));
-    }
-  }
-
-  private static class BuildPKP extends MRTask<BuildPKP> {
-    transient NonBlockingHashMapLong<SparseBitSetInt> _pkps;
-    @Override protected void setupLocal() { _pkps = new NonBlockingHashMapLong<>((int)(_fr.numRows()*2)); }
-    @Override public void map(Chunk p1s, Chunk p2s ) {
-      for( int i=0; i<p1s._len; i++ ) {
-        long p1 = p1s.at8(i);
-        long p2 = p2s.at8(i);
-        build_hash(_pkps,p1,p2);
-        build_hash(_pkps,p2,p1);
-      }      
-    }
-    @Override public void reduce( BuildPKP bld ) {
-      if( _pkps != bld._pkps )
-        throw new RuntimeException("distributed reduce not implemented");
+  // Install the shared relations as statics on every node.  Any may be null,
+  // and then is not changed.
+  private static class Broadcast extends MRTask<Broadcast> {
+    final Dict _dids;
+    final Dist.LIMap _city_country;
+    final CSR _pkps, _pkpdag;
+    Broadcast( Dict dids, CSR pkps, CSR pkpdag, Dist.LIMap city_country ) { _dids=dids; _pkps=pkps; _pkpdag=pkpdag; _city_country=city_country; }
+    @Override protected void setupLocal() {
+      if( _dids         != null ) DIDS         = _dids;
+      if( _pkps         != null ) P_KNOWS_P    = _pkps;
+      if( _pkpdag       != null ) P_KNOWS_P_DAG= _pkpdag;
+      if( _city_country != null ) CITY_COUNTRY = _city_country._nbhml;
     }
   }
 
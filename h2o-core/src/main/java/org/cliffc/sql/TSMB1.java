@@ -3,7 +3,6 @@ package org.cliffc.sql;
 import water.*;
 import water.fvec.*;
 import org.joda.time.DateTime;
-import water.nbhm.NonBlockingHashMapLong;
 
 /**
 def q1 = count[city, country, person, forum, post, comment, tag, tagclass:
@@ -47,7 +46,7 @@ public class TSMB1 implements TSMB.TSMBI {
     // Compute comment IDs that are replyof_post
     Vec cids = TSMB.COMMENT.vec("id");
     Vec cres = TSMB.COMMENT.vec("replyof_post");
-    NonBlockingHashMapLong replys = new BuildReplys().doAll(cids,cres)._replys;
+    Dist.LSet replys = new BuildReplys().doAll(cids,cres)._replys;
     if( PRINT_TIMING ) { t=System.currentTimeMillis(); System.out.println("Build SBS comment replys#"+replys.size()+", cids#"+cids.length()+" "+(t-t0)+" msec"); t0=t; }
     
     // Count tags
@@ -59,27 +58,24 @@ public class TSMB1 implements TSMB.TSMBI {
   }
   
   private static class BuildReplys extends MRTask<BuildReplys> {
-    transient NonBlockingHashMapLong _replys;
-    @Override protected void setupLocal() { _replys = new NonBlockingHashMapLong((int)(_fr.numRows())); }
+    Dist.LSet _replys;
+    @Override protected void setupLocal() { _replys = new Dist.LSet((int)(_fr.numRows())); }
     @Override public void map( Chunk cids, Chunk cres ) {
       for( int i=0; i<cids._len; i++ )
         if( !cres.isNA(i) )
-          _replys.put(cids.at8(i),"");
-    }
-    @Override public void reduce( BuildReplys bld ) {
-      if( _replys != bld._replys )
-        throw new RuntimeException("distributed reduce not implemented");
+          _replys.add(cids.at8(i));
     }
+    @Override public void reduce( BuildReplys bld ) { _replys.reduce(bld._replys); }
   }
 
   private static class Count extends MRTask<Count> {
     long _cnt;
-    final NonBlockingHashMapLong _replys;
-    Count( NonBlockingHashMapLong replys ) { _replys=replys; }
+    final Dist.LSet _replys;
+    Count( Dist.LSet replys ) { _replys=replys; }
     @Override public void map( Chunk cids ) {
       long cnt=0;
       for( int i=0; i<cids._len; i++ )
-        if( _replys.containsKey(cids.at8(i)) )
+        if( _replys.contains(cids.at8(i)) )
           cnt++;
       _cnt=cnt;
     }
@@ -51,15 +51,10 @@ public class TSMB11 implements TSMB.TSMBI {
       long cnt=0;
       for( int i=0; i<p1s._len; i++ ) {
         int p1 = (int)p1s.at8(i), p2 = (int)p2s.at8(i);
-        SparseBitSetInt p1ks = TSMB.P_KNOWS_P.get(p1);
-        SparseBitSetInt p2ks = TSMB.P_KNOWS_P.get(p2);
-        // Walk the smaller, test against larger.  Worth about 1.67x speedup at
-        // smaller scales, 1.25x at SF100.
-        if( p1ks.fast_cardinality() < p2ks.fast_cardinality() )
-          { SparseBitSetInt tmp = p1ks; p1ks = p2ks; p2ks = tmp; }
-        for( int p3 : p2ks.rawKeySet() )
-          if( p3!=0 && p1ks.tst(p3) ) // p1 knowns p3 also
-            cnt+=2;             // twice, because triangulation
+        // In the degree-ordered DAG each triangle is found once, from its
+        // lowest-ranked edge, as a common out-neighbor of both ends.
+        CSR dag = TSMB.P_KNOWS_P_DAG;
+        cnt += 6L*dag.common(dag._ranks[p1],dag._ranks[p2]); // All 6 orderings of a triangle
       }
       _cnt=cnt;
     }
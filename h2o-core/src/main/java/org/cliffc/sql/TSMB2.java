@@ -0,0 +1,60 @@
+package org.cliffc.sql;
+
+import water.*;
+import water.fvec.*;
+
+/**
+def likes[message] = count[person: person_likes_message(person, message)]
+def replies[message] = count[comment: comment_reply_of_message(comment, message)]
+
+def q2 = sum[m, tag, person, v:
+    message_has_tag_tag(m, tag)
+    and message_has_creator_person(m, person)
+    and v = default_value[message, likes, 1][m] * default_value[message, replies, 1][m]
+]
+def message_has_tag_tag = comment_has_tag ; post_has_tag_tag
+*/
+
+public class TSMB2 implements TSMB.TSMBI {
+  @Override public String name() { return "TSMB2"; }
+  static final boolean PRINT_TIMING = false;
+
+  // Query plan:
+  // Count likes and replies per message.
+  // Leapfrog over m,tag,person; weight is likes*replies, defaulting to 1.
+
+  @Override public long run() {
+    long t0 = System.currentTimeMillis(), t;
+
+    Dist.LDMap likes = new CountBy().doAll(TSMB.PERSON_LIKES_COMMENT.vec("likes_comment"))._cnts;
+    likes.reduce(new CountBy().doAll(TSMB.PERSON_LIKES_POST.vec("likes_post"))._cnts);
+    Dist.LDMap replies = new CountBy().doAll(TSMB.COMMENT.vec("replyof_comment"))._cnts;
+    replies.reduce(new CountBy().doAll(TSMB.COMMENT.vec("replyof_post"))._cnts);
+    if( PRINT_TIMING ) { t=System.currentTimeMillis(); System.out.println("Count likes#"+likes.size()+", replies#"+replies.size()+" "+(t-t0)+" msec"); t0=t; }
+
+    Leapfrog.Rel tags = new Leapfrog.Rel(TSMB.COMMENT_HASTAG_TAG,"id","hastag_tag").or(TSMB.POST_HASTAG_TAG,"id","hastag_tag");
+    Leapfrog.Rel creator = new Leapfrog.Rel(TSMB.COMMENT,"id","hascreator_person").or(TSMB.POST,"id","hascreator_person");
+    final int M=0, TAG=1, PERSON=2;
+    long sum = new Leapfrog(3).atom(tags,M,TAG).atom(creator,M,PERSON).sum(vals -> {
+        long m = vals[M];
+        long l = likes  .contains(m) ? (long)likes  .get(m) : 1;
+        long r = replies.contains(m) ? (long)replies.get(m) : 1;
+        return l*r;
+      });
+    if( PRINT_TIMING ) { t=System.currentTimeMillis(); System.out.println("Leapfrog "+(t-t0)+" msec"); t0=t; }
+
+    return sum;
+  }
+
+  // Count of rows per non-NA value
+  private static class CountBy extends MRTask<CountBy> {
+    Dist.LDMap _cnts;
+    @Override protected void setupLocal() { _cnts = new Dist.LDMap(); }
+    @Override public void map( Chunk ms ) {
+      for( int i=0; i<ms._len; i++ )
+        if( !ms.isNA(i) )
+          _cnts.add(ms.at8(i),1);
+    }
+    @Override public void reduce( CountBy bld ) { _cnts.reduce(bld._cnts); }
+  }
+}
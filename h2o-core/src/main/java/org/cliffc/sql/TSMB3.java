@@ -60,11 +60,27 @@ public class TSMB3 implements TSMB.TSMBI {
     Vec crps  = TSMB.COMMENT.vec("replyof_post");
     long cnt = new Count(ctags,ptags).doAll(cids1,crcs,crps)._cnt;
     if( PRINT_TIMING ) { t=System.currentTimeMillis(); System.out.println("Count matching tags "+(t-t0)+" msec"); t0=t; }
-    
+    assert run_lftj()==cnt;     // Cross-check the generic engine, when -ea
+
     return cnt;
   }
 
 
+  // Same query via the generic Leapfrog Triejoin
+  public long run_lftj() {
+    Leapfrog.Rel mtags = new Leapfrog.Rel(TSMB.COMMENT_HASTAG_TAG,"id","hastag_tag").or(TSMB.POST_HASTAG_TAG,"id","hastag_tag");
+    Leapfrog.Rel ctags = new Leapfrog.Rel(TSMB.COMMENT_HASTAG_TAG,"id","hastag_tag");
+    Leapfrog.Rel reply = new Leapfrog.Rel(TSMB.COMMENT,"id","replyof_comment").or(TSMB.COMMENT,"id","replyof_post");
+    final int MSG=0, CMT=1, TAG1=2, TAG2=3;
+    return new Leapfrog(4)
+      .atom(mtags,MSG,TAG1)
+      .atom(reply,CMT,MSG)
+      .atom(ctags,CMT,TAG2)
+      .not (ctags,CMT,TAG1)
+      .neq (TAG1,TAG2)
+      .count();
+  }
+
   private static class BuildTags extends MRTask<BuildTags> {
     transient NonBlockingHashMapLong<AryInt> _tags;
     final long _size;            // Uniques on outer hash
@@ -0,0 +1,41 @@
+package org.cliffc.sql;
+
+import water.*;
+
+/**
+def q4 = count[personA, personB, comment, post:
+    person_knows_person(personA, personB)
+    and comment_has_creator_person(comment, personA)
+    and comment_reply_of_post(comment, post)
+    and post_has_creator_person(post, personB)
+]
+*/
+
+public class TSMB4 implements TSMB.TSMBI {
+  @Override public String name() { return "TSMB4"; }
+  static final boolean PRINT_TIMING = false;
+
+  // Extra info: person-knows-person is symmetric.
+
+  // Query plan:
+  // Leapfrog over personA,personB,comment,post.
+
+  @Override public long run() {
+    long t0 = System.currentTimeMillis(), t;
+
+    Leapfrog.Rel knows = new Leapfrog.Rel(TSMB.PERSON_KNOWS_PERSON,"person1id","person2id").sym();
+    Leapfrog.Rel ccreator = new Leapfrog.Rel(TSMB.COMMENT,"id","hascreator_person");
+    Leapfrog.Rel creplyof = new Leapfrog.Rel(TSMB.COMMENT,"id","replyof_post");
+    Leapfrog.Rel pcreator = new Leapfrog.Rel(TSMB.POST   ,"id","hascreator_person");
+    final int PA=0, PB=1, CMT=2, POST=3;
+    long cnt = new Leapfrog(4)
+      .atom(knows   ,PA  ,PB)
+      .atom(ccreator,CMT ,PA)
+      .atom(creplyof,CMT ,POST)
+      .atom(pcreator,POST,PB)
+      .count();
+    if( PRINT_TIMING ) { t=System.currentTimeMillis(); System.out.println("Leapfrog "+(t-t0)+" msec"); t0=t; }
+
+    return cnt;
+  }
+}
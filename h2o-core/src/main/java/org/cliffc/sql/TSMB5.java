@@ -3,7 +3,6 @@ package org.cliffc.sql;
 import water.*;
 import water.fvec.*;
 import org.joda.time.DateTime;
-import water.nbhm.NonBlockingHashMapLong;
 
 /**
 def q5 = count[cityA, cityB, cityC, country, pA, pB, pC:
@@ -40,7 +39,7 @@ public class TSMB5 implements TSMB.TSMBI {
   //   Get country
   //   ForAll P1.P2s
   //     Check same country
-  //     ForAll P1.P2.P3s
+  //     ForAll P1.P2.P3s, in the degree-ordered DAG
   //       check P1.P3 && same country
   
   @Override public long run() {
@@ -48,7 +47,7 @@ public class TSMB5 implements TSMB.TSMBI {
 
     Vec vper = TSMB.PERSON.vec("did");
     Vec vloc = TSMB.PERSON.vec("islocatedin_place");
-    NonBlockingHashMapLong<Integer> p2c = new BuildP2C().doAll(vper,vloc)._p2c;
+    Dist.LIMap p2c = new BuildP2C().doAll(vper,vloc)._p2c;
     if( PRINT_TIMING ) { t=System.currentTimeMillis(); System.out.println("Hash p->country "+(t-t0)+" msec"); t0=t; }
     
     // ForAll P1s...
@@ -62,18 +61,24 @@ public class TSMB5 implements TSMB.TSMBI {
 
   private static class Count extends MRTask<Count> {
     long _cnt;
-    final NonBlockingHashMapLong<Integer> _p2c;
-    Count( NonBlockingHashMapLong<Integer> p2c ) { _p2c=p2c; }
+    final Dist.LIMap _p2c;
+    Count( Dist.LIMap p2c ) { _p2c=p2c; }
     @Override public void map( Chunk p1s, Chunk p2s ) {
       long cnt=0;
       for( int i=0; i<p1s._len; i++ ) {
         int p1 = (int)p1s.at8(i), p2 = (int)p2s.at8(i);
         Integer country = _p2c.get(p1);
         if( _p2c.get(p2)!=country ) continue; // p1,p2 not same country
-        SparseBitSetInt p3s = TSMB.P_KNOWS_P.get(p2);
-        for( int p3 : p3s.rawKeySet() )
-          if( p3!=0 && _p2c.get(p3)==country && TSMB.P_KNOWS_P.get(p1).tst(p3) ) // p1 knowns p3 also; p3 same country
-            cnt+=2;             // twice, because triangulation
+        // Walk the lower-ranked end's out-list in the degree-ordered DAG; each
+        // triangle is found once, from its lowest-ranked edge.
+        CSR dag = TSMB.P_KNOWS_P_DAG;
+        int u = dag._ranks[p1], v = dag._ranks[p2];
+        if( u > v ) { int tmp = u; u = v; v = tmp; }
+        for( int x=dag._offs[u]; x<dag._offs[u+1]; x++ ) {
+          int w = dag._nbrs[x];
+          if( w > v && _p2c.get(dag._ids[w])==country && dag.has(v,w) ) // p1 knowns p3 also; p3 same country
+            cnt+=6;             // All 6 orderings of a triangle
+        }
       }
       _cnt=cnt;
     }
@@ -81,16 +86,13 @@ public class TSMB5 implements TSMB.TSMBI {
   }
   
   private static class BuildP2C extends MRTask<BuildP2C> {
-    transient NonBlockingHashMapLong<Integer> _p2c;
-    @Override protected void setupLocal() { _p2c = new NonBlockingHashMapLong<Integer>(); }
+    Dist.LIMap _p2c;
+    @Override protected void setupLocal() { _p2c = new Dist.LIMap(); }
     @Override public void map( Chunk pers, Chunk citys ) {
       for( int i=0; i<pers._len; i++ )
         _p2c.put(pers.at8(i),TSMB.CITY_COUNTRY.get(citys.at8(i)));
     }
-    @Override public void reduce( BuildP2C bld ) {
-      if( _p2c != bld._p2c )
-        throw new RuntimeException("distributed reduce not implemented");
-    }
+    @Override public void reduce( BuildP2C bld ) { _p2c.reduce(bld._p2c); }
   }
 
 
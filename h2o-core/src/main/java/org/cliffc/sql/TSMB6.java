@@ -3,6 +3,7 @@ package org.cliffc.sql;
 import org.joda.time.DateTime;
 import water.*;
 import water.fvec.*;
+import water.util.ArrayUtils;
 import water.util.AtomicUtils;
 import water.nbhm.NonBlockingHashMapLong;
 import java.util.Arrays;
@@ -73,7 +74,7 @@ public class TSMB6 implements TSMB.TSMBI {
 
  
   private static class BuildsTags3 extends MRTask<BuildsTags3> {
-    transient long[] _tags;
+    long[] _tags;
     @Override protected void setupLocal() { _tags = new long[(int)_fr.numRows()]; }
     @Override public void map(Chunk cids, Chunk ctags) {
       for( int i=0; i<cids._len; i++ ) {
@@ -82,8 +83,8 @@ public class TSMB6 implements TSMB.TSMBI {
       }
     }
     @Override public void reduce( BuildsTags3 bld ) {
-      if( _tags != bld._tags )
-        throw new RuntimeException("distributed reduce not implemented");
+      if( _tags != bld._tags )  // Remote node's counts
+        ArrayUtils.add(_tags,bld._tags);
     }
   }
 
@@ -98,14 +99,11 @@ public class TSMB6 implements TSMB.TSMBI {
       long cnt=0;
       for( int i=0; i<pids._len; i++ ) {
         int p2 = (int)pids.at8(i);
-        SparseBitSetInt p13s = TSMB.P_KNOWS_P.get(p2); // Set of p2->p1 and p2->p3
-        if( p13s != null ) {
-          long sum=0;
-          for( int p13 : p13s.rawKeySet() )
-            if( p13!=0 )
-              sum += _ptags[p13];
-          cnt += sum*p13s.fast_cardinality();
-        }
+        CSR pkp = TSMB.P_KNOWS_P; // Set of p2->p1 and p2->p3
+        long sum=0;
+        for( int x=pkp._offs[p2]; x<pkp._offs[p2+1]; x++ )
+          sum += _ptags[pkp._nbrs[x]];
+        cnt += sum*pkp.degree(p2);
       }
       _cnt=cnt;
     }
@@ -122,10 +120,8 @@ public class TSMB6 implements TSMB.TSMBI {
     @Override public void map( Chunk pids ) {
       long cnt=0;
       for( int i=0; i<pids._len; i++ ) {
-        long p1 = pids.at8(i);
-        SparseBitSetInt p12s = TSMB.P_KNOWS_P.get(p1); // Set of p1->p2
-        if( p12s != null )
-          cnt += _ptags[(int)p1]*p12s.fast_cardinality();
+        int p1 = (int)pids.at8(i);
+        cnt += _ptags[p1]*TSMB.P_KNOWS_P.degree(p1); // Count of p1->p2
       }
       _cnt=cnt;
     }
@@ -144,18 +140,11 @@ public class TSMB6 implements TSMB.TSMBI {
     @Override public void map( Chunk pids ) {
       long cnt=0;
       for( int i=0; i<pids._len; i++ ) {
-        long p1 = pids.at8(i);
-        SparseBitSetInt p2s = TSMB.P_KNOWS_P.get(p1); // Set of p2->p13s
-        if( p2s != null ) {
-          long np1cnt = _ptags[(int)p1];
-          for( int p2 : p2s.rawKeySet() ) // ForAll P2s, do P1
-            if( p2 != 0 ) {
-              SparseBitSetInt p3s = TSMB.P_KNOWS_P.get(p2); // Set of p2->p3s
-              for( int p3 : p3s.rawKeySet() )
-                if( p3 != 0 && p2s.tst(p3) ) // does p1 know p3?
-                  cnt += np1cnt;
-            }
-        }
+        int p1 = (int)pids.at8(i);
+        CSR pkp = TSMB.P_KNOWS_P;
+        long np1cnt = _ptags[p1];
+        for( int x=pkp._offs[p1]; x<pkp._offs[p1+1]; x++ ) // ForAll P2s, do P1
+          cnt += np1cnt*pkp.common(p1,pkp._nbrs[x]); // p3s known by p2 and p1
       }
       _cnt=cnt;
     }
@@ -371,19 +360,19 @@ public class TSMB6 implements TSMB.TSMBI {
       long cnt=0;
       for( int i=0; i<p1s._len; i++ ) {
         int p1 = (int)p1s.at8(i), p2 = (int)p2s.at8(i);
-        SparseBitSetInt np1s = TSMB.P_KNOWS_P.get(p1);
-        SparseBitSetInt np2s = TSMB.P_KNOWS_P.get(p2);
-        cnt += _check_knows(p1,np1s,np2s) + _check_knows(p2,np2s,np1s);
+        cnt += _check_knows(p1,p2) + _check_knows(p2,p1);
       }
       _cnt=cnt;
     }
     // Check P1->P2->P3, P1!=P3, P1-!->P3 & count P3 tags.
-    private long _check_knows(long p1, SparseBitSetInt p1s, SparseBitSetInt p3s) {
+    private long _check_knows(int p1, int p2) {
+      CSR pkp = TSMB.P_KNOWS_P;
       long cnt=0;
-      for( int p3 : p3s.rawKeySet() )
-        if( p3!=0 && p1!=p3 &&
-            (p1s==null || !p1s.tst(p3)) )
+      for( int x=pkp._offs[p2]; x<pkp._offs[p2+1]; x++ ) {
+        int p3 = pkp._nbrs[x];
+        if( p1!=p3 && !pkp.has(p1,p3) )
           cnt += _ptags.get(p3);
+      }
       return cnt;
     }
     @Override public void reduce( Count2 C ) { _cnt += C._cnt; }
@@ -439,20 +428,20 @@ public class TSMB6 implements TSMB.TSMBI {
     @Override public void map( Chunk p1s, Chunk p2s ) {
       long cnt=0;
       for( int i=0; i<p1s._len; i++ ) {
-        long p1 = p1s.at8(i), p2 = p2s.at8(i);
-        SparseBitSetInt np1s = TSMB.P_KNOWS_P.get(p1);
-        SparseBitSetInt np2s = TSMB.P_KNOWS_P.get(p2);        
-        cnt += _check_knows(p1,np1s,np2s) + _check_knows(p2,np2s,np1s);
+        int p1 = (int)p1s.at8(i), p2 = (int)p2s.at8(i);
+        cnt += _check_knows(p1,p2) + _check_knows(p2,p1);
       }
       _cnt=cnt;
     }
     // Check P1->P2->P3, P1!=P3, P1-!->P3 & count P3 tags.
-    private long _check_knows(long p1, SparseBitSetInt p1s, SparseBitSetInt p3s) {
+    private long _check_knows(int p1, int p2) {
+      CSR pkp = TSMB.P_KNOWS_P;
       long cnt=0;
-      for( int p3 : p3s.rawKeySet() )
-        if( p3!=0 && p1!=p3 &&
-            (p1s==null || !p1s.tst(p3)) )
+      for( int x=pkp._offs[p2]; x<pkp._offs[p2+1]; x++ ) {
+        int p3 = pkp._nbrs[x];
+        if( p1!=p3 && !pkp.has(p1,p3) )
           cnt += _ptags.get(p3).fast_cardinality();
+      }
       return cnt;
     }
     @Override public void reduce( Count1 C ) { _cnt += C._cnt; }
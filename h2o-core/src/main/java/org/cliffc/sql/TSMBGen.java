@@ -0,0 +1,309 @@
+package org.cliffc.sql;
+
+import water.*;
+import water.fvec.*;
+import java.util.Arrays;
+import java.time.LocalDate;
+import org.cliffc.sql.TPCHGen.Rand;
+
+/**
+ * In-memory LDBC-style social network generator for the TSMB tables.
+ *
+ * Sizes follow the LDBC SNB merged-fk data: persons, knows edges, posts and
+ * comments are interpolated (log-log) between the SF0.1, SF1, SF10 and SF100
+ * counts; the other tables scale off those.  Persons are laid out sorted by
+ * country, with countries Zipf-sized.  Each person has a power-law activity
+ * weight driving its posts, comments and likes, and a separate power-law
+ * knows out-degree.  Most friends, likes and replies land in a window of
+ * nearby persons, hence mostly in the same country; the rest are uniform.
+ * Tags are Zipf, rotated per country.
+ *
+ * Every value comes from a counter-based random stream keyed by (stream,
+ * person) or (stream, message), so each chunk generates its persons' rows
+ * independently and a scale factor always gives the same data.  Per-person
+ * counts are pure functions, so any person can find any other's posts and
+ * comments without a lookup.
+ *
+ * Only the id, foreign-key, date and small numeric columns are made; free
+ * text (content, names, emails, IPs) is left out.
+ *
+ * <pre>
+ *   Frame knows = TSMBGen.gen("Person_knows_Person",1.0);
+ * </pre>
+ */
+public abstract class TSMBGen {
+
+  // Anchor sizes: scale factor, persons, knows, posts, comments
+  static final double[][] SIZES = {
+    {  0.1,   1528,    14073,   135701,    151043},
+    {  1  ,   9892,   180623,  1003605,   2052169},
+    { 10  ,  65645,  1938516,  7435696,  21865475},
+    {100  , 448626, 19941198, 57987023, 220096052},
+  };
+  // Per-post, per-comment and per-person ratios, as in SF1
+  static final double LIKES_POST=0.75, LIKES_COMMENT=0.70, POST_TAGS=0.71, COMMENT_TAGS=1.31, INTERESTS=23.2;
+  static final int NCOUNTRY=111, NCITY=1343, NTAG=16080;
+  static final long START = LocalDate.of(2010,1,1).toEpochDay(), END = LocalDate.of(2012,12,31).toEpochDay();
+  static final long MS = 24L*3600L*1000L;
+  static final String[] GENDERS = {"female","male"};
+
+  static final String[] TABLES = {"City","Person","Person_knows_Person","Person_hasInterest_Tag","Person_likes_Post","Person_likes_Comment","Post","Comment","Post_hasTag_Tag","Comment_hasTag_Tag"};
+  static final int CITY=0, PERSON=1, KNOWS=2, INTEREST=3, LIKES_P=4, LIKES_C=5, POST=6, COMMENT=7, POST_TAG=8, COMMENT_TAG=9;
+  static final String[][] COLS = {
+    {"id","name","ispartof_country"},
+    {"id","creationdate","gender","birthday","islocatedin_place"},
+    {"creationdate","person1id","person2id"},
+    {"id","hasinterest_tag"},
+    {"creationdate","id","likes_post"},
+    {"creationdate","id","likes_comment"},
+    {"creationdate","id","length","hascreator_person","islocatedin_country"},
+    {"creationdate","id","length","hascreator_person","islocatedin_country","replyof_post","replyof_comment"},
+    {"creationdate","id","hastag_tag"},
+    {"creationdate","id","hastag_tag"},
+  };
+  static final byte T=Vec.T_TIME, N=Vec.T_NUM, S=Vec.T_STR, C=Vec.T_CAT;
+  static final byte[][] TYPES = {
+    {N,S,N},
+    {N,T,C,T,N},
+    {T,N,N},
+    {N,N},
+    {T,N,N},
+    {T,N,N},
+    {T,N,N,N,N},
+    {T,N,N,N,N,N,N},
+    {T,N,N},
+    {T,N,N},
+  };
+
+  /** Number of persons at a scale factor */
+  public static long persons( double sf ) { return (long)size(sf,1); }
+
+  /** Generate a TSMB table at a scale factor */
+  public static Frame gen( String table, double sf ) {
+    int tbl = Arrays.asList(TABLES).indexOf(table);
+    if( tbl == -1 ) throw new IllegalArgumentException("Unknown TSMB table "+table);
+    Gen g = new Gen(tbl,sf);
+    String[][] doms = new String[COLS[tbl].length][];
+    if( tbl==PERSON ) doms[2] = GENDERS;
+    Vec tmp = Vec.makeZero(tbl==CITY ? NCITY : g._n);
+    Frame fr = g.doAll(TYPES[tbl],tmp).outputFrame(Key.make(table+".hex"),COLS[tbl],doms);
+    tmp.remove();
+    return fr;
+  }
+
+  // Log-log interpolation between the anchor sizes; extrapolates off the ends
+  static double size( double sf, int col ) {
+    int i=0;
+    while( i < SIZES.length-2 && sf > SIZES[i+1][0] ) i++;
+    double x0 = Math.log(SIZES[i][0]), x1 = Math.log(SIZES[i+1][0]);
+    double y0 = Math.log(SIZES[i][col]), y1 = Math.log(SIZES[i+1][col]);
+    return Math.max(1,Math.exp(y0+(y1-y0)*(Math.log(sf)-x0)/(x1-x0)));
+  }
+
+  private static class Gen extends MRTask<Gen> {
+    static final int MAX_MSGS = (1<<20)-1; // Messages per person, from the id layout
+    final int _tbl;
+    final long _n;              // Persons
+    final double _knows, _posts, _comms; // Means per person
+    final long _win;            // Locality window, in persons
+    Gen( int tbl, double sf ) {
+      _tbl = tbl;
+      _n = persons(sf);
+      _knows = size(sf,2)/_n;
+      _posts = size(sf,3)/_n;
+      _comms = size(sf,4)/_n;
+      _win = Math.max(16,(long)(4*_knows));
+    }
+
+    @Override public void map( Chunk[] cs, NewChunk[] ncs ) {
+      Rand r = new Rand(), x = new Rand();
+      long start = cs[0].start();
+      for( int i=0; i<cs[0]._len; i++ ) {
+        long p = start+i;
+        switch( _tbl ) {
+        case CITY:
+          ncs[0].addNum(NCOUNTRY+p,0);
+          ncs[1].addStr("City_"+p);
+          ncs[2].addNum(p%NCOUNTRY,0);
+          break;
+        case PERSON:
+          ncs[0].addNum(pid(p),0);
+          ncs[1].addNum(date(r.seed(S_PDATE,p))*MS,0);
+          ncs[2].addCategorical(r.uni(0,1));
+          ncs[3].addNum((LocalDate.of(1980,1,1).toEpochDay()+r.uni(0,3652))*MS,0);
+          ncs[4].addNum(city(r,p),0);
+          break;
+        case KNOWS:
+          for( long q : knows(r,p) ) {
+            ncs[0].addNum(date(r.seed(S_KDATE,(p<<24)^q))*MS,0);
+            ncs[1].addNum(pid(p),0);
+            ncs[2].addNum(pid(q),0);
+          }
+          break;
+        case INTEREST:
+          for( long t : tags(r.seed(S_INTEREST,p),INTERESTS,country(p)) ) {
+            ncs[0].addNum(pid(p),0);
+            ncs[1].addNum(t,0);
+          }
+          break;
+        case LIKES_P: case LIKES_C:
+          for( long m : likes(r,x,p,_tbl==LIKES_P) ) {
+            ncs[0].addNum(date(r.seed(S_LDATE,m^(p<<40)))*MS,0);
+            ncs[1].addNum(pid(p),0);
+            ncs[2].addNum(m,0);
+          }
+          break;
+        case POST:
+          for( long k=0, nk=nposts(r,p); k<nk; k++ ) {
+            long m = post(p,k);
+            ncs[0].addNum(date(r.seed(S_MDATE,m))*MS,0);
+            ncs[1].addNum(m,0);
+            ncs[2].addNum(r.uni(0,2000),0);
+            ncs[3].addNum(pid(p),0);
+            ncs[4].addNum(country(p),0);
+          }
+          break;
+        case COMMENT:
+          for( long k=0, nk=ncomms(r,p); k<nk; k++ ) {
+            long m = comm(p,k);
+            ncs[0].addNum(date(r.seed(S_MDATE,m))*MS,0);
+            ncs[1].addNum(m,0);
+            ncs[2].addNum(r.uni(0,200),0);
+            ncs[3].addNum(pid(p),0);
+            ncs[4].addNum(country(p),0);
+            long re = reply(r,x,p,k);
+            if( (re&1)==0 ) { ncs[5].addNum(re,0); ncs[6].addNA(); }
+            else            { ncs[5].addNA(); ncs[6].addNum(re,0); }
+          }
+          break;
+        case POST_TAG: case COMMENT_TAG:
+          boolean isp = _tbl==POST_TAG;
+          for( long k=0, nk=isp ? nposts(r,p) : ncomms(r,p); k<nk; k++ ) {
+            long m = isp ? post(p,k) : comm(p,k);
+            long d = date(r.seed(S_MDATE,m))*MS;
+            for( long t : tags(r.seed(S_MTAGS,m),isp ? POST_TAGS : COMMENT_TAGS,country(p)) ) {
+              ncs[0].addNum(d,0);
+              ncs[1].addNum(m,0);
+              ncs[2].addNum(t,0);
+            }
+          }
+          break;
+        default: throw H2O.fail();
+        }
+      }
+    }
+
+    // Streams
+    private static final int S_PDATE=1, S_CITY=2, S_ACT=3, S_DEG=4, S_KNOWS=5, S_KDATE=6, S_INTEREST=7, S_LIKES=8, S_LDATE=9, S_NPOSTS=10, S_NCOMMS=11, S_MDATE=12, S_REPLY=13, S_MTAGS=14;
+
+    // Sparse ids.  Posts are even, comments odd, and both carry the creator.
+    private static long pid( long p ) { return (p<<4)+1; }
+    private static long post( long p, long k ) { return ((p<<20)|k)<<1; }
+    private static long comm( long p, long k ) { return post(p,k)|1; }
+    private static long date( Rand r ) { return START + r.uni(0,(int)(END-START)); }
+
+    // Persons are sorted by country; country k has a share of 1/(k+1)
+    static final double[] CDF = new double[NCOUNTRY];
+    static {
+      double sum=0;
+      for( int k=0; k<NCOUNTRY; k++ ) CDF[k] = (sum += 1.0/(k+1));
+      for( int k=0; k<NCOUNTRY; k++ ) CDF[k] /= sum;
+    }
+    private int country( long p ) {
+      int k = Arrays.binarySearch(CDF,(p+0.5)/_n);
+      return Math.min(k < 0 ? -k-1 : k, NCOUNTRY-1);
+    }
+    // City ids follow the country ids; city c is in country c%NCOUNTRY
+    private long city( Rand r, long p ) {
+      int k = country(p), ncity = (NCITY-k+NCOUNTRY-1)/NCOUNTRY;
+      return NCOUNTRY + k + (long)NCOUNTRY*r.seed(S_CITY,p).uni(0,ncity-1);
+    }
+
+    // Power-law weight with mean 1 (Pareto, alpha 2)
+    private static double pareto( Rand r ) { return 0.5/Math.sqrt(1.0-r.dbl()); }
+    // Integer with the given real mean: E[floor(m+U)] == m
+    private static long round( Rand r, double m ) { return (long)(m + r.dbl()); }
+    private static double activity( Rand r, long p ) { return pareto(r.seed(S_ACT,p)); }
+    private long nposts( Rand r, long p ) { double a = activity(r,p); return Math.min(MAX_MSGS,round(r.seed(S_NPOSTS,p),_posts*a)); }
+    private long ncomms( Rand r, long p ) { double a = activity(r,p); return Math.min(MAX_MSGS,round(r.seed(S_NCOMMS,p),_comms*a)); }
+
+    // A person near p, mostly; sometimes anyone
+    private long near( Rand r, long p ) {
+      if( r.dbl() < 0.2 ) return r.uni(0,_n-1);
+      long d = (long)(-_win*Math.log(1.0-r.dbl()));
+      long q = r.dbl() < 0.5 ? p-d : p+d;
+      return Math.max(0,Math.min(_n-1,q));
+    }
+
+    // Friends of p with a higher row, sorted and unique.  Each undirected
+    // edge is made once, by its lower end.
+    private long[] knows( Rand r, long p ) {
+      long max = _n-1-p;
+      int d = (int)Math.min(max,round(r.seed(S_DEG,p),_knows*pareto(r)));
+      long[] qs = new long[d];
+      r.seed(S_KNOWS,p);
+      for( int i=0; i<d; i++ ) {
+        long q = p+1+(long)(-_win*Math.log(1.0-r.dbl()));
+        qs[i] = r.dbl() < 0.2 || q >= _n ? r.uni(p+1,_n-1) : q;
+      }
+      return uniq(qs,d);
+    }
+
+    // Message ids liked by p, sorted and unique
+    private long[] likes( Rand r, Rand x, long p, boolean posts ) {
+      double mean = posts ? _posts*LIKES_POST : _comms*LIKES_COMMENT;
+      int n = (int)Math.min(MAX_MSGS,round(r.seed(S_LIKES+(posts?0:100),p),mean*activity(x,p)));
+      long[] ms = new long[n];
+      int j=0;
+      for( int i=0; i<n; i++ ) {
+        long q = near(r,p);
+        long nk = posts ? nposts(x,q) : ncomms(x,q);
+        if( nk > 0 ) ms[j++] = posts ? post(q,r.uni(0,nk-1)) : comm(q,r.uni(0,nk-1));
+      }
+      return uniq(ms,j);
+    }
+
+    // Parent of comment k of p: a post, or an earlier (lower id) comment.
+    // Retries from a new person when the pick has no messages.
+    private long reply( Rand r, Rand x, long p, long k ) {
+      r.seed(S_REPLY,comm(p,k));
+      boolean topost = r.dbl() < 0.5;
+      for( int i=0; i<32; i++ ) {
+        long q = near(r,p);
+        if( topost ) {
+          long nk = nposts(x,q);
+          if( nk > 0 ) return post(q,r.uni(0,nk-1));
+        } else {
+          if( q > p ) q = p-(q-p);
+          if( q < 0 ) { topost = true; continue; }
+          long nk = q==p ? k : ncomms(x,q);
+          if( nk > 0 ) return comm(q,r.uni(0,nk-1));
+        }
+        if( i==15 ) topost = true;
+      }
+      for( long q=0; q<_n; q++ ) // Tiny scales: the first post anywhere
+        if( nposts(x,q) > 0 ) return post(q,0);
+      return post(p,0);
+    }
+
+    // Zipf tags, rotated by country; sorted and unique
+    private static long[] tags( Rand r, double mean, int country ) {
+      int n = (int)round(r,2*mean*r.dbl());
+      long[] ts = new long[n];
+      for( int i=0; i<n; i++ ) {
+        long z = (long)Math.exp(r.dbl()*Math.log(NTAG+1))-1; // P(z) ~ 1/(z+1)
+        ts[i] = (z + country*97L) % NTAG;
+      }
+      return uniq(ts,n);
+    }
+
+    private static long[] uniq( long[] xs, int n ) {
+      Arrays.sort(xs,0,n);
+      int w=0;
+      for( int i=0; i<n; i++ )
+        if( w==0 || xs[i] != xs[w-1] )
+          xs[w++] = xs[i];
+      return w==xs.length ? xs : Arrays.copyOf(xs,w);
+    }
+  }
+}
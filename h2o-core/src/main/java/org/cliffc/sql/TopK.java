@@ -0,0 +1,156 @@
+package org.cliffc.sql;
+
+import water.*;
+import water.fvec.*;
+import java.util.Arrays;
+
+/**
+ * Top-K: the first k rows by a multi-key ORDER BY, without a full sort.
+ *
+ * A Heap holds the best k entries seen so far, with the worst at the root.
+ * A new entry either loses to the root, or replaces it and sifts down, so n
+ * entries cost O(n log k).  Over a Frame, each chunk fills a heap and the
+ * heaps merge in reduce; only the k winning rows are materialized.
+ *
+ * Ties break on the id (row number), ascending even for descending keys, so
+ * results are deterministic.  NAs compare below all values: first for an
+ * ascending key, last for a descending one.
+ */
+public abstract class TopK {
+
+  /** Top k rows of fr ordered by cols (descending where descs), as a new
+   *  Frame in order. */
+  public static Frame sort( Frame fr, int[] cols, boolean[] descs, int k ) {
+    long[] rows = new Scan(cols,descs,k).doAll(fr)._heap.sorted();
+    if( rows.length==0 ) return new Sel(fr.anyVec().nChunks()).gather(fr); // Empty, but typed
+    return fr.deepSlice(rows,null);
+  }
+
+  private static class Scan extends MRTask<Scan> {
+    final int[] _cols;
+    final boolean[] _descs;
+    final int _k;
+    Heap _heap;
+    Scan( int[] cols, boolean[] descs, int k ) { _cols = cols; _descs = descs; _k = k; }
+    @Override public void map( Chunk[] cs ) {
+      Heap heap = new Heap(_k,_descs);
+      int len = cs[0]._len;
+      long start = cs[0].start();
+      double[][] vals = new double[_cols.length][];
+      for( int c=0; c<_cols.length; c++ )
+        vals[c] = cs[_cols[c]].getDoubles(new double[len],0,len);
+      double[] vs = new double[_cols.length];
+      for( int i=0; i<len; i++ ) {
+        for( int c=0; c<vs.length; c++ ) vs[c] = vals[c][i];
+        heap.add(start+i,vs);
+      }
+      _heap = heap;
+    }
+    @Override public void reduce( Scan s ) {
+      if( _heap == null ) _heap = s._heap;
+      else if( s._heap != null ) _heap.add(s._heap);
+    }
+  }
+
+  /** Bounded heap of the best k (id,values) entries. */
+  public static class Heap extends Iced<Heap> {
+    final int _k, _nvals;
+    final boolean[] _descs;     // Descending, per value
+    long[] _ids;                // Heap order, worst at 0
+    double[] _vals;             // _nvals values per entry
+    int _n;                     // Entries in use
+    transient double[] _tmp;    // Scratch for one-value entries
+
+    public Heap( int k, boolean[] descs ) {
+      _k = k;  _descs = descs;  _nvals = descs.length;
+      int cap = Math.min(k,16);
+      _ids = new long[cap];
+      _vals = new double[cap*_nvals];
+    }
+    public int size() { return _n; }
+
+    /** Offer a one-value entry */
+    public void add( long id, double v ) {
+      assert _nvals==1;
+      if( _tmp==null ) _tmp = new double[1];
+      _tmp[0] = v;
+      add(id,_tmp);
+    }
+
+    /** Offer an entry; the values are copied */
+    public void add( long id, double[] vs ) {
+      if( _k==0 ) return;
+      if( _n < _k ) {           // Not full: append and sift up
+        if( _n==_ids.length ) {
+          int cap = Math.min(_k,_n<<1);
+          _ids = Arrays.copyOf(_ids,cap);
+          _vals = Arrays.copyOf(_vals,cap*_nvals);
+        }
+        set(_n,id,vs,0);
+        up(_n++);
+      } else if( cmp(vs,0,id,_vals,0,_ids[0]) < 0 ) { // Beats the worst: replace it
+        set(0,id,vs,0);
+        down(0);
+      }
+    }
+
+    /** Merge in another heap */
+    public void add( Heap h ) {
+      double[] vs = new double[_nvals];
+      for( int i=0; i<h._n; i++ ) {
+        System.arraycopy(h._vals,i*_nvals,vs,0,_nvals);
+        add(h._ids[i],vs);
+      }
+    }
+
+    /** Ids in order, best first */
+    public long[] sorted() {
+      Integer[] xs = new Integer[_n];
+      for( int i=0; i<_n; i++ ) xs[i] = i;
+      Arrays.sort(xs,(a,b) -> cmp(_vals,a*_nvals,_ids[a],_vals,b*_nvals,_ids[b]));
+      long[] ids = new long[_n];
+      for( int i=0; i<_n; i++ ) ids[i] = _ids[xs[i]];
+      return ids;
+    }
+
+    // Compare entries: <0 if a sorts before (is better than) b
+    private int cmp( double[] avs, int ax, long aid, double[] bvs, int bx, long bid ) {
+      for( int j=0; j<_nvals; j++ ) {
+        double a = avs[ax+j], b = bvs[bx+j];
+        int c = Double.isNaN(a) ? (Double.isNaN(b) ? 0 : -1) : (Double.isNaN(b) ? 1 : Double.compare(a,b));
+        if( c != 0 ) return _descs[j] ? -c : c;
+      }
+      return Long.compare(aid,bid);
+    }
+    private void set( int x, long id, double[] vs, int off ) {
+      _ids[x] = id;
+      System.arraycopy(vs,off,_vals,x*_nvals,_nvals);
+    }
+    private void swap( int x, int y ) {
+      long id = _ids[x]; _ids[x] = _ids[y]; _ids[y] = id;
+      for( int j=0; j<_nvals; j++ ) {
+        double d = _vals[x*_nvals+j]; _vals[x*_nvals+j] = _vals[y*_nvals+j]; _vals[y*_nvals+j] = d;
+      }
+    }
+    // Worse entries move toward the root
+    private boolean worse( int x, int y ) { return cmp(_vals,x*_nvals,_ids[x],_vals,y*_nvals,_ids[y]) > 0; }
+    private void up( int x ) {
+      while( x > 0 ) {
+        int p = (x-1)>>1;
+        if( !worse(x,p) ) return;
+        swap(x,p);
+        x = p;
+      }
+    }
+    private void down( int x ) {
+      while( true ) {
+        int l = 2*x+1, r = l+1, w = x;
+        if( l < _n && worse(l,w) ) w = l;
+        if( r < _n && worse(r,w) ) w = r;
+        if( w == x ) return;
+        swap(x,w);
+        x = w;
+      }
+    }
+  }
+}
@@ -4,12 +4,15 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Arrays;
 import water.fvec.Chunk;
+import water.fvec.Frame;
+import water.persist.Persist;
+import water.persist.PersistFS;
 import water.util.Log;
 import water.util.PrettyPrint;
 
 /** Store Cleaner: User-Mode Swap-To-Disk */
 
-class Cleaner extends Thread {
+public class Cleaner extends Thread {
   // msec time at which the STORE was dirtied.
   // Long.MAX_VALUE if clean.
   static private volatile long _dirty; // When was store dirtied
@@ -43,6 +46,103 @@ class Cleaner extends Thread {
   // Desired cache level. Set by the MemoryManager asynchronously.
   static volatile long DESIRED;
 
+  // ---
+  // Eviction policy.  Values are swapped out and freed oldest first, by the
+  // policy's age.
+
+  /** Eviction policy: the time a Value counts as last used */
+  public interface Policy { long age( Value val ); }
+
+  /** Plain LRU, by last access */
+  public static final Policy LRU = Value::lastAccessed;
+
+  // Accesses within this many msec count as one, for LRU-2
+  static final long CORRELATED = 1000;
+  // Values used only once count as this much older than that use, for LRU-2
+  static final long ONCE = 60000;
+
+  /** LRU-2, by the access before last.  One big scan touches each of its
+   *  chunks once; they go before Values in repeated use, such as dimension
+   *  tables, that an LRU would flush. */
+  public static final Policy LRU2 = val -> {
+    long prev = val.prevAccessed();
+    return prev != 0 ? prev : val.lastAccessed()-ONCE;
+  };
+
+  private static volatile Policy POLICY = "lru".equals(System.getProperty(H2O.OptArgs.SYSTEM_PROP_PREFIX + "cleaner.policy")) ? LRU : LRU2;
+  public static void setPolicy( Policy p ) { POLICY = p; }
+
+  // Pinned Values count as this much younger than the policy says
+  static final long PIN_BOOST = 10*60000;
+
+  // Pinned Keys; a Vec key covers its chunks.  Few, so a copy-on-write
+  // array, scanned without allocation on every Cleaner pass.
+  private static volatile Key[] PINS = new Key[0];
+
+  /** Hint to keep a Key's Value in memory; for a Vec, all its chunks.
+   *  Pinned Values count as PIN_BOOST msec younger, so go after the
+   *  unpinned Values in use over that time. */
+  public static synchronized void pin( Key k ) {
+    for( Key p : PINS ) if( p.equals(k) ) return;
+    Key[] pins = Arrays.copyOf(PINS,PINS.length+1);
+    pins[pins.length-1] = k;
+    PINS = pins;
+  }
+  public static synchronized void unpin( Key k ) {
+    Key[] pins = PINS;
+    for( int i=0; i<pins.length; i++ )
+      if( pins[i].equals(k) ) {
+        Key[] ps = Arrays.copyOf(pins,pins.length-1);
+        if( i < ps.length ) ps[i] = pins[pins.length-1];
+        PINS = ps;
+        return;
+      }
+  }
+  public static void pin( Frame fr ) { for( Key k : fr.keys() ) pin(k); }
+  public static void unpin( Frame fr ) { for( Key k : fr.keys() ) unpin(k); }
+
+  static boolean pinned( Key k ) {
+    Key[] pins = PINS;
+    if( pins.length == 0 ) return false;
+    boolean chk = k.isChunkKey();
+    for( Key p : pins )
+      if( p.equals(k) || (chk && p._kb[0]==Key.VEC && ofVec(k._kb,p._kb)) )
+        return true;
+    return false;
+  }
+  // Chunk key bits are the Vec key bits, but for the type and chunk index
+  private static boolean ofVec( byte[] chk, byte[] vec ) {
+    if( chk.length != vec.length ) return false;
+    for( int i=1; i<chk.length; i++ )
+      if( (i < 6 || i > 9) && chk[i] != vec[i] ) return false;
+    return true;
+  }
+  // Policy age, boosted if pinned but never past now
+  static long age( Key k, Value val, long now ) {
+    long age = POLICY.age(val);
+    return pinned(k) ? Math.min(now,age+PIN_BOOST) : age;
+  }
+
+  // ---
+  // Counters, for tuning; reference and load counts are in Value
+  private static volatile long SWAP_OUTS, FREES; // Cleaner thread only
+
+  /** Value references served from memory.  Gets of a Value within
+   *  CORRELATED msec of the last count once, so counting stays off the
+   *  get fast path. */
+  public static long hits() { return Math.max(0,Value.REFERENCES.sum()-misses()); }
+  /** Value loads from disk on demand, not read ahead */
+  public static long misses() { return Value.LOADS.sum()-Value.PREFETCHES.sum(); }
+  /** Values read ahead from disk */
+  public static long prefetches() { return Value.PREFETCHES.sum(); }
+  /** Values written to disk */
+  public static long swapOuts() { return SWAP_OUTS; }
+  /** Values freed from memory */
+  public static long frees() { return FREES; }
+  public static String stats() {
+    return "hits="+hits()+", misses="+misses()+", prefetches="+prefetches()+", swapouts="+swapOuts()+", frees="+frees();
+  }
+
   Cleaner() {
     super("MemCleaner");
     setDaemon(true);
@@ -69,6 +169,10 @@ class Cleaner extends Thread {
   @Override /*synchronized*/ public void run() {
     boolean diskFull = false;
     while( true ) {
+      // Delete the memory-mapped files of removed Vecs
+      Persist ice = H2O.getPM().getIce();
+      if( ice instanceof PersistFS ) ((PersistFS)ice).sweep();
+
       // Sweep the K/V store, writing out Values (cleaning) and free'ing
       // - Clean all "old" values (lazily, optimistically)
       // - Clean and free old values if above the desired cache level
@@ -129,10 +233,10 @@ class Cleaner extends Thread {
         Object p = val.rawPOJO();
         if( m == null && p == null ) continue; // Nothing to throw out
         if( val.isLockable() ) continue; // we do not want to throw out Lockables.
-        boolean isChunk = p instanceof Chunk && !((Chunk)p).isVolatile();
+        boolean isChunk = isChunk(p);
         // Ignore things younger than the required age.  In particular, do
         // not spill-to-disk all dirty things we find.
-        long touched = val._lastAccessedTime;
+        long touched = age((Key)ok,val,now);
         if( touched > clean_to_age ) { // Too recently touched?
           // But can toss out a byte-array if already deserialized & on disk
           // (no need for both forms).  Note no savings for Chunks, for which m==p._mem
@@ -154,7 +258,7 @@ class Cleaner extends Thread {
         // Should I further force it from memory?
         if( isChunk && !val.isPersisted() && !diskFull && ((Key)ok).home() ) { // && (force || (lazyPersist() && lazy_clean(key)))) {
           long now_ns = System.nanoTime();
-          try { val.storePersist(); } // Write to disk
+          try { val.storePersist(); if( val.isPersisted() ) SWAP_OUTS++; } // Write to disk
           catch( FileNotFoundException fnfe ) { continue; } // Can happen due to racing key delete/remove
           catch( IOException e ) {
             Log.warn( isDiskFull()
@@ -170,6 +274,7 @@ class Cleaner extends Thread {
         }
         // And, under pressure, free all
         if( isChunk && force && (val.isPersisted() || !((Key)ok).home()) ) {
+          FREES++;
           val.freeMem ();  if( m != null ) freed += val._max;  m = null;
           val.freePOJO();  if( p != null ) freed += val._max;  p = null;
           if( isChunk ) freed -= val._max; // Double-counted freed mem for Chunks since val._pojo._mem & val._mem are the same.
@@ -191,7 +296,7 @@ class Cleaner extends Thread {
       h = Histo.current(true); // Force a new histogram
       MemoryManager.set_goals("postclean",false);
       // No logging if under memory pressure: can deadlock the cleaner thread
-      String s2 = h+" diski_o="+PrettyPrint.bytes(cleaned)+", freed="+(freed>>20)+"M, DESIRED="+(DESIRED>>20)+"M";
+      String s2 = h+" diski_o="+PrettyPrint.bytes(cleaned)+", freed="+(freed>>20)+"M, DESIRED="+(DESIRED>>20)+"M, "+stats();
       if( MemoryManager.canAlloc() ) Log.debug(s1,s2);
       else                           System.err.println(s1+"\n"+s2);
       // For testing thread
@@ -204,6 +309,12 @@ class Cleaner extends Thread {
   }
 
 
+  // Only Chunk POJOs are swapped out and freed; other POJOs are too often
+  // written in place.
+  private static boolean isChunk( Object p ) { return p instanceof Chunk && !((Chunk)p).isVolatile(); }
+  /** True if the Cleaner can swap out and free this Value under pressure */
+  public static boolean evictable( Value val ) { return isChunk(val.rawPOJO()) && (val.isPersisted() || !val._key.home()); }
+
   // Histogram class
   static class Histo {
     // Current best histogram
@@ -271,12 +382,13 @@ class Cleaner extends Thread {
         if( len == 0 ) continue;
         cached += len; // Accumulate total amount of cached keys
 
-        if( val._lastAccessedTime < oldest ) { // Found an older Value?
+        long age = age((Key)ok,val,_when);
+        if( age < oldest ) { // Found an older Value?
           vold = val; // Record oldest Value seen
-          oldest = val._lastAccessedTime;
+          oldest = age;
         }
         // Compute histogram bucket
-        int idx = (int)((val._lastAccessedTime - eldest)/_hStep);
+        int idx = (int)((age - eldest)/_hStep);
         if( idx < 0 ) idx = 0;
         else if( idx >= _hs.length ) idx = _hs.length-1;
         _hs[idx] += len;      // Bump histogram bucket
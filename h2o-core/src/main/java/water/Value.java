@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
 import jsr166y.ForkJoinPool;
 import water.fvec.Frame;
 import water.fvec.Vec;
@@ -138,6 +139,18 @@ public final class Value extends Iced implements ForkJoinPool.ManagedBlocker {
     if( _max == 0 ) return (_mem = new byte[0]);
     return (_mem = loadPersist());
   }
+  /** Best-effort reload of a swapped-out Value, ahead of use; skipped if
+   *  already in memory or memory is short.  True if loaded.  Chunks are
+   *  loaded as their POJO, as get() would; the Cleaner only evicts Values
+   *  holding a Chunk. */
+  public final boolean prefetch() {
+    if( _mem != null || _pojo != null || !isPersisted() || isDeleted() || !MemoryManager.canAlloc() ) return false;
+    byte[] mem = memOrLoad();
+    if( mem == null ) return false;
+    if( _key.isChunkKey() && _pojo == null ) _pojo = (Freezable)TypeMap.newFreezable(_type).reloadFromBytes(mem);
+    PREFETCHES.increment();
+    return true;
+  }
   // Just an empty shell of a Value, no local data but the Value is "real".
   // Any attempt to look at the Value will require a remote fetch.
   final boolean isEmpty() { return _max > 0 && _mem==null && _pojo == null && !isPersisted(); }
@@ -176,9 +189,27 @@ public final class Value extends Iced implements ForkJoinPool.ManagedBlocker {
   // ---
   // Time of last access to this value.
   transient long _lastAccessedTime = System.currentTimeMillis();
-  private void touch() {_lastAccessedTime = System.currentTimeMillis();}
+  // Time of the access before last, for LRU-2; 0 if none.  Accesses within
+  // Cleaner.CORRELATED msec count as one.
+  transient long _prevAccessedTime;
+  private transient boolean _touched; // Creation is not an access
+  // Counters for the Cleaner's stats
+  static final LongAdder REFERENCES = new LongAdder(); // Uncorrelated gets
+  static final LongAdder LOADS = new LongAdder();    // Loads from disk
+  static final LongAdder PREFETCHES = new LongAdder(); // ... of which read ahead
+  private void touch() {
+    long now = System.currentTimeMillis();
+    if( !_touched || now-_lastAccessedTime > Cleaner.CORRELATED ) { // A new reference
+      if( _touched ) _prevAccessedTime = _lastAccessedTime;
+      _touched = true;
+      REFERENCES.increment();
+    }
+    _lastAccessedTime = now;
+  }
+  public final long lastAccessed() { return _lastAccessedTime; }
+  public final long prevAccessed() { return _prevAccessedTime; }
   // Exposed and used for testing only; used to trigger premature cleaning/disk-swapping
-  void touchAt(long time) {_lastAccessedTime = time;}
+  void touchAt(long time) {_lastAccessedTime = time; _prevAccessedTime = Math.min(_prevAccessedTime,time);}
 
   // ---
 
@@ -258,6 +289,7 @@ public final class Value extends Iced implements ForkJoinPool.ManagedBlocker {
     assert isPersisted();
     try {
       byte[] res = H2O.getPM().load(backend(), this);
+      LOADS.increment();
       assert !isDeleted();        // Race in user-land: load-after-delete
       return res;
     } catch( IOException ioe ) { throw Log.throwErr(ioe); }
@@ -80,5 +80,12 @@ public class C1Chunk extends Chunk {
   }
   @Override
   public boolean hasFloat() {return false;}
+  @Override public long [] getLongs(long [] vals, int from, int to, long NA){
+    for(int i = from; i < to; i++) {
+      int x = 0xFF&_mem[i];
+      vals[i-from] = (x == _NA)?NA:x;
+    }
+    return vals;
+  }
 
 }
@@ -85,5 +85,12 @@ public class C2Chunk extends Chunk {
   }
   @Override
   public boolean hasFloat() {return false;}
+  @Override public long [] getLongs(long [] vals, int from, int to, long NA){
+    for(int i = from; i < to; i++) {
+      int x = UnsafeUtils.get2(_mem, 2*i);
+      vals[i-from] = (x == _NA)?NA:x;
+    }
+    return vals;
+  }
 
 }
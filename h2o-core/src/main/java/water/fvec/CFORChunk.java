@@ -0,0 +1,132 @@
+package water.fvec;
+
+import water.MemoryManager;
+import water.util.PrettyPrint;
+import water.util.UnsafeUtils;
+
+/**
+ * Frame-of-reference bit-packed integers.  Rows are in blocks of 128; each
+ * block keeps its own base (its min), and each row the delta from its block
+ * base in a fixed number of bits.  Sorted and clustered columns (keys, dates)
+ * have small per-block ranges, so need far fewer bits than the whole chunk's
+ * range.  Values are scaled by a power of 10, as for dates in msec.  If the
+ * chunk has NAs, the all-ones delta is NA.
+ * Layout: bits, exponent, NA flag, pad, len, the block bases, then the packed
+ * deltas, plus 8 bytes of padding so any delta is one unaligned 8-byte load.
+ */
+public class CFORChunk extends Chunk {
+  static protected final int _OFF = 8;
+  static final int LOG_BLK = 7;           // 128 rows per block
+  static final int MAX_BITS = 56;         // One 8-byte load, at any bit offset
+  private transient int _bits, _exp, _dat;
+  private transient long _mask, _pow;
+  private transient boolean _na;
+
+  CFORChunk( byte[] bs ) { _mem=bs; initFromBytes(); }
+
+  /** Bytes for len rows of bits each */
+  static long clen( int len, int bits ) {
+    return _OFF + (long)nblocks(len)*8 + (((long)len*bits+7)>>3) + 8;
+  }
+  static int nblocks( int len ) { return (len+(1<<LOG_BLK)-1)>>LOG_BLK; }
+
+  /** Pack scaled values; NA rows are flagged in nas, which may be null.
+   *  Bits must hold every block's range, plus one more code if NAs. */
+  static CFORChunk make( long[] vals, boolean[] nas, int len, int bits, int exp, long[] bases ) {
+    assert bits <= MAX_BITS;
+    byte[] bs = MemoryManager.malloc1((int)clen(len,bits));
+    bs[0] = (byte)bits;
+    bs[1] = (byte)exp;
+    bs[2] = (byte)(nas==null ? 0 : 1);
+    UnsafeUtils.set4(bs,4,len);
+    int dat = _OFF + nblocks(len)*8;
+    for( int b=0; b<bases.length; b++ ) UnsafeUtils.set8(bs,_OFF+(b<<3),bases[b]);
+    long mask = bits==0 ? 0 : -1L>>>(64-bits);
+    if( bits > 0 )
+      for( int i=0; i<len; i++ ) {
+        long d = nas!=null && nas[i] ? mask : vals[i]-bases[i>>LOG_BLK];
+        assert (nas!=null && nas[i]) || (0 <= d && (d < mask || (nas==null && d==mask)));
+        long bit = (long)i*bits;
+        int off = dat+(int)(bit>>3);
+        UnsafeUtils.set8(bs,off,UnsafeUtils.get8(bs,off) | (d<<(bit&7)));
+      }
+    return new CFORChunk(bs);
+  }
+
+  private long delta( int i ) {
+    if( _bits==0 ) return 0;
+    long bit = (long)i*_bits;
+    return (UnsafeUtils.get8(_mem,_dat+(int)(bit>>3))>>>(bit&7)) & _mask;
+  }
+  private long base( int i ) { return UnsafeUtils.get8(_mem,_OFF+((i>>LOG_BLK)<<3)); }
+  private boolean isNA( long d ) { return _na && d==_mask; }
+
+  @Override protected final long at8_impl( int i ) {
+    long d = delta(i);
+    if( isNA(d) ) throw new IllegalArgumentException("at8_abs but value is missing");
+    return (base(i)+d)*_pow;
+  }
+  @Override protected final double atd_impl( int i ) {
+    long d = delta(i);
+    return isNA(d) ? Double.NaN : (base(i)+d)*_pow;
+  }
+  @Override protected final boolean isNA_impl( int i ) { return isNA(delta(i)); }
+  @Override boolean set_impl(int idx, long l) { return false; }
+  @Override boolean set_impl(int idx, double d) { return false; }
+  @Override boolean set_impl(int idx, float f ) { return false; }
+  @Override boolean setNA_impl(int idx) { return false; }
+
+  @Override public double [] getDoubles(double [] vals, int from, int to, double NA){
+    for( int i = from; i < to; i++ ) {
+      long d = delta(i);
+      vals[i-from] = isNA(d) ? NA : (base(i)+d)*_pow;
+    }
+    return vals;
+  }
+  @Override public int [] getIntegers(int [] vals, int from, int to, int NA){
+    for( int i = from; i < to; i++ ) {
+      long d = delta(i);
+      vals[i-from] = isNA(d) ? NA : (int)((base(i)+d)*_pow);
+    }
+    return vals;
+  }
+  @Override public long [] getLongs(long [] vals, int from, int to, long NA){
+    for( int i = from; i < to; i++ ) {
+      long d = delta(i);
+      vals[i-from] = isNA(d) ? NA : (base(i)+d)*_pow;
+    }
+    return vals;
+  }
+
+  private void processRow(int i, ChunkVisitor v) {
+    long d = delta(i);
+    if( isNA(d) ) v.addNAs(1);
+    else v.addValue((base(i)+d)*_pow);
+  }
+
+  @Override
+  public <T extends ChunkVisitor> T processRows(T v, int from, int to) {
+    for( int i = from; i < to; i++ ) processRow(i,v);
+    return v;
+  }
+
+  @Override
+  public <T extends ChunkVisitor> T processRows(T v, int[] ids) {
+    for( int i : ids ) processRow(i,v);
+    return v;
+  }
+
+  @Override public final void initFromBytes () {
+    _start = -1;  _cidx = -1;
+    _bits = _mem[0];
+    _exp  = _mem[1];
+    _na   = _mem[2] != 0;
+    _mask = _bits==0 ? 0 : -1L>>>(64-_bits);
+    _pow  = PrettyPrint.pow10i(_exp);
+    set_len(UnsafeUtils.get4(_mem,4));
+    _dat  = _OFF + nblocks(_len)*8;
+    assert _mem.length == clen(_len,_bits);
+  }
+  @Override public boolean hasFloat() { return false; }
+  @Override public boolean hasNA() { return _na; }
+}
@@ -0,0 +1,126 @@
+package water.fvec;
+
+import water.MemoryManager;
+import water.util.UnsafeUtils;
+
+import java.util.Arrays;
+
+/**
+ * Run-length encoded integers, for sorted or clustered columns.
+ * Layout: run count, then the exclusive end row of each run, then each run's
+ * value; NA runs hold C8Chunk._NA.  Random access is a binary search over the
+ * run ends, short-cut by the last run found; bulk reads fill whole runs.
+ */
+public class CRLChunk extends Chunk {
+  static protected final long _NA = C8Chunk._NA;
+  static protected final int _OFF = 4;
+  private transient int _nruns;
+  private transient int _last;  // Last run found; a racy hint for sequential access
+
+  CRLChunk( byte[] bs ) { _mem=bs; initFromBytes(); }
+  CRLChunk( int[] ends, long[] vals, int nruns ) {
+    _mem = MemoryManager.malloc1(_OFF+nruns*12);
+    UnsafeUtils.set4(_mem,0,nruns);
+    for( int r=0; r<nruns; r++ ) {
+      UnsafeUtils.set4(_mem,_OFF+(r<<2),ends[r]);
+      UnsafeUtils.set8(_mem,_OFF+(nruns<<2)+(r<<3),vals[r]);
+    }
+    initFromBytes();
+  }
+
+  /** Bytes for a chunk of nruns runs */
+  static int clen( int nruns ) { return _OFF+nruns*12; }
+
+  private int end( int r ) { return UnsafeUtils.get4(_mem,_OFF+(r<<2)); }
+  private int start( int r ) { return r==0 ? 0 : end(r-1); }
+  private long val( int r ) { return UnsafeUtils.get8(_mem,_OFF+(_nruns<<2)+(r<<3)); }
+
+  // Run holding row i
+  private int run( int i ) {
+    int r = _last;
+    if( r < _nruns && i < end(r) ) {
+      if( start(r) <= i ) return r;
+    } else if( r+1 < _nruns && end(r) <= i && i < end(r+1) )
+      return _last = r+1;
+    int lo=0, hi=_nruns-1;      // First run with end > i
+    while( lo < hi ) {
+      int mid = (lo+hi)>>>1;
+      if( end(mid) <= i ) lo = mid+1; else hi = mid;
+    }
+    return _last = lo;
+  }
+
+  @Override protected final long at8_impl( int i ) {
+    long res = val(run(i));
+    if( res == _NA ) throw new IllegalArgumentException("at8_abs but value is missing");
+    return res;
+  }
+  @Override protected final double atd_impl( int i ) {
+    long res = val(run(i));
+    return res == _NA ? Double.NaN : res;
+  }
+  @Override protected final boolean isNA_impl( int i ) { return val(run(i)) == _NA; }
+  @Override boolean set_impl(int idx, long l) { return false; }
+  @Override boolean set_impl(int idx, double d) { return false; }
+  @Override boolean set_impl(int idx, float f ) { return false; }
+  @Override boolean setNA_impl(int idx) { return false; }
+
+  @Override public double [] getDoubles(double [] vals, int from, int to, double NA){
+    for( int r = run(from), i = from; i < to; r++ ) {
+      long x = val(r);
+      int e = Math.min(end(r),to);
+      Arrays.fill(vals,i-from,e-from,x == _NA ? NA : x);
+      i = e;
+    }
+    return vals;
+  }
+  @Override public int [] getIntegers(int [] vals, int from, int to, int NA){
+    for( int r = run(from), i = from; i < to; r++ ) {
+      long x = val(r);
+      int e = Math.min(end(r),to);
+      Arrays.fill(vals,i-from,e-from,x == _NA ? NA : (int)x);
+      i = e;
+    }
+    return vals;
+  }
+  @Override public long [] getLongs(long [] vals, int from, int to, long NA){
+    for( int r = run(from), i = from; i < to; r++ ) {
+      long x = val(r);
+      int e = Math.min(end(r),to);
+      Arrays.fill(vals,i-from,e-from,x == _NA ? NA : x);
+      i = e;
+    }
+    return vals;
+  }
+
+  @Override
+  public <T extends ChunkVisitor> T processRows(T v, int from, int to) {
+    for( int r = run(from), i = from; i < to; r++ ) {
+      long x = val(r);
+      int e = Math.min(end(r),to);
+      if( x == _NA ) v.addNAs(e-i);
+      else if( x == 0 ) v.addZeros(e-i);
+      else for( int j=i; j<e; j++ ) v.addValue(x);
+      i = e;
+    }
+    return v;
+  }
+
+  @Override
+  public <T extends ChunkVisitor> T processRows(T v, int[] ids) {
+    for( int i : ids ) {
+      long x = val(run(i));
+      if( x == _NA ) v.addNAs(1);
+      else v.addValue(x);
+    }
+    return v;
+  }
+
+  @Override public final void initFromBytes () {
+    _start = -1;  _cidx = -1;  _last = 0;
+    _nruns = UnsafeUtils.get4(_mem,0);
+    assert _mem.length == clen(_nruns);
+    set_len(_nruns==0 ? 0 : end(_nruns-1));
+  }
+  @Override public boolean hasFloat() { return false; }
+}
@@ -7,15 +7,24 @@ import water.util.UnsafeUtils;
 import water.parser.BufferedString;
 
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.function.Predicate;
 
 /**
  * The empty-compression function, where data is in 'string's.
+ *
+ * In dictionary mode each distinct string is stored once, and rows sharing a
+ * string share its offset; the offset is the row's code.  Per-string work
+ * (predicates, categorical lookups) then runs once per dictionary entry.
  */
 public class CStrChunk extends Chunk {
   static final int NA = -1;
   static protected final int _OFF=4+1;
+  static final int ASCII = 1, DICT = 2; // Flag bits at offset 4
   private int _valstart;
   public boolean _isAllASCII = false;
+  private boolean _isDict;
+  private transient int[] _dict; // Dictionary entry offsets, sorted; lazily built
 
   public CStrChunk() {}
 
@@ -63,7 +72,113 @@ public class CStrChunk extends Chunk {
         break;
       }
     }
-    UnsafeUtils.set1(_mem, 4, (byte) (_isAllASCII ? 1 : 0)); // isAllASCII flag
+    UnsafeUtils.set1(_mem, 4, (byte) (_isAllASCII ? ASCII : 0)); // isAllASCII flag
+  }
+
+  /**
+   * Dictionary-coded strings, if the distinct strings take at most half the
+   * bytes of all strings; else null.  Arguments as for the constructor.
+   */
+  static CStrChunk dict(int sslen, byte[] ss, int sparseLen, int idxLen, int[] id, int[] is) {
+    if( is == null ) return null;
+    HashMap<BufferedString,Integer> offs = new HashMap<>();
+    byte[] ds = MemoryManager.malloc1(sslen/2+1);
+    int dlen = 0;
+    int[] dis = new int[sparseLen];
+    for( int i = 0; i < sparseLen; ++i ) {
+      int off = is[i];
+      if( off == NA ) { dis[i] = NA; continue; }
+      int len = 0;
+      while( ss[off+len] != 0 ) len++;
+      BufferedString key = new BufferedString(ss,off,len);
+      Integer doff = offs.get(key);
+      if( doff == null ) {
+        if( 2*(dlen+len+1) > sslen ) return null; // Not enough repeats
+        System.arraycopy(ss,off,ds,dlen,len+1);
+        offs.put(key,doff = dlen);
+        dlen += len+1;
+      }
+      dis[i] = doff;
+    }
+    CStrChunk c = new CStrChunk(dlen,ds,sparseLen,idxLen,id,dis);
+    c._isDict = true;
+    c._mem[4] |= DICT;
+    return c;
+  }
+
+  /** True if dictionary coded: each distinct string is stored once */
+  public boolean isDict() { return _isDict; }
+
+  // Offsets of the dictionary entries, in order
+  private int[] dictOffs() {
+    int[] dict = _dict;
+    if( dict != null ) return dict;
+    int n = 0, vlen = _mem.length-_valstart;
+    for( int i = 0; i < vlen; i++ ) if( _mem[_valstart+i] == 0 ) n++;
+    dict = new int[n];
+    for( int i = 0, k = 0, start = 0; i < vlen; i++ )
+      if( _mem[_valstart+i] == 0 ) { dict[k++] = start; start = i+1; }
+    return _dict = dict;
+  }
+
+  /** Number of dictionary entries; dictionary mode only */
+  public int dictSize() { assert _isDict; return dictOffs().length; }
+
+  /** Dictionary code of row i, 0 to dictSize()-1, or -1 for NA; dictionary mode only */
+  public int code(int i) {
+    assert _isDict;
+    int off = intAt(i);
+    return off == NA ? -1 : Arrays.binarySearch(dictOffs(),off);
+  }
+
+  /** Dictionary entry of a code; dictionary mode only */
+  public BufferedString dictAt(BufferedString bStr, int code) {
+    int off = dictOffs()[code];
+    return bStr.set(_mem,_valstart+off,lengthAtOffset(off));
+  }
+
+  /**
+   * Rows whose string passes the predicate, in order.  In dictionary mode
+   * the predicate runs once per distinct string, else once per row.  NAs
+   * never pass.
+   * @return number of rows written into rows
+   */
+  public int filter(Predicate<BufferedString> p, int[] rows) {
+    BufferedString bs = new BufferedString();
+    int n = 0;
+    if( _isDict ) {
+      boolean[] pass = new boolean[dictSize()];
+      for( int k = 0; k < pass.length; k++ ) pass[k] = p.test(dictAt(bs,k));
+      for( int i = 0; i < _len; i++ ) {
+        int k = code(i);
+        if( k >= 0 && pass[k] ) rows[n++] = i;
+      }
+    } else {
+      for( int i = 0; i < _len; i++ )
+        if( !isNA_impl(i) && p.test(atStr_impl(bs,i)) ) rows[n++] = i;
+    }
+    return n;
+  }
+
+  // A copy not in dictionary mode, so NewChunk offsets line up with ours
+  private CStrChunk plain() {
+    int[] is = new int[_len];
+    int sslen = 0;
+    for( int i = 0; i < _len; i++ ) {
+      int off = intAt(i);
+      sslen += off == NA ? 0 : lengthAtOffset(off)+1;
+    }
+    byte[] ss = MemoryManager.malloc1(sslen);
+    sslen = 0;
+    for( int i = 0; i < _len; i++ ) {
+      int off = intAt(i);
+      if( off == NA ) { is[i] = NA; continue; }
+      int len = lengthAtOffset(off)+1;
+      System.arraycopy(_mem,_valstart+off,ss,sslen,len);
+      is[i] = sslen;
+      sslen += len;
+    }
+    return new CStrChunk(sslen,ss,_len,_len,null,is);
   }
 
   private int idx(int i) { return _OFF+(i<<2); }
@@ -100,7 +215,9 @@ public class CStrChunk extends Chunk {
     _start = -1;  _cidx = -1;
     _valstart = UnsafeUtils.get4(_mem, 0);
     byte b = UnsafeUtils.get1(_mem,4);
-    _isAllASCII = b != 0;
+    _isAllASCII = (b & ASCII) != 0;
+    _isDict = (b & DICT) != 0;
+    _dict = null;
     set_len((_valstart-_OFF)>>2);
   }
 
@@ -173,6 +290,7 @@ public class CStrChunk extends Chunk {
    * @return Filled NewChunk
    */
   public NewChunk asciiTrim(NewChunk nc) {
+    if( _isDict ) return plain().asciiTrim(nc);
     // copy existing data
     nc = this.extractRows(nc, 0,_len);
     //update offsets and byte array
@@ -205,6 +323,7 @@ public class CStrChunk extends Chunk {
    * @return Filled NewChunk
    */
   public NewChunk asciiSubstring(NewChunk nc, int startIndex, int endIndex) {
+    if( _isDict ) return plain().asciiSubstring(nc,startIndex,endIndex);
     // copy existing data
     nc = this.extractRows(nc, 0,_len);
     //update offsets and byte array
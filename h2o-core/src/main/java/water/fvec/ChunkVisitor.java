@@ -193,4 +193,47 @@ public abstract class ChunkVisitor {
       _k = kmax;
     }
   }
+  /**
+   * Simple chunk visitor for extracting rows from chunks into a long array.
+   */
+  public static final class LongAryVisitor extends ChunkVisitor {
+    public final long [] vals;
+    private int _k = 0;
+    private final long _na;
+    LongAryVisitor(long [] vals, long NA){this.vals = vals; _na = NA;}
+    @Override
+    public void addValue(int val) {vals[_k++] = val;}
+    @Override
+    public void addValue(long val) {vals[_k++] = val;}
+    @Override
+    public void addValue(long m, int e) {
+      if(e < 0 || e > 18) addValue(PrettyPrint.pow10(m,e));
+      else vals[_k++] = m*PrettyPrint.pow10i(e);
+    }
+    @Override
+    public void addValue(double val) {
+      if (Double.isNaN(val)) {
+        vals[_k++] = _na;
+      } else {
+        long l = (long) val;
+        if (l != val)
+          throw new RuntimeException(val + " does not fit into long");
+        vals[_k++] = l;
+      }
+    }
+    @Override
+    public void addZeros(int zeros) {
+      int k = _k;
+      int kmax = k +zeros;
+      for(;k < kmax; k++)vals[k] = 0;
+      _k = kmax;
+    }
+    @Override
+    public void addNAs(int nas) {
+      int k = _k;
+      int kmax = k + nas;
+      for(;k < kmax; k++)vals[k] = _na;
+      _k = kmax;
+    }
+  }
 }
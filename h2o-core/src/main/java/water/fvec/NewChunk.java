@@ -1171,8 +1171,10 @@ public class NewChunk extends Chunk {
     byte mode = type();
     if( mode==Vec.T_BAD ) // ALL NAs, nothing to do
       return new C0DChunk(Double.NaN, _len);
-    if( mode==Vec.T_STR )
-      return new CStrChunk(_sslen, _ss, _sparseLen, _len, _id, _is);
+    if( mode==Vec.T_STR ) {
+      CStrChunk dict = _len >= MIN_DICT_LEN ? CStrChunk.dict(_sslen, _ss, _sparseLen, _len, _id, _is) : null;
+      return dict != null ? dict : new CStrChunk(_sslen, _ss, _sparseLen, _len, _id, _is);
+    }
     boolean rerun=false;
     if(mode == Vec.T_CAT) {
       for(int i = 0; i< _sparseLen; i++ )
@@ -1409,6 +1411,15 @@ public class NewChunk extends Chunk {
       return chunkD();
     } // else an integer column
 
+    // Sorted or clustered integer column: runs, or narrow per-block ranges
+    if( _len >= MIN_RUNS_OR_BITS_LEN ) {
+      int w = leRange < 255 || (0<=lemin && lemax<=255 && (_naCnt + _catCnt)==0) ? 1
+        : leRange < 65535 ? 2
+        : Integer.MIN_VALUE < min && max <= Integer.MAX_VALUE ? 4 : 8;
+      Chunk c = chunkRunsOrBits(xmin,(long)_len*w);
+      if( c != null ) return c;
+    }
+
     // Compress column into a byte
     if(xmin == 0 &&  0<=lemin && lemax <= 255 && ((_naCnt + _catCnt)==0) )
       return new C1NChunk( bufX(0,0,C1NChunk._OFF,0));
@@ -1434,6 +1445,66 @@ public class NewChunk extends Chunk {
 
   private static long [] NAS = {C1Chunk._NA,C2Chunk._NA,C4Chunk._NA,C8Chunk._NA};
 
+  // Shortest chunk to try dictionary-coded strings on
+  static final int MIN_DICT_LEN = 256;
+  // Shortest chunk to try run-length or bit-packed encodings on
+  static final int MIN_RUNS_OR_BITS_LEN = 1024;
+
+  // Integer value of dense row i, in the xmin scale
+  private long scaled( int i, int xmin ) {
+    int x = (_xs.get(i)==Integer.MIN_VALUE+1 ? 0 : _xs.get(i))-xmin;
+    return x >= 0 ? _ms.get(i)*PrettyPrint.pow10i(x) : _ms.get(i)/PrettyPrint.pow10i(-x);
+  }
+
+  // Run-length encode a dense integer column if it is at most half the fixed
+  // width size, or bit-pack deltas from per-block bases if at most 3/4.
+  // Null if neither pays.
+  private Chunk chunkRunsOrBits( int xmin, long fixed ) {
+    final int blk = 1<<CFORChunk.LOG_BLK;
+    long[] bases = new long[CFORChunk.nblocks(_len)];
+    long range = 0, prev = 0;
+    long bmin = Long.MAX_VALUE, bmax = Long.MIN_VALUE;
+    boolean pna = false;
+    int nruns = 0;
+    for( int i=0; i<_len; i++ ) {
+      boolean na = isNA2(i);
+      long v = na ? 0 : scaled(i,xmin);
+      if( i==0 || na != pna || v != prev ) nruns++;
+      pna = na;  prev = v;
+      if( !na ) { bmin = Math.min(bmin,v); bmax = Math.max(bmax,v); }
+      if( (i&(blk-1))==blk-1 || i==_len-1 ) { // End of block
+        if( bmin > bmax ) bmin = bmax = 0;    // All NAs
+        bases[i>>CFORChunk.LOG_BLK] = bmin;
+        range = Math.max(range,bmax-bmin);
+        bmin = Long.MAX_VALUE;  bmax = Long.MIN_VALUE;
+      }
+    }
+    int bits = 64-Long.numberOfLeadingZeros(range+(_naCnt > 0 ? 1 : 0));
+    long rle = CRLChunk.clen(nruns);
+    long bp = bits <= CFORChunk.MAX_BITS ? CFORChunk.clen(_len,bits) : Long.MAX_VALUE;
+    if( rle <= bp && 2*rle <= fixed ) {
+      int[] ends = new int[nruns];
+      long[] vals = new long[nruns];
+      int r = -1;
+      for( int i=0; i<_len; i++ ) {
+        long v = isNA2(i) ? CRLChunk._NA : scaled(i,0);
+        if( r < 0 || v != vals[r] ) vals[++r] = v;
+        ends[r] = i+1;
+      }
+      assert r+1 == nruns;
+      return new CRLChunk(ends,vals,nruns);
+    }
+    if( bits <= CFORChunk.MAX_BITS && 4*bp <= 3*fixed ) {
+      long[] vals = MemoryManager.malloc8(_len);
+      boolean[] nas = _naCnt > 0 ? new boolean[_len] : null;
+      for( int i=0; i<_len; i++ )
+        if( isNA2(i) ) nas[i] = true;
+        else vals[i] = scaled(i,xmin);
+      return CFORChunk.make(vals,nas,_len,bits,xmin,bases);
+    }
+    return null;
+  }
+
   // Compute a sparse integer buffer
   private byte[] bufS(int len, int id_sz, int val_sz,boolean na_sparse){
     long NA = CXIChunk.NA(val_sz);
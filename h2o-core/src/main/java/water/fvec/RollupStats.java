@@ -46,6 +46,11 @@ final class RollupStats extends Iced {
   boolean _isInt=true;
   double[] _mins, _maxs;
   long _checksum;
+  // Zone maps: per-chunk min/max of the non-NA values, NaN for all-NA, UUID
+  // and String chunks.  Covers chunks _clo to _clo+_cmins.length while being
+  // reduced, and all chunks when done.
+  double[] _cmins, _cmaxs;
+  int _clo;
 
   // Expensive histogram & percentiles
   // Computed in a 2nd pass, on-demand, by calling computeHisto
@@ -228,7 +233,39 @@ final class RollupStats extends Iced {
     return this;
   }
 
+  // Zone map for this one chunk, from the chunk rollups
+  private RollupStats zone( int cidx ) {
+    boolean ok = _mins[0] <= _maxs[0]; // False for NaN, or no non-NA values
+    _cmins = new double[]{ok ? _mins[0] : Double.NaN};
+    _cmaxs = new double[]{ok ? _maxs[0] : Double.NaN};
+    _clo = cidx;
+    return this;
+  }
+
+  // Merge zone maps over the union of the chunk spans.  Within a node the
+  // spans are contiguous, so total copying is O(nChunks log nChunks).
+  private void zones( RollupStats rs, int lo, int hi ) {
+    double[] mins = new double[hi-lo], maxs = new double[hi-lo];
+    Arrays.fill(mins,Double.NaN);
+    Arrays.fill(maxs,Double.NaN);
+    if( _cmins != null ) {
+      System.arraycopy(_cmins,0,mins,_clo-lo,_cmins.length);
+      System.arraycopy(_cmaxs,0,maxs,_clo-lo,_cmaxs.length);
+    }
+    if( rs != null && rs._cmins != null )
+      for( int i=0; i<rs._cmins.length; i++ )
+        if( !Double.isNaN(rs._cmins[i]) ) {
+          mins[rs._clo-lo+i] = rs._cmins[i];
+          maxs[rs._clo-lo+i] = rs._cmaxs[i];
+        }
+    _cmins = mins;  _cmaxs = maxs;  _clo = lo;
+  }
+
   private void reduce( RollupStats rs ) {
+    if( rs._cmins != null ) {
+      if( _cmins == null ) { _cmins = rs._cmins; _cmaxs = rs._cmaxs; _clo = rs._clo; }
+      else zones(rs,Math.min(_clo,rs._clo),Math.max(_clo+_cmins.length,rs._clo+rs._cmins.length));
+    }
     for( double d : rs._mins ) if (!Double.isNaN(d)) min(d);
     for( double d : rs._maxs ) if (!Double.isNaN(d)) max(d);
     _naCnt += rs._naCnt;
@@ -270,7 +307,7 @@ final class RollupStats extends Iced {
     protected boolean modifiesVolatileVecs(){return false;}
 
     Roll( H2OCountedCompleter cmp, Key rskey ) { super(cmp); _rskey=rskey; }
-    @Override public void map( Chunk c ) { _rs = new RollupStats(0).map(c); }
+    @Override public void map( Chunk c ) { _rs = new RollupStats(0).map(c).zone(c.cidx()); }
     @Override public void reduce( Roll roll ) { _rs.reduce(roll._rs); }
     @Override public void postGlobal() {
       if( _rs == null )
@@ -285,6 +322,9 @@ final class RollupStats extends Iced {
       }
       // mean & sigma not allowed on more than 2 classes; for 2 classes the assumption is that it's true/false
       Vec vec = _fr.anyVec();
+      // Zone maps cover every chunk
+      if( _rs._cmins == null || _rs._clo != 0 || _rs._cmins.length != vec.nChunks() )
+        _rs.zones(null,0,vec.nChunks());
       String[] ss = vec.domain();
       if( vec.isCategorical() && ss.length > 2 )
         _rs._mean = _rs._sigma = Double.NaN;
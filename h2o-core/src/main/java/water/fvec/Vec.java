@@ -831,6 +831,15 @@ public class Vec extends Keyed<Vec> {
   /** Vec's 5 largest values 
    *  @return Vec's 5 largeest values */
   public double[] maxs(){ return rollupStats()._maxs; }
+  /** Zone map: per-chunk minimum of the non-NA values, or NaN if the chunk
+   *  has none (or is String or UUID).  Range filters can skip a whole chunk,
+   *  or skip the per-row test, by comparing against the chunk bounds.
+   *  @return Per-chunk minimums, indexed by chunk */
+  public double[] chunkMins() { double[] ds = rollupStats()._cmins; return ds==null ? new double[0] : ds; }
+  /** Zone map: per-chunk maximum of the non-NA values, or NaN if the chunk
+   *  has none (or is String or UUID).
+   *  @return Per-chunk maximums, indexed by chunk */
+  public double[] chunkMaxs() { double[] ds = rollupStats()._cmaxs; return ds==null ? new double[0] : ds; }
   /** True if the column contains only a constant value and it is not full of NAs 
    *  @return True if the column is constant */
   public final boolean isConst() { return min() == max(); }
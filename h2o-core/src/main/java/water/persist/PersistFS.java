@@ -2,12 +2,26 @@ package water.persist;
 
 import java.io.*;
 import java.net.URI;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import water.*;
 import water.api.FSIOException;
+import water.fvec.Frame;
 import water.fvec.NFSFileVec;
+import water.fvec.Vec;
+import water.util.LZ4;
 import water.util.Log;
+import water.util.UnsafeUtils;
 
 /**
  * Persistence backend using local file system.
@@ -46,38 +60,341 @@ public final class PersistFS extends Persist {
     return new File(_dir, getIceName(v));
   }
 
+  // Swap file: codec, raw length, body length, then the body
+  static final int HDR = 9;
+  static final byte CODEC_RAW = 0, CODEC_LZ4 = 1;
+  // Compress only if it saves an 1/8th; skip tiny Values
+  static final int MIN_COMPRESS = 256;
+  // Bytes queued for the writer, before store() blocks the Cleaner
+  static final long MAX_QUEUED = Math.max(1L<<20,Math.min(64L<<20,MemoryManager.MEM_MAX>>5));
+  // Chunks of the same Vec to read ahead, after a load from disk
+  static final int PREFETCH = 4;
+
+  // Values stored but not yet written; load() serves these from memory
+  private final ConcurrentHashMap<Key,Pending> _pending = new ConcurrentHashMap<>();
+  private final ArrayDeque<Pending> _queue = new ArrayDeque<>();
+  private long _queued;         // Bytes in _queue, under its lock
+  // Failed writes, retried after the failure is reported; under _queue lock
+  private final ArrayList<Pending> _failed = new ArrayList<>();
+  private IOException _ioe;     // Failure not yet reported; under _queue lock
+  private Thread _writer, _prefetcher;
+  private final LinkedBlockingQueue<Key> _prefetch = new LinkedBlockingQueue<>(PREFETCH*16);
+
+  // Swap stats, for tuning
+  public static volatile long _rawBytes, _diskBytes;
+
+  private static class Pending {
+    final Value _v;
+    final byte[] _mem;
+    boolean _cancel;            // Deleted before written; under lock
+    Pending( Value v, byte[] mem ) { _v = v; _mem = mem; }
+  }
+
   @Override public byte[] load(Value v) throws IOException {
+    byte[] mb = loadMapped(v);
+    if( mb != null ) return mb;
+    Pending p = _pending.get(v._key);
+    if( p != null && p._v == v ) return p._mem; // Not written yet
     File f = getFile(v);
-    if( f.length() < v._max ) { // Should be fully on disk...
-      // or it's a racey delete of a spilled value
-      assert !v.isPersisted() : f.length() + " " + v._max + " " + v._key;
-      return null; // No value
-    }
-    try (FileInputStream s = new FileInputStream(f)) {
-      AutoBuffer ab = new AutoBuffer(s.getChannel(), true, Value.ICE);
-      byte[] b = ab.getA1(v._max);
-      ab.close();
+    try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+      ByteBuffer hdr = ByteBuffer.allocate(HDR);
+      byte codec = 0;  int raw = 0, len = 0;
+      if( readFully(ch,hdr) ) {
+        codec = hdr.get(0);  raw = UnsafeUtils.get4(hdr.array(),1);  len = UnsafeUtils.get4(hdr.array(),5);
+      }
+      if( raw != v._max || ch.size() < HDR+len ) { // Should be fully on disk...
+        // or it's a racey delete of a spilled value
+        assert !v.isPersisted() : ch.size() + " " + v._max + " " + v._key;
+        return null; // No value
+      }
+      byte[] body = MemoryManager.malloc1(len);
+      if( !readFully(ch,ByteBuffer.wrap(body)) ) return null;
+      prefetch(v._key);
+      if( codec == CODEC_RAW ) return body;
+      byte[] b = MemoryManager.malloc1(raw);
+      LZ4.decompress(body,0,len,b,0,raw);
       return b;
+    } catch( NoSuchFileException e ) {
+      assert !v.isPersisted() : "Missing " + f + " " + v._key;
+      return null;              // Racey delete
     }
   }
 
-  // Store Value v to disk.
+  private static boolean readFully( FileChannel ch, ByteBuffer bb ) throws IOException {
+    while( bb.hasRemaining() )
+      if( ch.read(bb) < 0 ) return false;
+    return true;
+  }
+
+  // Store Value v to disk.  Queued for the writer thread; blocks while too
+  // many bytes are queued.  Until written, load() returns the queued bytes.
+  // A failed write is thrown from the next store, as a synchronous write
+  // would, so the Cleaner sees the disk full; the store after retries it.
   @Override
   public void store(Value v) throws IOException {
     assert !v.isPersisted();
+    if( mapped(v) != null ) return; // Already in a mapped file
+    synchronized( _queue ) {
+      IOException ioe = _ioe;
+      if( ioe != null ) { _ioe = null; throw ioe; }
+    }
     File dirs = new File(_dir, getIceDirectory(v._key));
     if (!dirs.mkdirs() && !dirs.exists())
       throw new java.io.IOException("mkdirs failed making " + dirs);
-    try (FileOutputStream s = new FileOutputStream(getFile(v))) {
-      byte[] m = v.memOrLoad(); // we are not single threaded anymore
-      if (m != null && m.length != v._max) {
-        Log.warn("Value size mismatch? " + v._key + " byte[].len=" + m.length + " v._max=" + v._max);
-        v._max = m.length; // Implies update of underlying POJO, then re-serializing it without K/V storing it
+    byte[] m = v.memOrLoad(); // we are not single threaded anymore
+    if (m != null && m.length != v._max) {
+      Log.warn("Value size mismatch? " + v._key + " byte[].len=" + m.length + " v._max=" + v._max);
+      v._max = m.length; // Implies update of underlying POJO, then re-serializing it without K/V storing it
+    }
+    Pending p = new Pending(v,m);
+    _pending.put(v._key,p);
+    synchronized( _queue ) {
+      if( _writer == null ) {
+        _writer = new Thread("PersistFS-Writer") { @Override public void run() { write(); } };
+        _writer.setDaemon(true);
+        _writer.start();
+      }
+      while( _queued > 0 && _queued+m.length > MAX_QUEUED )
+        try { _queue.wait(); } catch( InterruptedException ignore ) { }
+      for( Pending f : _failed ) { _queue.add(f); _queued += f._mem.length; }
+      _failed.clear();
+      _queue.add(p);
+      _queued += m.length;
+      _queue.notifyAll();
+    }
+  }
+
+  // Writer thread: drain the queue a batch at a time, compress and write
+  private void write() {
+    byte[] buf = new byte[0];
+    ArrayList<Pending> batch = new ArrayList<>();
+    while( true ) {
+      synchronized( _queue ) {
+        while( _queue.isEmpty() )
+          try { _queue.wait(); } catch( InterruptedException ignore ) { }
+        batch.addAll(_queue);
+      }
+      long done = 0;
+      for( Pending p : batch ) {
+        int max = LZ4.maxLen(p._mem.length);
+        if( buf.length < max ) buf = new byte[max];
+        try {
+          synchronized( p ) { if( !p._cancel ) write(p,buf); }
+          _pending.remove(p._v._key,p);
+        } catch( IOException ioe ) {
+          // Keep the bytes pending, so the Value is still loadable, and
+          // report the failure to the Cleaner
+          Log.err("Failed to swap " + p._v._key + " to " + getFile(p._v) + ": " + ioe);
+          synchronized( _queue ) { _failed.add(p); _ioe = ioe; }
+        }
+        done += p._mem.length;
+      }
+      synchronized( _queue ) {
+        for( int i=0; i<batch.size(); i++ ) _queue.poll();
+        _queued -= done;
+        _queue.notifyAll();
+      }
+      batch.clear();
+    }
+  }
+
+  private void write( Pending p, byte[] buf ) throws IOException {
+    byte[] m = p._mem;
+    int len = m.length >= MIN_COMPRESS ? LZ4.compress(m,0,m.length,buf,0) : m.length;
+    boolean lz4 = len < m.length-(m.length>>3);
+    byte[] hdr = new byte[HDR];
+    hdr[0] = lz4 ? CODEC_LZ4 : CODEC_RAW;
+    UnsafeUtils.set4(hdr,1,m.length);
+    UnsafeUtils.set4(hdr,5,lz4 ? len : m.length);
+    ByteBuffer[] bbs = new ByteBuffer[]{ByteBuffer.wrap(hdr), lz4 ? ByteBuffer.wrap(buf,0,len) : ByteBuffer.wrap(m)};
+    try (FileChannel ch = FileChannel.open(getFile(p._v).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      while( bbs[1].hasRemaining() ) ch.write(bbs);
+    }
+    _rawBytes += m.length;
+    _diskBytes += HDR + (lz4 ? len : m.length);
+  }
+
+  /** Block until all stored Values are written */
+  public void flush() {
+    synchronized( _queue ) {
+      while( !_queue.isEmpty() )
+        try { _queue.wait(); } catch( InterruptedException ignore ) { }
+    }
+  }
+
+  // Read ahead the next few chunks of the same Vec, on the prefetch thread.
+  // MRTasks walk a node's chunks in order, so a load from disk is likely
+  // followed by loads of the next chunks.
+  private void prefetch( Key k ) {
+    if( !k.isChunkKey() || Thread.currentThread() == _prefetcher ) return;
+    synchronized( _prefetch ) {
+      if( _prefetcher == null ) {
+        _prefetcher = new Thread("PersistFS-Prefetch") { @Override public void run() { prefetch(); } };
+        _prefetcher.setDaemon(true);
+        _prefetcher.start();
+      }
+    }
+    Key vkey = Vec.getVecKey(k);
+    int cidx = UnsafeUtils.get4(k._kb,6);
+    for( int i=1; i<=PREFETCH; i++ )
+      if( !_prefetch.offer(Vec.chunkKey(vkey,cidx+i)) ) break; // Full; drop
+  }
+
+  private void prefetch() {
+    while( true ) {
+      try {
+        Value val = Value.STORE_get(_prefetch.take());
+        if( val != null ) val.prefetch();
+      } catch( Throwable ignore ) { } // Best-effort; racing deletes are fine
+    }
+  }
+
+  // ---
+  // Memory-mapped read-only chunks.  map() writes this node's chunks of a
+  // Vec, already compressed by their Chunk encodings, into a few big files
+  // and maps them.  Until the chunks are changed or deleted, the Cleaner's
+  // store() of them writes nothing, and load() is a copy from the mapping,
+  // served from the OS page cache.  Loaded chunks are still on-heap copies:
+  // data bigger than the heap still cycles through the Cleaner, minus the
+  // swap-file writes.
+
+  // Mapped file segment limit; a MappedByteBuffer holds at most 2G
+  static final int MAP_SEG = 1<<30;
+
+  // Mapped Vecs, by Vec key
+  private final ConcurrentHashMap<Key,Mapped> _mapped = new ConcurrentHashMap<>();
+
+  private static class Mapped {
+    final File[] _files;
+    final MappedByteBuffer[] _segs;
+    final int[] _seg, _off, _len;   // Per chunk: segment, offset, length
+    // Per chunk: the mapped Value; weak, as replaced Values are not deleted
+    final WeakReference<Value>[] _vals;
+    int _live;                      // Chunks not yet deleted; under lock
+    @SuppressWarnings("unchecked")
+    Mapped( File[] files, MappedByteBuffer[] segs, int nchks ) {
+      _files = files;  _segs = segs;
+      _seg = new int[nchks];  _off = new int[nchks];  _len = new int[nchks];
+      _vals = new WeakReference[nchks];
+    }
+  }
+
+  /** Back the chunks of a read-only Frame with memory-mapped files, on all
+   *  nodes.  Changed chunks go back to the normal swap files. */
+  public static void map( Frame fr ) { new MapTask(fr.keys()).doAllNodes(); }
+
+  private static class MapTask extends MRTask<MapTask> {
+    final Key<Vec>[] _vkeys;
+    MapTask( Key<Vec>[] vkeys ) { _vkeys = vkeys; }
+    @Override protected void setupLocal() {
+      Persist ice = H2O.getPM().getIce();
+      if( !(ice instanceof PersistFS) ) return; // Only local disk
+      try {
+        for( Key<Vec> k : _vkeys ) ((PersistFS)ice).map(k.get());
+      } catch( IOException ioe ) { throw Log.throwErr(ioe); }
+    }
+  }
+
+  // Map this node's chunks of vec
+  synchronized void map( Vec vec ) throws IOException {
+    sweep();
+    if( _mapped.containsKey(vec._key) ) return;
+    int nchks = vec.nChunks();
+    ArrayList<File> files = new ArrayList<>();
+    ArrayList<MappedByteBuffer> segs = new ArrayList<>();
+    int[] seg = new int[nchks], off = new int[nchks], len = new int[nchks];
+    Value[] vals = new Value[nchks];
+    FileChannel ch = null;
+    int pos = 0;
+    try {
+      for( int cidx=0; cidx<nchks; cidx++ ) {
+        Key ck = vec.chunkKey(cidx);
+        if( !ck.home() ) continue;
+        Value val = Value.STORE_get(ck);
+        if( val == null ) continue;
+        byte[] m = val.memOrLoad();
+        if( m == null || m.length > MAP_SEG ) continue;
+        if( ch == null || pos+m.length > MAP_SEG ) { // Next segment
+          if( ch != null ) { segs.add(ch.map(FileChannel.MapMode.READ_ONLY,0,pos)); ch.close(); }
+          File f = new File(_dir, key2Str(vec._key) + ".map" + files.size());
+          if( !_dir.mkdirs() && !_dir.exists() )
+            throw new java.io.IOException("mkdirs failed making " + _dir);
+          files.add(f);
+          ch = FileChannel.open(f.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+          pos = 0;
+        }
+        ByteBuffer bb = ByteBuffer.wrap(m);
+        while( bb.hasRemaining() ) ch.write(bb);
+        seg[cidx] = files.size()-1;  off[cidx] = pos;  len[cidx] = m.length;  vals[cidx] = val;
+        pos += m.length;
+      }
+      if( ch != null ) segs.add(ch.map(FileChannel.MapMode.READ_ONLY,0,pos));
+    } finally {
+      if( ch != null ) ch.close(); // Mappings outlive the channel
+    }
+    Mapped mp = new Mapped(files.toArray(new File[0]),segs.toArray(new MappedByteBuffer[0]),nchks);
+    for( int cidx=0; cidx<nchks; cidx++ )
+      if( vals[cidx] != null ) {
+        mp._seg[cidx] = seg[cidx];  mp._off[cidx] = off[cidx];  mp._len[cidx] = len[cidx];
+        mp._vals[cidx] = new WeakReference<>(vals[cidx]);
+        mp._live++;
       }
-      new AutoBuffer(s.getChannel(), false, Value.ICE).putA1(m, m.length).close();
-    } catch (AutoBuffer.AutoBufferException abe) {
-      throw abe._ioe;
+    if( mp._live == 0 ) for( File f : mp._files ) f.delete(); // Nothing here
+    else _mapped.put(vec._key,mp);
+  }
+
+  /** Drop the mappings, and delete the files, of Vecs with no mapped chunk
+   *  left in the K/V store.  Chunks never swapped out are not deleted
+   *  through the Persist layer, so a removed Vec is found here; called from
+   *  each Cleaner pass. */
+  public void sweep() {
+    for( Map.Entry<Key,Mapped> e : _mapped.entrySet() ) {
+      Mapped mp = e.getValue();
+      boolean live = false;
+      for( WeakReference<Value> r : mp._vals ) {
+        Value v = r==null ? null : r.get();
+        if( v != null && Value.STORE_get(v._key) == v ) { live = true; break; }
+      }
+      if( !live && _mapped.remove(e.getKey(),mp) )
+        for( File f : mp._files ) f.delete();
+    }
+  }
+
+  // The mapping holding v, or null.  Only the very Value mapped; a newer
+  // Value for the same chunk was changed.
+  private Mapped mapped( Value v ) {
+    if( _mapped.isEmpty() || !v._key.isChunkKey() ) return null;
+    Mapped mp = _mapped.get(Vec.getVecKey(v._key));
+    if( mp == null ) return null;
+    int cidx = UnsafeUtils.get4(v._key._kb,6);
+    if( cidx >= mp._vals.length ) return null;
+    WeakReference<Value> r = mp._vals[cidx];
+    return r != null && r.get() == v ? mp : null;
+  }
+
+  private byte[] loadMapped( Value v ) {
+    Mapped mp = mapped(v);
+    if( mp == null ) return null;
+    int cidx = UnsafeUtils.get4(v._key._kb,6);
+    byte[] b = MemoryManager.malloc1(mp._len[cidx]);
+    ByteBuffer bb = mp._segs[mp._seg[cidx]].duplicate(); // Private position, for racing loads
+    bb.position(mp._off[cidx]);
+    bb.get(b);
+    return b;
+  }
+
+  // Drop a deleted chunk from its mapping; delete the files when all are gone
+  private void unmap( Value v ) {
+    Mapped mp = mapped(v);
+    if( mp == null ) return;
+    int cidx = UnsafeUtils.get4(v._key._kb,6);
+    synchronized( mp ) {
+      if( mp._vals[cidx] == null ) return;
+      mp._vals[cidx] = null;
+      if( --mp._live > 0 ) return;
     }
+    _mapped.remove(Vec.getVecKey(v._key),mp);
+    for( File f : mp._files ) f.delete(); // Mappings stay valid until collected
   }
 
   @Override
@@ -86,6 +403,12 @@ public final class PersistFS extends Persist {
   }
 
   @Override public void delete(Value v) {
+    unmap(v);
+    Pending p = _pending.get(v._key);
+    if( p != null && p._v == v ) {
+      synchronized( p ) { p._cancel = true; } // Writer is done with it, or skips it
+      _pending.remove(v._key,p);
+    }
     getFile(v).delete();        // Silently ignore errors
     // Attempt to delete empty containing directory
     new File(_dir, getIceDirectory(v._key)).delete();
@@ -109,6 +109,8 @@ public abstract class AtomicUtils {
       while( !_unsafe.compareAndSwapInt(is,adr, old, old+x) )
         old = is[i];
     }
+    // Returns the value before the add
+    static public int getAndAdd( int is[], int i, int x ) { return _unsafe.getAndAddInt(is,rawIndex(is,i),x); }
   }
 }
 
@@ -30,6 +30,8 @@ public class ChunkSummary extends MRTask<ChunkSummary> {
       {"C4S","4-Byte Fractions"},
       {"C4F","4-byte Reals"},
       {"C8","8-byte Integers"},
+      {"CRL","Run-length Integers"},
+      {"CFOR","Bit-packed Integers"},
       {"C16","UUIDs"},
       {"CStr","Strings"},
       {"CUD","Unique Reals"},
@@ -0,0 +1,106 @@
+package water.util;
+
+/**
+ * LZ4 block format codec, in pure Java.  Fast, greedy and byte-oriented: a
+ * hash table of 4-byte sequences finds back-references up to 64K bytes back.
+ * Compresses serialized Chunks (runs of zeros, repeated bytes, repeated
+ * strings) a few times over at near memory bandwidth.
+ *
+ * A block is a series of sequences: a token (4 bits literal length, 4 bits
+ * match length less 4), more length bytes if either is 15 or more, the
+ * literals, then a 2-byte little-endian match offset and more match length
+ * bytes.  The last sequence is literals only.  The raw length is not in the
+ * block; the caller keeps it.
+ */
+public final class LZ4 {
+  private static final int MIN_MATCH = 4;
+  private static final int HASH_LOG = 14;
+  private static final int MAX_OFF = 65535;
+  private static final int LAST_LITERALS = 5; // Last 5 bytes are always literals
+  private static final int MF_LIMIT = 12;     // No match starts in the last 12 bytes
+
+  private LZ4() {}
+
+  /** Most bytes compress() can write for len bytes */
+  public static int maxLen( int len ) { return len + len/255 + 16; }
+
+  /** Compress src[soff,soff+slen) into dst at doff; dst must have
+   *  maxLen(slen) bytes free.  Returns the compressed length. */
+  public static int compress( byte[] src, int soff, int slen, byte[] dst, int doff ) {
+    int send = soff+slen, anchor = soff, d = doff;
+    if( slen > MF_LIMIT ) {
+      int[] table = new int[1<<HASH_LOG]; // Position+1 of a sequence; 0 is empty
+      int mlimit = send-MF_LIMIT, mend = send-LAST_LITERALS;
+      int i = soff;
+      while( i < mlimit ) {
+        int seq = get4(src,i);
+        int h = hash(seq);
+        int ref = table[h]-1;
+        table[h] = i+1;
+        if( ref < 0 || i-ref > MAX_OFF || get4(src,ref) != seq ) { i++; continue; }
+        int mlen = MIN_MATCH;
+        while( i+mlen < mend && src[ref+mlen]==src[i+mlen] ) mlen++;
+        d = sequence(dst,d,src,anchor,i-anchor,i-ref,mlen);
+        i += mlen;
+        anchor = i;
+      }
+    }
+    // Last literals
+    int nlit = send-anchor;
+    dst[d++] = (byte)(Math.min(nlit,15)<<4);
+    d = putLen(dst,d,nlit);
+    System.arraycopy(src,anchor,dst,d,nlit);
+    return d+nlit-doff;
+  }
+
+  /** Decompress the block src[soff,soff+slen) into dst at doff; it must
+   *  expand to exactly dlen bytes. */
+  public static void decompress( byte[] src, int soff, int slen, byte[] dst, int doff, int dlen ) {
+    int s = soff, send = soff+slen, d = doff;
+    while( s < send ) {
+      int tok = src[s++]&0xFF;
+      int nlit = tok>>>4;
+      if( nlit == 15 ) { int b; do { b = src[s++]&0xFF; nlit += b; } while( b == 255 ); }
+      System.arraycopy(src,s,dst,d,nlit);
+      s += nlit;  d += nlit;
+      if( s >= send ) break;    // Last sequence, literals only
+      int off = (src[s]&0xFF) | ((src[s+1]&0xFF)<<8);
+      s += 2;
+      int mlen = tok&15;
+      if( mlen == 15 ) { int b; do { b = src[s++]&0xFF; mlen += b; } while( b == 255 ); }
+      mlen += MIN_MATCH;
+      int ref = d-off;
+      if( off == 0 || ref < doff ) throw new IllegalArgumentException("Corrupt LZ4 block, bad offset "+off);
+      if( off >= mlen ) System.arraycopy(dst,ref,dst,d,mlen);
+      else for( int k=0; k<mlen; k++ ) dst[d+k] = dst[ref+k]; // Overlapping copy repeats the pattern
+      d += mlen;
+    }
+    if( d-doff != dlen ) throw new IllegalArgumentException("Corrupt LZ4 block, expanded to "+(d-doff)+" bytes not "+dlen);
+  }
+
+  // Token for nlit literals then a match of mlen bytes, off bytes back
+  private static int sequence( byte[] dst, int d, byte[] src, int lit, int nlit, int off, int mlen ) {
+    int ml = mlen-MIN_MATCH;
+    dst[d++] = (byte)((Math.min(nlit,15)<<4) | Math.min(ml,15));
+    d = putLen(dst,d,nlit);
+    System.arraycopy(src,lit,dst,d,nlit);
+    d += nlit;
+    dst[d++] = (byte)off;
+    dst[d++] = (byte)(off>>8);
+    return putLen(dst,d,ml);
+  }
+
+  // Lengths of 15 and up carry on in bytes of 255, ending with one less
+  private static int putLen( byte[] dst, int d, int n ) {
+    if( n < 15 ) return d;
+    n -= 15;
+    while( n >= 255 ) { dst[d++] = (byte)255; n -= 255; }
+    dst[d++] = (byte)n;
+    return d;
+  }
+
+  private static int get4( byte[] b, int i ) {
+    return (b[i]&0xFF) | ((b[i+1]&0xFF)<<8) | ((b[i+2]&0xFF)<<16) | (b[i+3]<<24);
+  }
+  private static int hash( int seq ) { return (seq*-1640531535)>>>(32-HASH_LOG); }
+}
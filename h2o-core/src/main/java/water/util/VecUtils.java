@@ -4,6 +4,7 @@ import water.*;
 import water.exceptions.H2OIllegalArgumentException;
 import water.exceptions.H2OIllegalValueException;
 import water.fvec.C0DChunk;
+import water.fvec.CStrChunk;
 import water.fvec.Chunk;
 import water.fvec.NewChunk;
 import water.fvec.Vec;
@@ -80,6 +81,19 @@ public class VecUtils {
       @Override
       public void map(Chunk c, NewChunk nc) {
         BufferedString bs = new BufferedString();
+        if (c instanceof CStrChunk && ((CStrChunk) c).isDict()) {
+          // One lookup per distinct string, then per-row codes
+          CStrChunk cs = (CStrChunk) c;
+          int[] cats = new int[cs.dictSize()];
+          for (int k = 0; k < cats.length; k++)
+            cats[k] = lookupTable.get(domainString(cs.dictAt(bs, k)));
+          for (int row = 0; row < c.len(); row++) {
+            int k = cs.code(row);
+            if (k < 0) nc.addNA();
+            else nc.addNum(cats[k], 0);
+          }
+          return;
+        }
         for (int row = 0; row < c.len(); row++) {
           if (c.isNA(row)) {
             nc.addNA();
@@ -101,6 +115,12 @@ public class VecUtils {
     return task.outputFrame(null, null, new String[][] {vecDomain}).vec(0);
   }
 
+  // Domain string of a BufferedString; invalid UTF-8 is sanitized
+  private static String domainString(BufferedString bs) {
+    String str = bs.toString();
+    return str.contains("\uFFFD") ? bs.toSanitizedString() : str;
+  }
+
   /**
    * Create a new {@link Vec} of categorical values from a numeric {@link Vec}.
    *
@@ -662,6 +682,12 @@ public class VecUtils {
     @Override
     public void map(Chunk c) {
       BufferedString bs = new BufferedString();
+      if (c instanceof CStrChunk && ((CStrChunk) c).isDict()) {
+        CStrChunk cs = (CStrChunk) c;
+        for (int k = 0; k < cs.dictSize(); k++)
+          _uniques.put(domainString(cs.dictAt(bs, k)), _placeHolder);
+        return;
+      }
       for (int i = 0; i < c.len(); i++) {
         if (!c.isNA(i)) {
           c.atStr(bs, i);
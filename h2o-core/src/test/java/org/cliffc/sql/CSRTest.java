@@ -0,0 +1,142 @@
+package org.cliffc.sql;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import water.Scope;
+import water.TestUtil;
+import water.fvec.Frame;
+import water.fvec.TestFrameBuilder;
+import water.fvec.Vec;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CSRTest extends TestUtil {
+
+  @BeforeClass
+  public static void setup() { stall_till_cloudsize(1); }
+
+  private static final int N = 400;    // Ids; rows of degree >= 256 get bitmaps
+
+  // Edges: id 0 links to all, id 1 to most, random sparse edges among the
+  // rest; plus reversed and exact duplicates, self loops and NA rows.
+  // dir and und get the directed and undirected adjacency.
+  private static Frame edges( boolean[][] dir, boolean[][] und ) {
+    Random r = new Random(4321);
+    int m = (N-1) + (N-80) + 700;
+    double[] src = new double[m], dst = new double[m];
+    int e=0;
+    for( int i=1; i<N; i++ ) { src[e] = 0; dst[e++] = i; }
+    for( int i=80; i<N; i++ ) { src[e] = i; dst[e++] = 1; } // Reversed, for id 1
+    while( e < m ) {
+      int a = 2+r.nextInt(N-2), b = 2+r.nextInt(N-2);
+      switch( e%11 ) {
+      case 0: a = (int)src[e-1]; b = (int)dst[e-1]; break;  // Exact dup
+      case 1: a = (int)dst[e-1]; b = (int)src[e-1]; break;  // Reversed dup
+      case 2: b = a; break;                                 // Self loop
+      }
+      src[e] = a;  dst[e++] = b;
+    }
+    for( int i=5; i<m; i+=97 ) { if( (i&1)==0 ) src[i] = Double.NaN; else dst[i] = Double.NaN; }
+    for( int i=0; i<m; i++ )
+      if( !Double.isNaN(src[i]) && !Double.isNaN(dst[i]) ) {
+        int a = (int)src[i], b = (int)dst[i];
+        dir[a][b] = und[a][b] = und[b][a] = true;
+      }
+    return new TestFrameBuilder().withColNames("src","dst")
+      .withVecTypes(Vec.T_NUM,Vec.T_NUM)
+      .withDataForCol(0, src)
+      .withDataForCol(1, dst)
+      .withChunkLayout(m/3,m/3,m-2*(m/3))
+      .build();
+  }
+
+  // Rows hold exactly the adjacent ids, sorted and unique; has() agrees on
+  // every pair
+  private static void checkRows( CSR csr, boolean[][] adj ) {
+    assertEquals(N, csr.nrows());
+    int ne=0;
+    for( int a=0; a<N; a++ ) {
+      int[] row = new int[N];
+      int n=0;
+      for( int b=0; b<N; b++ ) if( adj[a][b] ) row[n++] = b;
+      assertArrayEquals(Arrays.copyOf(row,n), Arrays.copyOfRange(csr._nbrs,csr._offs[a],csr._offs[a+1]));
+      assertEquals(n, csr.degree(a));
+      ne += n;
+      for( int b=0; b<N; b++ ) assertEquals(adj[a][b], csr.has(a,b));
+    }
+    assertEquals(ne, csr.nedges());
+  }
+
+  @Test
+  public void testMake() {
+    Scope.enter();
+    Frame fr=null;
+    try {
+      boolean[][] dir = new boolean[N][N], und = new boolean[N][N];
+      fr = edges(dir,und);
+      CSR d = CSR.make(fr.vec("src"),fr.vec("dst"),N,false);
+      checkRows(d,dir);
+      CSR u = CSR.make(fr.vec("src"),fr.vec("dst"),N,true);
+      checkRows(u,und);
+      // Both list and bitmap rows were exercised
+      assertNotNull(u._bits[0]);
+      assertNotNull(u._bits[1]);
+      assertNull(u._bits[2]);
+      // common() over bitmap-bitmap, bitmap-list and list-list pairs
+      for( int a=0; a<N; a+=7 )
+        for( int b=0; b<N; b++ ) {
+          int c=0;
+          for( int x=0; x<N; x++ ) if( und[a][x] && und[b][x] ) c++;
+          assertEquals(c, u.common(a,b));
+        }
+    } finally {
+      if( fr!=null ) fr.remove();
+      Scope.exit();
+    }
+  }
+
+  @Test
+  public void testOrient() {
+    Scope.enter();
+    Frame fr=null;
+    try {
+      boolean[][] dir = new boolean[N][N], und = new boolean[N][N];
+      fr = edges(dir,und);
+      CSR u = CSR.make(fr.vec("src"),fr.vec("dst"),N,true);
+      CSR dag = u.orient();
+      // Ranks by degree then id, and ids invert ranks
+      for( int i=0; i<N; i++ ) {
+        assertEquals(i, dag._ranks[dag._ids[i]]);
+        if( i>0 ) {
+          int p = dag._ids[i-1], q = dag._ids[i];
+          assertTrue(u.degree(p) < u.degree(q) || (u.degree(p)==u.degree(q) && p < q));
+        }
+      }
+      // Each non-loop edge once, from lower to higher rank
+      boolean[][] out = new boolean[N][N];
+      for( int a=0; a<N; a++ )
+        for( int b=0; b<N; b++ )
+          out[dag._ranks[a]][dag._ranks[b]] = und[a][b] && a!=b && dag._ranks[a] < dag._ranks[b];
+      checkRows(dag,out);
+      // Triangles: once each, from the lowest-ranked edge
+      long tri=0;
+      for( int a=0; a<N; a++ )
+        for( int b=a+1; b<N; b++ )
+          if( und[a][b] )
+            for( int c=b+1; c<N; c++ )
+              if( und[a][c] && und[b][c] ) tri++;
+      assertTrue(tri > 0);
+      long cnt=0;
+      int[] srcs = dag.srcs();
+      for( int x=0; x<dag.nedges(); x++ )
+        cnt += dag.common(srcs[x],dag._nbrs[x]);
+      assertEquals(tri, cnt);
+    } finally {
+      if( fr!=null ) fr.remove();
+      Scope.exit();
+    }
+  }
+}
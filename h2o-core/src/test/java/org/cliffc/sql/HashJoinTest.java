@@ -0,0 +1,170 @@
+package org.cliffc.sql;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import water.Scope;
+import water.TestUtil;
+import water.fvec.Frame;
+import water.fvec.TestFrameBuilder;
+import water.fvec.Vec;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class HashJoinTest extends TestUtil {
+
+  @BeforeClass
+  public static void setup() { stall_till_cloudsize(1); }
+
+  private static final double NA = Double.NaN;
+
+  @Test
+  public void testSingleKey() {
+    Scope.enter();
+    Frame lhs=null, rhs=null;
+    try {
+      lhs = new TestFrameBuilder().withColNames("a","x")
+        .withVecTypes(Vec.T_NUM,Vec.T_NUM)
+        .withDataForCol(0, ard(1,2,NA,3,2))
+        .withDataForCol(1, ard(10,20,30,40,50))
+        .withChunkLayout(2,3)
+        .build();
+      rhs = new TestFrameBuilder().withColNames("y","a")
+        .withVecTypes(Vec.T_NUM,Vec.T_NUM)
+        .withDataForCol(0, ard(100,200,300,400))
+        .withDataForCol(1, ard(2,NA,3,3))
+        .build();
+      // 2 matches once, 3 twice; NA never matches
+      Frame inner = Scope.track(HashJoin.join(lhs,rhs,HashJoin.INNER));
+      assertArrayEquals(new String[]{"a","x","y"}, inner.names());
+      assertArrayEquals(ard(2,2,3,3), sorted(inner.vec("a")), 0);
+      assertArrayEquals(ard(20,40,40,50), sorted(inner.vec("x")), 0);
+      assertArrayEquals(ard(100,100,300,400), sorted(inner.vec("y")), 0);
+      Frame semi = Scope.track(HashJoin.join(lhs,rhs,HashJoin.SEMI));
+      assertArrayEquals(new String[]{"a","x"}, semi.names());
+      assertArrayEquals(ard(20,40,50), sorted(semi.vec("x")), 0);
+      Frame anti = Scope.track(HashJoin.join(lhs,rhs,HashJoin.ANTI));
+      assertArrayEquals(ard(10,30), sorted(anti.vec("x")), 0);
+      assertEquals(1, anti.vec("a").naCnt());
+    } finally {
+      if( lhs!=null ) lhs.remove();
+      if( rhs!=null ) rhs.remove();
+      Scope.exit();
+    }
+  }
+
+  @Test
+  public void testCompositeKey() {
+    Scope.enter();
+    Frame lhs=null, rhs=null;
+    try {
+      lhs = new TestFrameBuilder().withColNames("a","b","x")
+        .withVecTypes(Vec.T_NUM,Vec.T_NUM,Vec.T_NUM)
+        .withDataForCol(0, ard(1,1,NA,2,2,-5))
+        .withDataForCol(1, ard(1,2,1,NA,2,7))
+        .withDataForCol(2, ard(10,20,30,40,50,60))
+        .build();
+      rhs = new TestFrameBuilder().withColNames("b","y","a")
+        .withVecTypes(Vec.T_NUM,Vec.T_NUM,Vec.T_NUM)
+        .withDataForCol(0, ard(2,2,2,1,7))
+        .withDataForCol(1, ard(100,200,300,400,500))
+        .withDataForCol(2, ard(1,2,2,NA,-5))
+        .withChunkLayout(3,2)
+        .build();
+      // (1,2) once, (2,2) twice, (-5,7) once; a key with any NA part never matches
+      Frame inner = Scope.track(HashJoin.join(lhs,rhs,HashJoin.INNER));
+      assertArrayEquals(new String[]{"a","b","x","y"}, inner.names());
+      assertArrayEquals(ard(20,50,50,60), sorted(inner.vec("x")), 0);
+      assertArrayEquals(ard(100,200,300,500), sorted(inner.vec("y")), 0);
+      Frame semi = Scope.track(HashJoin.join(lhs,rhs,HashJoin.SEMI));
+      assertArrayEquals(ard(20,50,60), sorted(semi.vec("x")), 0);
+      Frame anti = Scope.track(HashJoin.join(lhs,rhs,HashJoin.ANTI));
+      assertArrayEquals(ard(10,30,40), sorted(anti.vec("x")), 0);
+    } finally {
+      if( lhs!=null ) lhs.remove();
+      if( rhs!=null ) rhs.remove();
+      Scope.exit();
+    }
+  }
+
+  // Enough build rows for several partitions, with duplicate and NA keys,
+  // against a nested loop over each key's rows
+  @Test
+  public void testManyPartitions() {
+    final int NL = 80000, NR = 70000, K = 25000; // rhs builds 8 partitions
+    assertTrue(NR > 4*HashJoin.PART_ROWS);
+    Random r = new Random(42);
+    double[] la = new double[NL], lx = new double[NL], ra = new double[NR], ry = new double[NR];
+    for( int i=0; i<NL; i++ ) { la[i] = i%97==0 ? NA : r.nextInt(K); lx[i] = i; }
+    for( int j=0; j<NR; j++ ) { ra[j] = j%89==0 ? NA : r.nextInt(K); ry[j] = j; }
+    // rhs rows by key
+    int[][] rrows = new int[K][];
+    int[] rcnt = new int[K];
+    for( double a : ra ) if( !Double.isNaN(a) ) rcnt[(int)a]++;
+    for( int k=0; k<K; k++ ) { rrows[k] = new int[rcnt[k]]; rcnt[k]=0; }
+    for( int j=0; j<NR; j++ ) if( !Double.isNaN(ra[j]) ) { int k=(int)ra[j]; rrows[k][rcnt[k]++] = j; }
+    long[] pairs = new long[0];
+    int np=0;
+    double[] semi = new double[NL], anti = new double[NL];
+    int ns=0, na=0;
+    for( int i=0; i<NL; i++ ) {
+      int[] js = Double.isNaN(la[i]) ? new int[0] : rrows[(int)la[i]];
+      for( int j : js ) {
+        if( np==pairs.length ) pairs = Arrays.copyOf(pairs,Math.max(16,np<<1));
+        pairs[np++] = (long)i*NR+j;
+      }
+      if( js.length>0 ) semi[ns++] = i; else anti[na++] = i;
+    }
+    pairs = Arrays.copyOf(pairs,np);
+    Arrays.sort(pairs);
+
+    Scope.enter();
+    Frame lhs=null, rhs=null;
+    try {
+      lhs = new TestFrameBuilder().withColNames("a","x")
+        .withVecTypes(Vec.T_NUM,Vec.T_NUM)
+        .withDataForCol(0, la)
+        .withDataForCol(1, lx)
+        .withChunkLayout(30000,30000,20000)
+        .build();
+      rhs = new TestFrameBuilder().withColNames("y","a")
+        .withVecTypes(Vec.T_NUM,Vec.T_NUM)
+        .withDataForCol(0, ry)
+        .withDataForCol(1, ra)
+        .withChunkLayout(25000,25000,20000)
+        .build();
+      // Builds on the rhs, and flipped on the lhs
+      assertArrayEquals(pairs, pairs(Scope.track(HashJoin.join(lhs,rhs,HashJoin.INNER)),la,NR,false));
+      assertArrayEquals(pairs, pairs(Scope.track(HashJoin.join(rhs,lhs,HashJoin.INNER)),la,NR,true ));
+      assertArrayEquals(Arrays.copyOf(semi,ns), sorted(Scope.track(HashJoin.join(lhs,rhs,HashJoin.SEMI)).vec("x")), 0);
+      assertArrayEquals(Arrays.copyOf(anti,na), sorted(Scope.track(HashJoin.join(lhs,rhs,HashJoin.ANTI)).vec("x")), 0);
+    } finally {
+      if( lhs!=null ) lhs.remove();
+      if( rhs!=null ) rhs.remove();
+      Scope.exit();
+    }
+  }
+
+  // Sorted (x,y) row pairs of an INNER result, checking each row's key
+  private static long[] pairs( Frame fr, double[] la, int nr, boolean flip ) {
+    assertArrayEquals(flip ? new String[]{"a","y","x"} : new String[]{"a","x","y"}, fr.names());
+    Vec a = fr.vec("a"), x = fr.vec("x"), y = fr.vec("y");
+    long[] ps = new long[(int)fr.numRows()];
+    for( int i=0; i<ps.length; i++ ) {
+      long lr = x.at8(i);
+      assertEquals(la[(int)lr], a.at(i), 0);
+      ps[i] = lr*nr+y.at8(i);
+    }
+    Arrays.sort(ps);
+    return ps;
+  }
+
+  private static double[] sorted( Vec vec ) {
+    double[] ds = new double[(int)vec.length()];
+    for( int i=0; i<ds.length; i++ ) ds[i] = vec.at(i);
+    Arrays.sort(ds);
+    return ds;
+  }
+}
@@ -0,0 +1,109 @@
+package org.cliffc.sql;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import water.Scope;
+import water.TestUtil;
+import water.fvec.Frame;
+import water.fvec.TestFrameBuilder;
+import water.fvec.Vec;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LeapfrogTest extends TestUtil {
+
+  @BeforeClass
+  public static void setup() { stall_till_cloudsize(1); }
+
+  private static final int N = 14;     // Vertices
+  private static final int M = 60;     // Edge rows, including dups and NAs
+
+  // Random directed edges over N vertices, with duplicate pairs, self loops
+  // and NA rows; adj gets the non-NA pairs.
+  private static Frame edges( long seed, boolean[][] adj ) {
+    Random r = new Random(seed);
+    double[] src = new double[M], dst = new double[M];
+    for( int i=0; i<M; i++ ) {
+      src[i] = r.nextInt(N);
+      dst[i] = i%10==3 ? src[i-1] : r.nextInt(N); // Some dups of a prior src
+      if( i%17==5 ) src[i] = Double.NaN;
+      if( i%19==7 ) dst[i] = Double.NaN;
+      if( !Double.isNaN(src[i]) && !Double.isNaN(dst[i]) ) adj[(int)src[i]][(int)dst[i]] = true;
+    }
+    src[M-1] = src[0];  dst[M-1] = dst[0]; // An exact duplicate row
+    return new TestFrameBuilder().withColNames("src","dst")
+      .withVecTypes(Vec.T_NUM,Vec.T_NUM)
+      .withDataForCol(0, src)
+      .withDataForCol(1, dst)
+      .withChunkLayout(20,25,15)
+      .build();
+  }
+
+  private static boolean[][] sym( boolean[][] adj ) {
+    boolean[][] s = new boolean[N][N];
+    for( int a=0; a<N; a++ )
+      for( int b=0; b<N; b++ )
+        s[a][b] = adj[a][b] || adj[b][a];
+    return s;
+  }
+
+  @Test
+  public void testTriangles() {
+    Scope.enter();
+    try {
+      boolean[][] adj = new boolean[N][N];
+      Frame fr = edges(1234,adj);
+      boolean[][] s = sym(adj);
+      long cnt=0, dist=0;
+      for( int a=0; a<N; a++ )
+        for( int b=0; b<N; b++ )
+          for( int c=0; c<N; c++ )
+            if( s[a][b] && s[b][c] && s[a][c] ) {
+              cnt++;
+              if( a!=b && b!=c && a!=c ) dist++;
+            }
+      assertTrue(dist > 0);
+      Leapfrog.Rel knows = new Leapfrog.Rel(fr,"src","dst").sym();
+      assertEquals(cnt , new Leapfrog(3).atom(knows,0,1).atom(knows,1,2).atom(knows,0,2).count());
+      assertEquals(dist, new Leapfrog(3).atom(knows,0,1).atom(knows,1,2).atom(knows,0,2)
+                   .neq(0,1).neq(1,2).neq(0,2).count());
+      // Same answer for a forced, non-default order
+      assertEquals(dist, new Leapfrog(3).atom(knows,0,1).atom(knows,1,2).atom(knows,0,2)
+                   .neq(0,1).neq(1,2).neq(0,2).order(2,0,1).count());
+    } finally {
+      Scope.exit();
+    }
+  }
+
+  @Test
+  public void testNotAndSum() {
+    Scope.enter();
+    try {
+      boolean[][] adj = new boolean[N][N], adj2 = new boolean[N][N];
+      Frame fr  = edges(5678,adj );
+      Frame fr2 = edges(9012,adj2);
+      // Directed open paths a->b->c, no a->c, a!=c
+      long cnt=0;
+      for( int a=0; a<N; a++ )
+        for( int b=0; b<N; b++ )
+          for( int c=0; c<N; c++ )
+            if( adj[a][b] && adj[b][c] && !adj[a][c] && a!=c ) cnt++;
+      assertTrue(cnt > 0);
+      Leapfrog.Rel e = new Leapfrog.Rel(fr,"src","dst");
+      assertEquals(cnt, new Leapfrog(3).atom(e,0,1).atom(e,1,2).not(e,0,2).neq(0,2).count());
+
+      // Union of two sources; weighted 2-paths a->b->c, weight a*c+1
+      long sum=0;
+      for( int a=0; a<N; a++ )
+        for( int b=0; b<N; b++ )
+          for( int c=0; c<N; c++ )
+            if( (adj[a][b] || adj2[a][b]) && (adj[b][c] || adj2[b][c]) ) sum += a*c+1;
+      Leapfrog.Rel u = new Leapfrog.Rel(fr,"src","dst").or(fr2,"src","dst");
+      assertEquals(sum, new Leapfrog(3).atom(u,0,1).atom(u,1,2).sum(vals -> vals[0]*vals[2]+1));
+    } finally {
+      Scope.exit();
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package org.cliffc.sql;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class LongMapTest {
+
+  private static final int TH = 8;      // Threads
+  private static final int K = 199999;  // Keys, a prime; the maps start tiny and resize many times
+
+  // Run body(t) on TH threads, all released together
+  private static void race( final Body body ) throws InterruptedException {
+    final CountDownLatch go = new CountDownLatch(1);
+    final Throwable[] errs = new Throwable[TH];
+    Thread[] ts = new Thread[TH];
+    for( int t=0; t<TH; t++ ) {
+      final int tt = t;
+      ts[t] = new Thread(() -> {
+        try { go.await(); body.run(tt); } catch( Throwable e ) { errs[tt] = e; }
+      });
+      ts[t].start();
+    }
+    go.countDown();
+    for( Thread t : ts ) t.join();
+    for( Throwable e : errs ) if( e != null ) throw new AssertionError(e);
+  }
+  private interface Body { void run( int t ) throws Exception; }
+
+  // Each thread's own permutation of the keys, so threads collide on
+  // different keys
+  private static long key( int t, int i ) { return ((long)i*(2*t+1)*7919L) % K; }
+
+  @Test
+  public void testConcurrentAdd() throws InterruptedException {
+    final LongMap.Longs ls = new LongMap.Longs();
+    final LongMap.Doubles ds = new LongMap.Doubles();
+    race(t -> {
+      for( int i=0; i<K; i++ ) {
+        long k = key(t,i);
+        ls.add(k,k+1);
+        ds.add(k,0.5);
+      }
+    });
+    assertEquals(K, ds.keys().length);
+    for( long k=0; k<K; k++ ) {
+      assertEquals(TH*(k+1), ls.get(k,-1));
+      assertEquals(TH*0.5, ds.get(k), 0);
+    }
+    long[] ks = ls.keys();
+    Arrays.sort(ks);
+    assertEquals(K, ks.length);
+    for( int i=0; i<K; i++ ) assertEquals(i, ks[i]);
+  }
+
+  @Test
+  public void testPutIfAbsent() {
+    LongMap.Longs ls = new LongMap.Longs();
+    assertEquals(-7, ls.get(5,-7));
+    assertFalse(ls.containsKey(5));
+    assertTrue (ls.putIfAbsent(5,0));   // 0 is a value, not "absent"
+    assertFalse(ls.putIfAbsent(5,9));
+    assertEquals(0, ls.get(5,-7));
+    ls.put(5,9);                        // put overwrites
+    assertEquals(9, ls.get(5,-7));
+    assertFalse(ls.putIfAbsent(5,3));
+    assertEquals(12, ls.add(5,3));
+    assertTrue (ls.putIfAbsent(0,4));   // Key 0 lives outside the table
+    assertFalse(ls.putIfAbsent(0,8));
+    assertEquals(4, ls.get(0,-7));
+    assertEquals(1, ls.add(6,1));       // add on an absent key starts at 0
+    assertFalse(ls.putIfAbsent(6,2));
+    assertEquals(3, ls.size());
+    try { ls.putIfAbsent(7,-1); fail(); } catch( IllegalArgumentException ignore ) { }
+    try { ls.putIfAbsent(-1,1); fail(); } catch( IllegalArgumentException ignore ) { }
+    try { ls.add(Long.MAX_VALUE,1); fail(); } catch( IllegalArgumentException ignore ) { }
+    assertFalse(ls.containsKey(7));
+  }
+
+  // Every thread offers every key across resizes: exactly one wins each key,
+  // and its value sticks
+  @Test
+  public void testConcurrentPutIfAbsent() throws InterruptedException {
+    final LongMap.Longs ls = new LongMap.Longs();
+    final long[][] wins = new long[TH][K];
+    final AtomicLong nwins = new AtomicLong();
+    race(t -> {
+      for( int i=0; i<K; i++ ) {
+        long k = key(t,i);
+        if( ls.putIfAbsent(k,t) ) { wins[t][(int)k] = 1; nwins.incrementAndGet(); }
+      }
+    });
+    assertEquals(K, nwins.get());
+    assertEquals(K, ls.keys().length);
+    for( int k=0; k<K; k++ ) {
+      int w = -1;
+      for( int t=0; t<TH; t++ )
+        if( wins[t][k]==1 ) { assertEquals(-1, w); w = t; }
+      assertEquals(w, ls.get(k,-1));
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package org.cliffc.sql;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TopKTest {
+
+  private static final double NA = Double.NaN;
+
+  @Test
+  public void testOneKey() {
+    double[] vs = {3,NA,1,3,2};
+    // NA first ascending, last descending; equal 3s by id both ways
+    assertArrayEquals(new long[]{1,2,4},     top(vs,false,3));
+    assertArrayEquals(new long[]{0,3,4},     top(vs,true ,3));
+    assertArrayEquals(new long[]{0,3,4,2,1}, top(vs,true ,10)); // k > rows
+    assertArrayEquals(new long[0],           top(vs,false,0));
+  }
+
+  private static long[] top( double[] vs, boolean desc, int k ) {
+    TopK.Heap h = new TopK.Heap(k,new boolean[]{desc});
+    for( int i=0; i<vs.length; i++ ) h.add(i,vs[i]);
+    assertEquals(Math.min(k,vs.length), h.size());
+    return h.sorted();
+  }
+
+  // Two keys, one ASC and one DESC, few distinct values so ties and NAs are
+  // common; against a full sort
+  @Test
+  public void testMultiKey() {
+    final int N = 500;
+    double[][] vs = data(N,1234);
+    for( boolean[] descs : new boolean[][]{{false,true},{true,false},{true,true}} )
+      for( int k : new int[]{1,7,100,N,N+50} ) {
+        TopK.Heap h = new TopK.Heap(k,descs);
+        for( int i=0; i<N; i++ ) h.add(i,vs[i]);
+        assertArrayEquals(expect(vs,descs,k), h.sorted());
+      }
+  }
+
+  // Heaps filled from disjoint id ranges and merged, as in Scan.reduce
+  @Test
+  public void testMerge() {
+    final int N = 400;
+    boolean[] descs = {true,false};
+    double[][] vs = data(N,5678);
+    for( int k : new int[]{5,150,N+1} )
+      for( int split : new int[]{0,37,N/2,N} ) {
+        TopK.Heap a = new TopK.Heap(k,descs), b = new TopK.Heap(k,descs);
+        for( int i=0; i<split; i++ ) a.add(i,vs[i]);
+        for( int i=split; i<N; i++ ) b.add(i,vs[i]);
+        a.add(b);
+        assertEquals(Math.min(k,N), a.size());
+        assertArrayEquals(expect(vs,descs,k), a.sorted());
+      }
+  }
+
+  private static double[][] data( int n, long seed ) {
+    Random r = new Random(seed);
+    double[][] vs = new double[n][2];
+    for( double[] v : vs ) {
+      v[0] = r.nextInt(10)==0 ? NA : r.nextInt(6);
+      v[1] = r.nextInt(10)==0 ? NA : r.nextInt(4)-1.5;
+    }
+    return vs;
+  }
+
+  // First k ids of a full sort: NA lowest, then by id
+  private static long[] expect( double[][] vs, boolean[] descs, int k ) {
+    Integer[] ids = new Integer[vs.length];
+    for( int i=0; i<ids.length; i++ ) ids[i] = i;
+    Arrays.sort(ids,(a,b) -> {
+      for( int j=0; j<descs.length; j++ ) {
+        double x = vs[a][j], y = vs[b][j];
+        double lx = Double.isNaN(x) ? Double.NEGATIVE_INFINITY : x, ly = Double.isNaN(y) ? Double.NEGATIVE_INFINITY : y;
+        int c = Double.compare(lx,ly);
+        if( c != 0 ) return descs[j] ? -c : c;
+      }
+      return Integer.compare(a,b);
+    });
+    long[] xs = new long[Math.min(k,ids.length)];
+    for( int i=0; i<xs.length; i++ ) xs[i] = ids[i];
+    return xs;
+  }
+}
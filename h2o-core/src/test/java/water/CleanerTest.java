@@ -0,0 +1,71 @@
+package water;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import water.fvec.Vec;
+import water.util.IcedInt;
+
+import static org.junit.Assert.*;
+
+public class CleanerTest extends TestUtil {
+  @BeforeClass() public static void setup() { stall_till_cloudsize(1); }
+
+  @Test public void testLRU2() {
+    Value val = new Value(Key.make(), new IcedInt(1));
+    val.get();                  // First use
+    assertEquals(0, val.prevAccessed());
+    assertEquals(val.lastAccessed(), Cleaner.LRU.age(val));
+    assertEquals(val.lastAccessed() - Cleaner.ONCE, Cleaner.LRU2.age(val));
+    val.get();                  // Correlated with the first; still one use
+    assertEquals(0, val.prevAccessed());
+    long t = val._lastAccessedTime -= 5000;
+    val.get();                  // Second use
+    assertEquals(t, val.prevAccessed());
+    assertEquals(t, Cleaner.LRU2.age(val));
+    assertEquals(val.lastAccessed(), Cleaner.LRU.age(val));
+  }
+
+  @Test public void testPin() {
+    Vec vec = Vec.makeCon(1, 1000);
+    try {
+      Key ck = vec.chunkKey(0);
+      assertFalse(Cleaner.pinned(ck));
+      Cleaner.pin(vec._key);
+      assertTrue(Cleaner.pinned(vec._key));
+      assertTrue(Cleaner.pinned(ck));
+      Cleaner.unpin(vec._key);
+      assertFalse(Cleaner.pinned(ck));
+    } finally {
+      vec.remove();
+    }
+  }
+
+  @Test public void testPinBoost() {
+    Vec vec = Vec.makeCon(1, 1000);
+    try {
+      Key ck = vec.chunkKey(0);
+      Value val = Value.STORE_get(ck);
+      long now = System.currentTimeMillis();
+      long age = Cleaner.age(ck, val, now);
+      Cleaner.pin(vec._key);
+      assertEquals(Math.min(now, age + Cleaner.PIN_BOOST), Cleaner.age(ck, val, now));
+      val._lastAccessedTime = now - 2 * Cleaner.PIN_BOOST - Cleaner.ONCE; // Long idle
+      assertTrue(Cleaner.age(ck, val, now) < now - Cleaner.PIN_BOOST); // Pinned, but still evictable
+    } finally {
+      Cleaner.unpin(vec._key);
+      vec.remove();
+    }
+  }
+
+  @Test public void testCounters() {
+    Value val = new Value(Key.make(), new IcedInt(1));
+    long hits = Cleaner.hits();
+    val.get();
+    for (int i = 0; i < 10; i++) val.get(); // Correlated; count once
+    val._lastAccessedTime -= 5000;
+    val.get();                  // A second reference
+    assertTrue(Cleaner.hits() >= hits + 2);
+    assertTrue(Cleaner.misses() >= 0);
+    assertTrue(Cleaner.stats().startsWith("hits="));
+  }
+}
@@ -32,6 +32,9 @@ public class C8ChunkTest extends TestUtil {
         if (cc.isNA(i)) Assert.assertTrue(Double.isNaN(densevals[i]));
         else Assert.assertTrue(cc.at8(i)==densevals[i]);
       }
+      long[] longvals = cc.getLongs(new long[cc.len()],0,cc.len(),Long.MIN_VALUE);
+      for (int i = 0; i < longvals.length; ++i)
+        Assert.assertEquals(cc.isNA(i) ? Long.MIN_VALUE : cc.at8(i), longvals[i]);
       nc = new NewChunk(null, 0);
       cc.extractRows(nc,0,len);
       if (l==1) Assert.assertTrue(cc.isNA(0));
@@ -0,0 +1,74 @@
+package water.fvec;
+
+import org.junit.*;
+
+import water.TestUtil;
+
+import java.util.Random;
+
+public class CFORChunkTest extends TestUtil {
+  @BeforeClass() public static void setup() { stall_till_cloudsize(1); }
+
+  // Sorted keys with small gaps, as for lineitem orderkeys; some NAs
+  private static Long[] keys( int len ) {
+    Random r = new Random(1234);
+    Long[] vals = new Long[len];
+    long k = 1L<<33;
+    for (int i = 0; i < len; ++i) {
+      if (r.nextInt(4) == 0) k += 1 + r.nextInt(8);
+      vals[i] = r.nextInt(100) == 0 ? null : k;
+    }
+    return vals;
+  }
+
+  @Test
+  public void test_inflate_impl() {
+    Long[] vals = keys(5000);
+    NewChunk nc = new NewChunk(null, 0);
+    for (Long v : vals) if (v == null) nc.addNA(); else nc.addNum(v, 0);
+    Chunk cc = nc.compress();
+    Assert.assertEquals(vals.length, cc._len);
+    Assert.assertTrue(cc instanceof CFORChunk);
+    Assert.assertTrue(cc._mem.length < vals.length*2); // vs 8 bytes in a C8Chunk
+    for (int i = 0; i < vals.length; ++i)
+      if (vals[i] == null) Assert.assertTrue(cc.isNA(i));
+      else Assert.assertEquals((long)vals[i], cc.at8(i));
+
+    long[] longvals = cc.getLongs(new long[cc._len], 0, cc._len, Long.MIN_VALUE);
+    for (int i = 0; i < longvals.length; ++i)
+      Assert.assertEquals(vals[i] == null ? Long.MIN_VALUE : vals[i], (Long)longvals[i]);
+
+    nc = cc.extractRows(new NewChunk(null, 0), 0, cc._len);
+    Assert.assertEquals(vals.length, nc._len);
+    Chunk cc2 = nc.compress();
+    Assert.assertTrue(cc2 instanceof CFORChunk);
+    Assert.assertArrayEquals(cc._mem, cc2._mem);
+  }
+
+  @Test
+  public void test_scaled_dates() {
+    // Days in msec: all multiples of 10^5, packed in the 10^5 scale
+    Random r = new Random(4321);
+    long[] vals = new long[2000];
+    NewChunk nc = new NewChunk(null, 0);
+    for (int i = 0; i < vals.length; ++i) {
+      vals[i] = (8000L + i/2 + r.nextInt(30)) * 86400000L;
+      nc.addNum(vals[i], 0);
+    }
+    Chunk cc = nc.compress();
+    Assert.assertTrue(cc instanceof CFORChunk);
+    Assert.assertFalse(cc.hasNA());
+    for (int i = 0; i < vals.length; ++i) Assert.assertEquals(vals[i], cc.at8(i));
+    double[] densevals = cc.getDoubles(new double[cc._len], 0, cc._len);
+    for (int i = 0; i < vals.length; ++i) Assert.assertEquals(vals[i], densevals[i], 0);
+  }
+
+  @Test
+  public void test_random_not_packed() {
+    Random r = new Random(99);
+    NewChunk nc = new NewChunk(null, 0);
+    for (int i = 0; i < 2000; ++i) nc.addNum(r.nextLong()>>2, 0);
+    Chunk cc = nc.compress();
+    Assert.assertTrue(cc instanceof C8Chunk);
+  }
+}
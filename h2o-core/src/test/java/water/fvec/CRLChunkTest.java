@@ -0,0 +1,69 @@
+package water.fvec;
+
+import org.junit.*;
+
+import water.Key;
+import water.TestUtil;
+
+public class CRLChunkTest extends TestUtil {
+  @BeforeClass() public static void setup() { stall_till_cloudsize(1); }
+
+  // Long runs of a few values, with a run of NAs
+  private static Long[] vals( int len ) {
+    Long[] vals = new Long[len];
+    for (int i = 0; i < len; ++i) vals[i] = i/300 == 2 ? null : (i/300)*1000000L - 7;
+    return vals;
+  }
+
+  @Test
+  public void test_inflate_impl() {
+    Long[] vals = vals(3000);
+    NewChunk nc = new NewChunk(null, 0);
+    for (Long v : vals) if (v == null) nc.addNA(); else nc.addNum(v, 0);
+    Chunk cc = nc.compress();
+    Assert.assertEquals(vals.length, cc._len);
+    Assert.assertTrue(cc instanceof CRLChunk);
+    Assert.assertTrue(cc._mem.length < 200);
+    // Forwards, backwards and random access
+    for (int i = 0; i < vals.length; ++i) checkRow(vals, cc, i);
+    for (int i = vals.length - 1; i >= 0; --i) checkRow(vals, cc, i);
+    for (int i = 0; i < vals.length; ++i) checkRow(vals, cc, (i*7919) % vals.length);
+
+    long[] longvals = cc.getLongs(new long[100], 550, 650, Long.MIN_VALUE);
+    for (int i = 0; i < longvals.length; ++i)
+      Assert.assertEquals(vals[550+i] == null ? Long.MIN_VALUE : vals[550+i], (Long)longvals[i]);
+    double[] densevals = cc.getDoubles(new double[cc._len], 0, cc._len);
+    for (int i = 0; i < densevals.length; ++i)
+      if (vals[i] == null) Assert.assertTrue(Double.isNaN(densevals[i]));
+      else Assert.assertEquals((double)vals[i], densevals[i], 0);
+
+    nc = cc.extractRows(new NewChunk(null, 0), 0, cc._len);
+    Assert.assertEquals(vals.length, nc._len);
+    Chunk cc2 = nc.compress();
+    Assert.assertTrue(cc2 instanceof CRLChunk);
+    Assert.assertArrayEquals(cc._mem, cc2._mem);
+  }
+
+  @Test
+  public void test_set_inflates() {
+    Long[] vals = vals(3000);
+    Key key = Vec.newKey();
+    Vec vec = new Vec(key, Vec.ESPC.rowLayout(key, new long[]{0,vals.length})).makeZero();
+    Vec.Writer w = vec.open();
+    for (int i = 0; i < vals.length; ++i) if (vals[i] == null) w.setNA(i); else w.set(i, vals[i]);
+    w.close();
+    Chunk cc = vec.chunkForChunkIdx(0);
+    Assert.assertTrue(cc instanceof CRLChunk);
+    cc.set(5, 12345);
+    cc.setNA(6);
+    Assert.assertEquals(12345, cc.at8(5));
+    Assert.assertTrue(cc.isNA(6));
+    Assert.assertEquals((long)vals[7], cc.at8(7));
+    vec.remove();
+  }
+
+  private static void checkRow( Long[] vals, Chunk cc, int i ) {
+    if (vals[i] == null) Assert.assertTrue(cc.isNA(i));
+    else Assert.assertEquals((long)vals[i], cc.at8(i));
+  }
+}
@@ -154,6 +154,87 @@ public class CStrChunkTest extends TestUtil {
     assertEquals("", sut.at(0));
   }
 
+  private static final String[] MODES = {"AIR", "MAIL", " RAIL ", "SHIP", "TRUCK"};
+  private static String mode(int i) { return i % 17 == 0 ? null : MODES[i % MODES.length]; }
+
+  private static CStrChunk dictChunk(int len) {
+    NewChunk nc = new NewChunk(null, 0);
+    for (int i = 0; i < len; i++) nc.addStr(mode(i));
+    return (CStrChunk) nc.compress();
+  }
+
+  @Test
+  public void test_dict() {
+    CStrChunk cc = dictChunk(1000);
+    assertTrue(cc.isDict());
+    assertEquals(1000, cc._len);
+    assertEquals(MODES.length, cc.dictSize());
+    assertTrue(cc._mem.length < 1000*4 + 100);
+    BufferedString bs = new BufferedString();
+    for (int i = 0; i < cc._len; i++) {
+      if (mode(i) == null) {
+        assertTrue(cc.isNA(i));
+        assertEquals(-1, cc.code(i));
+      } else {
+        assertEquals(mode(i), cc.atStr(bs, i).toString());
+        assertEquals(mode(i), cc.dictAt(bs, cc.code(i)).toString());
+      }
+    }
+    // Round trip through a NewChunk
+    CStrChunk cc2 = (CStrChunk) cc.extractRows(new NewChunk(null, 0), 0, cc._len).compress();
+    assertArrayEquals(cc._mem, cc2._mem);
+    // Too few rows, or too few repeats, stays plain
+    assertFalse(dictChunk(100).isDict());
+    NewChunk nc = new NewChunk(null, 0);
+    for (int i = 0; i < 1000; i++) nc.addStr("s" + i);
+    assertFalse(((CStrChunk) nc.compress()).isDict());
+  }
+
+  @Test
+  public void test_dict_filter() {
+    CStrChunk cc = dictChunk(1000);
+    final int[] calls = new int[1];
+    int[] rows = new int[cc._len];
+    int n = cc.filter(s -> { calls[0]++; return s.toString().startsWith("T") || s.toString().equals("AIR"); }, rows);
+    assertEquals(MODES.length, calls[0]);  // Once per distinct string
+    int k = 0;
+    for (int i = 0; i < cc._len; i++)
+      if (mode(i) != null && (mode(i).equals("TRUCK") || mode(i).equals("AIR")))
+        assertEquals(i, rows[k++]);
+    assertEquals(k, n);
+  }
+
+  @Test
+  public void test_dict_trim() {
+    CStrChunk cc = dictChunk(1000);
+    assertTrue(cc.isDict());
+    Chunk trimmed = cc.asciiTrim(new NewChunk(null, 0)).compress();
+    BufferedString bs = new BufferedString();
+    for (int i = 0; i < cc._len; i++)
+      if (mode(i) == null) assertTrue(trimmed.isNA(i));
+      else assertEquals(mode(i).trim(), trimmed.atStr(bs, i).toString());
+  }
+
+  @Test
+  public void test_dict_to_categorical() {
+    Vec v = null, cat = null;
+    try {
+      String[] vals = new String[3000];
+      for (int i = 0; i < vals.length; i++) vals[i] = mode(i);
+      v = Vec.makeVec(vals, Vec.newKey());
+      assertTrue(((CStrChunk) v.chunkForChunkIdx(0)).isDict());
+      cat = v.toCategoricalVec();
+      String[] dom = cat.domain();
+      assertEquals(MODES.length, dom.length);
+      for (int i = 0; i < vals.length; i++)
+        if (vals[i] == null) assertTrue(cat.isNA(i));
+        else assertEquals(vals[i], dom[(int) cat.at8(i)]);
+    } finally {
+      if (v != null) v.remove();
+      if (cat != null) cat.remove();
+    }
+  }
+
   class TextChunk {
     CStrChunk cc;
 
@@ -235,4 +235,97 @@ public class FVecTest extends TestUtil {
       if( vec != null ) vec.remove();
     }
   }
+
+  // Sorted keys and dates, big enough per chunk for the run-length and
+  // bit-packed encodings; checks both survive extractRows, a swap to disk
+  // and back, and set.
+  @Test public void testRunsOrBitsRoundTrip() throws IOException {
+    final int len = 9000;
+    Long[] runs = new Long[len], dates = new Long[len];
+    for( int i=0; i<len; i++ ) {
+      runs [i] = i/300 == 2 ? null : (i/300)*1000000L - 7;
+      dates[i] = i%97 == 0 ? null : 1600000000000L + i*3600000L; // Hourly, msec
+    }
+    Vec vr = null, vd = null;
+    try {
+      vr = makeVec(runs);
+      vd = makeVec(dates);
+      for( int c=0; c<vr.nChunks(); c++ ) {
+        assertTrue(vr.chunkForChunkIdx(c) instanceof CRLChunk);
+        assertTrue(vd.chunkForChunkIdx(c) instanceof CFORChunk);
+      }
+      checkVec(runs,vr);
+      checkVec(dates,vd);
+
+      // extractRows, from inside a chunk, recompresses the same way
+      for( int c=0; c<vr.nChunks(); c++ ) {
+        checkExtract(runs ,vr.chunkForChunkIdx(c),CRLChunk .class);
+        checkExtract(dates,vd.chunkForChunkIdx(c),CFORChunk.class);
+      }
+
+      // Swap every chunk out to disk and reload it
+      for( Vec v : new Vec[]{vr,vd} )
+        for( int c=0; c<v.nChunks(); c++ ) {
+          Value val = Value.STORE_get(v.chunkKey(c));
+          byte[] bits = val.memOrLoad().clone();
+          H2O.getPM().store(Value.ICE, val);
+          val.setDsk();
+          val.freeMem();
+          val.freePOJO();
+          Chunk chk = v.chunkForChunkIdx(c);
+          Assert.assertArrayEquals(bits, chk.getBytes());
+        }
+      checkVec(runs,vr);
+      checkVec(dates,vd);
+
+      // Writes inflate, and recompress on close; an odd msec drops the dates
+      // scale but still bit-packs
+      runs [5] = 12345L;   runs [6] = null;  runs [len-1] = 1L;
+      dates[7] = dates[8]+1; dates[9] = null;  dates[4000] = 1600000000000L;
+      Vec.Writer w = vr.open();
+      w.set(5, 12345);  w.setNA(6);  w.set(len-1, 1);
+      w.close();
+      w = vd.open();
+      w.set(7, dates[7]);  w.setNA(9);  w.set(4000, dates[4000]);
+      w.close();
+      assertTrue(vr.chunkForChunkIdx(0) instanceof CRLChunk);
+      assertTrue(vd.chunkForChunkIdx(0) instanceof CFORChunk);
+      checkVec(runs,vr);
+      checkVec(dates,vd);
+    } finally {
+      if( vr != null ) vr.remove();
+      if( vd != null ) vd.remove();
+    }
+  }
+
+  // Three chunks of 3000 rows
+  private static Vec makeVec( Long[] vals ) {
+    Key<Vec> key = Vec.newKey();
+    Vec vec = new Vec(key, Vec.ESPC.rowLayout(key, new long[]{0,3000,6000,vals.length})).makeZero();
+    Vec.Writer w = vec.open();
+    for( int i=0; i<vals.length; i++ ) if( vals[i] == null ) w.setNA(i); else w.set(i, vals[i]);
+    w.close();
+    return vec;
+  }
+
+  private static void checkVec( Long[] vals, Vec vec ) {
+    assertEquals(vals.length, vec.length());
+    for( int i=0; i<vals.length; i++ )
+      if( vals[i] == null ) assertTrue(vec.isNA(i));
+      else assertEquals((long)vals[i], vec.at8(i));
+  }
+
+  private static void checkExtract( Long[] vals, Chunk cc, Class<? extends Chunk> clz ) {
+    int from = 100, to = cc._len-100;
+    NewChunk nc = cc.extractRows(new NewChunk(null, 0), from, to);
+    assertEquals(to-from, nc._len);
+    Chunk cc2 = nc.compress();
+    assertTrue(clz.isInstance(cc2));
+    long start = cc.start();
+    for( int i=0; i<cc2._len; i++ ) {
+      Long v = vals[(int)start+from+i];
+      if( v == null ) assertTrue(cc2.isNA(i));
+      else assertEquals((long)v, cc2.at8(i));
+    }
+  }
 }
@@ -56,6 +56,33 @@ public class VecStatsTest extends TestUtil {
     }
   }
 
+  @Test public void testChunkZones() {
+    Vec v = null;
+    try {
+      Futures fs = new Futures();
+      AppendableVec vec = new AppendableVec(Vec.newKey(), Vec.T_NUM);
+      for( int i = 0; i < 3; i++ ) {
+        NewChunk chunk = new NewChunk(vec, i);
+        for( int r = 0; r < 100; r++ )
+          if( i==2 ) chunk.addNA();            // Last chunk is all NA
+          else if( r==50 ) chunk.addNA();
+          else chunk.addNum(i*1000+r);
+        chunk.close(i, fs);
+      }
+      v = vec.layout_and_close(fs);
+      fs.blockForPending();
+      assertEquals(3, v.nChunks());
+      double[] mins = v.chunkMins(), maxs = v.chunkMaxs();
+      assertEquals(3, mins.length);
+      assertEquals(   0, mins[0], 0);  assertEquals(  99, maxs[0], 0);
+      assertEquals(1000, mins[1], 0);  assertEquals(1099, maxs[1], 0);
+      assertTrue(Double.isNaN(mins[2]));
+      assertTrue(Double.isNaN(maxs[2]));
+    } finally {
+      if( v != null ) v.remove();
+    }
+  }
+
   @Test public void testPCTiles() {
     // Simplified version of tests in runit_quantile_1_golden.R. There we test probs=seq(0,1,by=0.01)
     Vec vec = vec(5 , 8 ,  9 , 12 , 13 , 16 , 18 , 23 , 27 , 28 , 30 , 31 , 33 , 34 , 43,  45,  48, 161);
@@ -0,0 +1,151 @@
+package water.persist;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import water.*;
+import water.fvec.Vec;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PersistFSTest extends TestUtil {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @BeforeClass
+  public static void setup() { stall_till_cloudsize(1); }
+
+  @Test
+  public void testStoreLoadDelete() throws Exception {
+    PersistFS fs = new PersistFS(tmp.newFolder());
+    byte[] zeros = new byte[100000];
+    byte[] rand = new byte[5000];
+    new Random(42).nextBytes(rand);
+    Value vz = new Value(Key.make(), zeros);
+    Value vr = new Value(Key.make(), rand);
+    fs.store(vz);
+    fs.store(vr);
+    assertArrayEquals(zeros, fs.load(vz)); // Queued or written
+    fs.flush();
+    assertArrayEquals(zeros, fs.load(vz)); // From disk, compressed
+    assertArrayEquals(rand, fs.load(vr));  // From disk, raw
+    assertTrue(fs.getFile(vz).length() < zeros.length / 10);
+    assertEquals(rand.length + PersistFS.HDR, fs.getFile(vr).length());
+    fs.delete(vz);
+    fs.delete(vr);
+    assertFalse(fs.getFile(vz).exists());
+    assertNull(fs.load(vz));
+  }
+
+  @Test
+  public void testDeleteBeforeWrite() throws Exception {
+    PersistFS fs = new PersistFS(tmp.newFolder());
+    for (int i = 0; i < 100; i++) {
+      Value v = new Value(Key.make(), new byte[10000]);
+      fs.store(v);
+      fs.delete(v);
+      fs.flush();
+      assertFalse(fs.getFile(v).exists());
+    }
+  }
+
+  @Test
+  public void testMapped() throws Exception {
+    PersistFS fs = new PersistFS(tmp.newFolder());
+    Vec vec = Vec.makeSeq(100000, false);
+    try {
+      fs.map(vec);
+      for (int i = 0; i < vec.nChunks(); i++) {
+        Value val = Value.STORE_get(vec.chunkKey(i));
+        fs.store(val);           // Already mapped; nothing written
+        assertFalse(fs.getFile(val).exists());
+        assertArrayEquals(val.memOrLoad(), fs.load(val));
+      }
+      // A changed chunk is not in the mapping
+      Value val = Value.STORE_get(vec.chunkKey(0));
+      Value nval = new Value(val._key, val.memOrLoad().clone());
+      fs.store(nval);
+      fs.flush();
+      assertTrue(fs.getFile(nval).exists());
+      assertArrayEquals(val.memOrLoad(), fs.load(nval));
+      fs.delete(nval);
+    } finally {
+      vec.remove();
+    }
+  }
+
+  @Test
+  public void testSweepRemoved() throws Exception {
+    File root = tmp.newFolder();
+    PersistFS fs = new PersistFS(root);
+    Vec vec = Vec.makeSeq(100000, false);
+    try {
+      fs.map(vec);
+      fs.sweep();                // Still live; kept
+      assertEquals(1, mapFiles(root));
+    } finally {
+      vec.remove();
+    }
+    fs.sweep();                  // Chunks were never swapped; found here
+    assertEquals(0, mapFiles(root));
+  }
+
+  private static int mapFiles(File root) {
+    int n = 0;
+    File[] fs = new File(root, "ice" + H2O.API_PORT).listFiles();
+    if (fs != null)
+      for (File f : fs) if (f.getName().contains(".map")) n++;
+    return n;
+  }
+
+  @Test
+  public void testPrefetchEvictable() throws Exception {
+    Vec vec = Vec.makeSeq(100000, false);
+    try {
+      Value val = Value.STORE_get(vec.chunkKey(0));
+      byte[] bits = val.memOrLoad().clone();
+      H2O.getPM().store(Value.ICE, val); // Swap out, as the Cleaner does
+      val.setDsk();
+      val.freeMem();
+      val.freePOJO();
+      assertTrue(val.prefetch());
+      assertTrue(Cleaner.evictable(val)); // Read-ahead can be swapped out again
+      val.freeMem();
+      val.freePOJO();
+      assertArrayEquals(bits, val.memOrLoad());
+    } finally {
+      vec.remove();
+    }
+  }
+
+  @Test
+  public void testWriteFailure() throws Exception {
+    PersistFS fs = new PersistFS(tmp.newFolder());
+    byte[] bits = new byte[10000];
+    Value v = new Value(Key.make(), bits);
+    File f = fs.getFile(v);
+    assertTrue(f.mkdirs());     // Writes to a directory fail
+    fs.store(v);
+    fs.flush();
+    assertArrayEquals(bits, fs.load(v)); // Still loadable
+    try {
+      fs.store(new Value(Key.make(), new byte[10]));
+      fail("Expected the failed write to be reported");
+    } catch (IOException expected) {
+    }
+    assertTrue(f.delete());
+    Value v2 = new Value(Key.make(), new byte[10]);
+    fs.store(v2);               // Retries the failed write
+    fs.flush();
+    assertTrue(f.isFile());
+    assertArrayEquals(bits, fs.load(v));
+    fs.delete(v);
+    fs.delete(v2);
+  }
+}
@@ -0,0 +1,59 @@
+package water.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LZ4Test {
+
+  private static int roundTrip(byte[] b) {
+    byte[] c = new byte[LZ4.maxLen(b.length) + 3];
+    int len = LZ4.compress(b, 0, b.length, c, 3);
+    assertTrue(len <= LZ4.maxLen(b.length));
+    byte[] d = new byte[b.length];
+    LZ4.decompress(c, 3, len, d, 0, d.length);
+    assertArrayEquals(b, d);
+    return len;
+  }
+
+  @Test
+  public void testEmptyAndTiny() {
+    assertEquals(1, roundTrip(new byte[0]));
+    for (int n = 1; n < 40; n++) {
+      byte[] b = new byte[n];
+      Arrays.fill(b, (byte) 7);
+      roundTrip(b);
+    }
+  }
+
+  @Test
+  public void testRepetitive() {
+    byte[] zeros = new byte[1 << 20];
+    assertTrue(roundTrip(zeros) < zeros.length / 200);
+    byte[] pattern = new byte[100000];
+    for (int i = 0; i < pattern.length; i++) pattern[i] = (byte) (i % 7);
+    assertTrue(roundTrip(pattern) < pattern.length / 100);
+  }
+
+  @Test
+  public void testRandom() {
+    Random r = new Random(1234);
+    for (int t = 0; t < 200; t++) {
+      byte[] b = new byte[r.nextInt(70000)];
+      if (t % 2 == 0) r.nextBytes(b); // Incompressible
+      else for (int i = 0; i < b.length; i++) b[i] = (byte) (r.nextInt(4) == 0 ? r.nextInt() : i / 100);
+      roundTrip(b);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWrongLength() {
+    byte[] b = new byte[1000];
+    byte[] c = new byte[LZ4.maxLen(b.length)];
+    int len = LZ4.compress(b, 0, b.length, c, 0);
+    LZ4.decompress(c, 0, len, new byte[1001], 0, 999);
+  }
+}